@@ -1,122 +1,269 @@
 package org.droidplanner.android;
 
 
-import android.util.Log;
-
 import com.google.android.gms.maps.model.LatLng;
 import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 
+/**
+ * Generates the itinerary covering a field: parallel lanes (boustrophedon) flown back and forth
+ * across the polygon, with a waypoint, hence a photo, every few meters along each lane.
+ * <p/>
+ * The polygon may have any number of vertices and be concave: every lane is cut against all the
+ * edges, and only the parts inside the field get waypoints. The work is done in a local planar
+ * frame (meters east / north of the field centroid) on primitive arrays.
+ */
 public class Compilatore {
 
-    private static ArrayList<Waypoint> getInitialWaypoints(List<LatLng> vertices) {
-        ArrayList<Waypoint> waypoints = new ArrayList<>();
-        for (LatLng vertex : vertices) {
-            waypoints.add(WaypointUtils.newWaypoint(vertex.latitude, vertex.longitude));
-        }
-        return waypoints;
+    /**
+     * Distance between two photos, both along and across the lanes.
+     */
+    public static final double DEFAULT_SPACING = 30; //m
+
+    /**
+     * Cruise speed used to estimate the flight time.
+     */
+    public static final double DEFAULT_SPEED = 5; //m/s
+
+    private static final double EARTH_RADIUS = 6371009.0; //m
+
+    //Private constructor to prevent instantiation.
+    private Compilatore() {
     }
 
     public static List<Waypoint> generaItinerario(List<LatLng> vertices) {
+        return generaItinerario(vertices, new Parametri()).getWaypoints();
+    }
 
-        ArrayList<Waypoint> initial = getInitialWaypoints(vertices);
-        List<Waypoint> itinerario = new ArrayList<>();
-        List<Waypoint> retta1 = new ArrayList<>();
-        List<Waypoint> retta2 = new ArrayList<>();
-
-        //retta 1
-        Waypoint wp1 = initial.get(0);
-        Waypoint wp2 = initial.get(1);
-        double distanza = WaypointUtils.distanza(wp1, wp2);
-        if (distanza < 30) {
-            Waypoint waypointMedio = WaypointUtils.waypointMedio(wp1, wp2);
+    public static Itinerario generaItinerario(List<LatLng> vertices, Parametri parametri) {
+        final int count = vertices.size();
+        if (count < 3)
+            return new Itinerario(new ArrayList<Waypoint>(0), 0, 0);
 
-            //retta1.add(wp1);
-            retta1.add(waypointMedio);
-            //retta1.add(wp2);
-        } else {
-            int segments = (int) Math.ceil(distanza / 30);
+        //Local planar frame centered on the field.
+        double lat0 = 0;
+        double lon0 = 0;
+        for (LatLng vertex : vertices) {
+            lat0 += vertex.latitude;
+            lon0 += vertex.longitude;
+        }
+        lat0 /= count;
+        lon0 /= count;
+        final double metersPerDegreeLat = Math.toRadians(EARTH_RADIUS);
+        final double metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(lat0));
 
-            List<Waypoint> puntiDivisione = WaypointUtils.getPuntiDivisione(wp1, wp2, segments);
-            puntiDivisione.add(0, wp1);
-            puntiDivisione.add(wp2);
+        final double[] xs = new double[count];
+        final double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            final LatLng vertex = vertices.get(i);
+            xs[i] = (vertex.longitude - lon0) * metersPerDegreeLon;
+            ys[i] = (vertex.latitude - lat0) * metersPerDegreeLat;
+        }
 
-            retta1 = puntiDivisione;
+        //Rotate the field so the lanes are horizontal: u along the lanes, v across.
+        final double heading = Double.isNaN(parametri.heading) ? getLongestEdgeHeading(xs, ys) : Math.toRadians(parametri.heading);
+        final double sin = Math.sin(heading);
+        final double cos = Math.cos(heading);
+        final double[] us = new double[count];
+        final double[] vs = new double[count];
+        double vMin = Double.POSITIVE_INFINITY;
+        double vMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            us[i] = xs[i] * sin + ys[i] * cos;
+            vs[i] = -xs[i] * cos + ys[i] * sin;
+            vMin = Math.min(vMin, vs[i]);
+            vMax = Math.max(vMax, vs[i]);
         }
 
-        //retta 2
-        wp1 = initial.get(2);
-        wp2 = initial.get(3);
-        if (distanza < 30) {
-            Waypoint waypointMedio = WaypointUtils.waypointMedio(wp1, wp2);
+        final double step = parametri.getStep();
+        final double width = vMax - vMin;
+        final int lanes = Math.max(1, (int) Math.ceil(width / step));
+        final double laneStep = width / lanes;
 
-            //retta2.add(wp1);
-            retta2.add(waypointMedio);
-            //retta2.add(wp2);
+        //Output points, as (u, v) pairs.
+        double[] points = new double[64];
+        int pointCount = 0;
+        final double[] crossings = new double[count];
 
-        } else {
+        for (int lane = 0; lane < lanes; lane++) {
+            final double v = vMin + laneStep * (lane + 0.5);
+            final int crossingCount = getCrossings(us, vs, v, crossings);
+            final boolean reverse = (lane & 1) == 1;
 
-            int segments = (int) Math.ceil(distanza / 30);
+            for (int k = 0; k + 1 < crossingCount; k += 2) {
+                //Walk the segments of the lane in the flying direction.
+                final int segment = reverse ? crossingCount - 2 - k : k;
+                final double start = reverse ? crossings[segment + 1] : crossings[segment];
+                final double end = reverse ? crossings[segment] : crossings[segment + 1];
+                final double length = Math.abs(end - start);
 
-            List<Waypoint> puntiDivisione = WaypointUtils.getPuntiDivisione(wp1, wp2, segments);
-            puntiDivisione.add(0, wp1);
-            puntiDivisione.add(wp2);
+                final int divisions = length < step ? 0 : (int) Math.ceil(length / step);
+                final int needed = 2 * (divisions + 1);
+                if (pointCount * 2 + needed > points.length)
+                    points = Arrays.copyOf(points, Math.max(points.length * 2, pointCount * 2 + needed));
 
-            retta2 = puntiDivisione;
+                if (divisions == 0) {
+                    points[pointCount * 2] = (start + end) / 2;
+                    points[pointCount * 2 + 1] = v;
+                    pointCount++;
+                } else {
+                    final double delta = (end - start) / divisions;
+                    for (int d = 0; d <= divisions; d++) {
+                        points[pointCount * 2] = start + delta * d;
+                        points[pointCount * 2 + 1] = v;
+                        pointCount++;
+                    }
+                }
+            }
         }
 
-        //definizione itinerario
-        int puntiRettaMaggiore;
-        if (retta1.size() >= retta2.size()) {
-            puntiRettaMaggiore = retta1.size();
-        } else {
-            puntiRettaMaggiore = retta2.size();
-        }
+        final List<Waypoint> waypoints = new ArrayList<>(pointCount);
+        double lunghezza = 0;
+        for (int i = 0; i < pointCount; i++) {
+            final double u = points[i * 2];
+            final double v = points[i * 2 + 1];
+            if (i > 0)
+                lunghezza += Math.hypot(u - points[i * 2 - 2], v - points[i * 2 - 1]);
 
-        int contatore = 1;
-        for (int i=0; i < puntiRettaMaggiore; i++) {
-            Log.i("LOG", i+"; "+ contatore);
+            final double x = u * sin - v * cos;
+            final double y = u * cos + v * sin;
+            waypoints.add(WaypointUtils.newWaypoint(lat0 + y / metersPerDegreeLat, lon0 + x / metersPerDegreeLon));
+        }
 
-            Waypoint wpp1 = i > retta1.size() ? retta1.get(retta1.size() - 1) : retta1.get(i);
-            Waypoint wpp2 = i < 0 ? retta2.get(0) : retta2.get(retta1.size() - i -1);
+        final double durata = lunghezza / parametri.velocita + pointCount * WaypointUtils.DEFAULT_DELAY;
+        return new Itinerario(waypoints, lunghezza, durata);
+    }
 
-            //itinerario.add(wpp1);
+    /**
+     * Cuts the horizontal line at v against the polygon edges.
+     *
+     * @return the number of crossings written to out, sorted along the line. Consecutive pairs
+     * bound the parts of the line inside the polygon.
+     */
+    private static int getCrossings(double[] us, double[] vs, double v, double[] out) {
+        final int count = us.length;
+        int crossings = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            final double v1 = vs[j];
+            final double v2 = vs[i];
+            //Half open, so a vertex lying on the line is counted once.
+            if ((v1 <= v && v < v2) || (v2 <= v && v < v1)) {
+                out[crossings++] = us[j] + (v - v1) * (us[i] - us[j]) / (v2 - v1);
+            }
+        }
+        Arrays.sort(out, 0, crossings);
+        return crossings;
+    }
 
-            distanza = WaypointUtils.distanza(wpp1, wpp2);
-            if (distanza < 30) {
-                Waypoint waypointMedio = WaypointUtils.waypointMedio(wpp1, wpp2);
-                itinerario.add(waypointMedio);
-            } else {
-                itinerario.add(wpp1);
-                int segments = (int) Math.ceil(distanza / 30);
-                List<Waypoint> puntiDivisione = WaypointUtils.getPuntiDivisione(wpp1, wpp2, segments);
-                for (Waypoint waypoint : puntiDivisione) {
-                    itinerario.add(waypoint);
-                }
-                itinerario.add(wpp2);
+    /**
+     * @return the heading, in radians from north, of the longest edge. Lanes parallel to it need
+     * the fewest turns on most fields.
+     */
+    private static double getLongestEdgeHeading(double[] xs, double[] ys) {
+        final int count = xs.length;
+        double longest = -1;
+        double heading = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            final double dx = xs[i] - xs[j];
+            final double dy = ys[i] - ys[j];
+            final double length = dx * dx + dy * dy;
+            if (length > longest) {
+                longest = length;
+                heading = Math.atan2(dx, dy);
             }
-            //itinerario.add(wpp2);
+        }
+        return heading;
+    }
+
+    /**
+     * Settings of the itinerary generation.
+     */
+    public static class Parametri {
+
+        private double spacing = DEFAULT_SPACING;
+        private double overlap = 0;
+        private double heading = Double.NaN;
+        private double velocita = DEFAULT_SPEED;
+
+        /**
+         * @param spacing Ground distance covered by a photo, in meters.
+         */
+        public Parametri setSpacing(double spacing) {
+            if (spacing <= 0)
+                throw new IllegalArgumentException("Spacing must be positive: " + spacing);
+            this.spacing = spacing;
+            return this;
         }
 
+        /**
+         * @param overlap Fraction, from 0 inclusive to 1 exclusive, shared by neighbouring photos.
+         */
+        public Parametri setOverlap(double overlap) {
+            if (overlap < 0 || overlap >= 1)
+                throw new IllegalArgumentException("Overlap must be in [0, 1): " + overlap);
+            this.overlap = overlap;
+            return this;
+        }
+
+        /**
+         * @param heading Direction of the lanes, in degrees clockwise from north. NaN follows the
+         *                longest edge of the field.
+         */
+        public Parametri setHeading(double heading) {
+            this.heading = heading;
+            return this;
+        }
+
+        /**
+         * @param velocita Cruise speed in m/s, used for the flight time estimate.
+         */
+        public Parametri setVelocita(double velocita) {
+            if (velocita <= 0)
+                throw new IllegalArgumentException("Speed must be positive: " + velocita);
+            this.velocita = velocita;
+            return this;
+        }
 
-        //controllo della distanza totale
-        double tot = 0;
-        Waypoint start = itinerario.get(0);
-        for (int i = 1; i < itinerario.size(); i++) {
-            tot += WaypointUtils.distanza(start, itinerario.get(i));
-            start = itinerario.get(i);
+        double getStep() {
+            return spacing * (1 - overlap);
         }
-/*
-        if (tot > 4719.92)
-            return null;
-*/
-        return itinerario;
     }
 
+    /**
+     * A generated itinerary, with its length and expected duration.
+     */
+    public static class Itinerario {
+
+        private final List<Waypoint> waypoints;
+        private final double lunghezza;
+        private final double durata;
+
+        Itinerario(List<Waypoint> waypoints, double lunghezza, double durata) {
+            this.waypoints = waypoints;
+            this.lunghezza = lunghezza;
+            this.durata = durata;
+        }
+
+        public List<Waypoint> getWaypoints() {
+            return waypoints;
+        }
+
+        /**
+         * @return the flight length from the first to the last waypoint, in meters.
+         */
+        public double getLunghezza() {
+            return lunghezza;
+        }
+
+        /**
+         * @return the estimated flight time in seconds, including the stop at each waypoint.
+         */
+        public double getDurata() {
+            return durata;
+        }
+    }
 }
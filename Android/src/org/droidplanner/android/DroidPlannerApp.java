@@ -28,14 +28,16 @@ import com.o3dr.services.android.lib.model.AbstractCommandListener;
 import org.droidplanner.android.activities.helpers.BluetoothDevicesActivity;
 import org.droidplanner.android.proxy.mission.MissionProxy;
 import org.droidplanner.android.utils.LogToFileTree;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.file.IO.ExceptionWriter;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.fabric.sdk.android.Fabric;
@@ -60,6 +62,16 @@ public class DroidPlannerApp extends MultiDexApplication implements DroneListene
 
     private static final long EVENTS_DISPATCHING_PERIOD = 200L; //MS
 
+    /**
+     * High rate events, only delivered through the {@link TelemetryBus}. The others are still
+     * relayed as local broadcasts for the receivers which were not moved to the bus.
+     */
+    private static final Set<String> BUS_ONLY_EVENTS = new HashSet<>(Arrays.asList(
+            AttributeEvent.GPS_POSITION,
+            AttributeEvent.ATTITUDE_UPDATED,
+            AttributeEvent.SPEED_UPDATED,
+            AttributeEvent.ALTITUDE_UPDATED));
+
     private static final AtomicBoolean isCellularNetworkOn = new AtomicBoolean(false);
 
     private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
@@ -116,29 +128,20 @@ public class DroidPlannerApp extends MultiDexApplication implements DroneListene
         }
     };
 
-    private final Runnable eventsDispatcher = new Runnable() {
+    private final TelemetryBus.Listener broadcastRelay = new TelemetryBus.Listener() {
         @Override
-        public void run() {
-            handler.removeCallbacks(this);
-
-            //Go through the events buffer and empty it
-            for(Map.Entry<String, Bundle> entry: eventsBuffer.entrySet()){
-                String event = entry.getKey();
-                Bundle extras = entry.getValue();
-
-                final Intent droneIntent = new Intent(event);
-                if (extras != null)
-                    droneIntent.putExtras(extras);
-                lbm.sendBroadcast(droneIntent);
-            }
-
-            eventsBuffer.clear();
-
-            handler.postDelayed(this, EVENTS_DISPATCHING_PERIOD);
+        public void onTelemetryEvent(String event, Bundle extras) {
+            if (BUS_ONLY_EVENTS.contains(event))
+                return;
+
+            final Intent droneIntent = new Intent(event);
+            if (extras != null)
+                droneIntent.putExtras(extras);
+            lbm.sendBroadcast(droneIntent);
         }
     };
 
-    private final Map<String, Bundle> eventsBuffer = new LinkedHashMap<>(200);
+    private final TelemetryBus telemetryBus = new TelemetryBus();
 
     private final Handler handler = new Handler();
     private final List<ApiListener> apiListeners = new ArrayList<ApiListener>();
@@ -184,6 +187,7 @@ public class DroidPlannerApp extends MultiDexApplication implements DroneListene
 
         dpPrefs = DroidPlannerPrefs.getInstance(context);
         lbm = LocalBroadcastManager.getInstance(context);
+        telemetryBus.subscribeAll(broadcastRelay, EVENTS_DISPATCHING_PERIOD);
 
         controlTower = new ControlTower(context);
         drone = new Drone(context);
@@ -291,6 +295,10 @@ public class DroidPlannerApp extends MultiDexApplication implements DroneListene
         return this.missionProxy;
     }
 
+    public TelemetryBus getTelemetryBus() {
+        return telemetryBus;
+    }
+
     private ConnectionParameter retrieveConnectionParameters() {
         final int connectionType = dpPrefs.getConnectionParameterType();
         Bundle extraParams = new Bundle();
@@ -380,31 +388,20 @@ public class DroidPlannerApp extends MultiDexApplication implements DroneListene
                     }
                 });
 
-                final Intent droneIntent = new Intent(event);
-                if (extras != null)
-                    droneIntent.putExtras(extras);
-                lbm.sendBroadcast(droneIntent);
-
-                handler.postDelayed(eventsDispatcher, EVENTS_DISPATCHING_PERIOD);
+                telemetryBus.postNow(event, extras);
                 break;
             }
 
             case AttributeEvent.STATE_DISCONNECTED: {
-                handler.removeCallbacks(eventsDispatcher);
-
                 shouldWeTerminate();
 
-                final Intent droneIntent = new Intent(event);
-                if (extras != null)
-                    droneIntent.putExtras(extras);
-                lbm.sendBroadcast(droneIntent);
+                telemetryBus.postNow(event, extras);
                 break;
             }
 
             default: {
-                //Buffer the remaining events, and only fire them at 30hz
-                //TODO: remove this once the buffer is placed on the 3DR Services side
-                eventsBuffer.put(event, extras);
+                //Only the latest occurrence of each event is kept, subscribers get them at their own pace.
+                telemetryBus.post(event, extras);
                 break;
             }
         }
@@ -1,173 +1,362 @@
 package org.droidplanner.android.KDTree;
 
-import com.google.android.gms.maps.model.LatLng;
 import com.o3dr.services.android.lib.coordinate.LatLong;
 import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 
+/**
+ * 3-d tree over the waypoints of an itinerary, placed on the unit sphere so that distances do not
+ * depend on the latitude.
+ * <p/>
+ * The tree is implicit: the points are packed in a flat array, the node of a range [lo, hi) is the
+ * median slot and its children are the two halves around it. It is built with a median selection
+ * per level rather than a full sort, in O(n log n).
+ * <p/>
+ * Waypoint indexes start from 1, in the order of the list the tree was built from.
+ */
 public class LocationKDTree {
     private static final int K = 3; // 3-d tree
-    private final Node tree;
+
+    /**
+     * Mean earth radius, in meters.
+     */
+    static final double EARTH_RADIUS = 6371009.0;
+
+    private static final int[] NO_RESULTS = new int[0];
+
+    /**
+     * K coordinates per slot, in tree order.
+     */
+    private final double[] points;
+
+    /**
+     * Waypoint index held by each slot.
+     */
+    private final int[] indexes;
+
+    private final Waypoint[] waypoints;
+
+    /**
+     * Target of {@link #withinRadius(double, double, double, int[])}.
+     */
+    private final double[] scratch = new double[K];
 
     public LocationKDTree(final List<Waypoint> locations) {
-        final List<Node> nodes = new ArrayList<>(locations.size());
-        int i=1;
-        for (final Waypoint waypoint : locations) {
-            nodes.add(new Node(waypoint, i++));
+        final int size = locations.size();
+        waypoints = locations.toArray(new Waypoint[size]);
+        points = new double[size * K];
+        indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            final LatLong coordinate = waypoints[i].getCoordinate();
+            toPoint(coordinate.getLatitude(), coordinate.getLongitude(), points, i * K);
+            indexes[i] = i + 1;
+        }
+        build(0, size, 0);
+    }
+
+    public int size() {
+        return indexes.length;
+    }
+
+    /**
+     * @param waypointIndex Index starting from 1.
+     */
+    public Waypoint getWaypoint(final int waypointIndex) {
+        return waypoints[waypointIndex - 1];
+    }
+
+    /**
+     * @return the index of the waypoint nearest to the given position, or -1 if the tree is empty.
+     */
+    public int findNearest(final double latitude, final double longitude) {
+        final double[] target = toPoint(latitude, longitude, new double[K], 0);
+        final int slot = findNearest(target, -1);
+        return slot < 0 ? -1 : indexes[slot];
+    }
+
+    /**
+     * @return the indexes of the k waypoints nearest to the given position, nearest first.
+     */
+    public int[] kNearest(final double latitude, final double longitude, final int k) {
+        final int count = Math.min(k, size());
+        if (count <= 0) {
+            return NO_RESULTS;
         }
-        tree = buildTree(nodes, 0);
+
+        final double[] target = toPoint(latitude, longitude, new double[K], 0);
+        final int[] heapSlots = new int[count];
+        final double[] heapDistances = new double[count];
+        final int found = kNearest(0, size(), 0, target, heapSlots, heapDistances, 0);
+
+        //Pop the max-heap from the back to get the nearest first.
+        final int[] result = new int[found];
+        for (int end = found - 1; end >= 0; end--) {
+            result[end] = indexes[heapSlots[0]];
+            heapSlots[0] = heapSlots[end];
+            heapDistances[0] = heapDistances[end];
+            siftDown(heapSlots, heapDistances, 0, end);
+        }
+        return result;
+    }
+
+    /**
+     * @return the indexes of the waypoints within the given distance of the position, in no
+     * particular order.
+     */
+    public int[] withinRadius(final double latitude, final double longitude, final double meters) {
+        final double[] target = toPoint(latitude, longitude, new double[K], 0);
+        final double maxDistance = toChordDistance(meters);
+
+        int[] out = new int[Math.min(size(), 16)];
+        int count;
+        while ((count = withinRadius(0, size(), 0, target, maxDistance, out, 0)) == out.length && out.length < size()) {
+            //Ran out of room: retry with a bigger buffer, results are rare past the first few.
+            out = new int[Math.min(size(), out.length * 4)];
+        }
+        return count == out.length ? out : Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Same as {@link #withinRadius(double, double, double)} into a caller owned buffer, so
+     * repeated queries do not allocate. The target goes through a buffer of the tree, so this one
+     * must not be called from several threads at once.
+     *
+     * @return the number of indexes written to out, at most out.length.
+     */
+    public int withinRadius(final double latitude, final double longitude, final double meters, final int[] out) {
+        return withinRadius(toPoint(latitude, longitude, scratch, 0), toChordDistance(meters), out);
+    }
+
+    int withinRadius(final double[] target, final double maxDistance, final int[] out) {
+        return withinRadius(0, size(), 0, target, maxDistance, out, 0);
+    }
+
+    /**
+     * @param excludedIndex Waypoint index to ignore, or -1.
+     * @return the slot nearest to the target, or -1 if there is none.
+     */
+    int findNearest(final double[] target, final int excludedIndex) {
+        return findNearest(0, size(), 0, target, excludedIndex, -1);
+    }
+
+    int indexAt(final int slot) {
+        return indexes[slot];
     }
 
-    public Node findNearest(final double latitude, final double longitude) {
-        return findNearest(tree, new Node(latitude, longitude, -1), 0);
+    /**
+     * @return the squared chord between the slot and the target.
+     */
+    double distance(final int slot, final double[] target) {
+        final int offset = slot * K;
+        final double x = points[offset] - target[0];
+        final double y = points[offset + 1] - target[1];
+        final double z = points[offset + 2] - target[2];
+        return x * x + y * y + z * z;
     }
 
-    private static Node findNearest(final Node current, final Node target, final int depth) {
+    private int findNearest(final int lo, final int hi, final int depth, final double[] target,
+                            final int excludedIndex, int best) {
+        if (lo >= hi) {
+            return best;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        if (indexes[mid] != excludedIndex && (best < 0 || distance(mid, target) < distance(best, target))) {
+            best = mid;
+        }
+
         final int axis = depth % K;
-        final int direction = getComparator(axis).compare(target, current);
-        final Node next = (direction < 0) ? current.left : current.right;
-        final Node other = (direction < 0) ? current.right : current.left;
-        Node best = (next == null) ? current : findNearest(next, target, depth + 1);
-        if (current.euclideanDistance(target) < best.euclideanDistance(target)) {
-            best = current;
-        }
-        if (other != null) {
-            if (current.verticalDistance(target, axis) < best.euclideanDistance(target)) {
-                final Node possibleBest = findNearest(other, target, depth + 1);
-                if (possibleBest.euclideanDistance(target) < best.euclideanDistance(target)) {
-                    best = possibleBest;
-                }
+        final double delta = target[axis] - points[mid * K + axis];
+        if (delta < 0) {
+            best = findNearest(lo, mid, depth + 1, target, excludedIndex, best);
+            if (best < 0 || delta * delta < distance(best, target)) {
+                best = findNearest(mid + 1, hi, depth + 1, target, excludedIndex, best);
+            }
+        } else {
+            best = findNearest(mid + 1, hi, depth + 1, target, excludedIndex, best);
+            if (best < 0 || delta * delta < distance(best, target)) {
+                best = findNearest(lo, mid, depth + 1, target, excludedIndex, best);
             }
         }
         return best;
     }
 
-    private static Node buildTree(final List<Node> items, final int depth) {
-        if (items.isEmpty()) {
-            return null;
+    /**
+     * Keeps the nearest slots seen so far in a max-heap ordered on the distance.
+     *
+     * @return the number of slots in the heap.
+     */
+    private int kNearest(final int lo, final int hi, final int depth, final double[] target,
+                         final int[] heapSlots, final double[] heapDistances, int count) {
+        if (lo >= hi) {
+            return count;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final double distance = distance(mid, target);
+        if (count < heapSlots.length) {
+            heapSlots[count] = mid;
+            heapDistances[count] = distance;
+            siftUp(heapSlots, heapDistances, count++);
+        } else if (distance < heapDistances[0]) {
+            heapSlots[0] = mid;
+            heapDistances[0] = distance;
+            siftDown(heapSlots, heapDistances, 0, count);
         }
 
-        Collections.sort(items, getComparator(depth % K));
-        final int index = items.size() / 2;
-        final Node root = items.get(index);
-        root.left = buildTree(items.subList(0, index), depth + 1);
-        root.right = buildTree(items.subList(index + 1, items.size()), depth + 1);
-        return root;
+        final int axis = depth % K;
+        final double delta = target[axis] - points[mid * K + axis];
+        final boolean goLeft = delta < 0;
+        count = goLeft
+                ? kNearest(lo, mid, depth + 1, target, heapSlots, heapDistances, count)
+                : kNearest(mid + 1, hi, depth + 1, target, heapSlots, heapDistances, count);
+        if (count < heapSlots.length || delta * delta < heapDistances[0]) {
+            count = goLeft
+                    ? kNearest(mid + 1, hi, depth + 1, target, heapSlots, heapDistances, count)
+                    : kNearest(lo, mid, depth + 1, target, heapSlots, heapDistances, count);
+        }
+        return count;
     }
 
-    public static class Node {
-        Node left;
-        Node right;
-        Waypoint location;
-        int waypointIndex;
-        final double[] point = new double[K];
+    private int withinRadius(final int lo, final int hi, final int depth, final double[] target,
+                             final double maxDistance, final int[] out, int count) {
+        if (lo >= hi || count >= out.length) {
+            return count;
+        }
 
-        public int getWaypointIndex() {
-            return waypointIndex;
+        final int mid = (lo + hi) >>> 1;
+        if (distance(mid, target) <= maxDistance) {
+            out[count++] = indexes[mid];
         }
 
-        public LatLong getCoordinates(){
-            return location.getCoordinate();
+        final int axis = depth % K;
+        final double delta = target[axis] - points[mid * K + axis];
+        if (delta <= 0 || delta * delta <= maxDistance) {
+            count = withinRadius(lo, mid, depth + 1, target, maxDistance, out, count);
         }
+        if (delta >= 0 || delta * delta <= maxDistance) {
+            count = withinRadius(mid + 1, hi, depth + 1, target, maxDistance, out, count);
+        }
+        return count;
+    }
 
-        Node(final double latitude, final double longitude, int wpIndex) {
-            point[0] = cos(toRadians(latitude)) * cos(toRadians(longitude));
-            point[1] = cos(toRadians(latitude)) * sin(toRadians(longitude));
-            point[2] = sin(toRadians(latitude));
-            waypointIndex = wpIndex;
+    private void build(final int lo, final int hi, final int depth) {
+        if (hi - lo <= 1) {
+            return;
         }
 
-        Node(final Waypoint location, int wpIndex) {
-            this(location.getCoordinate().getLatitude(), location.getCoordinate().getLongitude(), wpIndex);
-            this.location = location;
+        final int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth % K);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Moves the slot of rank k along the axis to position k, with lower or equal slots before it
+     * and greater or equal after it (Wirth's selection), in linear expected time.
+     */
+    private void select(int left, int right, final int k, final int axis) {
+        while (left < right) {
+            final double pivot = points[k * K + axis];
+            int i = left;
+            int j = right;
+            do {
+                while (points[i * K + axis] < pivot) i++;
+                while (pivot < points[j * K + axis]) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            } while (i <= j);
+
+            if (j < k) left = i;
+            if (k < i) right = j;
         }
+    }
 
-        double euclideanDistance(final Node that) {
-            final double x = this.point[0] - that.point[0];
-            final double y = this.point[1] - that.point[1];
-            final double z = this.point[2] - that.point[2];
-            return x * x + y * y + z * z;
+    private void swap(final int a, final int b) {
+        if (a == b) {
+            return;
         }
 
-        double verticalDistance(final Node that, final int axis) {
-            final double d = this.point[axis] - that.point[axis];
-            return d * d;
+        final int index = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = index;
+
+        final int offsetA = a * K;
+        final int offsetB = b * K;
+        for (int i = 0; i < K; i++) {
+            final double value = points[offsetA + i];
+            points[offsetA + i] = points[offsetB + i];
+            points[offsetB + i] = value;
         }
     }
 
-    private static Comparator<Node> getComparator(final int i) {
-        return NodeComparator.values()[i];
+    private static void siftUp(final int[] slots, final double[] distances, int child) {
+        while (child > 0) {
+            final int parent = (child - 1) / 2;
+            if (distances[parent] >= distances[child]) {
+                return;
+            }
+            swap(slots, distances, parent, child);
+            child = parent;
+        }
     }
 
-    private enum NodeComparator implements Comparator<Node> {
-        x {
-            @Override
-            public int compare(final Node a, final Node b) {
-                return Double.compare(a.point[0], b.point[0]);
-            }
-        },
-        y {
-            @Override
-            public int compare(final Node a, final Node b) {
-                return Double.compare(a.point[1], b.point[1]);
-            }
-        },
-        z {
-            @Override
-            public int compare(final Node a, final Node b) {
-                return Double.compare(a.point[2], b.point[2]);
+    private static void siftDown(final int[] slots, final double[] distances, int parent, final int count) {
+        while (true) {
+            int largest = parent;
+            final int left = 2 * parent + 1;
+            final int right = left + 1;
+            if (left < count && distances[left] > distances[largest]) largest = left;
+            if (right < count && distances[right] > distances[largest]) largest = right;
+            if (largest == parent) {
+                return;
             }
+            swap(slots, distances, parent, largest);
+            parent = largest;
         }
     }
 
-    public static void main(String args[]) throws IOException {
-
-        ArrayList<LatLng> list = new ArrayList<>();
-        /*
-        list.add(new LatLng(7.6391296386719, 45.130867004395));
-        list.add(new LatLng(7.6389619827271, 45.131087493896));
-        list.add(new LatLng(7.6387943267822, 45.131307983398));
-        list.add(new LatLng(7.6386266708374, 45.1315284729));
-        list.add(new LatLng(7.6384590148926, 45.131748962402));
-        list.add(new LatLng(7.6382913589478, 45.131969451904));
-        list.add(new LatLng(7.6388618946075, 45.130737304688));
-        list.add(new LatLng(7.6387059211731, 45.130970001221));
-        list.add(new LatLng(7.6385499477386, 45.131202697754));
-        list.add(new LatLng(7.6383939743042, 45.131435394287));
-        list.add(new LatLng(7.6382380008698, 45.13166809082));
-        list.add(new LatLng(7.6380820274353, 45.131900787354));
-        list.add(new LatLng(7.6385941505432, 45.13060760498));
-        list.add(new LatLng(7.6384498596191, 45.130852508545));
-        list.add(new LatLng(7.6383055686951, 45.131097412109));
-        list.add(new LatLng(7.638161277771, 45.131342315674));
-        list.add(new LatLng(7.6380169868469, 45.131587219238));
-        list.add(new LatLng(7.6378726959229, 45.131832122803));
-
-        LocationKDTree kdt = new LocationKDTree(list);
+    private static void swap(final int[] slots, final double[] distances, final int a, final int b) {
+        final int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        final double distance = distances[a];
+        distances[a] = distances[b];
+        distances[b] = distance;
+    }
 
-        while(true) {
-            System.out.println("Enter the co-ordinates of the point: (one after the other)");
-            InputStreamReader reader = new InputStreamReader(System.in);
-            BufferedReader br = new BufferedReader(reader);
-            double sx = Double.parseDouble(br.readLine());
-            double sy = Double.parseDouble(br.readLine());
+    /**
+     * Writes the position on the unit sphere of the given coordinates into out, from offset.
+     *
+     * @return out
+     */
+    static double[] toPoint(final double latitude, final double longitude, final double[] out, final int offset) {
+        final double cosLatitude = cos(toRadians(latitude));
+        out[offset] = cosLatitude * cos(toRadians(longitude));
+        out[offset + 1] = cosLatitude * sin(toRadians(longitude));
+        out[offset + 2] = sin(toRadians(latitude));
+        return out;
+    }
 
-            Node kdn = kdt.findNearest(sx, sy);
-            System.out.println("The nearest neighbor is: " + kdn.waypointIndex);
-            //System.out.println("The distance is: " + WaypointUtils.distanza(sy, sx, kdn.x[1], kdn.x[0]));
-        }
-        */
+    /**
+     * @return the squared chord on the unit sphere matching the given distance on the ground.
+     */
+    static double toChordDistance(final double meters) {
+        final double chord = 2 * Math.sin(Math.min(meters / EARTH_RADIUS, Math.PI) / 2);
+        return chord * chord;
     }
 
+    /**
+     * @return the distance on the ground, in meters, matching the given squared chord.
+     */
+    static double toMeters(final double chordDistance) {
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(chordDistance) / 2));
+    }
 }
@@ -0,0 +1,131 @@
+package org.droidplanner.android.KDTree;
+
+import com.o3dr.services.android.lib.coordinate.LatLong;
+import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
+
+import java.util.List;
+
+/**
+ * Follows the drone along the itinerary and tells which waypoint it is closest to.
+ * The waypoints are flown in order, so each fix is first matched against the current and the next
+ * waypoint; the {@link LocationKDTree} is only searched when neither of them is provably the
+ * nearest, e.g. after the drone skipped part of the itinerary. Updates do not allocate.
+ * <p/>
+ * Not thread safe, meant to be fed from the GPS events on the main thread.
+ */
+public class WaypointTracker {
+
+    private static final int K = 3;
+
+    private final LocationKDTree tree;
+    private final double[] target = new double[K];
+
+    /**
+     * Waypoint positions on the unit sphere, in itinerary order.
+     */
+    private final double[] points;
+
+    /**
+     * Squared half chord from each waypoint to its closest other waypoint. A fix nearer than that
+     * to a waypoint cannot be nearer to any other one.
+     */
+    private final double[] clearance;
+
+    private int current;
+    private double currentDistance = Double.POSITIVE_INFINITY;
+
+    public WaypointTracker(List<Waypoint> waypoints) {
+        this(waypoints, new LocationKDTree(waypoints));
+    }
+
+    public WaypointTracker(List<Waypoint> waypoints, LocationKDTree tree) {
+        this.tree = tree;
+
+        final int count = waypoints.size();
+        points = new double[count * K];
+        clearance = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            final LatLong coordinate = waypoints.get(i).getCoordinate();
+            LocationKDTree.toPoint(coordinate.getLatitude(), coordinate.getLongitude(), points, i * K);
+            System.arraycopy(points, i * K, target, 0, K);
+
+            final int closest = tree.findNearest(target, i + 1);
+            clearance[i] = closest < 0 ? Double.POSITIVE_INFINITY : tree.distance(closest, target) / 4;
+        }
+    }
+
+    /**
+     * Matches a new position of the drone.
+     *
+     * @return the index (starting from 1) of the nearest waypoint, or -1 if there are none.
+     */
+    public int update(double latitude, double longitude) {
+        if (clearance.length == 0)
+            return -1;
+
+        LocationKDTree.toPoint(latitude, longitude, target, 0);
+
+        int best = current;
+        double bestDistance = distanceTo(current);
+        if (current + 1 < clearance.length) {
+            final double nextDistance = distanceTo(current + 1);
+            if (nextDistance < bestDistance) {
+                best = current + 1;
+                bestDistance = nextDistance;
+            }
+        }
+
+        if (bestDistance >= clearance[best]) {
+            //The drone is somewhere else along the itinerary.
+            final int slot = tree.findNearest(target, -1);
+            best = tree.indexAt(slot) - 1;
+            bestDistance = tree.distance(slot, target);
+        }
+
+        current = best;
+        currentDistance = bestDistance;
+        return best + 1;
+    }
+
+    /**
+     * @return the index (starting from 1) of the waypoint matched by the last update.
+     */
+    public int getCurrentWaypointIndex() {
+        return current + 1;
+    }
+
+    /**
+     * @return the distance in meters between the last position and its nearest waypoint.
+     */
+    public double getDistance() {
+        return LocationKDTree.toMeters(currentDistance);
+    }
+
+    /**
+     * Restarts the matching from the first waypoint.
+     */
+    public void reset() {
+        current = 0;
+        currentDistance = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Collects the waypoints within the given distance of a position.
+     *
+     * @param out receives the waypoint indexes (starting from 1), in no particular order.
+     * @return the number of indexes written to out, at most out.length.
+     */
+    public int withinRadius(double latitude, double longitude, double meters, int[] out) {
+        LocationKDTree.toPoint(latitude, longitude, target, 0);
+        return tree.withinRadius(target, LocationKDTree.toChordDistance(meters), out);
+    }
+
+    private double distanceTo(int index) {
+        final int offset = index * K;
+        final double dx = points[offset] - target[0];
+        final double dy = points[offset + 1] - target[1];
+        final double dz = points[offset + 2] - target[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
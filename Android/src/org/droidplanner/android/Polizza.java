@@ -1,9 +1,14 @@
 package org.droidplanner.android;
 
 
+import android.util.JsonReader;
+
+import org.droidplanner.android.network.ResponseDecoders;
 import org.droidplanner.android.utils.Utils;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public class Polizza {
 
     private String codice;
@@ -30,6 +35,45 @@ public class Polizza {
         dataContratto = polizzaJSON.optString("dataContratto");
     }
 
+    public Polizza(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "codPZ":
+                    codice = ResponseDecoders.nextString(reader);
+                    break;
+                case "codC":
+                    codiceCliente = ResponseDecoders.nextString(reader);
+                    break;
+                case "regione":
+                    regione = ResponseDecoders.nextString(reader);
+                    break;
+                case "provincia":
+                    provincia = ResponseDecoders.nextString(reader);
+                    break;
+                case "citta":
+                    citta = ResponseDecoders.nextString(reader);
+                    break;
+                case "via":
+                    via = ResponseDecoders.nextString(reader);
+                    break;
+                case "nCivico":
+                    numeroCivico = ResponseDecoders.nextString(reader);
+                    break;
+                case "cap":
+                    cap = ResponseDecoders.nextString(reader);
+                    break;
+                case "dataContratto":
+                    dataContratto = ResponseDecoders.nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
     public String getCodice() {
         return Utils.secureGet(codice);
     }
@@ -1,9 +1,14 @@
 package org.droidplanner.android;
 
 
+import android.util.JsonReader;
+
+import org.droidplanner.android.network.ResponseDecoders;
 import org.droidplanner.android.utils.Utils;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public class Sinistro {
 
     private String codice;
@@ -24,6 +29,36 @@ public class Sinistro {
         chiuso = !"0".equals(polizzaJSON.optString("Chiuso"));
     }
 
+    public Sinistro(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "CodS":
+                    codice = ResponseDecoders.nextString(reader);
+                    break;
+                case "CodR":
+                    codiceRischio = ResponseDecoders.nextString(reader);
+                    break;
+                case "CodPZ":
+                    codicePolizza = ResponseDecoders.nextString(reader);
+                    break;
+                case "DataSinistro":
+                    dataSinistro = ResponseDecoders.nextString(reader);
+                    break;
+                case "DataPerizia":
+                    dataPerizia = ResponseDecoders.nextString(reader);
+                    break;
+                case "Chiuso":
+                    chiuso = !"0".equals(ResponseDecoders.nextString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
     public String getCodice() {
         return Utils.secureGet(codice);
     }
@@ -2,14 +2,20 @@ package org.droidplanner.android;
 
 
 import android.location.Location;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.MalformedJsonException;
 
 import com.google.android.gms.maps.model.LatLng;
 import com.o3dr.services.android.lib.coordinate.LatLongAlt;
 import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 
+import org.droidplanner.android.network.ResponseDecoders;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,10 +23,15 @@ public class WaypointUtils {
 
     private static final double DEFAULT_ALTITUDE = 15;
 
+    /**
+     * Time spent at each waypoint, in seconds.
+     */
+    public static final double DEFAULT_DELAY = 2;
+
     public static Waypoint newWaypoint(double latitude, double longitude){
         Waypoint waypoint = new Waypoint();
         waypoint.setCoordinate(new LatLongAlt(latitude, longitude, DEFAULT_ALTITUDE));
-        waypoint.setDelay(2);
+        waypoint.setDelay(DEFAULT_DELAY);
         return waypoint;
     }
 
@@ -89,6 +100,17 @@ public class WaypointUtils {
         return jsonWaipoint;
     }
 
+    /**
+     * Streaming counterpart of {@link #waypointToJSON(Waypoint)}: writes the waypoint fields in the
+     * current json object.
+     */
+    public static void writeWaypoint(JsonWriter writer, Waypoint waypoint) throws IOException {
+        writer.name("Altezza").value(waypoint.getCoordinate().getAltitude());
+        writer.name("Latitudine").value(waypoint.getCoordinate().getLatitude());
+        writer.name("Longitudine").value(waypoint.getCoordinate().getLongitude());
+        writer.name("TimeOut").value(waypoint.getDelay());
+    }
+
     public static Waypoint jsonToWaypoint(JSONObject jsonWaipoint) throws JSONException {
         Waypoint waypoint = new Waypoint();
         waypoint.setCoordinate(
@@ -102,4 +124,60 @@ public class WaypointUtils {
         return waypoint;
     }
 
+    /**
+     * Reads a waypoint object. The timeout defaults to 0, the coordinates are required.
+     *
+     * @throws MalformedJsonException if the latitude, longitude or altitude is missing or null,
+     * e.g. in a truncated response, rather than placing the waypoint at 0.
+     */
+    public static Waypoint jsonToWaypoint(JsonReader reader) throws IOException {
+        double latitude = 0;
+        double longitude = 0;
+        double altitude = 0;
+        double delay = 0;
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+        boolean hasAltitude = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "Latitudine":
+                    latitude = ResponseDecoders.nextDouble(reader);
+                    hasLatitude = true;
+                    break;
+                case "Longitudine":
+                    longitude = ResponseDecoders.nextDouble(reader);
+                    hasLongitude = true;
+                    break;
+                case "Altezza":
+                    altitude = ResponseDecoders.nextDouble(reader);
+                    hasAltitude = true;
+                    break;
+                case "TimeOut":
+                    delay = ResponseDecoders.nextDouble(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!hasLatitude || !hasLongitude || !hasAltitude)
+            throw new MalformedJsonException("Incomplete waypoint: latitude " + hasLatitude + ", longitude "
+                    + hasLongitude + ", altitude " + hasAltitude);
+
+        Waypoint waypoint = new Waypoint();
+        waypoint.setCoordinate(new LatLongAlt(latitude, longitude, altitude));
+        waypoint.setDelay(delay);
+        return waypoint;
+    }
+
 }
@@ -39,6 +39,9 @@ import org.droidplanner.android.fragments.account.editor.tool.EditorToolsFragmen
 import org.droidplanner.android.fragments.account.editor.tool.EditorToolsFragment.EditorTools;
 import org.droidplanner.android.fragments.account.editor.tool.EditorToolsImpl;
 import org.droidplanner.android.network.ComunicazioneConServerRunnable;
+import org.droidplanner.android.network.HttpExecutor;
+import org.droidplanner.android.network.cache.ResponseCache;
+import org.droidplanner.android.network.request.Request;
 import org.droidplanner.android.proxy.mission.MissionProxy;
 import org.droidplanner.android.proxy.mission.MissionSelection;
 import org.droidplanner.android.proxy.mission.item.MissionItemProxy;
@@ -49,8 +52,12 @@ import org.droidplanner.android.utils.file.FileStream;
 import org.droidplanner.android.utils.file.IO.MissionReader;
 import org.droidplanner.android.utils.prefs.AutoPanMode;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * This implements the map editor activity. The map editor activity allows the
@@ -63,6 +70,16 @@ public class EditorActivity extends DrawerNavigationUI implements
 
     private static final double DEFAULT_SPEED = 5; //meters per second.
 
+    private static final int CREATE_PERCORSO_MAX_ATTEMPTS = 5;
+
+    /**
+     * Range of the percorso codes picked by the client on servers without
+     * newPercorsoConWayPoints.php.
+     */
+    private static final int LEGACY_CODICE_PERCORSO_RANGE = 1000000;
+
+    private static final SecureRandom random = new SecureRandom();
+
     /**
      * Used to retrieve the item detail window when the activity is destroyed,
      * and recreated.
@@ -78,6 +95,7 @@ public class EditorActivity extends DrawerNavigationUI implements
 
     static {
         eventFilter.addAction(MissionProxy.ACTION_MISSION_PROXY_UPDATE);
+        eventFilter.addAction(MissionProxy.ACTION_MISSION_PATH_UPDATE);
         eventFilter.addAction(AttributeEvent.MISSION_RECEIVED);
         eventFilter.addAction(AttributeEvent.PARAMETERS_REFRESH_COMPLETED);
     }
@@ -89,6 +107,7 @@ public class EditorActivity extends DrawerNavigationUI implements
             switch (action) {
                 case AttributeEvent.PARAMETERS_REFRESH_COMPLETED:
                 case MissionProxy.ACTION_MISSION_PROXY_UPDATE:
+                case MissionProxy.ACTION_MISSION_PATH_UPDATE:
                     updateMissionLength();
                     break;
 
@@ -206,16 +225,68 @@ public class EditorActivity extends DrawerNavigationUI implements
         if(codicePolizza == null)
             return;
         ArrayList<LatLng> vertices = planningMapFragment.getWrapperPercorso().getVertices();
-        final List<Waypoint> waypoints = Compilatore.generaItinerario(vertices);
-        new Thread(new ComunicazioneConServerRunnable(
-                ComunicazioneConServerRunnable.createPercorso(codicePolizza),
+        final Compilatore.Itinerario itinerario = Compilatore.generaItinerario(vertices, new Compilatore.Parametri());
+        final List<Waypoint> waypoints = itinerario.getWaypoints();
+        if (waypoints.isEmpty())
+            return;
+
+        Toast.makeText(this, getString(R.string.itinerario_generato, waypoints.size(), itinerario.getLunghezza(),
+                (int) Math.ceil(itinerario.getDurata() / 60)), Toast.LENGTH_LONG).show();
+        final Request createPercorsoReq;
+        try {
+            //The uuid is reused by every retry of this request, so the server creates the percorso once.
+            createPercorsoReq = ComunicazioneConServerRunnable.createPercorsoConWaypoints(codicePolizza,
+                    UUID.randomUUID().toString(), waypoints);
+        } catch (IOException e) {
+            Log.e("Creazione percorso", "Errore", e);
+            return;
+        }
+
+        final Context appContext = getApplicationContext();
+        HttpExecutor.getInstance().executeWithRetry(appContext,
+                createPercorsoReq,
                 new ComunicazioneConServerRunnable.RequestListener() {
                     @Override
                     public void onSuccess(String response) {
                         Log.i("Creazione percorso", "Successo");
-                        Utils.savePreferencesData(EditorActivity.this, Utils.PREF_PERCORSO, response.trim());
-                        new Thread(new ComunicazioneConServerRunnable(
-                                ComunicazioneConServerRunnable.createWayPoints(response, waypoints),
+                        ResponseCache.getInstance(appContext).invalidate(
+                                ComunicazioneConServerRunnable.selectPercorsiByCodicePolizzaRequest(codicePolizza).getRequestUrl());
+                        Utils.savePreferencesData(appContext, Utils.PREF_PERCORSO, response.trim());
+                    }
+
+                    @Override
+                    public void onError(int responseCode, String response) {
+                        if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                            Log.i("Creazione percorso", "newPercorsoConWayPoints.php assente, uso newPercorso.php");
+                            createPercorsoLegacy(appContext, codicePolizza, waypoints);
+                            return;
+                        }
+                        Log.i("Creazione percorso", "Errore: " + response);
+                    }
+                },
+                CREATE_PERCORSO_MAX_ATTEMPTS
+        );
+        missionProxy.mAddWaypoints(waypoints);
+    }
+
+    /**
+     * Creates the percorso, then its waypoints, through the endpoints of the older servers. Not
+     * retried: those requests are not idempotent.
+     */
+    private static void createPercorsoLegacy(final Context appContext, final String codicePolizza,
+                                             final List<Waypoint> waypoints) {
+        final String codicePercorso = String.valueOf(random.nextInt(LEGACY_CODICE_PERCORSO_RANGE));
+        HttpExecutor.getInstance().execute(appContext,
+                ComunicazioneConServerRunnable.createPercorso(codicePolizza, codicePercorso),
+                new ComunicazioneConServerRunnable.RequestListener() {
+                    @Override
+                    public void onSuccess(String response) {
+                        Log.i("Creazione percorso", "Successo");
+                        ResponseCache.getInstance(appContext).invalidate(
+                                ComunicazioneConServerRunnable.selectPercorsiByCodicePolizzaRequest(codicePolizza).getRequestUrl());
+                        Utils.savePreferencesData(appContext, Utils.PREF_PERCORSO, response.trim());
+                        HttpExecutor.getInstance().execute(appContext,
+                                ComunicazioneConServerRunnable.createWayPoints(response.trim(), waypoints),
                                 new ComunicazioneConServerRunnable.RequestListener() {
                                     @Override
                                     public void onSuccess(String response) {
@@ -226,16 +297,14 @@ public class EditorActivity extends DrawerNavigationUI implements
                                     public void onError(int responseCode, String response) {
                                         Log.i("Creazione waypoints", "Errore: " + response);
                                     }
-                                })).start();
+                                });
                     }
 
                     @Override
                     public void onError(int responseCode, String response) {
                         Log.i("Creazione percorso", "Errore: " + response);
                     }
-                }
-        )).start();
-        missionProxy.mAddWaypoints(waypoints);
+                });
     }
 
     @Override
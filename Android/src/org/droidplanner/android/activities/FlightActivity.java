@@ -1,21 +1,23 @@
 package org.droidplanner.android.activities;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Environment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.util.Log;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.o3dr.android.client.Drone;
 import com.o3dr.android.client.apis.solo.SoloCameraApi;
+import com.o3dr.services.android.lib.drone.attribute.AttributeType;
+import com.o3dr.services.android.lib.drone.property.Altitude;
+import com.o3dr.services.android.lib.drone.property.Gps;
 import com.sothree.slidinguppanel.SlidingUpPanelLayout;
 
 import org.droidplanner.android.R;
+import org.droidplanner.android.capture.PhotoCapturePipeline;
 import org.droidplanner.android.dialogs.DialogMaterialFragment;
 import org.droidplanner.android.fragments.DroneMap;
 import org.droidplanner.android.fragments.FlightDataFragment;
@@ -25,8 +27,7 @@ import org.droidplanner.android.fragments.widget.video.FullWidgetSoloLinkVideo;
 import org.droidplanner.android.utils.Utils;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.Locale;
 
 public class FlightActivity extends DrawerNavigationUI implements SlidingUpPanelLayout.PanelSlideListener, DroneMap.CloseToWaypointListener {
 
@@ -37,6 +38,8 @@ public class FlightActivity extends DrawerNavigationUI implements SlidingUpPanel
 
     private int lastSaved = -1;
 
+    private final PhotoCapturePipeline photoCapture = new PhotoCapturePipeline();
+
     @Override
     public void onDrawerClosed() {
         super.onDrawerClosed();
@@ -106,6 +109,12 @@ public class FlightActivity extends DrawerNavigationUI implements SlidingUpPanel
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        photoCapture.release();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -116,6 +125,9 @@ public class FlightActivity extends DrawerNavigationUI implements SlidingUpPanel
     public void onStart(){
         super.onStart();
 
+        photoCapture.setJpegQuality(mAppPrefs.getPhotoJpegQuality());
+        photoCapture.setMaxWidth(mAppPrefs.getPhotoMaxWidth());
+
         final Context context = getApplicationContext();
         //Show the changelog if this is the first time the app is launched since update/install
         if(Utils.getAppVersionCode(context) > mAppPrefs.getSavedAppVersionCode()) {
@@ -202,54 +214,39 @@ public class FlightActivity extends DrawerNavigationUI implements SlidingUpPanel
 
     @Override
     public void onCloseTo(Drone drone, int waypointIndex) {
-        //Utils.log("CLOSE: TO: " + waypointIndex);
-        //Log.i("CLOSE", "TO: " + waypointIndex);
         if(waypointIndex <= lastSaved)
             return;
-        //Utils.log("CLOSE: SAVING: " + waypointIndex);
-        //Log.i("CLOSE", "SAVING: " + waypointIndex);
-        lastSaved = waypointIndex;
 
         FullWidgetSoloLinkVideo fullWidgetSoloLinkVideo = (FullWidgetSoloLinkVideo)getSupportFragmentManager().findFragmentById(R.id.widget_view);
         if(fullWidgetSoloLinkVideo == null || !fullWidgetSoloLinkVideo.isAdded() || fullWidgetSoloLinkVideo.getView() == null)
             return;
 
+        String codicePercorso = Utils.loadPreferencesData(this, Utils.PREF_PERCORSO);
+        String codiceSinistro = Utils.loadPreferencesData(this, Utils.PREF_SINISTRO);
+        if(codiceSinistro == null)
+            codiceSinistro = "prima_perizia";
+
+        String root = Environment.getExternalStorageDirectory().toString();
+        File photo = new File(root + "/drone/" + codicePercorso + "/" + codiceSinistro + "/" + waypointIndex + ".jpeg");
+
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        final Gps droneGps = drone.getAttribute(AttributeType.GPS);
+        if (droneGps != null && droneGps.isValid()) {
+            latitude = droneGps.getPosition().getLatitude();
+            longitude = droneGps.getPosition().getLongitude();
+        }
+        String description = "percorso=" + codicePercorso + ";sinistro=" + codiceSinistro + ";waypoint=" + waypointIndex;
+        final Altitude altitude = drone.getAttribute(AttributeType.ALTITUDE);
+        if (altitude != null)
+            description += ";altitude=" + String.format(Locale.US, "%.1f", altitude.getAltitude());
+
         TextureView textureView = (TextureView)fullWidgetSoloLinkVideo.getView().findViewById(R.id.sololink_video_view);
-        saveBitmapAsynch(drone, textureView.getBitmap(), waypointIndex);
-    }
-
-    public void saveBitmapAsynch(final Drone drone, final Bitmap bitmap, final int wayPointIndex){
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                String codicePercorso = Utils.loadPreferencesData(FlightActivity.this, Utils.PREF_PERCORSO);
-                String codiceSinistro = Utils.loadPreferencesData(FlightActivity.this, Utils.PREF_SINISTRO);
-                String root = Environment.getExternalStorageDirectory().toString();
-                File myDir = new File(root + "/drone/"+codicePercorso+"/"+(codiceSinistro == null ? "prima_perizia" : codiceSinistro));
-                if(!myDir.isDirectory())
-                    myDir.mkdirs();
-
-                //Utils.log("PATH: " + myDir.getAbsolutePath() + "/" + wayPointIndex+".jpeg");
-                //Log.i("PATH", myDir.getAbsolutePath() + "/" + wayPointIndex+".jpeg");
-                FileOutputStream out = null;
-                try {
-                    out = new FileOutputStream(myDir+"/"+wayPointIndex+".jpeg");
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    try {
-                        if (out != null){
-                            out.flush();
-                            out.close();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                SoloCameraApi.getApi(drone).takePhoto(null);
-            }
-        }).start();
+        if(!photoCapture.capture(textureView, photo, new PhotoCapturePipeline.Metadata(latitude, longitude, description)))
+            return; //Tried again on the next position update.
+
+        lastSaved = waypointIndex;
+        SoloCameraApi.getApi(drone).takePhoto(null);
     }
 
 }
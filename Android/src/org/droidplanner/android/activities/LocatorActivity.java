@@ -26,11 +26,15 @@ import org.droidplanner.android.fragments.LocatorListFragment;
 import org.droidplanner.android.fragments.LocatorMapFragment;
 import org.droidplanner.android.utils.file.IO.TLogReader;
 import org.droidplanner.android.utils.file.IO.TLogReader.Event;
+import org.droidplanner.android.utils.file.IO.TLogScanner;
 import org.droidplanner.android.utils.prefs.AutoPanMode;
 import org.droidplanner.android.utils.unit.providers.length.LengthUnitProvider;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -38,14 +42,26 @@ import java.util.List;
  * a lost drone using last known GPS positions from the tlogs.
  */
 public class LocatorActivity extends DrawerNavigationUI implements LocatorListFragment.OnLocatorListListener,
-        LocationListener {
+        LocationListener, TLogScanner.Listener {
 
     private static final String STATE_LAST_SELECTED_POSITION = "STATE_LAST_SELECTED_POSITION";
+    private static final String STATE_SCANNING_TLOGS = "STATE_SCANNING_TLOGS";
+    private static final String STATE_OPENING_TLOG = "STATE_OPENING_TLOG";
     private static final int TLOG_PICKER_REQUEST_CODE = 101;
+    private static final int TLOG_DIRECTORY_PICKER_REQUEST_CODE = 102;
 
-    private final static List<TLogReader.Event> lastPositions = new LinkedList<>();
+    private static final Comparator<TLogReader.Event> BY_TIMESTAMP = new Comparator<TLogReader.Event>() {
+        @Override
+        public int compare(TLogReader.Event lhs, TLogReader.Event rhs) {
+            return lhs.getTimestamp() < rhs.getTimestamp() ? -1 : (lhs.getTimestamp() == rhs.getTimestamp() ? 0 : 1);
+        }
+    };
+
+    private final static List<TLogReader.Event> lastPositions = new ArrayList<>();
 
     private OpenTLogFileAsyncTask tlogOpener;
+    private String openingTLogPath;
+    private TLogScanner tlogScanner;
 
     /*
     View widgets.
@@ -115,13 +131,29 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
         FloatingActionButton mGoToDroneLocation = (FloatingActionButton) findViewById(R.id.drone_location_button);
         mGoToDroneLocation.setVisibility(View.GONE);
 
-        // clear prev state if this is a fresh start
-        if (savedInstanceState == null) {
-            // fresh start
+        // clear prev state if this is a fresh start, or if the previous instance was destroyed
+        // before it finished scanning, since the scan was cancelled with it.
+        if (savedInstanceState == null || savedInstanceState.getBoolean(STATE_SCANNING_TLOGS)) {
             lastPositions.clear();
+
+            //Search the last directory again, its unchanged logs are cached.
+            final String tlogDirectory = mAppPrefs.getLocatorTLogDirectory();
+            if (tlogDirectory != null)
+                scanTLogDirectory(new File(tlogDirectory));
+        } else {
+            //The file being opened when the previous instance was destroyed.
+            final String tlogPath = savedInstanceState.getString(STATE_OPENING_TLOG);
+            if (tlogPath != null)
+                openTLogFile(tlogPath);
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        stopLoading();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -145,6 +177,8 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
 
         final int lastSelectedPosition = lastPositions.indexOf(selectedMsg);
         outState.putInt(STATE_LAST_SELECTED_POSITION, lastSelectedPosition);
+        outState.putBoolean(STATE_SCANNING_TLOGS, tlogScanner != null);
+        outState.putString(STATE_OPENING_TLOG, openingTLogPath);
     }
 
     @Override
@@ -176,6 +210,11 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
                 TLogPicker.startTLogPicker(this, TLOG_PICKER_REQUEST_CODE);
                 return true;
 
+            case R.id.menu_scan_tlog_directory:
+                //Any log of the directory can be picked.
+                TLogPicker.startTLogPicker(this, TLOG_DIRECTORY_PICKER_REQUEST_CODE);
+                return true;
+
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -183,7 +222,8 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent returnIntent) {
-        if (requestCode != TLOG_PICKER_REQUEST_CODE || resultCode != RESULT_OK) {
+        if ((requestCode != TLOG_PICKER_REQUEST_CODE && requestCode != TLOG_DIRECTORY_PICKER_REQUEST_CODE)
+                || resultCode != RESULT_OK) {
             super.onActivityResult(requestCode, resultCode, returnIntent);
             return;
         }
@@ -191,13 +231,65 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
         //Get the file's absolute path from the incoming intent
         final String tlogAbsolutePath = returnIntent.getStringExtra(ServiceDataContract.EXTRA_TLOG_ABSOLUTE_PATH);
 
-        if (tlogOpener != null)
-            tlogOpener.cancel(true);
+        if (requestCode == TLOG_DIRECTORY_PICKER_REQUEST_CODE) {
+            final File tlogDirectory = new File(tlogAbsolutePath).getParentFile();
+            mAppPrefs.setLocatorTLogDirectory(tlogDirectory.getAbsolutePath());
+            loadLastPositions(Collections.<TLogReader.Event>emptyList());
+            scanTLogDirectory(tlogDirectory);
+            return;
+        }
+
+        openTLogFile(tlogAbsolutePath);
+    }
 
+    private void openTLogFile(String tlogAbsolutePath) {
+        stopLoading();
+        openingTLogPath = tlogAbsolutePath;
         tlogOpener = new OpenTLogFileAsyncTask(this);
         tlogOpener.execute(tlogAbsolutePath);
     }
 
+    private void stopLoading() {
+        if (tlogOpener != null) {
+            tlogOpener.cancel(true);
+            tlogOpener = null;
+            openingTLogPath = null;
+        }
+
+        if (tlogScanner != null) {
+            tlogScanner.cancel();
+            tlogScanner = null;
+        }
+    }
+
+    /**
+     * Collects the last positions of every log in the directory, as each file gets scanned.
+     */
+    private void scanTLogDirectory(File tlogDirectory) {
+        stopLoading();
+        tlogScanner = new TLogScanner(getApplicationContext(), this);
+        tlogScanner.scan(tlogDirectory);
+    }
+
+    @Override
+    public void onTLogScanned(File tlog, List<TLogReader.Event> positions) {
+        if (positions.isEmpty())
+            return;
+
+        lastPositions.addAll(positions);
+        Collections.sort(lastPositions, BY_TIMESTAMP);
+
+        setSelectedMsg(null);
+        locatorListFragment.notifyDataSetChanged();
+        updateInfo();
+    }
+
+    @Override
+    public void onTLogScanCompleted() {
+        tlogScanner = null;
+        locatorMapFragment.zoomToFit();
+    }
+
     /*
     Copy all messages with non-zero coords -> lastPositions
      */
@@ -386,6 +478,8 @@ public class LocatorActivity extends DrawerNavigationUI implements LocatorListFr
             if (activity == null)
                 return;
 
+            activity.tlogOpener = null;
+            activity.openingTLogPath = null;
             activity.loadLastPositions(events);
             activity.locatorMapFragment.zoomToFit();
         }
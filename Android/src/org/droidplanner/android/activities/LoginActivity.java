@@ -12,6 +12,7 @@ import android.widget.ProgressBar;
 
 import org.droidplanner.android.R;
 import org.droidplanner.android.network.ComunicazioneConServerRunnable;
+import org.droidplanner.android.network.HttpExecutor;
 import org.droidplanner.android.utils.Utils;
 
 import java.io.UnsupportedEncodingException;
@@ -34,6 +35,12 @@ public class LoginActivity extends AppCompatActivity {
         progressBar = (ProgressBar) findViewById(R.id.progress_bar);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        HttpExecutor.getInstance().cancelAll(this);
+    }
+
     public void login(View view){
         try {
             String encryptedPassword = encrypt(password.getText().toString());
@@ -52,7 +59,7 @@ public class LoginActivity extends AppCompatActivity {
             //Utils.log("urlencoded password: '" + urlEncodedPassword + "'");
 
             progressBar.setVisibility(View.VISIBLE);
-            new Thread(new ComunicazioneConServerRunnable(
+            HttpExecutor.getInstance().execute(LoginActivity.this,
                     ComunicazioneConServerRunnable.login(username.getText().toString(), encryptedPassword),
                     new ComunicazioneConServerRunnable.RequestListener() {
                         @Override
@@ -76,7 +83,7 @@ public class LoginActivity extends AppCompatActivity {
                             builder.create().show();
                         }
                     })
-            ).start();
+            );
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
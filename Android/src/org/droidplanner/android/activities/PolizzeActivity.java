@@ -18,25 +18,33 @@ import android.widget.TextView;
 import org.droidplanner.android.Sinistro;
 import org.droidplanner.android.fragments.SearchToolFragment;
 import org.droidplanner.android.network.ComunicazioneConServerRunnable;
+import org.droidplanner.android.network.HttpExecutor;
+import org.droidplanner.android.network.ResponseDecoders;
+import org.droidplanner.android.network.StreamingJsonRunnable;
+import org.droidplanner.android.network.cache.ResponseCache;
 import org.droidplanner.android.Polizza;
 import org.droidplanner.android.R;
 import org.droidplanner.android.network.request.Request;
 import org.droidplanner.android.utils.Utils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFragment.SearchToolListener{
 
+    /**
+     * Polizze, from the top of the list, whose percorsi and sinistri are prefetched.
+     */
+    private static final int MAX_PREFETCHED_POLIZZE = 10;
+
     TextView polizzeTotTextView;
     PolizzeAdapter polizzeAdapter;
     ProgressBar progressBar;
 
+    private ComunicazioneConServerRunnable polizzeSearch;
 
     private FragmentManager fragmentManager;
 
@@ -84,43 +92,88 @@ public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFra
 
     @Override
     public void onSearch(String search) {
+        //A slower previous search must not fill the list again, even if this one is empty.
+        if(polizzeSearch != null) {
+            polizzeSearch.cancel();
+            polizzeSearch = null;
+        }
+        HttpExecutor.getInstance().cancelPrefetches(this);
+
         polizzeAdapter.polizze.clear();
         polizzeAdapter.notifyDataSetChanged();
 
-        if(TextUtils.isEmpty(search))
+        if(TextUtils.isEmpty(search)) {
+            progressBar.setVisibility(View.GONE);
             return;
+        }
 
         Request cercaPolizzeReq = ComunicazioneConServerRunnable.selectPolizzeByCodiceClienteRequest(search);
-        new Thread(new ComunicazioneConServerRunnable(
+        polizzeSearch = HttpExecutor.getInstance().executeStreaming(PolizzeActivity.this,
                 cercaPolizzeReq,
-                new ComunicazioneConServerRunnable.RequestListener() {
+                ResponseDecoders.ARRAY_POLIZZE,
+                ResponseDecoders.POLIZZA,
+                new StreamingJsonRunnable.StreamListener<Polizza>() {
                     @Override
-                    public void onSuccess(String response) {
-                        try {
-                            Log.d("POLIZZE", response);
-                            JSONObject responseJSON = new JSONObject(response);
-                            JSONArray polizzeJSON = responseJSON.getJSONArray("polizze");
-                            for(int i=0; i<polizzeJSON.length(); i++){
-                                Polizza polizza = new Polizza(polizzeJSON.optJSONObject(i));
-                                polizzeAdapter.polizze.add(polizza);
-                            }
-                            polizzeAdapter.notifyDataSetChanged();
-                            polizzeTotTextView.setText(getResources().getQuantityString(R.plurals.polizze_tot_string, polizzeJSON.length(), polizzeJSON.length()));
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
+                    public void onItems(List<Polizza> polizze) {
+                        polizzeAdapter.polizze.addAll(polizze);
+                        polizzeAdapter.notifyDataSetChanged();
+                        updatePolizzeTot(polizzeAdapter.polizze.size());
+                    }
+
+                    @Override
+                    public void onComplete(int total) {
+                        Log.d("POLIZZE", "Received " + total + " polizze");
+                        updatePolizzeTot(total);
                         progressBar.setVisibility(View.GONE);
+                        prefetchPolizze(new ArrayList<>(polizzeAdapter.polizze));
                     }
 
                     @Override
                     public void onError(int responseCode, String response) {
                         progressBar.setVisibility(View.GONE);
                     }
-                }
-        )).start();
+                },
+                ResponseCache.getInstance(getApplicationContext()), ResponseCache.DEFAULT_TTL
+        );
         progressBar.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * Warms the cache with the percorsi and sinistri of the listed polizze, so opening one of them
+     * is served locally, including when the signal is lost in the field. Only the first
+     * {@link #MAX_PREFETCHED_POLIZZE} are prefetched.
+     */
+    private void prefetchPolizze(List<Polizza> polizze){
+        final ResponseCache cache = ResponseCache.getInstance(getApplicationContext());
+        final HttpExecutor executor = HttpExecutor.getInstance();
+        for(Polizza polizza : polizze.subList(0, Math.min(polizze.size(), MAX_PREFETCHED_POLIZZE))){
+            executor.executePrefetch(PolizzeActivity.this,
+                    ComunicazioneConServerRunnable.selectPercorsiByCodicePolizzaRequest(polizza.getCodice()),
+                    ResponseDecoders.ARRAY_PERCORSI, ResponseDecoders.CODICE_PERCORSO,
+                    new PrefetchListener<String>(), cache, ResponseCache.DEFAULT_TTL);
+            executor.executePrefetch(PolizzeActivity.this,
+                    ComunicazioneConServerRunnable.selectSinistriByCodicePolizzaRequest(polizza.getCodice()),
+                    ResponseDecoders.ARRAY_SINISTRI, ResponseDecoders.SINISTRO,
+                    new PrefetchListener<Sinistro>(), cache, ResponseCache.DEFAULT_TTL);
+        }
+    }
+
+    private static class PrefetchListener<T> implements StreamingJsonRunnable.StreamListener<T>{
+
+        @Override
+        public void onItems(List<T> items) {}
+
+        @Override
+        public void onComplete(int total) {}
+
+        @Override
+        public void onError(int responseCode, String response) {}
+    }
+
+    private void updatePolizzeTot(int count){
+        polizzeTotTextView.setText(getResources().getQuantityString(R.plurals.polizze_tot_string, count, count));
+    }
+
 
     private class PolizzeAdapter extends BaseAdapter{
 
@@ -189,28 +242,30 @@ public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFra
 
         @Override
         public void onClick(View v) {
+            //The user now waits on the same endpoints.
+            HttpExecutor.getInstance().cancelPrefetches(PolizzeActivity.this);
+
             Request cercaPercorsiReq = ComunicazioneConServerRunnable.selectPercorsiByCodicePolizzaRequest(polizza.getCodice());
-            new Thread(new ComunicazioneConServerRunnable(
+            HttpExecutor.getInstance().executeStreaming(PolizzeActivity.this,
                     cercaPercorsiReq,
-                    new ComunicazioneConServerRunnable.RequestListener() {
+                    ResponseDecoders.ARRAY_PERCORSI,
+                    ResponseDecoders.CODICE_PERCORSO,
+                    new StreamingJsonRunnable.StreamListener<String>() {
                         @Override
-                        public void onSuccess(String response) {
-                            try {
-                                Log.d("PERCORSI", response);
-                                JSONObject responseJSON = new JSONObject(response);
-                                JSONArray percorsiJSON = responseJSON.optJSONArray("percorsi");
-                                if(percorsiJSON.length() == 0) {
-                                    Utils.savePreferencesData(PolizzeActivity.this, Utils.PREF_SINISTRO, null);
-                                    Intent intent = new Intent(PolizzeActivity.this, EditorActivity.class);
-                                    intent.putExtra(EditorActivity.EXTRA_CODICE_POLIZZA, polizza.getCodice());
-                                    intent.putExtra(EditorActivity.EXTRA_FIRST, true);
-                                    startActivity(intent);
-                                    progressBar.setVisibility(View.GONE);
-                                } else {
-                                    cercaSinistri(polizza.getCodice());
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
+                        public void onItems(List<String> percorsi) {
+                        }
+
+                        @Override
+                        public void onComplete(int total) {
+                            if(total == 0) {
+                                Utils.savePreferencesData(PolizzeActivity.this, Utils.PREF_SINISTRO, null);
+                                Intent intent = new Intent(PolizzeActivity.this, EditorActivity.class);
+                                intent.putExtra(EditorActivity.EXTRA_CODICE_POLIZZA, polizza.getCodice());
+                                intent.putExtra(EditorActivity.EXTRA_FIRST, true);
+                                startActivity(intent);
+                                progressBar.setVisibility(View.GONE);
+                            } else {
+                                cercaSinistri(polizza.getCodice());
                             }
                         }
 
@@ -218,8 +273,9 @@ public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFra
                         public void onError(int responseCode, String response) {
                             progressBar.setVisibility(View.GONE);
                         }
-                    }
-            )).start();
+                    },
+                    ResponseCache.getInstance(getApplicationContext()), ResponseCache.DEFAULT_TTL
+            );
             progressBar.setVisibility(View.VISIBLE);
         }
 
@@ -228,22 +284,22 @@ public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFra
             removeSinistri((LinearLayout)clickedView.findViewById(R.id.contenitore_sinistri));
 
             Request cercaSinistriReq = ComunicazioneConServerRunnable.selectSinistriByCodicePolizzaRequest(codicePolizza);
-            new Thread(new ComunicazioneConServerRunnable(
+            HttpExecutor.getInstance().executeStreaming(PolizzeActivity.this,
                     cercaSinistriReq,
-                    new ComunicazioneConServerRunnable.RequestListener() {
+                    ResponseDecoders.ARRAY_SINISTRI,
+                    ResponseDecoders.SINISTRO,
+                    new StreamingJsonRunnable.StreamListener<Sinistro>() {
                         @Override
-                        public void onSuccess(String response) {
-                            try {
-                                Log.d("SINISTRI", response);
-                                JSONObject responseJSON = new JSONObject(response);
-                                JSONArray sinistriJSON = responseJSON.getJSONArray("sinistri");
-                                for(int i=0; i<sinistriJSON.length(); i++){
-                                    Sinistro sinistro = new Sinistro(sinistriJSON.optJSONObject(i));
-                                    addViewSinistro((LinearLayout)clickedView.findViewById(R.id.contenitore_sinistri), sinistro);
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
+                        public void onItems(List<Sinistro> sinistri) {
+                            LinearLayout contenitoreSinistri = (LinearLayout)clickedView.findViewById(R.id.contenitore_sinistri);
+                            for(Sinistro sinistro : sinistri){
+                                addViewSinistro(contenitoreSinistri, sinistro);
                             }
+                        }
+
+                        @Override
+                        public void onComplete(int total) {
+                            Log.d("SINISTRI", "Received " + total + " sinistri");
                             progressBar.setVisibility(View.GONE);
                         }
 
@@ -251,8 +307,9 @@ public class PolizzeActivity extends DrawerNavigationUI implements SearchToolFra
                         public void onError(int responseCode, String response) {
                             progressBar.setVisibility(View.GONE);
                         }
-                    }
-            )).start();
+                    },
+                    ResponseCache.getInstance(getApplicationContext()), ResponseCache.DEFAULT_TTL
+            );
             progressBar.setVisibility(View.VISIBLE);
         }
 
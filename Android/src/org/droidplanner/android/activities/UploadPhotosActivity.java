@@ -1,8 +1,11 @@
 package org.droidplanner.android.activities;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
-import android.os.Environment;
-import android.util.Log;
+import android.support.v4.content.LocalBroadcastManager;
 import android.view.Menu;
 import android.view.View;
 import android.widget.ArrayAdapter;
@@ -10,15 +13,32 @@ import android.widget.ListView;
 import android.widget.ProgressBar;
 
 import org.droidplanner.android.R;
-import org.droidplanner.android.network.ComunicazioneConServerRunnable;
-
-import java.io.File;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import org.droidplanner.android.network.upload.PhotoUploadService;
 
 public class UploadPhotosActivity extends DrawerNavigationUI{
 
+    private static final IntentFilter uploadFilter = new IntentFilter();
+
+    static {
+        uploadFilter.addAction(PhotoUploadService.ACTION_PHOTO_UPLOADED);
+        uploadFilter.addAction(PhotoUploadService.ACTION_UPLOAD_STATUS);
+    }
+
+    private final BroadcastReceiver uploadReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            switch (intent.getAction()) {
+                case PhotoUploadService.ACTION_PHOTO_UPLOADED:
+                    adapter.add(intent.getStringExtra(PhotoUploadService.EXTRA_PATH));
+                    break;
+
+                case PhotoUploadService.ACTION_UPLOAD_STATUS:
+                    final int remaining = intent.getIntExtra(PhotoUploadService.EXTRA_REMAINING, 0);
+                    progressBar.setVisibility(remaining > 0 ? View.VISIBLE : View.GONE);
+                    break;
+            }
+        }
+    };
 
     private ProgressBar progressBar;
     private ListView uploadedListView;
@@ -39,80 +59,16 @@ public class UploadPhotosActivity extends DrawerNavigationUI{
         adapter = new ArrayAdapter<>(this, R.layout.photo_file_layout, R.id.path);
         uploadedListView.setAdapter(adapter);
 
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                String root = Environment.getExternalStorageDirectory().toString();
-                ExecutorService executor = Executors.newFixedThreadPool(3);
-                startUpload(new File(root+"/drone"), executor);
-                executor.shutdown();
-                try {
-                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
-                    progressBar.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            progressBar.setVisibility(View.GONE);
-                        }
-                    });
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }).start();
-    }
-
-    private void startUpload(File file, ExecutorService executor) {
-        if(!file.exists())
-            return;
+        LocalBroadcastManager.getInstance(getApplicationContext()).registerReceiver(uploadReceiver, uploadFilter);
 
-        if(file.isDirectory()){
-            Log.i("NAVIGATE", file.getName());
-            File[] childrenFiles = file.listFiles();
-            for(File childFile : childrenFiles){
-                startUpload(childFile, executor);
-            }
-        } else {
-            uploadFile(file, executor);
-        }
+        //The service keeps running after this screen is closed, until every photo is uploaded.
+        PhotoUploadService.start(getApplicationContext());
     }
 
-    private void uploadFile(final File file, ExecutorService executor) {
-        String tmp = file.getName();
-        final String waypointIndex = tmp.substring(0, tmp.indexOf('.'));
-
-        File parent = file.getParentFile();
-        final String codiceSinistro = parent.getName();
-
-        parent = parent.getParentFile();
-        final String codicePercorso = parent.getName();
-
-
-        executor.execute(new ComunicazioneConServerRunnable(
-                ComunicazioneConServerRunnable.uploadPhotoRequest(file, codiceSinistro, codicePercorso, Integer.parseInt(waypointIndex)),
-                new ComunicazioneConServerRunnable.RequestListener() {
-                    @Override
-                    public void onSuccess(String response) {
-                        adapter.add(file.getPath());
-                        Log.i("UPLOAD SUCCESS", "sinistro: " + codiceSinistro + "; percorso: " + codicePercorso + "; waypoint: " + waypointIndex + ". " + response);
-                        File parent = file.getParentFile();
-                        File grandParent = parent.getParentFile();
-
-                        if(!file.delete() || parent.listFiles().length != 0)
-                            return;
-
-                        if(!parent.delete() || grandParent.listFiles().length != 0)
-                            return;
-
-                        grandParent.delete();
-                    }
-
-                    @Override
-                    public void onError(int responseCode, String response) {
-                        Log.i("UPLOAD ERROR", "sinistro: " + codiceSinistro + "; percorso: " + codicePercorso + "; waypoint: " + waypointIndex + ". " + response);
-                    }
-                }
-        ));
-
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        LocalBroadcastManager.getInstance(getApplicationContext()).unregisterReceiver(uploadReceiver);
     }
 
     @Override
@@ -36,6 +36,7 @@ import org.droidplanner.android.dialogs.SupportYesNoDialog;
 import org.droidplanner.android.dialogs.SupportYesNoWithPrefsDialog;
 import org.droidplanner.android.fragments.SettingsFragment;
 import org.droidplanner.android.fragments.actionbar.VehicleStatusFragment;
+import org.droidplanner.android.network.HttpExecutor;
 import org.droidplanner.android.proxy.mission.MissionProxy;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
@@ -194,6 +195,9 @@ public abstract class SuperUI extends AppCompatActivity implements DroidPlannerA
         super.onDestroy();
         unbindService(this);
         lbm = null;
+
+        //Drop the server responses nobody is left to display.
+        HttpExecutor.getInstance().cancelAll(this);
     }
 
     protected LocalBroadcastManager getBroadcastManager() {
@@ -0,0 +1,266 @@
+package org.droidplanner.android.capture;
+
+import android.graphics.Bitmap;
+import android.media.ExifInterface;
+import android.view.TextureView;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Saves the frames of the video feed as JPEG photos, e.g. when the drone reaches a waypoint.
+ * <p/>
+ * A frame is copied from the {@link TextureView} into a pooled bitmap, which is the only work done
+ * on the calling thread, then compressed and tagged with its EXIF metadata by a single background
+ * encoder. At most {@link #MAX_PENDING_FRAMES} frames are held at any time: when the encoder falls
+ * behind, new captures are refused rather than piling up in memory.
+ */
+public class PhotoCapturePipeline {
+
+    public static final int DEFAULT_JPEG_QUALITY = 90;
+
+    /**
+     * Frames wider than this are scaled down when grabbed. 0 keeps the view resolution.
+     */
+    public static final int DEFAULT_MAX_WIDTH = 1920; //px
+
+    /**
+     * Frames being encoded or waiting for the encoder.
+     */
+    private static final int MAX_PENDING_FRAMES = 3;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final ArrayBlockingQueue<Bitmap> freeFrames = new ArrayBlockingQueue<>(MAX_PENDING_FRAMES);
+    private final AtomicInteger allocatedFrames = new AtomicInteger();
+    private final ExecutorService encoder;
+
+    /**
+     * Only used on the encoder thread.
+     */
+    private final SimpleDateFormat exifDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+
+    private volatile int jpegQuality = DEFAULT_JPEG_QUALITY;
+    private volatile int maxWidth = DEFAULT_MAX_WIDTH;
+    private volatile boolean released;
+
+    public PhotoCapturePipeline() {
+        encoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Photo encoder");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param quality JPEG quality, from 1 to 100.
+     */
+    public void setJpegQuality(int quality) {
+        jpegQuality = Math.max(1, Math.min(100, quality));
+    }
+
+    /**
+     * @param width Maximum width of the photos, in pixels; 0 keeps the resolution of the view.
+     */
+    public void setMaxWidth(int width) {
+        maxWidth = Math.max(0, width);
+    }
+
+    /**
+     * Grabs the frame currently shown by the view and queues it for encoding into the destination
+     * file. Must be called on the main thread.
+     *
+     * @return false if no frame was grabbed, either because the view is not ready or because the
+     * encoder is still busy with the previous captures. The caller may try again later.
+     */
+    public boolean capture(TextureView view, File destination, Metadata metadata) {
+        if (released || !view.isAvailable())
+            return false;
+
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (width <= 0 || height <= 0)
+            return false;
+
+        final int limit = maxWidth;
+        if (limit > 0 && width > limit) {
+            height = Math.max(1, Math.round(height * (float) limit / width));
+            width = limit;
+        }
+
+        final Bitmap frame = obtainFrame(width, height);
+        if (frame == null) {
+            Timber.w("Photo encoder busy, skipping capture of %s", destination.getName());
+            return false;
+        }
+
+        //Scales the frame to the bitmap size on the way.
+        view.getBitmap(frame);
+        encoder.execute(new EncodeTask(frame, destination, metadata, jpegQuality));
+        return true;
+    }
+
+    /**
+     * Lets the queued captures complete, then stops the encoder.
+     */
+    public void release() {
+        released = true;
+        encoder.shutdown();
+
+        Bitmap frame;
+        while ((frame = freeFrames.poll()) != null) {
+            frame.recycle();
+            allocatedFrames.decrementAndGet();
+        }
+    }
+
+    private Bitmap obtainFrame(int width, int height) {
+        Bitmap frame;
+        while ((frame = freeFrames.poll()) != null) {
+            if (frame.getWidth() == width && frame.getHeight() == height)
+                return frame;
+
+            //Left over from a previous view size or setting.
+            frame.recycle();
+            allocatedFrames.decrementAndGet();
+        }
+
+        if (allocatedFrames.incrementAndGet() > MAX_PENDING_FRAMES) {
+            allocatedFrames.decrementAndGet();
+            return null;
+        }
+
+        try {
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            allocatedFrames.decrementAndGet();
+            Timber.e(e, "Unable to allocate a %dx%d frame", width, height);
+            return null;
+        }
+    }
+
+    private void recycleFrame(Bitmap frame) {
+        if (released || !freeFrames.offer(frame)) {
+            frame.recycle();
+            allocatedFrames.decrementAndGet();
+        }
+    }
+
+    private void writeExif(File file, Metadata metadata, long timestamp) throws IOException {
+        final ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_DATETIME, exifDateFormat.format(new Date(timestamp)));
+
+        if (metadata.hasPosition()) {
+            exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE, toExifCoordinate(metadata.latitude));
+            exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE_REF, metadata.latitude >= 0 ? "N" : "S");
+            exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE, toExifCoordinate(metadata.longitude));
+            exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE_REF, metadata.longitude >= 0 ? "E" : "W");
+        }
+
+        if (metadata.description != null)
+            exif.setAttribute(Metadata.TAG_IMAGE_DESCRIPTION, metadata.description);
+
+        exif.saveAttributes();
+    }
+
+    /**
+     * @return the coordinate as degrees, minutes and seconds rationals, e.g. "45/1,7/1,51234/1000".
+     */
+    static String toExifCoordinate(double coordinate) {
+        coordinate = Math.abs(coordinate);
+        final int degrees = (int) coordinate;
+        coordinate = (coordinate - degrees) * 60;
+        final int minutes = (int) coordinate;
+        final long milliSeconds = Math.round((coordinate - minutes) * 60 * 1000);
+        return degrees + "/1," + minutes + "/1," + milliSeconds + "/1000";
+    }
+
+    private class EncodeTask implements Runnable {
+
+        private final Bitmap frame;
+        private final File destination;
+        private final Metadata metadata;
+        private final int quality;
+        private final long timestamp = System.currentTimeMillis();
+
+        EncodeTask(Bitmap frame, File destination, Metadata metadata, int quality) {
+            this.frame = frame;
+            this.destination = destination;
+            this.metadata = metadata;
+            this.quality = quality;
+        }
+
+        @Override
+        public void run() {
+            //Written aside, so the uploader never picks up a partial photo.
+            final File partial = new File(destination.getPath() + ".tmp");
+            try {
+                final File dir = destination.getParentFile();
+                if (!dir.isDirectory() && !dir.mkdirs())
+                    throw new IOException("Unable to create " + dir);
+
+                final OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), WRITE_BUFFER_SIZE);
+                try {
+                    if (!frame.compress(Bitmap.CompressFormat.JPEG, quality, out))
+                        throw new IOException("JPEG compression failed");
+                } finally {
+                    out.close();
+                }
+
+                writeExif(partial, metadata, timestamp);
+
+                if (!partial.renameTo(destination))
+                    throw new IOException("Unable to rename " + partial + " to " + destination.getName());
+            } catch (IOException e) {
+                Timber.e(e, "Unable to save photo %s", destination);
+                partial.delete();
+            } finally {
+                recycleFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * What is known of the drone when the frame is grabbed.
+     */
+    public static class Metadata {
+
+        //ExifInterface only exposes this tag from API 24.
+        static final String TAG_IMAGE_DESCRIPTION = "ImageDescription";
+
+        final double latitude;
+        final double longitude;
+        final String description;
+
+        /**
+         * @param latitude    Drone latitude, or NaN if unknown.
+         * @param longitude   Drone longitude, or NaN if unknown.
+         * @param description Free text stored in the photo, e.g. the percorso and waypoint.
+         */
+        public Metadata(double latitude, double longitude, String description) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.description = description;
+        }
+
+        boolean hasPosition() {
+            return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        }
+    }
+}
@@ -20,18 +20,21 @@ import com.o3dr.services.android.lib.drone.attribute.AttributeType;
 import com.o3dr.services.android.lib.drone.property.CameraProxy;
 import com.o3dr.services.android.lib.drone.property.Gps;
 
-import org.droidplanner.android.KDTree.LocationKDTree;
+import org.droidplanner.android.KDTree.WaypointTracker;
 import org.droidplanner.android.R;
-import org.droidplanner.android.WaypointUtils;
 import org.droidplanner.android.fragments.helpers.ApiListenerFragment;
 import org.droidplanner.android.graphic.map.GraphicDrone;
 import org.droidplanner.android.graphic.map.GraphicGuided;
 import org.droidplanner.android.graphic.map.GraphicHome;
 import org.droidplanner.android.maps.DPMap;
 import org.droidplanner.android.maps.MarkerInfo;
+import org.droidplanner.android.maps.MarkerReconciler;
 import org.droidplanner.android.maps.providers.DPMapProvider;
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader;
+import org.droidplanner.android.proxy.mission.MissionPath;
 import org.droidplanner.android.proxy.mission.MissionProxy;
+import org.droidplanner.android.proxy.mission.item.MissionItemProxy;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.prefs.AutoPanMode;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
@@ -39,7 +42,6 @@ import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 public abstract class DroneMap extends ApiListenerFragment {
@@ -47,22 +49,36 @@ public abstract class DroneMap extends ApiListenerFragment {
     public static final String ACTION_UPDATE_MAP = Utils.PACKAGE_NAME + ".action.UPDATE_MAP";
     private static final double THRESHOLD = 1.1;
 
+    /**
+     * Drone events are delivered at most at the map frame rate.
+     */
+    private static final long MAP_UPDATE_INTERVAL = 1000 / 30; //ms
+
+    /**
+     * Ground size of a map pixel at the equator, at zoom level 0.
+     */
+    private static final double EQUATOR_PIXEL_SIZE = 156543.03392; //m
+
 	private static final IntentFilter eventFilter = new IntentFilter();
 	static {
 		eventFilter.addAction(MissionProxy.ACTION_MISSION_PROXY_UPDATE);
-		eventFilter.addAction(AttributeEvent.GPS_POSITION);
-		eventFilter.addAction(AttributeEvent.GUIDED_POINT_UPDATED);
-		eventFilter.addAction(AttributeEvent.HEARTBEAT_FIRST);
-		eventFilter.addAction(AttributeEvent.HEARTBEAT_RESTORED);
-		eventFilter.addAction(AttributeEvent.HEARTBEAT_TIMEOUT);
-		eventFilter.addAction(AttributeEvent.STATE_CONNECTED);
-		eventFilter.addAction(AttributeEvent.STATE_DISCONNECTED);
-		eventFilter.addAction(AttributeEvent.CAMERA_FOOTPRINTS_UPDATED);
-		eventFilter.addAction(AttributeEvent.ATTITUDE_UPDATED);
-		eventFilter.addAction(AttributeEvent.HOME_UPDATED);
+		eventFilter.addAction(MissionProxy.ACTION_MISSION_PATH_UPDATE);
         eventFilter.addAction(ACTION_UPDATE_MAP);
 	}
 
+    private static final String[] DRONE_EVENTS = {
+            AttributeEvent.GPS_POSITION,
+            AttributeEvent.GUIDED_POINT_UPDATED,
+            AttributeEvent.HEARTBEAT_FIRST,
+            AttributeEvent.HEARTBEAT_RESTORED,
+            AttributeEvent.HEARTBEAT_TIMEOUT,
+            AttributeEvent.STATE_CONNECTED,
+            AttributeEvent.STATE_DISCONNECTED,
+            AttributeEvent.CAMERA_FOOTPRINTS_UPDATED,
+            AttributeEvent.ATTITUDE_UPDATED,
+            AttributeEvent.HOME_UPDATED
+    };
+
     private static final List<MarkerInfo> NO_EXTERNAL_MARKERS = Collections.emptyList();
 
     private CloseToWaypointListener closeToWaypointListener;
@@ -70,87 +86,94 @@ public abstract class DroneMap extends ApiListenerFragment {
     private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(Context context, Intent intent) {
-			if (!isResumed())
-				return;
+			onEvent(intent.getAction());
+		}
+	};
 
-			final String action = intent.getAction();
-            switch (action) {
-                case ACTION_UPDATE_MAP:
-				case AttributeEvent.HOME_UPDATED:
-                case MissionProxy.ACTION_MISSION_PROXY_UPDATE:
-                    postUpdate();
-                    break;
-
-                case AttributeEvent.GPS_POSITION: {
-                    mMapFragment.updateMarker(graphicDrone);
-                    mMapFragment.updateDroneLeashPath(guided);
-                    final Gps droneGps = drone.getAttribute(AttributeType.GPS);
-                    if (droneGps != null && droneGps.isValid()) {
-                        LatLong dronePosition = droneGps.getPosition();
-                        mMapFragment.addFlightPathPoint(dronePosition);
-
-                        LocationKDTree.Node kdNode = missionProxy.nearest(dronePosition.getLatitude(), dronePosition.getLongitude());
-                        LatLong coords = kdNode.getCoordinates();
-
-                        double distanza = WaypointUtils.distanza(
-                                dronePosition.getLongitude(),
-                                dronePosition.getLatitude(),
-                                coords.getLongitude(),
-                                coords.getLatitude()
-                        );
-
-                        //Utils.log("DISTANCE: "+distanza+"m; drone: (" + dronePosition.getLatitude() + "; " + dronePosition.getLongitude() + "), next: (" + coords.getLatitude() + "; " + coords.getLongitude() + ")");
-                        if (distanza < THRESHOLD && closeToWaypointListener != null) {
-                            closeToWaypointListener.onCloseTo(getDrone(), kdNode.getWaypointIndex());
+    private final TelemetryBus.Listener droneEventsListener = new TelemetryBus.Listener() {
+        @Override
+        public void onTelemetryEvent(String event, Bundle extras) {
+            onEvent(event);
+        }
+    };
+
+    private void onEvent(String action) {
+		if (!isResumed())
+			return;
+
+        switch (action) {
+            case ACTION_UPDATE_MAP:
+			case AttributeEvent.HOME_UPDATED:
+            case MissionProxy.ACTION_MISSION_PROXY_UPDATE:
+                postUpdate();
+                break;
+
+            case MissionProxy.ACTION_MISSION_PATH_UPDATE:
+                updateMissionPath();
+                break;
+
+            case AttributeEvent.GPS_POSITION: {
+                mMapFragment.updateMarker(graphicDrone);
+                mMapFragment.updateDroneLeashPath(guided);
+                final Gps droneGps = drone.getAttribute(AttributeType.GPS);
+                if (droneGps != null && droneGps.isValid()) {
+                    LatLong dronePosition = droneGps.getPosition();
+                    mMapFragment.addFlightPathPoint(dronePosition);
+
+                    final WaypointTracker tracker = missionProxy.getWaypointTracker();
+                    if (tracker != null && closeToWaypointListener != null) {
+                        final int waypointIndex = tracker.update(dronePosition.getLatitude(), dronePosition.getLongitude());
+                        if (waypointIndex > 0 && tracker.getDistance() < THRESHOLD) {
+                            closeToWaypointListener.onCloseTo(getDrone(), waypointIndex);
                         }
                     }
-                    break;
-                }
-
-                case AttributeEvent.GUIDED_POINT_UPDATED:
-                    mMapFragment.updateMarker(guided);
-                    mMapFragment.updateDroneLeashPath(guided);
-                    break;
-
-                case AttributeEvent.HEARTBEAT_FIRST:
-                case AttributeEvent.HEARTBEAT_RESTORED:
-				case AttributeEvent.STATE_CONNECTED:
-                    mMapFragment.updateMarker(graphicDrone);
-                    break;
-
-                case AttributeEvent.STATE_DISCONNECTED:
-                case AttributeEvent.HEARTBEAT_TIMEOUT:
-                    mMapFragment.updateMarker(graphicDrone);
-                    break;
-
-                case AttributeEvent.CAMERA_FOOTPRINTS_UPDATED: {
-					if(mAppPrefs.isRealtimeFootprintsEnabled()) {
-						CameraProxy camera = drone.getAttribute(AttributeType.CAMERA);
-						if (camera != null && camera.getLastFootPrint() != null)
-							mMapFragment.addCameraFootprint(camera.getLastFootPrint());
-					}
-                    break;
                 }
+                break;
+            }
 
-                case AttributeEvent.ATTITUDE_UPDATED: {
-                    if (mAppPrefs.isRealtimeFootprintsEnabled()) {
-                        final Gps droneGps = drone.getAttribute(AttributeType.GPS);
-                        if (droneGps.isValid()) {
-                            CameraProxy camera = drone.getAttribute(AttributeType.CAMERA);
-                            if (camera != null && camera.getCurrentFieldOfView() != null)
-                                mMapFragment.updateRealTimeFootprint(camera.getCurrentFieldOfView());
-                        }
+            case AttributeEvent.GUIDED_POINT_UPDATED:
+                mMapFragment.updateMarker(guided);
+                mMapFragment.updateDroneLeashPath(guided);
+                break;
+
+            case AttributeEvent.HEARTBEAT_FIRST:
+            case AttributeEvent.HEARTBEAT_RESTORED:
+			case AttributeEvent.STATE_CONNECTED:
+                mMapFragment.updateMarker(graphicDrone);
+                break;
+
+            case AttributeEvent.STATE_DISCONNECTED:
+            case AttributeEvent.HEARTBEAT_TIMEOUT:
+                mMapFragment.updateMarker(graphicDrone);
+                break;
+
+            case AttributeEvent.CAMERA_FOOTPRINTS_UPDATED: {
+				if(mAppPrefs.isRealtimeFootprintsEnabled()) {
+					CameraProxy camera = drone.getAttribute(AttributeType.CAMERA);
+					if (camera != null && camera.getLastFootPrint() != null)
+						mMapFragment.addCameraFootprint(camera.getLastFootPrint());
+				}
+                break;
+            }
 
+            case AttributeEvent.ATTITUDE_UPDATED: {
+                if (mAppPrefs.isRealtimeFootprintsEnabled()) {
+                    final Gps droneGps = drone.getAttribute(AttributeType.GPS);
+                    if (droneGps.isValid()) {
+                        CameraProxy camera = drone.getAttribute(AttributeType.CAMERA);
+                        if (camera != null && camera.getCurrentFieldOfView() != null)
+                            mMapFragment.updateRealTimeFootprint(camera.getCurrentFieldOfView());
                     }
-                    else{
-                        mMapFragment.updateRealTimeFootprint(null);
-                    }
-                    break;
-                }
 
+                }
+                else{
+                    mMapFragment.updateRealTimeFootprint(null);
+                }
+                break;
             }
-		}
-	};
+
+        }
+    }
 
 	private final Handler mHandler = new Handler();
 
@@ -160,52 +183,22 @@ public abstract class DroneMap extends ApiListenerFragment {
 			if (getActivity() == null && mMapFragment == null)
 				return;
 
-			final List<MarkerInfo> missionMarkerInfos = missionProxy.getMarkersInfos();
-            final List<MarkerInfo> externalMarkers = collectMarkersFromProviders();
-
-			final boolean isThereMissionMarkers = !missionMarkerInfos.isEmpty();
-            final boolean isThereExternalMarkers = !externalMarkers.isEmpty();
-			final boolean isHomeValid = home.isValid();
-			final boolean isGuidedVisible = guided.isVisible();
-
-			// Get the list of markers currently on the map.
-			final Set<MarkerInfo> markersOnTheMap = mMapFragment.getMarkerInfoList();
-
-			if (!markersOnTheMap.isEmpty()) {
-				if (isHomeValid) {
-					markersOnTheMap.remove(home);
-				}
-
-				if (isGuidedVisible) {
-					markersOnTheMap.remove(guided);
-				}
-
-				if (isThereMissionMarkers) {
-					markersOnTheMap.removeAll(missionMarkerInfos);
-				}
-
-                if(isThereExternalMarkers)
-                    markersOnTheMap.removeAll(externalMarkers);
+			updateMissionMarkers();
 
-				mMapFragment.removeMarkers(markersOnTheMap);
-			}
+			final List<MarkerInfo> vehicleMarkers = new ArrayList<>(2);
+			if (home.isValid())
+				vehicleMarkers.add(home);
+			if (guided.isVisible())
+				vehicleMarkers.add(guided);
+			mMarkers.setMarkers(mVehicleMarkers, vehicleMarkers);
+			mMarkers.invalidate(mVehicleMarkers);
 
-			if (isHomeValid) {
-				mMapFragment.updateMarker(home);
-			}
+			mMarkers.setMarkers(mExternalMarkers, collectMarkersFromProviders());
+			mMarkers.invalidate(mExternalMarkers);
 
-			if (isGuidedVisible) {
-				mMapFragment.updateMarker(guided);
-			}
+			mMarkers.commit();
 
-			if (isThereMissionMarkers) {
-				mMapFragment.updateMarkers(missionMarkerInfos, isMissionDraggable());
-			}
-
-            if(isThereExternalMarkers)
-                mMapFragment.updateMarkers(externalMarkers, false);
-
-			mMapFragment.updateMissionPath(missionProxy);
+			updateMissionPath();
 
 			mMapFragment.updatePolygonsPaths(missionProxy.getPolygonsPath());
 
@@ -213,10 +206,36 @@ public abstract class DroneMap extends ApiListenerFragment {
 		}
 	};
 
+	private final DPMap.OnCameraChangeListener cameraChangeListener = new DPMap.OnCameraChangeListener() {
+		@Override
+		public void onCameraChange(DPMap.VisibleMapArea visibleMapArea) {
+			mMarkers.setVisibleArea(visibleMapArea);
+			mMarkers.commit();
+
+			if (missionProxy != null)
+				updateMissionPath();
+		}
+	};
+
     private final ConcurrentLinkedQueue<MapMarkerProvider> markerProviders = new ConcurrentLinkedQueue<>();
 
 	protected DPMap mMapFragment;
 
+	/**
+	 * Markers on the map, with the revision of the mission they were last synced with.
+	 */
+	private MarkerReconciler mMarkers;
+	private MarkerReconciler.Layer mMissionMarkers;
+	private MarkerReconciler.Layer mVehicleMarkers;
+	private MarkerReconciler.Layer mExternalMarkers;
+	private int mMissionMarkersRevision;
+
+	/**
+	 * Mission path on the map, and the zoom level it was simplified for.
+	 */
+	private MissionPath mMissionPath;
+	private int mMissionPathZoomLevel;
+
 	protected DroidPlannerPrefs mAppPrefs;
 
 	private GraphicHome home;
@@ -249,10 +268,15 @@ public abstract class DroneMap extends ApiListenerFragment {
 
 	@Override
 	public void onApiConnected() {
-		if (mMapFragment != null)
+		if (mMapFragment != null) {
 			mMapFragment.clearMarkers();
+			mMarkers.clear();
+			mMissionMarkersRevision = 0;
+			mMissionPath = null;
+		}
 
 		getBroadcastManager().registerReceiver(eventReceiver, eventFilter);
+		getTelemetryBus().subscribe(droneEventsListener, MAP_UPDATE_INTERVAL, DRONE_EVENTS);
 
 		drone = getDrone();
 		missionProxy = getMissionProxy();
@@ -274,6 +298,7 @@ public abstract class DroneMap extends ApiListenerFragment {
 	@Override
 	public void onApiDisconnected() {
 		getBroadcastManager().unregisterReceiver(eventReceiver);
+		getTelemetryBus().unsubscribe(droneEventsListener);
 	}
 
 	private void updateMapFragment() {
@@ -291,6 +316,62 @@ public abstract class DroneMap extends ApiListenerFragment {
 			fm.beginTransaction().replace(R.id.map_fragment_container, (Fragment) mMapFragment)
 					.commit();
 		}
+
+		if (mMarkers == null || mMarkers.getMap() != mMapFragment) {
+			mMarkers = new MarkerReconciler(mMapFragment);
+			mMissionMarkers = mMarkers.addLayer(true);
+			mVehicleMarkers = mMarkers.addLayer(false);
+			mExternalMarkers = mMarkers.addLayer(true);
+			mMissionMarkersRevision = 0;
+			mMissionPath = null;
+			mMapFragment.setOnCameraChangeListener(cameraChangeListener);
+		}
+	}
+
+	/**
+	 * Only the markers of the mission items which changed since the last update are refreshed,
+	 * unless the change may affect all of them.
+	 */
+	private void updateMissionMarkers() {
+		mMarkers.setMarkers(mMissionMarkers, missionProxy.getMarkersInfos());
+
+		final int revision = missionProxy.getRevision();
+		if (missionProxy.getMarkersRevision() > mMissionMarkersRevision) {
+			mMarkers.invalidate(mMissionMarkers);
+		} else if (revision > mMissionMarkersRevision) {
+			for (MissionItemProxy itemProxy : missionProxy.getItems()) {
+				if (itemProxy.getRevision() > mMissionMarkersRevision) {
+					for (MarkerInfo markerInfo : itemProxy.getMarkerInfos())
+						mMarkers.invalidate(markerInfo);
+				}
+			}
+		}
+		mMissionMarkersRevision = revision;
+	}
+
+	/**
+	 * The mission path is drawn simplified to the map resolution, and only when the path or the
+	 * zoom level changed.
+	 */
+	private void updateMissionPath() {
+		final MissionPath path = missionProxy.getMissionPath();
+		final int zoomLevel = (int) mMapFragment.getMapZoomLevel();
+		if (path == mMissionPath && zoomLevel == mMissionPathZoomLevel)
+			return;
+
+		mMissionPath = path;
+		mMissionPathZoomLevel = zoomLevel;
+
+		//Within a pixel at any zoom up to the next level.
+		final double tolerance = EQUATOR_PIXEL_SIZE * Math.cos(Math.toRadians(path.getStartLatitude()))
+				/ Math.pow(2, zoomLevel + 1);
+		final List<LatLong> points = path.getPoints(tolerance);
+		mMapFragment.updateMissionPath(new DPMap.PathSource() {
+			@Override
+			public List<LatLong> getPathPoints() {
+				return points;
+			}
+		});
 	}
 
 	@Override
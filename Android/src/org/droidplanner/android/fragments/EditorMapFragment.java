@@ -18,21 +18,21 @@ import com.o3dr.services.android.lib.drone.mission.item.MissionItem;
 import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 import com.o3dr.services.android.lib.drone.property.Home;
 
-import org.droidplanner.android.WaypointUtils;
 import org.droidplanner.android.activities.EditorActivity;
 import org.droidplanner.android.activities.interfaces.OnEditorInteraction;
 import org.droidplanner.android.maps.DPMap;
 import org.droidplanner.android.maps.MarkerInfo;
 import org.droidplanner.android.network.ComunicazioneConServerRunnable;
+import org.droidplanner.android.network.HttpExecutor;
+import org.droidplanner.android.network.ResponseDecoders;
+import org.droidplanner.android.network.StreamingJsonRunnable;
+import org.droidplanner.android.network.cache.ResponseCache;
 import org.droidplanner.android.proxy.mission.item.markers.MissionItemMarkerInfo;
 import org.droidplanner.android.proxy.mission.item.markers.PolygonMarkerInfo;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.prefs.AutoPanMode;
 import org.droidplanner.android.wrapperPercorso.WrapperPercorso;
 import org.droidplanner.android.wrapperPercorso.WrapperPercorsoMarkerInfo;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -62,60 +62,75 @@ public class EditorMapFragment extends DroneMap implements DPMap.OnMapLongClickL
 
         String codPZ = ((EditorActivity) getActivity()).getCodicePolizza();
         if(codPZ != null && !((EditorActivity)getActivity()).isPrimaPerizia()){
-            new Thread(new ComunicazioneConServerRunnable(
+            HttpExecutor.getInstance().executeStreaming(EditorMapFragment.this,
                     ComunicazioneConServerRunnable.selectPercorsiByCodicePolizzaRequest(codPZ),
-                    new ComunicazioneConServerRunnable.RequestListener() {
+                    ResponseDecoders.ARRAY_PERCORSI,
+                    ResponseDecoders.CODICE_PERCORSO,
+                    new StreamingJsonRunnable.StreamListener<String>() {
+                        private String codicePercorso;
+
+                        @Override
+                        public void onItems(List<String> percorsi) {
+                            if(codicePercorso == null && !percorsi.isEmpty())
+                                codicePercorso = percorsi.get(0);
+                        }
+
                         @Override
-                        public void onSuccess(String response) {
-                            try {
-                                Log.d("PERCORSI", response);
-                                JSONObject responseJSON = new JSONObject(response);
-                                JSONArray percorsiJSON = responseJSON.optJSONArray("percorsi");
-
-                                String codicePercorso = percorsiJSON.getJSONObject(0).getString("CodPR");
-                                Utils.savePreferencesData(getActivity(), Utils.PREF_PERCORSO, codicePercorso);
-
-                                new Thread(new ComunicazioneConServerRunnable(
-                                        ComunicazioneConServerRunnable.selectWaypoints(codicePercorso),
-                                        new ComunicazioneConServerRunnable.RequestListener() {
-                                            @Override
-                                            public void onSuccess(String response) {
-                                                try {
-                                                    Log.d("WAYPOINTS", response);
-                                                    JSONObject responseJSON = new JSONObject(response);
-                                                    JSONArray waypointsJSON = responseJSON.optJSONArray("wp");
-                                                    ArrayList<Waypoint> waypoints = new ArrayList<>();
-                                                    for(int i=0; i<waypointsJSON.length(); i++){
-                                                        waypoints.add(WaypointUtils.jsonToWaypoint(waypointsJSON.getJSONObject(i)));
-                                                    }
-                                                    missionProxy.mAddWaypoints(waypoints);
-                                                } catch(JSONException e){
-                                                    e.printStackTrace();
-                                                }
-                                            }
-
-                                            @Override
-                                            public void onError(int responseCode, String response) {
-                                                Log.d("WAYPOINTS", "ERROR");
-                                            }
-                                        }
-                                )).start();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
+                        public void onComplete(int total) {
+                            if(codicePercorso == null) {
+                                Log.d("PERCORSI", "Nessun percorso");
+                                return;
                             }
+
+                            Utils.savePreferencesData(getActivity(), Utils.PREF_PERCORSO, codicePercorso);
+                            loadWaypoints(codicePercorso);
                         }
 
                         @Override
                         public void onError(int responseCode, String response) {
                             Log.d("PERCORSI", "ERRORE");
                         }
-                    }
-            )).start();
+                    },
+                    ResponseCache.getInstance(getActivity().getApplicationContext()), ResponseCache.DEFAULT_TTL
+            );
         }
 
 		return view;
 	}
 
+    private void loadWaypoints(String codicePercorso) {
+        final ArrayList<Waypoint> waypoints = new ArrayList<>();
+        HttpExecutor.getInstance().executeStreaming(EditorMapFragment.this,
+                ComunicazioneConServerRunnable.selectWaypoints(codicePercorso),
+                ResponseDecoders.ARRAY_WAYPOINTS,
+                ResponseDecoders.WAYPOINT,
+                new StreamingJsonRunnable.StreamListener<Waypoint>() {
+                    @Override
+                    public void onItems(List<Waypoint> items) {
+                        waypoints.addAll(items);
+                    }
+
+                    @Override
+                    public void onComplete(int total) {
+                        Log.d("WAYPOINTS", "Received " + total + " waypoints");
+                        missionProxy.mAddWaypoints(waypoints);
+                    }
+
+                    @Override
+                    public void onError(int responseCode, String response) {
+                        Log.d("WAYPOINTS", "ERROR");
+                    }
+                },
+                ResponseCache.getInstance(getActivity().getApplicationContext()), ResponseCache.WAYPOINTS_TTL
+        );
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        HttpExecutor.getInstance().cancelAll(this);
+    }
+
 	@Override
 	public void onMapLongClick(LatLong point) {
 	}
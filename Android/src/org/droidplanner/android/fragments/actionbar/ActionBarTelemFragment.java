@@ -1,11 +1,15 @@
 package org.droidplanner.android.fragments.actionbar;
 
+import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,118 +28,171 @@ import com.o3dr.services.android.lib.drone.property.State;
 import com.o3dr.services.android.lib.gcs.returnToMe.ReturnToMeState;
 import com.o3dr.services.android.lib.util.MathUtils;
 
-import org.beyene.sius.unit.length.LengthUnit;
 import org.droidplanner.android.R;
 import org.droidplanner.android.dialogs.SelectionListDialog;
 import org.droidplanner.android.fragments.SettingsFragment;
 import org.droidplanner.android.fragments.helpers.ApiListenerFragment;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 
-import java.util.Locale;
-
 /**
  * Created by Fredia Huya-Kouadio on 1/14/15.
  */
 public class ActionBarTelemFragment extends ApiListenerFragment {
 
+    private static final long TELEMETRY_UPDATE_INTERVAL = 200; //ms
+
+    /**
+     * Delay standing in for the next frame before Jelly Bean, which lacks the {@link Choreographer}.
+     */
+    private static final long FRAME_INTERVAL = 16; //ms
+
+    //Parts of the bar to render on the next frame.
+    private static final int FLIGHT_MODE = 1;
+    private static final int SIGNAL = 1 << 1;
+    private static final int GPS = 1 << 2;
+    private static final int HOME = 1 << 3;
+    private static final int BATTERY = 1 << 4;
+    private static final int ALTITUDE = 1 << 5;
+    private static final int ALL = FLIGHT_MODE | SIGNAL | GPS | HOME | BATTERY | ALTITUDE;
+
+    private static final String[] TELEMETRY_EVENTS = {
+            AttributeEvent.BATTERY_UPDATED,
+            AttributeEvent.STATE_CONNECTED,
+            AttributeEvent.STATE_DISCONNECTED,
+            AttributeEvent.GPS_POSITION,
+            AttributeEvent.GPS_COUNT,
+            AttributeEvent.GPS_FIX,
+            AttributeEvent.SIGNAL_UPDATED,
+            AttributeEvent.STATE_VEHICLE_MODE,
+            AttributeEvent.TYPE_UPDATED,
+            AttributeEvent.ALTITUDE_UPDATED,
+            AttributeEvent.RETURN_TO_ME_STATE_UPDATE,
+            AttributeEvent.HOME_UPDATED
+    };
+
     private final static IntentFilter eventFilter = new IntentFilter();
 
     static {
-        eventFilter.addAction(AttributeEvent.BATTERY_UPDATED);
-        eventFilter.addAction(AttributeEvent.STATE_CONNECTED);
-        eventFilter.addAction(AttributeEvent.STATE_DISCONNECTED);
-        eventFilter.addAction(AttributeEvent.GPS_POSITION);
-        eventFilter.addAction(AttributeEvent.GPS_COUNT);
-        eventFilter.addAction(AttributeEvent.GPS_FIX);
-        eventFilter.addAction(AttributeEvent.SIGNAL_UPDATED);
-        eventFilter.addAction(AttributeEvent.STATE_VEHICLE_MODE);
-        eventFilter.addAction(AttributeEvent.TYPE_UPDATED);
-        eventFilter.addAction(AttributeEvent.ALTITUDE_UPDATED);
-
         eventFilter.addAction(SettingsFragment.ACTION_PREF_HDOP_UPDATE);
         eventFilter.addAction(SettingsFragment.ACTION_PREF_UNIT_SYSTEM_UPDATE);
 
         eventFilter.addAction(DroidPlannerPrefs.ACTION_PREF_RETURN_TO_ME_UPDATED);
-        eventFilter.addAction(AttributeEvent.RETURN_TO_ME_STATE_UPDATE);
-        eventFilter.addAction(AttributeEvent.HOME_UPDATED);
     }
 
     private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (getActivity() == null)
-                return;
-
-            switch (intent.getAction()) {
-                case AttributeEvent.BATTERY_UPDATED:
-                    updateBatteryTelem();
-                    break;
-
-                case AttributeEvent.STATE_CONNECTED:
-                    showTelemBar();
-                    updateAllTelem();
-                    break;
-
-                case AttributeEvent.STATE_DISCONNECTED:
-                    hideTelemBar();
-                    updateAllTelem();
-                    break;
-
-                case DroidPlannerPrefs.ACTION_PREF_RETURN_TO_ME_UPDATED:
-                case AttributeEvent.RETURN_TO_ME_STATE_UPDATE:
-                case AttributeEvent.GPS_POSITION:
-                case AttributeEvent.HOME_UPDATED:
-                    updateHomeTelem();
-                    break;
-
-                case AttributeEvent.GPS_COUNT:
-                case AttributeEvent.GPS_FIX:
-                    updateGpsTelem();
-                    break;
-
-                case AttributeEvent.SIGNAL_UPDATED:
-                    updateSignalTelem();
-                    break;
-
-                case AttributeEvent.STATE_VEHICLE_MODE:
-                case AttributeEvent.TYPE_UPDATED:
-                    updateFlightModeTelem();
-                    break;
+            onEvent(intent.getAction());
+        }
+    };
 
-                case SettingsFragment.ACTION_PREF_HDOP_UPDATE:
-                    updateGpsTelem();
-                    break;
+    private final TelemetryBus.Listener telemetryListener = new TelemetryBus.Listener() {
+        @Override
+        public void onTelemetryEvent(String event, Bundle extras) {
+            onEvent(event);
+        }
+    };
 
-                case SettingsFragment.ACTION_PREF_UNIT_SYSTEM_UPDATE:
-                    updateHomeTelem();
-                    break;
+    private void onEvent(String event) {
+        if (getActivity() == null)
+            return;
+
+        switch (event) {
+            case AttributeEvent.BATTERY_UPDATED:
+                invalidateTelem(BATTERY);
+                break;
+
+            case AttributeEvent.STATE_CONNECTED:
+                showTelemBar();
+                invalidateTelem(ALL);
+                break;
+
+            case AttributeEvent.STATE_DISCONNECTED:
+                hideTelemBar();
+                invalidateTelem(ALL);
+                break;
+
+            case DroidPlannerPrefs.ACTION_PREF_RETURN_TO_ME_UPDATED:
+            case AttributeEvent.RETURN_TO_ME_STATE_UPDATE:
+            case AttributeEvent.GPS_POSITION:
+            case AttributeEvent.HOME_UPDATED:
+                invalidateTelem(HOME);
+                break;
+
+            case AttributeEvent.GPS_COUNT:
+            case AttributeEvent.GPS_FIX:
+                invalidateTelem(GPS);
+                break;
+
+            case AttributeEvent.SIGNAL_UPDATED:
+                invalidateTelem(SIGNAL);
+                break;
+
+            case AttributeEvent.STATE_VEHICLE_MODE:
+            case AttributeEvent.TYPE_UPDATED:
+                invalidateTelem(FLIGHT_MODE);
+                break;
+
+            case SettingsFragment.ACTION_PREF_HDOP_UPDATE:
+                invalidateTelem(GPS);
+                break;
+
+            case SettingsFragment.ACTION_PREF_UNIT_SYSTEM_UPDATE:
+                invalidateTelem(HOME | ALTITUDE);
+                break;
+
+            case AttributeEvent.ALTITUDE_UPDATED:
+                invalidateTelem(ALTITUDE);
+                break;
+
+            default:
+                break;
+        }
+    }
 
-                case AttributeEvent.ALTITUDE_UPDATED:
-                    updateAltitudeTelem();
-                    break;
+    private final Handler handler = new Handler();
 
-                default:
-                    break;
-            }
+    private final Runnable renderTask = new Runnable() {
+        @Override
+        public void run() {
+            renderTelem();
         }
     };
 
+    private Choreographer.FrameCallback frameCallback;
+
+    private int invalidTelem;
+    private boolean renderScheduled;
+
     private DroidPlannerPrefs appPrefs;
 
-    private TextView homeTelem;
-    private TextView altitudeTelem;
+    private TelemetryText homeTelem;
+    private TelemetryText altitudeTelem;
 
-    private TextView gpsTelem;
+    private TelemetryText gpsTelem;
     private PopupWindow gpsPopup;
+    private TelemetryText satNoTelem;
+    private TelemetryText hdopStatusTelem;
+    private View hdopStatusView;
 
-    private TextView batteryTelem;
+    private TelemetryText batteryTelem;
     private PopupWindow batteryPopup;
+    private TelemetryText dischargeTelem;
+    private TelemetryText currentTelem;
+    private TelemetryText remainTelem;
 
-    private TextView signalTelem;
+    private TelemetryText signalTelem;
     private PopupWindow signalPopup;
+    private TelemetryText rssiTelem;
+    private TelemetryText remRssiTelem;
+    private TelemetryText noiseTelem;
+    private TelemetryText remNoiseTelem;
+    private TelemetryText fadeTelem;
+    private TelemetryText remFadeTelem;
 
-    private TextView flightModeTelem;
+    private TelemetryText flightModeTelem;
 
     private String emptyString;
 
@@ -157,8 +214,8 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
         final int popupHeight = ViewGroup.LayoutParams.WRAP_CONTENT;
         final Drawable popupBg = getResources().getDrawable(android.R.color.transparent);
 
-        homeTelem = (TextView) view.findViewById(R.id.bar_home);
-        homeTelem.setOnClickListener(new View.OnClickListener() {
+        final TextView homeView = (TextView) view.findViewById(R.id.bar_home);
+        homeView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 //Launch dialog to allow the user to select between rtl and rtm
@@ -166,44 +223,60 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
                 Utils.showDialog(selectionDialog, getChildFragmentManager(), "Return to home type", true);
             }
         });
+        homeTelem = new TelemetryText(homeView);
 
-        altitudeTelem = (TextView) view.findViewById(R.id.bar_altitude);
+        altitudeTelem = new TelemetryText((TextView) view.findViewById(R.id.bar_altitude));
 
-        gpsTelem = (TextView) view.findViewById(R.id.bar_gps);
+        final TextView gpsView = (TextView) view.findViewById(R.id.bar_gps);
         final View gpsPopupView = inflater.inflate(R.layout.popup_info_gps, (ViewGroup) view, false);
         gpsPopup = new PopupWindow(gpsPopupView, popupWidth, popupHeight, true);
         gpsPopup.setBackgroundDrawable(popupBg);
-        gpsTelem.setOnClickListener(new View.OnClickListener() {
+        gpsView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                gpsPopup.showAsDropDown(gpsTelem);
+                gpsPopup.showAsDropDown(gpsView);
             }
         });
+        gpsTelem = new TelemetryText(gpsView);
+        satNoTelem = new TelemetryText((TextView) gpsPopupView.findViewById(R.id.bar_gps_satno));
+        hdopStatusView = gpsPopupView.findViewById(R.id.bar_gps_hdop_status);
+        hdopStatusTelem = new TelemetryText((TextView) hdopStatusView);
 
-        batteryTelem = (TextView) view.findViewById(R.id.bar_battery);
+        final TextView batteryView = (TextView) view.findViewById(R.id.bar_battery);
         final View batteryPopupView = inflater.inflate(R.layout.popup_info_power, (ViewGroup) view, false);
         batteryPopup = new PopupWindow(batteryPopupView, popupWidth, popupHeight, true);
         batteryPopup.setBackgroundDrawable(popupBg);
-        batteryTelem.setOnClickListener(new View.OnClickListener() {
+        batteryView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                batteryPopup.showAsDropDown(batteryTelem);
+                batteryPopup.showAsDropDown(batteryView);
             }
         });
+        batteryTelem = new TelemetryText(batteryView);
+        dischargeTelem = new TelemetryText((TextView) batteryPopupView.findViewById(R.id.bar_power_discharge));
+        currentTelem = new TelemetryText((TextView) batteryPopupView.findViewById(R.id.bar_power_current));
+        remainTelem = new TelemetryText((TextView) batteryPopupView.findViewById(R.id.bar_power_remain));
 
-        signalTelem = (TextView) view.findViewById(R.id.bar_signal);
+        final TextView signalView = (TextView) view.findViewById(R.id.bar_signal);
         final View signalPopupView = inflater.inflate(R.layout.popup_info_signal, (ViewGroup) view, false);
         signalPopup = new PopupWindow(signalPopupView, popupWidth, popupHeight, true);
         signalPopup.setBackgroundDrawable(popupBg);
-        signalTelem.setOnClickListener(new View.OnClickListener() {
+        signalView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                signalPopup.showAsDropDown(signalTelem);
+                signalPopup.showAsDropDown(signalView);
             }
         });
-
-        flightModeTelem = (TextView) view.findViewById(R.id.bar_flight_mode);
-        flightModeTelem.setOnClickListener(new View.OnClickListener() {
+        signalTelem = new TelemetryText(signalView);
+        rssiTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_rssi));
+        remRssiTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_remrssi));
+        noiseTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_noise));
+        remNoiseTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_remnoise));
+        fadeTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_fade));
+        remFadeTelem = new TelemetryText((TextView) signalPopupView.findViewById(R.id.bar_signal_remfade));
+
+        final TextView flightModeView = (TextView) view.findViewById(R.id.bar_flight_mode);
+        flightModeView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 //Launch dialog to allow the user to select vehicle modes
@@ -213,6 +286,7 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
                 Utils.showDialog(selectionDialog, getChildFragmentManager(), "Flight modes selection", true);
             }
         });
+        flightModeTelem = new TelemetryText(flightModeView);
 
         appPrefs = DroidPlannerPrefs.getInstance(context);
     }
@@ -243,22 +317,85 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
         else
             hideTelemBar();
 
-        updateAllTelem();
+        invalidTelem = ALL;
+        renderTelem();
         getBroadcastManager().registerReceiver(eventReceiver, eventFilter);
+        getTelemetryBus().subscribe(telemetryListener, TELEMETRY_UPDATE_INTERVAL, TELEMETRY_EVENTS);
     }
 
     @Override
     public void onApiDisconnected() {
         getBroadcastManager().unregisterReceiver(eventReceiver);
+        getTelemetryBus().unsubscribe(telemetryListener);
+        cancelRender();
+    }
+
+    /**
+     * Marks parts of the bar for rendering on the next frame, so the events received in between
+     * only cost one pass over the views.
+     */
+    private void invalidateTelem(int parts) {
+        invalidTelem |= parts;
+        if (renderScheduled)
+            return;
+
+        renderScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            postFrameCallback();
+        else
+            handler.postDelayed(renderTask, FRAME_INTERVAL);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (frameCallback == null) {
+            frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    renderTelem();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(frameCallback);
     }
 
-    private void updateAllTelem() {
-        updateFlightModeTelem();
-        updateSignalTelem();
-        updateGpsTelem();
-        updateHomeTelem();
-        updateBatteryTelem();
-        updateAltitudeTelem();
+    private void cancelRender() {
+        if (!renderScheduled)
+            return;
+
+        renderScheduled = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            removeFrameCallback();
+        else
+            handler.removeCallbacks(renderTask);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (frameCallback != null)
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+    }
+
+    private void renderTelem() {
+        renderScheduled = false;
+
+        final int parts = invalidTelem;
+        invalidTelem = 0;
+        if (getView() == null)
+            return;
+
+        if ((parts & FLIGHT_MODE) != 0)
+            updateFlightModeTelem();
+        if ((parts & SIGNAL) != 0)
+            updateSignalTelem();
+        if ((parts & GPS) != 0)
+            updateGpsTelem();
+        if ((parts & HOME) != 0)
+            updateHomeTelem();
+        if ((parts & BATTERY) != 0)
+            updateBatteryTelem();
+        if ((parts & ALTITUDE) != 0)
+            updateAltitudeTelem();
     }
 
     private void updateFlightModeTelem() {
@@ -267,37 +404,29 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
         final boolean isDroneConnected = drone.isConnected();
         final State droneState = drone.getAttribute(AttributeType.STATE);
         if (isDroneConnected) {
-            flightModeTelem.setText(droneState.getVehicleMode().getLabel());
-            flightModeTelem.setCompoundDrawablesWithIntrinsicBounds(R.drawable.ic_navigation_light_blue_a400_18dp, 0, 0, 0);
+            flightModeTelem.clear().append(droneState.getVehicleMode().getLabel()).apply();
+            flightModeTelem.setIcon(R.drawable.ic_navigation_light_blue_a400_18dp);
         } else {
-            flightModeTelem.setText(emptyString);
-            flightModeTelem.setCompoundDrawablesWithIntrinsicBounds(R.drawable.ic_navigation_grey_700_18dp, 0, 0, 0);
+            flightModeTelem.clear().append(emptyString).apply();
+            flightModeTelem.setIcon(R.drawable.ic_navigation_grey_700_18dp);
         }
     }
 
     private void updateSignalTelem() {
         final Drone drone = getDrone();
 
-        final View popupView = signalPopup.getContentView();
-        TextView rssiView = (TextView) popupView.findViewById(R.id.bar_signal_rssi);
-        TextView remRssiView = (TextView) popupView.findViewById(R.id.bar_signal_remrssi);
-        TextView noiseView = (TextView) popupView.findViewById(R.id.bar_signal_noise);
-        TextView remNoiseView = (TextView) popupView.findViewById(R.id.bar_signal_remnoise);
-        TextView fadeView = (TextView) popupView.findViewById(R.id.bar_signal_fade);
-        TextView remFadeView = (TextView) popupView.findViewById(R.id.bar_signal_remfade);
-
+        boolean popupChanged;
         final Signal droneSignal = drone.getAttribute(AttributeType.SIGNAL);
         if (!drone.isConnected() || !droneSignal.isValid()) {
-            signalTelem.setText(emptyString);
-            signalTelem.setCompoundDrawablesWithIntrinsicBounds(R.drawable.ic_signal_cellular_null_grey_700_18dp,
-                    0, 0, 0);
-
-            rssiView.setText("RSSI: " + emptyString);
-            remRssiView.setText("RemRSSI: " + emptyString);
-            noiseView.setText("Noise: " + emptyString);
-            remNoiseView.setText("RemNoise: " + emptyString);
-            fadeView.setText("Fade: " + emptyString);
-            remFadeView.setText("RemFade: " + emptyString);
+            signalTelem.clear().append(emptyString).apply();
+            signalTelem.setIcon(R.drawable.ic_signal_cellular_null_grey_700_18dp);
+
+            popupChanged = rssiTelem.clear().append("RSSI: ").append(emptyString).apply();
+            popupChanged |= remRssiTelem.clear().append("RemRSSI: ").append(emptyString).apply();
+            popupChanged |= noiseTelem.clear().append("Noise: ").append(emptyString).apply();
+            popupChanged |= remNoiseTelem.clear().append("RemNoise: ").append(emptyString).apply();
+            popupChanged |= fadeTelem.clear().append("Fade: ").append(emptyString).apply();
+            popupChanged |= remFadeTelem.clear().append("RemFade: ").append(emptyString).apply();
         } else {
             final int signalStrength = (int) droneSignal.getSignalStrength();
             final int signalIcon;
@@ -312,44 +441,49 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
             else
                 signalIcon = R.drawable.ic_signal_cellular_0_bar_grey_700_18dp;
 
-            signalTelem.setText(String.format(Locale.ENGLISH, "%d%%", signalStrength));
-            signalTelem.setCompoundDrawablesWithIntrinsicBounds(signalIcon, 0, 0, 0);
+            signalTelem.clear().append(signalStrength).append('%').apply();
+            signalTelem.setIcon(signalIcon);
 
-            rssiView.setText(String.format("RSSI %2.0f dB", droneSignal.getRssi()));
-            remRssiView.setText(String.format("RemRSSI %2.0f dB", droneSignal.getRemrssi()));
-            noiseView.setText(String.format("Noise %2.0f dB", droneSignal.getNoise()));
-            remNoiseView.setText(String.format("RemNoise %2.0f dB", droneSignal.getRemnoise()));
-            fadeView.setText(String.format("Fade %2.0f dB", droneSignal.getFadeMargin()));
-            remFadeView.setText(String.format("RemFade %2.0f dB", droneSignal.getRemFadeMargin()));
+            popupChanged = rssiTelem.clear().append("RSSI ").append(droneSignal.getRssi(), 2, 0).append(" dB").apply();
+            popupChanged |= remRssiTelem.clear().append("RemRSSI ").append(droneSignal.getRemrssi(), 2, 0).append(" dB").apply();
+            popupChanged |= noiseTelem.clear().append("Noise ").append(droneSignal.getNoise(), 2, 0).append(" dB").apply();
+            popupChanged |= remNoiseTelem.clear().append("RemNoise ").append(droneSignal.getRemnoise(), 2, 0).append(" dB").apply();
+            popupChanged |= fadeTelem.clear().append("Fade ").append(droneSignal.getFadeMargin(), 2, 0).append(" dB").apply();
+            popupChanged |= remFadeTelem.clear().append("RemFade ").append(droneSignal.getRemFadeMargin(), 2, 0).append(" dB").apply();
         }
 
-        signalPopup.update();
+        if (popupChanged)
+            signalPopup.update();
     }
 
     private void updateGpsTelem() {
         final Drone drone = getDrone();
         final boolean displayHdop = appPrefs.shouldGpsHdopBeDisplayed();
 
-        final View popupView = gpsPopup.getContentView();
-        TextView satNoView = (TextView) popupView.findViewById(R.id.bar_gps_satno);
-        TextView hdopStatusView = (TextView) popupView.findViewById(R.id.bar_gps_hdop_status);
-        hdopStatusView.setVisibility(displayHdop ? View.GONE : View.VISIBLE);
+        final int hdopStatusVisibility = displayHdop ? View.GONE : View.VISIBLE;
+        boolean popupChanged = hdopStatusView.getVisibility() != hdopStatusVisibility;
+        if (popupChanged)
+            hdopStatusView.setVisibility(hdopStatusVisibility);
 
-        final String update;
+        gpsTelem.clear();
         final int gpsIcon;
         if (!drone.isConnected()) {
-            update = (displayHdop ? "hdop: " : "") + emptyString;
+            if (displayHdop)
+                gpsTelem.append("hdop: ");
+            gpsTelem.append(emptyString);
             gpsIcon = R.drawable.ic_gps_off_grey_700_18dp;
-            satNoView.setText("S: " + emptyString);
-            hdopStatusView.setText("hdop: " + emptyString);
+            popupChanged |= satNoTelem.clear().append("S: ").append(emptyString).apply();
+            popupChanged |= hdopStatusTelem.clear().append("hdop: ").append(emptyString).apply();
         } else {
             Gps droneGps = drone.getAttribute(AttributeType.GPS);
             final String fixStatus = droneGps.getFixStatus();
 
             if (displayHdop) {
-                update = String.format(Locale.ENGLISH, "hdop: %.1f", droneGps.getGpsEph());
+                gpsTelem.append("hdop: ").append(droneGps.getGpsEph(), 0, 1);
+                hdopStatusTelem.clear().append(fixStatus);
             } else {
-                update = String.format(Locale.ENGLISH, "%s", fixStatus);
+                gpsTelem.append(fixStatus);
+                hdopStatusTelem.clear().append("hdop: ").append(droneGps.getGpsEph(), 0, 1);
             }
 
             switch (fixStatus) {
@@ -366,23 +500,21 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
                     break;
             }
 
-            satNoView.setText(String.format(Locale.ENGLISH, "S: %d", droneGps.getSatellitesCount()));
-            if (appPrefs.shouldGpsHdopBeDisplayed()) {
-                hdopStatusView.setText(String.format(Locale.ENGLISH, "%s", fixStatus));
-            } else {
-                hdopStatusView.setText(String.format(Locale.ENGLISH, "hdop: %.1f", droneGps.getGpsEph()));
-            }
+            popupChanged |= satNoTelem.clear().append("S: ").append(droneGps.getSatellitesCount()).apply();
+            popupChanged |= hdopStatusTelem.apply();
         }
 
-        gpsTelem.setText(update);
-        gpsTelem.setCompoundDrawablesWithIntrinsicBounds(gpsIcon, 0, 0, 0);
-        gpsPopup.update();
+        gpsTelem.apply();
+        gpsTelem.setIcon(gpsIcon);
+        if (popupChanged)
+            gpsPopup.update();
     }
 
     private void updateHomeTelem() {
         final Drone drone = getDrone();
 
-        String update = getString(R.string.empty_content);
+        homeTelem.clear();
+        boolean hasDistance = false;
         int drawableResId = appPrefs.isReturnToMeEnabled()
                 ? R.drawable.ic_person_grey_700_18dp
                 : R.drawable.ic_home_grey_700_18dp;
@@ -391,9 +523,7 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
             final Gps droneGps = drone.getAttribute(AttributeType.GPS);
             final Home droneHome = drone.getAttribute(AttributeType.HOME);
             if (droneGps.isValid() && droneHome.isValid()) {
-                LengthUnit distanceToHome = getLengthUnitProvider().boxBaseValueToTarget
-                        (MathUtils.getDistance2D(droneHome.getCoordinate(), droneGps.getPosition()));
-                update = String.format("%s", distanceToHome);
+                hasDistance = true;
 
                 final ReturnToMeState returnToMe = drone.getAttribute(AttributeType.RETURN_TO_ME_STATE);
                 switch (returnToMe.getState()) {
@@ -408,50 +538,54 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
                     case ReturnToMeState.STATE_WAITING_FOR_VEHICLE_GPS:
                     case ReturnToMeState.STATE_ERROR_UPDATING_HOME:
                         drawableResId = R.drawable.ic_person_red_500_18dp;
-                        update = getString(R.string.empty_content);
+                        hasDistance = false;
                         break;
                 }
+
+                if (hasDistance) {
+                    homeTelem.append(getLengthUnitProvider().boxBaseValueToTarget
+                            (MathUtils.getDistance2D(droneHome.getCoordinate(), droneGps.getPosition())));
+                }
             }
         }
 
-        homeTelem.setCompoundDrawablesWithIntrinsicBounds(drawableResId, 0, 0, 0);
-        homeTelem.setText(update);
+        if (!hasDistance)
+            homeTelem.append(emptyString);
+
+        homeTelem.setIcon(drawableResId);
+        homeTelem.apply();
     }
 
     private void updateBatteryTelem() {
         final Drone drone = getDrone();
 
-        final View batteryPopupView = batteryPopup.getContentView();
-        final TextView dischargeView = (TextView) batteryPopupView.findViewById(R.id.bar_power_discharge);
-        final TextView currentView = (TextView) batteryPopupView.findViewById(R.id.bar_power_current);
-        final TextView remainView = (TextView) batteryPopupView.findViewById(R.id.bar_power_remain);
-
-        String update;
+        boolean popupChanged;
         Battery droneBattery;
         final int batteryIcon;
+        batteryTelem.clear();
         if (!drone.isConnected() || ((droneBattery = drone.getAttribute(AttributeType.BATTERY)) == null)) {
-            update = emptyString;
-            dischargeView.setText("D: " + emptyString);
-            currentView.setText("C: " + emptyString);
-            remainView.setText("R: " + emptyString);
+            batteryTelem.append(emptyString);
+            popupChanged = dischargeTelem.clear().append("D: ").append(emptyString).apply();
+            popupChanged |= currentTelem.clear().append("C: ").append(emptyString).apply();
+            popupChanged |= remainTelem.clear().append("R: ").append(emptyString).apply();
             batteryIcon = R.drawable.ic_battery_circle_0_24dp;
         } else {
             Double discharge = droneBattery.getBatteryDischarge();
-            String dischargeText;
+            dischargeTelem.clear().append("D: ");
             if (discharge == null) {
-                dischargeText = "D: " + emptyString;
+                dischargeTelem.append(emptyString);
             } else {
-                dischargeText = "D: " + electricChargeToString(discharge);
+                appendElectricCharge(dischargeTelem, discharge);
             }
 
-            dischargeView.setText(dischargeText);
+            popupChanged = dischargeTelem.apply();
 
             final double battRemain = droneBattery.getBatteryRemain();
-            remainView.setText(String.format(Locale.ENGLISH, "R: %2.0f %%", battRemain));
-            currentView.setText(String.format("C: %2.1f A", droneBattery.getBatteryCurrent()));
+            popupChanged |= remainTelem.clear().append("R: ").append(battRemain, 2, 0).append(" %").apply();
+            popupChanged |= currentTelem.clear().append("C: ").append(droneBattery.getBatteryCurrent(), 2, 1).append(" A").apply();
 
 
-            update = String.format(Locale.ENGLISH, "%2.1f V", droneBattery.getBatteryVoltage());
+            batteryTelem.append(droneBattery.getBatteryVoltage(), 2, 1).append(" V");
 
             if (battRemain >= 100) {
                 batteryIcon = R.drawable.ic_battery_circle_8_24dp;
@@ -474,17 +608,18 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
             }
         }
 
-        batteryPopup.update();
-        batteryTelem.setText(update);
-        batteryTelem.setCompoundDrawablesWithIntrinsicBounds(batteryIcon, 0, 0, 0);
+        if (popupChanged)
+            batteryPopup.update();
+        batteryTelem.apply();
+        batteryTelem.setIcon(batteryIcon);
     }
 
-    private String electricChargeToString(double chargeInmAh) {
+    private static void appendElectricCharge(TelemetryText text, double chargeInmAh) {
         double absCharge = Math.abs(chargeInmAh);
         if (absCharge >= 1000) {
-            return String.format(Locale.US, "%2.1f Ah", chargeInmAh / 1000);
+            text.append(chargeInmAh / 1000, 2, 1).append(" Ah");
         } else {
-            return String.format(Locale.ENGLISH, "%2.0f mAh", chargeInmAh);
+            text.append(chargeInmAh, 2, 0).append(" mAh");
         }
     }
 
@@ -493,9 +628,7 @@ public class ActionBarTelemFragment extends ApiListenerFragment {
         final Altitude altitude = drone.getAttribute(AttributeType.ALTITUDE);
         if (altitude != null) {
             double alt = altitude.getAltitude();
-            LengthUnit altUnit = getLengthUnitProvider().boxBaseValueToTarget(alt);
-
-            this.altitudeTelem.setText(altUnit.toString());
+            altitudeTelem.clear().append(getLengthUnitProvider().boxBaseValueToTarget(alt)).apply();
         }
     }
 
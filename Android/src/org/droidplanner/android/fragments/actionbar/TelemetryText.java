@@ -0,0 +1,185 @@
+package org.droidplanner.android.fragments.actionbar;
+
+import android.widget.TextView;
+
+import org.beyene.sius.unit.length.Foot;
+import org.beyene.sius.unit.length.Inch;
+import org.beyene.sius.unit.length.KiloMeter;
+import org.beyene.sius.unit.length.LengthUnit;
+import org.beyene.sius.unit.length.Meter;
+import org.beyene.sius.unit.length.Mile;
+import org.beyene.sius.unit.length.MilliMeter;
+
+import java.util.Arrays;
+
+/**
+ * Text of a telemetry view, formatted into a reusable char buffer.
+ * <p/>
+ * The text is built again on every update, but the view is only touched when the result differs
+ * from what it already displays. Numbers are formatted by hand: String.format parses its pattern
+ * and allocates on every call, which adds up at the telemetry rate.
+ */
+class TelemetryText {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000};
+
+    private final TextView view;
+
+    //Text being built, and the one handed to the view. The view keeps a reference to the latter.
+    private char[] pending = new char[INITIAL_CAPACITY];
+    private int pendingLength;
+    private char[] shown = new char[INITIAL_CAPACITY];
+    private int shownLength = -1;
+
+    private int shownIcon;
+    private boolean iconSet;
+
+    TelemetryText(TextView view) {
+        this.view = view;
+    }
+
+    TelemetryText clear() {
+        pendingLength = 0;
+        return this;
+    }
+
+    TelemetryText append(char c) {
+        ensureCapacity(1);
+        pending[pendingLength++] = c;
+        return this;
+    }
+
+    TelemetryText append(String text) {
+        final int length = text.length();
+        ensureCapacity(length);
+        text.getChars(0, length, pending, pendingLength);
+        pendingLength += length;
+        return this;
+    }
+
+    TelemetryText append(long value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        appendDigits(value, 1);
+        return this;
+    }
+
+    /**
+     * Same output as the "%[width].[decimals]f" format, rounding half up.
+     *
+     * @param decimals Number of digits after the decimal point, at most 3.
+     */
+    TelemetryText append(double value, int width, int decimals) {
+        final int start = pendingLength;
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            append(Double.isNaN(value) ? "NaN" : (value > 0 ? "Infinity" : "-Infinity"));
+        } else {
+            final long scale = POWERS_OF_TEN[decimals];
+            final long scaled = Math.round(Math.abs(value) * scale);
+
+            if (value < 0)
+                append('-');
+
+            appendDigits(scaled / scale, 1);
+            if (decimals > 0) {
+                append('.');
+                appendDigits(scaled % scale, decimals);
+            }
+        }
+
+        final int padding = width - (pendingLength - start);
+        if (padding > 0) {
+            ensureCapacity(padding);
+            System.arraycopy(pending, start, pending, start + padding, pendingLength - start);
+            Arrays.fill(pending, start, start + padding, ' ');
+            pendingLength += padding;
+        }
+        return this;
+    }
+
+    /**
+     * Same output as {@link LengthUnit#toString()}.
+     */
+    TelemetryText append(LengthUnit length) {
+        final String symbol = getSymbol(length);
+        if (symbol == null)
+            return append(length.toString());
+
+        return append(length.getValue(), 2, 1).append(' ').append(symbol);
+    }
+
+    /**
+     * Displays the text built since the last {@link #clear()}, if it differs from the current one.
+     *
+     * @return true if the view was updated.
+     */
+    boolean apply() {
+        if (pendingLength == shownLength) {
+            boolean changed = false;
+            for (int i = 0; i < pendingLength && !changed; i++)
+                changed = pending[i] != shown[i];
+
+            if (!changed)
+                return false;
+        }
+
+        final char[] text = pending;
+        pending = shown;
+        shown = text;
+        shownLength = pendingLength;
+
+        view.setText(shown, 0, shownLength);
+        return true;
+    }
+
+    /**
+     * Sets the icon on the left of the text, if it differs from the current one.
+     */
+    void setIcon(int drawableResId) {
+        if (iconSet && shownIcon == drawableResId)
+            return;
+
+        shownIcon = drawableResId;
+        iconSet = true;
+        view.setCompoundDrawablesWithIntrinsicBounds(drawableResId, 0, 0, 0);
+    }
+
+    private void appendDigits(long value, int minDigits) {
+        final int start = pendingLength;
+        do {
+            append((char) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0 || pendingLength - start < minDigits);
+
+        for (int i = start, j = pendingLength - 1; i < j; i++, j--) {
+            final char c = pending[i];
+            pending[i] = pending[j];
+            pending[j] = c;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (pendingLength + extra > pending.length)
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + extra));
+    }
+
+    private static String getSymbol(LengthUnit length) {
+        if (length instanceof Meter)
+            return "m";
+        if (length instanceof KiloMeter)
+            return "km";
+        if (length instanceof MilliMeter)
+            return "mm";
+        if (length instanceof Foot)
+            return "ft";
+        if (length instanceof Inch)
+            return "in";
+        if (length instanceof Mile)
+            return "mi";
+        return null;
+    }
+}
@@ -13,6 +13,7 @@ import com.o3dr.android.client.Drone;
 import org.droidplanner.android.DroidPlannerApp;
 import org.droidplanner.android.fragments.SettingsFragment;
 import org.droidplanner.android.proxy.mission.MissionProxy;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 import org.droidplanner.android.utils.unit.UnitManager;
 import org.droidplanner.android.utils.unit.providers.area.AreaUnitProvider;
@@ -62,6 +63,10 @@ public abstract class ApiListenerFragment extends Fragment implements DroidPlann
 		return broadcastManager;
 	}
 
+	protected TelemetryBus getTelemetryBus() {
+		return dpApp.getTelemetryBus();
+	}
+
 	@Override
 	public void onAttach(Activity activity) {
 		super.onAttach(activity);
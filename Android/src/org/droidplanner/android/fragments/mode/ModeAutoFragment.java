@@ -1,13 +1,8 @@
 package org.droidplanner.android.fragments.mode;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,6 +27,7 @@ import org.droidplanner.android.DroidPlannerApp;
 import org.droidplanner.android.R;
 import org.droidplanner.android.proxy.mission.MissionProxy;
 import org.droidplanner.android.proxy.mission.item.markers.MissionItemMarkerInfo;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.view.spinnerWheel.CardWheelHorizontalView;
 import org.droidplanner.android.view.spinnerWheel.adapters.NumericWheelAdapter;
 
@@ -41,25 +37,25 @@ import java.util.List;
 public class ModeAutoFragment extends Fragment implements View.OnClickListener, CardWheelHorizontalView.OnCardWheelScrollListener<Integer> {
     private Drone drone;
 
-    private static final IntentFilter eventFilter = new IntentFilter();
-    static{
-        eventFilter.addAction(AttributeEvent.MISSION_ITEM_UPDATED);
-        eventFilter.addAction(AttributeEvent.PARAMETER_RECEIVED);
-        eventFilter.addAction(AttributeEvent.GPS_POSITION);
-        eventFilter.addAction(AttributeEvent.MISSION_UPDATED);
-        eventFilter.addAction(AttributeEvent.MISSION_RECEIVED);
-    }
-    private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
+    private static final long EVENTS_UPDATE_INTERVAL = 200; //ms
+
+    private static final String[] EVENTS = {
+            AttributeEvent.MISSION_ITEM_UPDATED,
+            AttributeEvent.PARAMETER_RECEIVED,
+            AttributeEvent.GPS_POSITION,
+            AttributeEvent.MISSION_UPDATED,
+            AttributeEvent.MISSION_RECEIVED
+    };
+    private final TelemetryBus.Listener eventListener = new TelemetryBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            final String action = intent.getAction();
-            switch (action){
+        public void onTelemetryEvent(String event, Bundle extras) {
+            switch (event){
                 case AttributeEvent.MISSION_RECEIVED:
                 case AttributeEvent.MISSION_UPDATED:
                     final MissionProxy missionProxy = getMissionProxy();
                     if(missionProxy != null) {
                         mission = drone.getAttribute(AttributeType.MISSION);
-                        waypointSelectorAdapter = new NumericWheelAdapter(context, R.layout.wheel_text_centered,
+                        waypointSelectorAdapter = new NumericWheelAdapter(getActivity().getApplicationContext(), R.layout.wheel_text_centered,
                                 missionProxy.getFirstWaypoint(), missionProxy.getLastWaypoint(), "%3d");
                         waypointSelector.setViewAdapter(waypointSelectorAdapter);
                     }
@@ -67,7 +63,7 @@ public class ModeAutoFragment extends Fragment implements View.OnClickListener,
 
                 case AttributeEvent.MISSION_ITEM_UPDATED:
                     mission = drone.getAttribute(AttributeType.MISSION);
-                    nextWaypoint = intent.getIntExtra(AttributeEventExtra.EXTRA_MISSION_CURRENT_WAYPOINT, 0);
+                    nextWaypoint = extras == null ? 0 : extras.getInt(AttributeEventExtra.EXTRA_MISSION_CURRENT_WAYPOINT, 0);
                     waypointSelector.setCurrentValue(nextWaypoint);
                     break;
                 case AttributeEvent.GPS_POSITION:
@@ -109,6 +105,10 @@ public class ModeAutoFragment extends Fragment implements View.OnClickListener,
         waypointSelector.setViewAdapter(waypointSelectorAdapter);
     }
 
+    private TelemetryBus getTelemetryBus(){
+        return ((DroidPlannerApp) getActivity().getApplication()).getTelemetryBus();
+    }
+
     private MissionProxy getMissionProxy(){
         final Activity activity = getActivity();
         if(activity == null)
@@ -137,13 +137,13 @@ public class ModeAutoFragment extends Fragment implements View.OnClickListener,
     @Override
     public void onStart() {
         super.onStart();
-        LocalBroadcastManager.getInstance(getActivity().getApplicationContext()).registerReceiver(eventReceiver, eventFilter);
+        getTelemetryBus().subscribe(eventListener, EVENTS_UPDATE_INTERVAL, EVENTS);
     }
 
     @Override
     public void onStop() {
         super.onStop();
-        LocalBroadcastManager.getInstance(getActivity().getApplicationContext()).unregisterReceiver(eventReceiver);
+        getTelemetryBus().unsubscribe(eventListener);
     }
 
     private void gotoMissionItem(final int waypoint){
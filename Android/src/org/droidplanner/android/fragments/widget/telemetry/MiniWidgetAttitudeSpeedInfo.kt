@@ -1,9 +1,5 @@
 package org.droidplanner.android.fragments.widget.telemetry
 
-import android.content.BroadcastReceiver
-import android.content.Context
-import android.content.Intent
-import android.content.IntentFilter
 import android.os.Bundle
 import android.preference.PreferenceManager
 import android.view.LayoutInflater
@@ -17,6 +13,7 @@ import com.o3dr.services.android.lib.drone.property.Speed
 import org.droidplanner.android.R
 import org.droidplanner.android.fragments.widget.TowerWidget
 import org.droidplanner.android.fragments.widget.TowerWidgets
+import org.droidplanner.android.utils.TelemetryBus
 import org.droidplanner.android.view.AttitudeIndicator
 import java.lang.String
 import java.util.*
@@ -27,21 +24,15 @@ import java.util.*
 public class MiniWidgetAttitudeSpeedInfo : TowerWidget() {
 
     companion object {
-        private val filter = initFilter()
-
-        private fun initFilter(): IntentFilter {
-            val temp = IntentFilter()
-            temp.addAction(AttributeEvent.ATTITUDE_UPDATED)
-            temp.addAction(AttributeEvent.SPEED_UPDATED)
-            temp.addAction(AttributeEvent.GPS_POSITION)
-            temp.addAction(AttributeEvent.HOME_UPDATED)
-            return temp
-        }
+        /**
+         * Keeps the attitude indicator fluid.
+         */
+        private const val UPDATE_INTERVAL = 50L // ms
     }
 
-    private val receiver = object : BroadcastReceiver() {
-        override fun onReceive(context: Context, intent: Intent) {
-            when (intent.action) {
+    private val listener = object : TelemetryBus.Listener {
+        override fun onTelemetryEvent(event: String, extras: Bundle?) {
+            when (event) {
                 AttributeEvent.ATTITUDE_UPDATED -> onOrientationUpdate()
                 AttributeEvent.SPEED_UPDATED -> onSpeedUpdate()
             }
@@ -86,11 +77,11 @@ public class MiniWidgetAttitudeSpeedInfo : TowerWidget() {
 
     override fun onApiConnected() {
         updateAllTelem()
-        broadcastManager.registerReceiver(receiver, filter)
+        telemetryBus.subscribe(listener, UPDATE_INTERVAL, AttributeEvent.ATTITUDE_UPDATED, AttributeEvent.SPEED_UPDATED)
     }
 
     override fun onApiDisconnected() {
-        broadcastManager.unregisterReceiver(receiver)
+        telemetryBus.unsubscribe(listener)
     }
 
     private fun updateAllTelem() {
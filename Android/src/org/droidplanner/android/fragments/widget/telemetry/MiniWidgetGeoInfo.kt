@@ -14,6 +14,7 @@ import com.o3dr.services.android.lib.drone.property.Gps
 import org.droidplanner.android.R
 import org.droidplanner.android.fragments.widget.TowerWidget
 import org.droidplanner.android.fragments.widget.TowerWidgets
+import org.droidplanner.android.utils.TelemetryBus
 
 /**
  * Created by Fredia Huya-Kouadio on 9/20/15.
@@ -21,19 +22,12 @@ import org.droidplanner.android.fragments.widget.TowerWidgets
 public class MiniWidgetGeoInfo : TowerWidget() {
 
     companion object {
-        private val filter = initFilter()
-
-        private fun initFilter(): IntentFilter {
-            val temp = IntentFilter()
-            temp.addAction(AttributeEvent.GPS_POSITION)
-            temp.addAction(AttributeEvent.HOME_UPDATED)
-            return temp
-        }
+        private const val UPDATE_INTERVAL = 200L // ms
     }
 
-    private val receiver = object : BroadcastReceiver() {
-        override fun onReceive(context: Context, intent: Intent) {
-            when (intent.action) {
+    private val listener = object : TelemetryBus.Listener {
+        override fun onTelemetryEvent(event: String, extras: Bundle?) {
+            when (event) {
                 AttributeEvent.GPS_POSITION, AttributeEvent.HOME_UPDATED -> onPositionUpdate()
             }
         }
@@ -76,11 +70,11 @@ public class MiniWidgetGeoInfo : TowerWidget() {
 
     override fun onApiConnected() {
         onPositionUpdate()
-        broadcastManager.registerReceiver(receiver, filter)
+        telemetryBus.subscribe(listener, UPDATE_INTERVAL, AttributeEvent.GPS_POSITION, AttributeEvent.HOME_UPDATED)
     }
 
     override fun onApiDisconnected() {
-        broadcastManager.unregisterReceiver(receiver)
+        telemetryBus.unsubscribe(listener)
     }
 
     private fun onPositionUpdate() {
@@ -104,6 +104,19 @@ public interface DPMap {
 		boolean onMarkerClick(MarkerInfo markerInfo);
 	}
 
+	/**
+	 * Implemented by classes interested in the map camera moves.
+	 */
+	interface OnCameraChangeListener {
+		/**
+		 * Triggered when the camera stopped moving.
+		 *
+		 * @param visibleMapArea
+		 *            the map area now visible on screen.
+		 */
+		void onCameraChange(VisibleMapArea visibleMapArea);
+	}
+
 	/**
 	 * Callback interface for drag events on markers.
 	 */
@@ -343,6 +356,15 @@ public interface DPMap {
 	 */
 	void setOnMarkerDragListener(OnMarkerDragListener listener);
 
+	/**
+	 * Sets a callback that's invoked when the map camera moved.
+	 * 
+	 * @param listener
+	 *            The callback that's invoked when the camera moved. To unset
+	 *            the callback, use null.
+	 */
+	void setOnCameraChangeListener(OnCameraChangeListener listener);
+
     /**
      * Sets a callback that's invoked when the user location is updated.
      * @param listener
@@ -88,6 +88,12 @@ public interface MarkerInfo {
 	 */
 	boolean isVisible();
 
+	/**
+	 * @return true if the marker may be merged with its neighbours when the
+	 *         map is zoomed out.
+	 */
+	boolean isClusterable();
+
 	/**
 	 * Default implementation of the MarkerInfo interface.
 	 */
@@ -161,6 +167,11 @@ public interface MarkerInfo {
 		public boolean isVisible() {
 			return false;
 		}
+
+		@Override
+		public boolean isClusterable() {
+			return false;
+		}
 	}
 
 
@@ -0,0 +1,348 @@
+package org.droidplanner.android.maps;
+
+import android.support.v4.util.LongSparseArray;
+
+import com.o3dr.services.android.lib.coordinate.LatLong;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Keeps the markers of a {@link DPMap} in sync with their {@link MarkerInfo}, touching the map only
+ * for what changed.
+ * <p/>
+ * Markers are tracked by identity and grouped in layers, each set from a list of marker infos. A
+ * layer set again with the same list instance is left as is, so a source hands out a new list when
+ * its markers are added or removed. A marker is only refreshed on the map once invalidated.
+ * <p/>
+ * The markers of a culled layer are indexed in a grid of {@link #CELL_SIZE} cells, and only those
+ * in a cell overlapping the visible map area are on the map. The others are added back, along with
+ * their pending changes, when the camera brings their cell into view.
+ * <p/>
+ * Main thread only.
+ */
+public class MarkerReconciler {
+
+    /**
+     * Side of a grid cell, about 220 m along a meridian.
+     */
+    private static final double CELL_SIZE = 0.002; //degrees
+
+    /**
+     * A group of markers set from a single list.
+     */
+    public static class Layer {
+        private final boolean culled;
+        private List<MarkerInfo> markerInfos = Collections.emptyList();
+        private ArrayList<Entry> entries = new ArrayList<>();
+
+        private Layer(boolean culled) {
+            this.culled = culled;
+        }
+    }
+
+    private static class Entry {
+        final MarkerInfo info;
+        Layer layer;
+
+        //Grid cell holding this marker, null if it is always shown.
+        Cell cell;
+
+        //Whether the marker was added to the map, and changed since it was last applied.
+        boolean onMap;
+        boolean dirty = true;
+
+        //Whether it is in the pending entries.
+        boolean queued;
+
+        //Last layer update which listed it.
+        int pass;
+
+        Entry(MarkerInfo info, Layer layer) {
+            this.info = info;
+            this.layer = layer;
+        }
+    }
+
+    private static class Cell {
+        final long key;
+        final int row;
+        final int column;
+        final ArrayList<Entry> entries = new ArrayList<>();
+        boolean visible;
+
+        Cell(long key, int row, int column) {
+            this.key = key;
+            this.row = row;
+            this.column = column;
+        }
+    }
+
+    private final DPMap map;
+    private final List<Layer> layers = new ArrayList<>();
+    private final IdentityHashMap<MarkerInfo, Entry> entries = new IdentityHashMap<>();
+    private final LongSparseArray<Cell> grid = new LongSparseArray<>();
+    private int pass;
+
+    //Entries to apply on the next commit, and markers to remove from the map.
+    private final ArrayList<Entry> pending = new ArrayList<>();
+    private final ArrayList<MarkerInfo> removals = new ArrayList<>();
+
+    //Bounds of the visible map area, if known.
+    private boolean hasBounds;
+    private double minLatitude;
+    private double maxLatitude;
+    private double minLongitude;
+    private double maxLongitude;
+
+    public MarkerReconciler(DPMap map) {
+        this.map = map;
+    }
+
+    public DPMap getMap() {
+        return map;
+    }
+
+    /**
+     * @param culled Whether the markers of the layer are only shown within the visible map area.
+     */
+    public Layer addLayer(boolean culled) {
+        final Layer layer = new Layer(culled);
+        layers.add(layer);
+        return layer;
+    }
+
+    /**
+     * Replaces the markers of the layer. New markers are added on the next commit, and the ones
+     * missing from the list are removed.
+     */
+    public void setMarkers(Layer layer, List<MarkerInfo> markerInfos) {
+        if (markerInfos == layer.markerInfos)
+            return;
+
+        pass++;
+        final ArrayList<Entry> layerEntries = new ArrayList<>(markerInfos.size());
+        for (MarkerInfo info : markerInfos) {
+            Entry entry = entries.get(info);
+            if (entry == null) {
+                entry = new Entry(info, layer);
+                entries.put(info, entry);
+                queue(entry);
+            } else if (entry.pass == pass) {
+                continue;
+            } else if (entry.layer != layer) {
+                entry.layer = layer;
+                if (!layer.culled)
+                    setCell(entry, null);
+                invalidate(entry);
+            }
+
+            entry.pass = pass;
+            layerEntries.add(entry);
+        }
+
+        for (Entry entry : layer.entries) {
+            if (entry.pass != pass && entry.layer == layer)
+                remove(entry);
+        }
+
+        layer.entries = layerEntries;
+        layer.markerInfos = markerInfos;
+    }
+
+    /**
+     * Refreshes the marker on the next commit, or when it comes into view.
+     */
+    public void invalidate(MarkerInfo info) {
+        final Entry entry = entries.get(info);
+        if (entry != null)
+            invalidate(entry);
+    }
+
+    public void invalidate(Layer layer) {
+        for (Entry entry : layer.entries)
+            invalidate(entry);
+    }
+
+    /**
+     * Updates which markers of the culled layers belong on the map. Takes effect on the next
+     * commit.
+     *
+     * @param visibleMapArea null to show all the markers.
+     */
+    public void setVisibleArea(DPMap.VisibleMapArea visibleMapArea) {
+        hasBounds = visibleMapArea != null && setBounds(visibleMapArea);
+
+        for (int i = 0, size = grid.size(); i < size; i++) {
+            final Cell cell = grid.valueAt(i);
+            final boolean visible = isVisible(cell);
+            if (visible == cell.visible)
+                continue;
+
+            cell.visible = visible;
+            for (Entry entry : cell.entries) {
+                if (visible)
+                    queue(entry);
+                else if (entry.onMap) {
+                    removals.add(entry.info);
+                    entry.onMap = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the pending changes to the map.
+     */
+    public void commit() {
+        flushRemovals();
+
+        final int count = pending.size();
+        for (int i = 0; i < count; i++) {
+            final Entry entry = pending.get(i);
+            entry.queued = false;
+            if (entry.layer == null)
+                continue;
+
+            if (entry.layer.culled)
+                relocate(entry);
+
+            if (entry.cell == null || entry.cell.visible) {
+                if (entry.dirty || !entry.onMap) {
+                    map.updateMarker(entry.info);
+                    entry.onMap = true;
+                    entry.dirty = false;
+                }
+            } else if (entry.onMap) {
+                removals.add(entry.info);
+                entry.onMap = false;
+            }
+        }
+        pending.clear();
+
+        flushRemovals();
+    }
+
+    /**
+     * Forgets all the markers, to be called once they were cleared from the map.
+     */
+    public void clear() {
+        for (Entry entry : entries.values())
+            entry.layer = null;
+
+        entries.clear();
+        grid.clear();
+        pending.clear();
+        removals.clear();
+
+        for (Layer layer : layers) {
+            layer.markerInfos = Collections.emptyList();
+            layer.entries = new ArrayList<>();
+        }
+    }
+
+    private void invalidate(Entry entry) {
+        entry.dirty = true;
+        queue(entry);
+    }
+
+    private void queue(Entry entry) {
+        if (!entry.queued) {
+            entry.queued = true;
+            pending.add(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.info);
+        setCell(entry, null);
+        entry.layer = null;
+
+        //The marker may have been put on the map outside of this class.
+        removals.add(entry.info);
+        entry.onMap = false;
+    }
+
+    private void flushRemovals() {
+        if (!removals.isEmpty()) {
+            map.removeMarkers(removals);
+            removals.clear();
+        }
+    }
+
+    /**
+     * Moves the entry to the cell of its marker's current position.
+     */
+    private void relocate(Entry entry) {
+        final LatLong position = entry.info.getPosition();
+        if (position == null) {
+            setCell(entry, null);
+            return;
+        }
+
+        final int row = (int) Math.floor(position.getLatitude() / CELL_SIZE);
+        final int column = (int) Math.floor(position.getLongitude() / CELL_SIZE);
+        final long key = ((long) row << 32) | (column & 0xffffffffL);
+        if (entry.cell != null && entry.cell.key == key)
+            return;
+
+        Cell cell = grid.get(key);
+        if (cell == null) {
+            cell = new Cell(key, row, column);
+            cell.visible = isVisible(cell);
+            grid.put(key, cell);
+        }
+        setCell(entry, cell);
+    }
+
+    private void setCell(Entry entry, Cell cell) {
+        final Cell previous = entry.cell;
+        if (previous == cell)
+            return;
+
+        if (previous != null) {
+            previous.entries.remove(entry);
+            if (previous.entries.isEmpty())
+                grid.remove(previous.key);
+        }
+
+        entry.cell = cell;
+        if (cell != null)
+            cell.entries.add(entry);
+    }
+
+    private boolean isVisible(Cell cell) {
+        if (!hasBounds)
+            return true;
+
+        final double south = cell.row * CELL_SIZE;
+        final double west = cell.column * CELL_SIZE;
+        return south <= maxLatitude && south + CELL_SIZE >= minLatitude
+                && west <= maxLongitude && west + CELL_SIZE >= minLongitude;
+    }
+
+    /**
+     * @return false if the area can't be bounded, e.g. when it spans the antimeridian.
+     */
+    private boolean setBounds(DPMap.VisibleMapArea area) {
+        final LatLong[] corners = {area.farLeft, area.nearLeft, area.nearRight, area.farRight};
+
+        minLatitude = Double.POSITIVE_INFINITY;
+        maxLatitude = Double.NEGATIVE_INFINITY;
+        minLongitude = Double.POSITIVE_INFINITY;
+        maxLongitude = Double.NEGATIVE_INFINITY;
+        for (LatLong corner : corners) {
+            if (corner == null)
+                return false;
+
+            minLatitude = Math.min(minLatitude, corner.getLatitude());
+            maxLatitude = Math.max(maxLatitude, corner.getLatitude());
+            minLongitude = Math.min(minLongitude, corner.getLongitude());
+            maxLongitude = Math.max(maxLongitude, corner.getLongitude());
+        }
+
+        return maxLongitude - minLongitude < 180;
+    }
+}
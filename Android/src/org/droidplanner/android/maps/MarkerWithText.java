@@ -11,11 +11,24 @@ import android.graphics.Color;
 import android.graphics.LightingColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.util.LruCache;
 
 public class MarkerWithText {
 
 	private static final int RECT_PADDING = 6;
 
+	/**
+	 * Bytes of rendered icons kept for reuse.
+	 */
+	private static final int ICON_CACHE_SIZE = (int) Math.min(4 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+	private static final LruCache<String, Bitmap> iconCache = new LruCache<String, Bitmap>(ICON_CACHE_SIZE) {
+		@Override
+		protected int sizeOf(String key, Bitmap value) {
+			return value.getByteCount();
+		}
+	};
+
 	public static Bitmap getMarkerWithText(int color, String text, Context context) {
 		return drawTextToBitmap(context, R.drawable.ic_marker_white, color, text);
 	}
@@ -62,9 +75,19 @@ public class MarkerWithText {
 		return bitmap;
 	}
 
+	/**
+	 * Icons are rendered once per drawable, text and detail, then shared: the returned bitmap must
+	 * not be modified. A caller may compare it by reference to tell whether an icon changed.
+	 */
 	public static Bitmap getMarkerWithTextAndDetail(int gResId, String text, String detail,
 			Resources res) {
-		return drawTextAndDetailToBitmap(res, gResId, text, detail);
+		final String key = gResId + "|" + text + "|" + detail;
+		Bitmap icon = iconCache.get(key);
+		if (icon == null) {
+			icon = drawTextAndDetailToBitmap(res, gResId, text, detail);
+			iconCache.put(key, icon);
+		}
+		return icon;
 	}
 
 	/**
@@ -5,6 +5,7 @@ import android.support.v7.app.AppCompatActivity
 import android.view.View
 import android.widget.ProgressBar
 import android.widget.Toast
+import com.google.android.gms.maps.GoogleMap
 import com.google.android.gms.maps.model.CameraPosition
 import org.droidplanner.android.R
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader
@@ -88,6 +89,8 @@ class DownloadMapboxMapActivity : AppCompatActivity() {
 
     private var downloadMapFragment: DownloadMapboxMapFragment? = null
 
+    private val cameraChangeListener = GoogleMap.OnCameraChangeListener { onMapCameraChange(it) }
+
     private val downloadMapWarning: View by lazy {
         findViewById(R.id.download_map_warning) as View
     }
@@ -163,10 +166,8 @@ class DownloadMapboxMapActivity : AppCompatActivity() {
     override fun onStart() {
         super.onStart()
 
-        val mapFragment = downloadMapFragment?.mapFragment
-        (mapFragment as GoogleMapFragment).getMapAsync { googleMap ->
-            googleMap.setOnCameraChangeListener { onMapCameraChange(it) }
-        }
+        val mapFragment = downloadMapFragment?.mapFragment as GoogleMapFragment?
+        mapFragment?.addOnCameraChangeListener(cameraChangeListener)
 
         if (mapDownloader.state == MapDownloader.OfflineMapDownloaderState.RUNNING) {
             enableDownloadInstructions(false)
@@ -181,6 +182,9 @@ class DownloadMapboxMapActivity : AppCompatActivity() {
         if (isFinishing)
             cancelMapDownload()
         mapDownloader.removeMapDownloaderListener(mapDownloadListener)
+
+        val mapFragment = downloadMapFragment?.mapFragment as GoogleMapFragment?
+        mapFragment?.removeOnCameraChangeListener(cameraChangeListener)
     }
 
     override fun onBackPressed() {
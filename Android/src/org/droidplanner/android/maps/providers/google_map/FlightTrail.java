@@ -0,0 +1,149 @@
+package org.droidplanner.android.maps.providers.google_map;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.List;
+
+/**
+ * Last positions of the drone, in a fixed size ring buffer.
+ * <p/>
+ * A new position replaces the last one when the trail stays within {@link #TOLERANCE} of a straight
+ * line through the points it skips, so straight legs only take two slots and the buffer covers a
+ * longer part of the flight. Adding a position never allocates beyond the {@link LatLng} itself.
+ */
+class FlightTrail {
+
+    /**
+     * Maximum distance of a skipped position from the drawn trail.
+     */
+    private static final double TOLERANCE = 1; //m
+
+    /**
+     * Positions skipped in a row before one is kept regardless, bounding the cost of a check.
+     */
+    private static final int MAX_SKIPPED = 32;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6371009.0);
+
+    private final int capacity;
+    private final double[] lats;
+    private final double[] lons;
+    private final LatLng[] points;
+    private int head;
+    private int size;
+
+    //Positions replaced since the second to last one, checked again on each new position.
+    private final double[] skippedLats = new double[MAX_SKIPPED];
+    private final double[] skippedLons = new double[MAX_SKIPPED];
+    private int skippedCount;
+
+    FlightTrail(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid trail capacity: " + capacity);
+
+        this.capacity = capacity;
+        lats = new double[capacity];
+        lons = new double[capacity];
+        points = new LatLng[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return false if the position was too close to the last one to change the trail.
+     */
+    boolean add(LatLng position) {
+        final double lat = position.latitude;
+        final double lon = position.longitude;
+
+        if (size > 0) {
+            final int last = slot(size - 1);
+            if (getDistance(lats[last], lons[last], lat, lon, lat, lon) < TOLERANCE)
+                return false;
+
+            if (size > 1 && skippedCount < MAX_SKIPPED && canReplaceLast(lat, lon)) {
+                skippedLats[skippedCount] = lats[last];
+                skippedLons[skippedCount] = lons[last];
+                skippedCount++;
+                set(last, position);
+                return true;
+            }
+        }
+
+        skippedCount = 0;
+        if (size == capacity) {
+            //Drop the oldest position.
+            points[head] = null;
+            head = (head + 1) % capacity;
+            size--;
+        }
+        set(slot(size), position);
+        size++;
+        return true;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++)
+            points[slot(i)] = null;
+        head = 0;
+        size = 0;
+        skippedCount = 0;
+    }
+
+    /**
+     * Replaces the content of the given list with the trail, oldest position first.
+     */
+    void getPoints(List<LatLng> out) {
+        out.clear();
+        for (int i = 0; i < size; i++)
+            out.add(points[slot(i)]);
+    }
+
+    /**
+     * @return true if the last position, and the ones it replaced, lie close enough to the segment
+     * from the second to last position to the new one.
+     */
+    private boolean canReplaceLast(double lat, double lon) {
+        final int anchor = slot(size - 2);
+        final int last = slot(size - 1);
+        final double anchorLat = lats[anchor];
+        final double anchorLon = lons[anchor];
+
+        if (getDistance(lats[last], lons[last], anchorLat, anchorLon, lat, lon) > TOLERANCE)
+            return false;
+
+        for (int i = 0; i < skippedCount; i++) {
+            if (getDistance(skippedLats[i], skippedLons[i], anchorLat, anchorLon, lat, lon) > TOLERANCE)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the distance in meters from the point to the segment, on a plane tangent at its start.
+     */
+    private static double getDistance(double lat, double lon, double fromLat, double fromLon,
+                                      double toLat, double toLon) {
+        final double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(fromLat));
+        final double x = (lon - fromLon) * metersPerDegreeLon;
+        final double y = (lat - fromLat) * METERS_PER_DEGREE;
+        final double dx = (toLon - fromLon) * metersPerDegreeLon;
+        final double dy = (toLat - fromLat) * METERS_PER_DEGREE;
+
+        final double lengthSquared = dx * dx + dy * dy;
+        final double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (x * dx + y * dy) / lengthSquared));
+        return Math.hypot(x - t * dx, y - t * dy);
+    }
+
+    private void set(int slot, LatLng position) {
+        lats[slot] = position.latitude;
+        lons[slot] = position.longitude;
+        points[slot] = position;
+    }
+
+    private int slot(int index) {
+        return (head + index) % capacity;
+    }
+}
@@ -14,9 +14,11 @@ import android.location.Location;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.content.LocalBroadcastManager;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -82,16 +84,20 @@ import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.MapboxTil
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.MapboxUtils;
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader;
 import org.droidplanner.android.utils.DroneHelper;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.collection.HashBiMap;
 import org.droidplanner.android.utils.prefs.AutoPanMode;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 import org.droidplanner.android.wrapperPercorso.WrapperPercorso;
 import org.droidplanner.android.wrapperPercorso.WrapperPercorsoMarkerInfo;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -105,6 +111,9 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     private static final long USER_LOCATION_UPDATE_FASTEST_INTERVAL = 5000; // ms
     private static final float USER_LOCATION_UPDATE_MIN_DISPLACEMENT = 0; // m
 
+    private static final long FLIGHT_PATH_UPDATE_INTERVAL = 200; // ms
+    private static final long CAMERA_UPDATE_INTERVAL = 200; // ms
+
     private static final float CIRCLE_STROKE_WIDTH = 3;
 
     private static final float GO_TO_MY_LOCATION_ZOOM = 17f;
@@ -115,10 +124,26 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     private static final IntentFilter eventFilter = new IntentFilter();
 
     static {
-        eventFilter.addAction(AttributeEvent.GPS_POSITION);
         eventFilter.addAction(SettingsFragment.ACTION_MAP_ROTATION_PREFERENCE_UPDATED);
     }
 
+    private final TelemetryBus.Listener dronePositionListener = new TelemetryBus.Listener() {
+        @Override
+        public void onTelemetryEvent(String event, Bundle extras) {
+            if (mPanMode.get() == AutoPanMode.DRONE) {
+                final Drone drone = getDroneApi();
+                if (!drone.isConnected())
+                    return;
+
+                final Gps droneGps = drone.getAttribute(AttributeType.GPS);
+                if (droneGps != null && droneGps.isValid()) {
+                    final LatLong droneLocation = droneGps.getPosition();
+                    updateCamera(droneLocation);
+                }
+            }
+        }
+    };
+
     private final static Api<? extends Api.ApiOptions.NotRequiredOptions>[] apisList = new Api[]{LocationServices.API};
 
     private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
@@ -126,20 +151,6 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         public void onReceive(Context context, Intent intent) {
             final String action = intent.getAction();
             switch (action) {
-                case AttributeEvent.GPS_POSITION:
-                    if (mPanMode.get() == AutoPanMode.DRONE) {
-                        final Drone drone = getDroneApi();
-                        if (!drone.isConnected())
-                            return;
-
-                        final Gps droneGps = drone.getAttribute(AttributeType.GPS);
-                        if (droneGps != null && droneGps.isValid()) {
-                            final LatLong droneLocation = droneGps.getPosition();
-                            updateCamera(droneLocation);
-                        }
-                    }
-                    break;
-
                 case SettingsFragment.ACTION_MAP_ROTATION_PREFERENCE_UPDATED:
                     getMapAsync(new OnMapReadyCallback() {
                         @Override
@@ -154,6 +165,11 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
     private final HashBiMap<MarkerInfo, Marker> mBiMarkersMap = new HashBiMap<MarkerInfo, Marker>();
 
+    /**
+     * What was last applied to each marker, so unchanged properties are not sent to the map again.
+     */
+    private final HashMap<Marker, MarkerState> mMarkerStates = new HashMap<Marker, MarkerState>();
+
     private DroidPlannerPrefs mAppPrefs;
 
     private final AtomicReference<AutoPanMode> mPanMode = new AtomicReference<AutoPanMode>(
@@ -161,6 +177,20 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
     private final Handler handler = new Handler();
 
+    private MarkerClusters markerClusters;
+
+    private final MarkerClusters.Callback clustersCallback = new MarkerClusters.Callback() {
+        @Override
+        public void onMarkerShown(MarkerInfo markerInfo, boolean isDraggable) {
+            updateMarker(markerInfo, isDraggable);
+        }
+
+        @Override
+        public void onMarkerHidden(MarkerInfo markerInfo) {
+            removeMarker(markerInfo);
+        }
+    };
+
     private final LocationCallback locationCb = new LocationCallback() {
         @Override
         public void onLocationAvailability(LocationAvailability locationAvailability) {
@@ -271,6 +301,23 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     private Polyline mDroneLeashPath;
     private int maxFlightPathSize;
 
+    /**
+     * Positions of the flight path, sent to the map at most once per
+     * {@link #FLIGHT_PATH_UPDATE_INTERVAL}.
+     */
+    private FlightTrail flightTrail;
+    private final List<LatLng> flightPathPoints = new ArrayList<LatLng>();
+    private long flightPathUpdateTime;
+    private boolean flightPathUpdatePending;
+
+    private final Runnable updateFlightPathTask = new Runnable() {
+        @Override
+        public void run() {
+            flightPathUpdatePending = false;
+            updateFlightPath();
+        }
+    };
+
     /*
      * DP Map listeners
      */
@@ -278,6 +325,13 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     private DPMap.OnMapLongClickListener mMapLongClickListener;
     private DPMap.OnMarkerClickListener mMarkerClickListener;
     private DPMap.OnMarkerDragListener mMarkerDragListener;
+    private DPMap.OnCameraChangeListener mCameraChangeListener;
+
+    /**
+     * The map takes a single camera listener, so the fragment dispatches the camera changes to
+     * the other parties interested in them.
+     */
+    private final List<GoogleMap.OnCameraChangeListener> mCameraPositionListeners = new ArrayList<>();
     private android.location.LocationListener mLocationListener;
 
     protected boolean useMarkerClickAsMapClick = false;
@@ -346,6 +400,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
         mAppPrefs = DroidPlannerPrefs.getInstance(context);
 
+        markerClusters = new MarkerClusters(context, clustersCallback);
+
         final Bundle args = getArguments();
         if (args != null) {
             maxFlightPathSize = args.getInt(EXTRA_MAX_FLIGHT_PATH_SIZE);
@@ -361,6 +417,7 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
         mGApiClientMgr.addTask(mRequestLocationUpdateTask);
         lbm.registerReceiver(eventReceiver, eventFilter);
+        dpApp.getTelemetryBus().subscribe(dronePositionListener, CAMERA_UPDATE_INTERVAL, AttributeEvent.GPS_POSITION);
         setupMap();
     }
 
@@ -368,8 +425,12 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     public void onStop() {
         super.onStop();
 
+        handler.removeCallbacks(updateFlightPathTask);
+        flightPathUpdatePending = false;
+
         mGApiClientMgr.addTask(mRemoveLocationUpdateTask);
         lbm.unregisterReceiver(eventReceiver);
+        dpApp.getTelemetryBus().unsubscribe(dronePositionListener);
 
         mGApiClientMgr.stopSafely();
     }
@@ -388,6 +449,10 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
                 startActivity(new Intent(getContext(), DownloadMapboxMapActivity.class));
                 return true;
 
+            case R.id.menu_export_offline_map:
+                exportOfflineTiles();
+                return true;
+
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -402,6 +467,12 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
             item.setVisible(isEnabled);
         }
 
+        final MenuItem exportItem = menu.findItem(R.id.menu_export_offline_map);
+        if (exportItem != null) {
+            final boolean isEnabled = tileProviderManager != null && shouldShowDownloadMapMenuOption();
+            exportItem.setEnabled(isEnabled);
+            exportItem.setVisible(isEnabled);
+        }
     }
 
     private boolean shouldShowDownloadMapMenuOption(){
@@ -416,11 +487,12 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
     @Override
     public void clearFlightPath() {
-        if (flightPath != null) {
-            List<LatLng> oldFlightPath = flightPath.getPoints();
-            oldFlightPath.clear();
-            flightPath.setPoints(oldFlightPath);
-        }
+        if (flightTrail != null)
+            flightTrail.clear();
+
+        handler.removeCallbacks(updateFlightPathTask);
+        flightPathUpdatePending = false;
+        updateFlightPath();
     }
 
     @Override
@@ -502,22 +574,41 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         final LatLng position = DroneHelper.CoordToLatLang(coord);
 
         if (maxFlightPathSize > 0) {
-            if (flightPath == null) {
-                PolylineOptions flightPathOptions = new PolylineOptions();
-                flightPathOptions.color(FLIGHT_PATH_DEFAULT_COLOR)
-                        .width(FLIGHT_PATH_DEFAULT_WIDTH).zIndex(1);
-                flightPath = getMap().addPolyline(flightPathOptions);
-            }
+            if (flightTrail == null)
+                flightTrail = new FlightTrail(maxFlightPathSize + 1);
 
-            List<LatLng> oldFlightPath = flightPath.getPoints();
-            if (oldFlightPath.size() > maxFlightPathSize) {
-                oldFlightPath.remove(0);
+            if (!flightTrail.add(position) || flightPathUpdatePending)
+                return;
+
+            final long delay = flightPathUpdateTime + FLIGHT_PATH_UPDATE_INTERVAL - SystemClock.elapsedRealtime();
+            if (delay > 0) {
+                flightPathUpdatePending = true;
+                handler.postDelayed(updateFlightPathTask, delay);
+            } else {
+                updateFlightPath();
             }
-            oldFlightPath.add(position);
-            flightPath.setPoints(oldFlightPath);
         }
     }
 
+    private void updateFlightPath() {
+        flightPathUpdateTime = SystemClock.elapsedRealtime();
+        if (flightTrail == null)
+            return;
+
+        if (flightPath == null) {
+            if (flightTrail.size() == 0)
+                return;
+
+            PolylineOptions flightPathOptions = new PolylineOptions();
+            flightPathOptions.color(FLIGHT_PATH_DEFAULT_COLOR)
+                    .width(FLIGHT_PATH_DEFAULT_WIDTH).zIndex(1);
+            flightPath = getMap().addPolyline(flightPathOptions);
+        }
+
+        flightTrail.getPoints(flightPathPoints);
+        flightPath.setPoints(flightPathPoints);
+    }
+
     @Override
     public void clearMarkers() {
         for (Marker marker : mBiMarkersMap.valueSet()) {
@@ -525,6 +616,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         }
 
         mBiMarkersMap.clear();
+        mMarkerStates.clear();
+        markerClusters.clear();
     }
 
     @Override
@@ -541,6 +634,12 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         }
 
         final LatLng position = DroneHelper.CoordToLatLang(coord);
+        if (markerInfo.isClusterable() && !markerClusters.update(markerInfo, position, isDraggable)) {
+            // Part of a cluster
+            removeMarker(markerInfo);
+            return;
+        }
+
         Marker marker = mBiMarkersMap.getValue(markerInfo);
         if (marker == null) {
             // Generate the marker
@@ -569,26 +668,113 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
         Marker marker = getMap().addMarker(markerOptions);
         mBiMarkersMap.put(markerInfo, marker);
+
+        final MarkerState state = new MarkerState();
+        state.icon = markerIcon;
+        state.alpha = markerOptions.getAlpha();
+        state.anchorU = markerOptions.getAnchorU();
+        state.anchorV = markerOptions.getAnchorV();
+        state.infoWindowAnchorU = markerOptions.getInfoWindowAnchorU();
+        state.infoWindowAnchorV = markerOptions.getInfoWindowAnchorV();
+        state.position = position;
+        state.rotation = markerOptions.getRotation();
+        state.snippet = markerOptions.getSnippet();
+        state.title = markerOptions.getTitle();
+        state.draggable = isDraggable;
+        state.flat = markerOptions.isFlat();
+        state.visible = markerOptions.isVisible();
+        mMarkerStates.put(marker, state);
     }
 
+    /**
+     * Only sends the properties which changed since the last update. Mission icons come from a
+     * cache, so an unchanged icon is the same bitmap.
+     */
     private void updateMarker(Marker marker, MarkerInfo markerInfo, LatLng position,
                               boolean isDraggable) {
+        MarkerState state = mMarkerStates.get(marker);
+        final boolean force = state == null;
+        if (force) {
+            state = new MarkerState();
+            mMarkerStates.put(marker, state);
+        }
+
         final Bitmap markerIcon = markerInfo.getIcon(getResources());
-        if (markerIcon != null) {
+        if (markerIcon != null && (force || markerIcon != state.icon)) {
             marker.setIcon(BitmapDescriptorFactory.fromBitmap(markerIcon));
+            state.icon = markerIcon;
+        }
+
+        final float alpha = markerInfo.getAlpha();
+        if (force || alpha != state.alpha) {
+            marker.setAlpha(alpha);
+            state.alpha = alpha;
+        }
+
+        final float anchorU = markerInfo.getAnchorU();
+        final float anchorV = markerInfo.getAnchorV();
+        if (force || anchorU != state.anchorU || anchorV != state.anchorV) {
+            marker.setAnchor(anchorU, anchorV);
+            state.anchorU = anchorU;
+            state.anchorV = anchorV;
+        }
+
+        final float infoWindowAnchorU = markerInfo.getInfoWindowAnchorU();
+        final float infoWindowAnchorV = markerInfo.getInfoWindowAnchorV();
+        if (force || infoWindowAnchorU != state.infoWindowAnchorU || infoWindowAnchorV != state.infoWindowAnchorV) {
+            marker.setInfoWindowAnchor(infoWindowAnchorU, infoWindowAnchorV);
+            state.infoWindowAnchorU = infoWindowAnchorU;
+            state.infoWindowAnchorV = infoWindowAnchorV;
+        }
+
+        if (force || !position.equals(state.position)) {
+            marker.setPosition(position);
+            state.position = position;
+        }
+
+        final float rotation = markerInfo.getRotation();
+        if (force || rotation != state.rotation) {
+            marker.setRotation(rotation);
+            state.rotation = rotation;
+        }
+
+        final String snippet = markerInfo.getSnippet();
+        if (force || !TextUtils.equals(snippet, state.snippet)) {
+            marker.setSnippet(snippet);
+            state.snippet = snippet;
         }
 
-        marker.setAlpha(markerInfo.getAlpha());
-        marker.setAnchor(markerInfo.getAnchorU(), markerInfo.getAnchorV());
-        marker.setInfoWindowAnchor(markerInfo.getInfoWindowAnchorU(),
-                markerInfo.getInfoWindowAnchorV());
-        marker.setPosition(position);
-        marker.setRotation(markerInfo.getRotation());
-        marker.setSnippet(markerInfo.getSnippet());
-        marker.setTitle(markerInfo.getTitle());
-        marker.setDraggable(isDraggable);
-        marker.setFlat(markerInfo.isFlat());
-        marker.setVisible(markerInfo.isVisible());
+        final String title = markerInfo.getTitle();
+        if (force || !TextUtils.equals(title, state.title)) {
+            marker.setTitle(title);
+            state.title = title;
+        }
+
+        if (force || isDraggable != state.draggable) {
+            marker.setDraggable(isDraggable);
+            state.draggable = isDraggable;
+        }
+
+        final boolean flat = markerInfo.isFlat();
+        if (force || flat != state.flat) {
+            marker.setFlat(flat);
+            state.flat = flat;
+        }
+
+        final boolean visible = markerInfo.isVisible();
+        if (force || visible != state.visible) {
+            marker.setVisible(visible);
+            state.visible = visible;
+        }
+    }
+
+    /**
+     * The map side position of a marker changes while it is dragged.
+     */
+    private void onMarkerMoved(Marker marker) {
+        final MarkerState state = mMarkerStates.get(marker);
+        if (state != null)
+            state.position = null;
     }
 
     @Override
@@ -631,11 +817,19 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         }
 
         for (MarkerInfo markerInfo : markerInfoList) {
-            Marker marker = mBiMarkersMap.getValue(markerInfo);
-            if (marker != null) {
-                marker.remove();
-                mBiMarkersMap.removeKey(markerInfo);
-            }
+            if (markerInfo.isClusterable())
+                markerClusters.remove(markerInfo);
+
+            removeMarker(markerInfo);
+        }
+    }
+
+    private void removeMarker(MarkerInfo markerInfo) {
+        Marker marker = mBiMarkersMap.getValue(markerInfo);
+        if (marker != null) {
+            marker.remove();
+            mBiMarkersMap.removeKey(markerInfo);
+            mMarkerStates.remove(marker);
         }
     }
 
@@ -664,6 +858,24 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         mMarkerClickListener = listener;
     }
 
+    @Override
+    public void setOnCameraChangeListener(OnCameraChangeListener listener) {
+        mCameraChangeListener = listener;
+    }
+
+    /**
+     * Listeners must be registered here rather than on the map, which would drop the fragment's
+     * own camera listener.
+     */
+    public void addOnCameraChangeListener(GoogleMap.OnCameraChangeListener listener) {
+        if (!mCameraPositionListeners.contains(listener))
+            mCameraPositionListeners.add(listener);
+    }
+
+    public void removeOnCameraChangeListener(GoogleMap.OnCameraChangeListener listener) {
+        mCameraPositionListeners.remove(listener);
+    }
+
     @Override
     public void setLocationListener(android.location.LocationListener receiver) {
         mLocationListener = receiver;
@@ -897,6 +1109,9 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
     }
 
     private void setupMapListeners(GoogleMap googleMap) {
+        markerClusters.setMap(googleMap);
+        addOnCameraChangeListener(markerClusters);
+
         final GoogleMap.OnMapClickListener onMapClickListener = new GoogleMap.OnMapClickListener() {
             @Override
             public void onMapClick(LatLng latLng) {
@@ -919,6 +1134,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         googleMap.setOnMarkerDragListener(new GoogleMap.OnMarkerDragListener() {
             @Override
             public void onMarkerDragStart(Marker marker) {
+                markerClusters.setDragging(true);
+                onMarkerMoved(marker);
                 if (mMarkerDragListener != null) {
                     final MarkerInfo markerInfo = mBiMarkersMap.getKey(marker);
                     if(!(markerInfo instanceof GraphicHome)) {
@@ -930,6 +1147,7 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
             @Override
             public void onMarkerDrag(Marker marker) {
+                onMarkerMoved(marker);
                 if (mMarkerDragListener != null) {
                     final MarkerInfo markerInfo = mBiMarkersMap.getKey(marker);
                     if(!(markerInfo instanceof GraphicHome)) {
@@ -941,6 +1159,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
             @Override
             public void onMarkerDragEnd(Marker marker) {
+                markerClusters.setDragging(false);
+                onMarkerMoved(marker);
                 if (mMarkerDragListener != null) {
                     final MarkerInfo markerInfo = mBiMarkersMap.getKey(marker);
                     markerInfo.setPosition(DroneHelper.LatLngToCoord(marker.getPosition()));
@@ -949,6 +1169,18 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
             }
         });
 
+        googleMap.setOnCameraChangeListener(new GoogleMap.OnCameraChangeListener() {
+            @Override
+            public void onCameraChange(CameraPosition cameraPosition) {
+                if (mCameraChangeListener != null)
+                    mCameraChangeListener.onCameraChange(getVisibleMapArea());
+
+                //Backwards, so a listener may remove itself.
+                for (int i = mCameraPositionListeners.size() - 1; i >= 0; i--)
+                    mCameraPositionListeners.get(i).onCameraChange(cameraPosition);
+            }
+        });
+
         googleMap.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
             @Override
             public boolean onMarkerClick(Marker marker) {
@@ -957,6 +1189,9 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
                     return true;
                 }
 
+                if (markerClusters.onMarkerClick(marker))
+                    return true;
+
                 if (mMarkerClickListener != null) {
                     final MarkerInfo markerInfo = mBiMarkersMap.getKey(marker);
                     if (markerInfo != null)
@@ -1055,6 +1290,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
                 offlineTileOverlay = map.addTileOverlay(options);
             }
+
+            importSideloadedTiles(tileProviderManager);
         }
     }
 
@@ -1099,6 +1336,8 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
                 offlineTileOverlay = map.addTileOverlay(options);
             }
+
+            importSideloadedTiles(tileProviderManager);
         }
 
         //Check if the mapbox credentials are valid.
@@ -1125,6 +1364,62 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
         }.execute();
     }
 
+    /**
+     * Loads the MBTiles package copied in the maps directory for this map, if any, into the offline layer.
+     */
+    private void importSideloadedTiles(final TileProviderManager manager) {
+        final Context context = getContext().getApplicationContext();
+        new AsyncTask<Void, Void, Integer>() {
+
+            @Override
+            protected Integer doInBackground(Void... params) {
+                return manager.importSideloadedTiles(context);
+            }
+
+            @Override
+            protected void onPostExecute(Integer count) {
+                if (count > 0 && manager == tileProviderManager && offlineTileOverlay != null) {
+                    offlineTileOverlay.clearTileCache();
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Writes the offline layer of the current map to an MBTiles package in the maps directory.
+     */
+    private void exportOfflineTiles() {
+        final TileProviderManager manager = tileProviderManager;
+        if (manager == null)
+            return;
+
+        final Context context = getContext().getApplicationContext();
+        final File destination = manager.getExportedTilesFile();
+        new AsyncTask<Void, Void, Boolean>() {
+
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                try {
+                    manager.exportOfflineTiles(context, destination);
+                    return true;
+                } catch (IOException e) {
+                    Timber.e(e, "Unable to export the offline tiles.");
+                    return false;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Boolean success) {
+                if (success) {
+                    Toast.makeText(context, context.getString(R.string.label_offline_map_exported,
+                            destination.getPath()), Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(context, R.string.label_offline_map_export_failed, Toast.LENGTH_LONG).show();
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     protected void clearMap() {
         getMapAsync(new OnMapReadyCallback() {
             @Override
@@ -1246,4 +1541,23 @@ public class GoogleMapFragment extends SupportMapFragment implements DPMap, Goog
 
 
 
+
+    /**
+     * Marker properties as last set on the map.
+     */
+    private static class MarkerState {
+        Bitmap icon;
+        float alpha;
+        float anchorU;
+        float anchorV;
+        float infoWindowAnchorU;
+        float infoWindowAnchorV;
+        LatLng position;
+        float rotation;
+        String snippet;
+        String title;
+        boolean draggable;
+        boolean flat;
+        boolean visible;
+    }
 }
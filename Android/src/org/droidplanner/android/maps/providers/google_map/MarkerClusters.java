@@ -0,0 +1,280 @@
+package org.droidplanner.android.maps.providers.google_map;
+
+import android.content.Context;
+import android.os.Handler;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
+import com.google.maps.android.ui.IconGenerator;
+
+import org.droidplanner.android.maps.MarkerInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Level of detail of the clusterable markers.
+ * <p/>
+ * Below {@link #DETAIL_ZOOM_LEVEL}, markers close to each other on screen are merged into a single
+ * cluster marker showing their count, and only the isolated ones stay on the map. A dense survey
+ * grid then costs a few dozen markers instead of hundreds. Tapping a cluster zooms on its markers.
+ * <p/>
+ * Registered as a camera listener of {@link GoogleMapFragment}. The clusters are computed again
+ * when the zoom level crosses an integer, or when markers are added, moved or removed, at most
+ * once per message loop. They are left alone while a marker is being dragged.
+ * <p/>
+ * Main thread only.
+ */
+class MarkerClusters implements GoogleMap.OnCameraChangeListener {
+
+    interface Callback {
+        /**
+         * The marker is no longer part of a cluster, and should be put back on the map.
+         */
+        void onMarkerShown(MarkerInfo markerInfo, boolean isDraggable);
+
+        /**
+         * The marker joined a cluster, and should be removed from the map.
+         */
+        void onMarkerHidden(MarkerInfo markerInfo);
+    }
+
+    /**
+     * Zoom level from which the markers are always shown on their own.
+     */
+    private static final int DETAIL_ZOOM_LEVEL = 18;
+
+    /**
+     * Below this count, the markers are always shown on their own.
+     */
+    private static final int MIN_CLUSTERED_MARKERS = 50;
+
+    private static final int CLUSTER_BOUNDS_PADDING = 100; //px
+
+    private static class Item implements ClusterItem {
+        final MarkerInfo markerInfo;
+
+        //Position the item was indexed at, updated by removing and adding it back.
+        LatLng position;
+        boolean draggable;
+
+        //Whether the marker is on the map on its own.
+        boolean shown = true;
+
+        //Last clustering which left it alone.
+        int pass;
+
+        Item(MarkerInfo markerInfo, LatLng position) {
+            this.markerInfo = markerInfo;
+            this.position = position;
+        }
+
+        @Override
+        public LatLng getPosition() {
+            return position;
+        }
+    }
+
+    private final Callback callback;
+    private final IconGenerator iconGenerator;
+    private final Handler handler = new Handler();
+
+    private final NonHierarchicalDistanceBasedAlgorithm<Item> algorithm = new NonHierarchicalDistanceBasedAlgorithm<>();
+    private final IdentityHashMap<MarkerInfo, Item> items = new IdentityHashMap<>();
+
+    //Cluster markers on the map, with the bounds of their items.
+    private final HashMap<Marker, LatLngBounds> clusterMarkers = new HashMap<>();
+
+    private GoogleMap map;
+    private int zoom = Integer.MAX_VALUE;
+    private boolean clustered;
+    private int pass;
+
+    private boolean dragging;
+    private boolean scheduled;
+    private boolean deferred;
+
+    private final Runnable clusterTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            cluster();
+        }
+    };
+
+    MarkerClusters(Context context, Callback callback) {
+        this.callback = callback;
+        this.iconGenerator = new IconGenerator(context);
+        iconGenerator.setStyle(IconGenerator.STYLE_BLUE);
+    }
+
+    void setMap(GoogleMap map) {
+        this.map = map;
+        zoom = (int) map.getCameraPosition().zoom;
+        scheduleClustering();
+    }
+
+    /**
+     * Tracks the marker.
+     *
+     * @return false if the marker is part of a cluster, and should not be on the map.
+     */
+    boolean update(MarkerInfo markerInfo, LatLng position, boolean isDraggable) {
+        Item item = items.get(markerInfo);
+        if (item == null) {
+            item = new Item(markerInfo, position);
+            item.shown = !clustered;
+            items.put(markerInfo, item);
+            algorithm.addItem(item);
+
+            if (clustered || shouldCluster())
+                scheduleClustering();
+        } else if (!position.equals(item.position)) {
+            algorithm.removeItem(item);
+            item.position = position;
+            algorithm.addItem(item);
+
+            if (clustered)
+                scheduleClustering();
+        }
+
+        item.draggable = isDraggable;
+        return item.shown;
+    }
+
+    void remove(MarkerInfo markerInfo) {
+        final Item item = items.remove(markerInfo);
+        if (item == null)
+            return;
+
+        algorithm.removeItem(item);
+        if (clustered)
+            scheduleClustering();
+    }
+
+    void clear() {
+        handler.removeCallbacks(clusterTask);
+        scheduled = false;
+        deferred = false;
+
+        removeClusterMarkers();
+        items.clear();
+        algorithm.clearItems();
+        clustered = false;
+    }
+
+    @Override
+    public void onCameraChange(CameraPosition cameraPosition) {
+        final int zoomLevel = (int) cameraPosition.zoom;
+        if (zoomLevel == this.zoom)
+            return;
+
+        this.zoom = zoomLevel;
+        if (clustered || shouldCluster())
+            scheduleClustering();
+    }
+
+    void setDragging(boolean dragging) {
+        this.dragging = dragging;
+        if (!dragging && deferred)
+            scheduleClustering();
+    }
+
+    /**
+     * Zooms on the markers of the cluster, if the marker is one.
+     *
+     * @return true if the click was handled.
+     */
+    boolean onMarkerClick(Marker marker) {
+        final LatLngBounds bounds = clusterMarkers.get(marker);
+        if (bounds == null)
+            return false;
+
+        map.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, CLUSTER_BOUNDS_PADDING));
+        return true;
+    }
+
+    private boolean shouldCluster() {
+        return zoom < DETAIL_ZOOM_LEVEL && items.size() >= MIN_CLUSTERED_MARKERS;
+    }
+
+    private void scheduleClustering() {
+        if (!scheduled) {
+            scheduled = true;
+            handler.post(clusterTask);
+        }
+    }
+
+    private void cluster() {
+        if (map == null)
+            return;
+
+        if (dragging) {
+            deferred = true;
+            return;
+        }
+        deferred = false;
+
+        removeClusterMarkers();
+
+        clustered = shouldCluster();
+        pass++;
+        if (clustered) {
+            for (Cluster<Item> cluster : algorithm.getClusters(zoom)) {
+                if (cluster.getSize() == 1) {
+                    for (Item item : cluster.getItems())
+                        item.pass = pass;
+                    continue;
+                }
+
+                addClusterMarker(cluster);
+            }
+        }
+
+        //The callbacks update the markers, which doesn't change the set of items.
+        final ArrayList<Item> changed = new ArrayList<>();
+        for (Item item : items.values()) {
+            final boolean shown = !clustered || item.pass == pass;
+            if (shown != item.shown) {
+                item.shown = shown;
+                changed.add(item);
+            }
+        }
+
+        for (Item item : changed) {
+            if (item.shown)
+                callback.onMarkerShown(item.markerInfo, item.draggable);
+            else
+                callback.onMarkerHidden(item.markerInfo);
+        }
+    }
+
+    private void addClusterMarker(Cluster<Item> cluster) {
+        final LatLngBounds.Builder bounds = LatLngBounds.builder();
+        for (Item item : cluster.getItems())
+            bounds.include(item.position);
+
+        final MarkerOptions markerOptions = new MarkerOptions()
+                .position(cluster.getPosition())
+                .icon(BitmapDescriptorFactory.fromBitmap(iconGenerator.makeIcon(Integer.toString(cluster.getSize()))))
+                .anchor(iconGenerator.getAnchorU(), iconGenerator.getAnchorV());
+
+        clusterMarkers.put(map.addMarker(markerOptions), bounds.build());
+    }
+
+    private void removeClusterMarkers() {
+        for (Marker marker : clusterMarkers.keySet())
+            marker.remove();
+        clusterMarkers.clear();
+    }
+}
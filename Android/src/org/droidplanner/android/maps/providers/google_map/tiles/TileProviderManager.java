@@ -1,15 +1,37 @@
 package org.droidplanner.android.maps.providers.google_map.tiles;
 
+import android.content.Context;
+
 import com.google.android.gms.maps.model.TileProvider;
 
+import org.droidplanner.android.data.DatabaseState;
 import org.droidplanner.android.maps.DPMap;
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader;
+import org.droidplanner.android.utils.file.DirectoryPath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import timber.log.Timber;
 
 /**
  * Created by fredia on 4/16/16.
  */
 public abstract class TileProviderManager {
 
+    public static final String MBTILES_EXTENSION = ".mbtiles";
+
+    /**
+     * Appended to a sideloaded package once its tiles are in the offline database.
+     */
+    private static final String IMPORTED_EXTENSION = ".imported";
+
+    /**
+     * Appended to the name of an exported package, so it is not mistaken for a sideloaded one.
+     */
+    private static final String EXPORTED_SUFFIX = "_export";
+
     protected final TileProvider onlineTileProvider;
     protected final TileProvider offlineTileProvider;
 
@@ -28,4 +50,71 @@ public abstract class TileProviderManager {
 
     public abstract void downloadMapTiles(MapDownloader mapDownloader, DPMap.VisibleMapArea mapRegion, int
         minimumZ, int maximumZ);
+
+    /**
+     * @return the name of the offline database holding the downloaded tiles of this map.
+     */
+    public abstract String getOfflineMapId();
+
+    /**
+     * @return where an MBTiles package for this map is picked up from, e.g. after being copied
+     * from another device.
+     */
+    public File getSideloadedTilesFile() {
+        return new File(DirectoryPath.getMapsPath(), getOfflineMapId().toLowerCase(Locale.US) + MBTILES_EXTENSION);
+    }
+
+    /**
+     * @return where the offline layer of this map is exported to. Renaming the file to
+     * {@link #getSideloadedTilesFile()} on another device imports it there.
+     */
+    public File getExportedTilesFile() {
+        return new File(DirectoryPath.getMapsPath(), getOfflineMapId().toLowerCase(Locale.US) + EXPORTED_SUFFIX
+                + MBTILES_EXTENSION);
+    }
+
+    /**
+     * Adds the tiles of an MBTiles package to the offline layer. Blocking, call from a background thread.
+     *
+     * @return the number of imported tiles.
+     */
+    public int importOfflineTiles(Context context, File source) throws IOException {
+        final int count = DatabaseState.getOfflineDatabaseHandlerForMapId(context, getOfflineMapId()).importMBTiles(source);
+        Timber.i("Imported %d tiles from %s", count, source);
+        return count;
+    }
+
+    /**
+     * Writes the offline layer to an MBTiles package. Blocking, call from a background thread.
+     *
+     * @return the number of exported tiles.
+     */
+    public int exportOfflineTiles(Context context, File destination) throws IOException {
+        final String mapId = getOfflineMapId();
+        final int count = DatabaseState.getOfflineDatabaseHandlerForMapId(context, mapId).exportMBTiles(destination, mapId);
+        Timber.i("Exported %d tiles to %s", count, destination);
+        return count;
+    }
+
+    /**
+     * Imports the sideloaded package if there is one, then renames it so it is only imported once.
+     * Blocking, call from a background thread.
+     *
+     * @return the number of imported tiles.
+     */
+    public int importSideloadedTiles(Context context) {
+        final File source = getSideloadedTilesFile();
+        if (!source.isFile())
+            return 0;
+
+        try {
+            final int count = importOfflineTiles(context, source);
+            if (!source.renameTo(new File(source.getPath() + IMPORTED_EXTENSION)))
+                Timber.w("Unable to rename %s, it will be imported again.", source);
+            return count;
+        } catch (IOException e) {
+            Timber.e(e, "Unable to import the sideloaded tiles.");
+            return 0;
+        }
+    }
 }
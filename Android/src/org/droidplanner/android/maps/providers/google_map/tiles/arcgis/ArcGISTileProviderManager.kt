@@ -6,6 +6,7 @@ import org.droidplanner.android.R
 import org.droidplanner.android.maps.DPMap
 import org.droidplanner.android.maps.providers.google_map.tiles.TileProviderManager
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader
+import org.droidplanner.android.maps.providers.google_map.tiles.offline.OfflineResource
 import timber.log.Timber
 import java.util.*
 
@@ -58,9 +59,11 @@ class ArcGISTileProviderManager(val context: Context, val selectedMap: String) :
         mapType = selectMapType(context, selectedMap) ?: throw IllegalArgumentException("Selected map parameter is not supported.")
     }
 
+    override fun getOfflineMapId() = mapType.name
+
     override fun downloadMapTiles(mapDownloader: MapDownloader, mapRegion: DPMap.VisibleMapArea,
     minimumZ : Int, maximumZ : Int) {
-        val urls = ArrayList<String>()
+        val urls = ArrayList<OfflineResource>()
 
         // Loop through the zoom levels and lat/lon bounds to generate a list of urls which should be included in the offline map
         //
@@ -95,7 +98,7 @@ class ArcGISTileProviderManager(val context: Context, val selectedMap: String) :
             for (x in minX..maxX) {
                 for (y in minY..maxY) {
                     val url = mapType.getMapTypeUrl(zoom, x, y) ?: continue
-                    urls.add(url)
+                    urls.add(OfflineResource.tile(url, zoom, x, y))
                 }
             }
         }
@@ -8,6 +8,7 @@ import android.text.TextUtils;
 import org.droidplanner.android.maps.DPMap;
 import org.droidplanner.android.maps.providers.google_map.tiles.TileProviderManager;
 import org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline.MapDownloader;
+import org.droidplanner.android.maps.providers.google_map.tiles.offline.OfflineResource;
 import org.droidplanner.android.utils.NetworkUtils;
 import org.droidplanner.android.utils.Utils;
 import org.json.JSONArray;
@@ -57,6 +58,11 @@ public class MapboxTileProviderManager extends TileProviderManager {
         return mapboxId;
     }
 
+    @Override
+    public String getOfflineMapId() {
+        return mapboxId;
+    }
+
     @Override
     public void downloadMapTiles(MapDownloader mapDownloader, DPMap.VisibleMapArea mapRegion, int
         minimumZ, int maximumZ) {
@@ -72,17 +78,17 @@ public class MapboxTileProviderManager extends TileProviderManager {
         minimumZ, int maximumZ, boolean includeMetadata,
                                       boolean includeMarkers) {
 
-        final ArrayList<String> urls = new ArrayList<String>();
+        final ArrayList<OfflineResource> urls = new ArrayList<OfflineResource>();
         String dataName = "features.json";    // Only using API V4 for now
 
         // Include URLs for the metadata and markers json if applicable
         if (includeMetadata) {
-            urls.add(String.format(Locale.US, MapboxUtils.MAPBOX_BASE_URL_V4 + "%s.json?secure&access_token=%s",
-                mapId, accessToken));
+            urls.add(OfflineResource.resource(String.format(Locale.US, MapboxUtils.MAPBOX_BASE_URL_V4 + "%s.json?secure&access_token=%s",
+                mapId, accessToken)));
         }
         if (includeMarkers) {
-            urls.add(String.format(Locale.US, MapboxUtils.MAPBOX_BASE_URL_V4 + "%s/%s?access_token=%s", mapId,
-                dataName, accessToken));
+            urls.add(OfflineResource.resource(String.format(Locale.US, MapboxUtils.MAPBOX_BASE_URL_V4 + "%s/%s?access_token=%s", mapId,
+                dataName, accessToken)));
         }
 
         // Loop through the zoom levels and lat/lon bounds to generate a list of urls which should be included in the offline map
@@ -117,7 +123,7 @@ public class MapboxTileProviderManager extends TileProviderManager {
             maxY = Double.valueOf(Math.floor((1.0 - (Math.log(Math.tan(minLat * Math.PI / 180.0) + 1.0 / Math.cos(minLat * Math.PI / 180.0)) / Math.PI)) / 2.0 * tilesPerSide)).intValue();
             for (int x = minX; x <= maxX; x++) {
                 for (int y = minY; y <= maxY; y++) {
-                    urls.add(MapboxUtils.getMapTileURL(mapId, accessToken, zoom, x, y));
+                    urls.add(OfflineResource.tile(MapboxUtils.getMapTileURL(mapId, accessToken, zoom, x, y), zoom, x, y));
                 }
             }
         }
@@ -161,8 +167,8 @@ public class MapboxTileProviderManager extends TileProviderManager {
                         Set<String> markerIconURLStrings = new HashSet<String>();
                         markerIconURLStrings.addAll(parseMarkerIconURLStringsFromGeojsonData(accessToken, jsonText));
                         Timber.i("Number of markerIconURLs = " + markerIconURLStrings.size());
-                        if (markerIconURLStrings.size() > 0) {
-                            urls.addAll(markerIconURLStrings);
+                        for (String markerIconURLString : markerIconURLStrings) {
+                            urls.add(OfflineResource.resource(markerIconURLString));
                         }
                     } catch (IOException e) {
                         // The url for markers.geojson/features.json didn't work (some maps don't have any markers). Notify the delegate of the
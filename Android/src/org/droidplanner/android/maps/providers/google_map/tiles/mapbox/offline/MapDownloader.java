@@ -3,11 +3,14 @@ package org.droidplanner.android.maps.providers.google_map.tiles.mapbox.offline;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import org.droidplanner.android.data.DatabaseState;
 import org.droidplanner.android.maps.providers.google_map.tiles.offline.MapDownloaderListener;
+import org.droidplanner.android.maps.providers.google_map.tiles.offline.OfflineResource;
 import org.droidplanner.android.maps.providers.google_map.tiles.offline.db.OfflineDatabaseHandler;
 import org.droidplanner.android.utils.NetworkUtils;
 import org.droidplanner.android.utils.Utils;
@@ -20,9 +23,13 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import timber.log.Timber;
@@ -47,12 +54,26 @@ public class MapDownloader {
         AVAILABLE
     }
 
-    private OfflineMapDownloaderState state;
+    private volatile OfflineMapDownloaderState state;
     private final AtomicInteger totalFilesWritten = new AtomicInteger(0);
     private final AtomicInteger totalFilesExpectedToWrite = new AtomicInteger(0);
 
+    /**
+     * Tiles committed to the database in each transaction.
+     */
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    /**
+     * Downloaded tiles waiting for the writer.
+     */
+    private static final int DOWNLOADED_TILES_CAPACITY = 4 * WRITE_BATCH_SIZE;
+
+    private static final long WRITER_POLL_TIMEOUT = 250L; //ms
+
     private final Context context;
+    private final int fetchersCount = Math.max(2, (int) (Runtime.getRuntime().availableProcessors() * 1.5f));
     private ExecutorService downloadsScheduler;
+    private ExecutorService tileWriter;
     private final ArrayList<MapDownloaderListener> listeners = new ArrayList<>();
 
     public MapDownloader(Context context) {
@@ -96,10 +117,13 @@ public class MapDownloader {
         if (downloadsScheduler != null) {
             downloadsScheduler.shutdownNow();
         }
+        if (tileWriter != null) {
+            tileWriter.shutdownNow();
+        }
 
-        final int processorsCount = (int) (Runtime.getRuntime().availableProcessors() * 1.5f);
-        Timber.v("Using " + processorsCount + " processors.");
-        downloadsScheduler = Executors.newFixedThreadPool(processorsCount);
+        Timber.v("Using " + fetchersCount + " tile fetchers.");
+        downloadsScheduler = Executors.newFixedThreadPool(fetchersCount + 1);
+        tileWriter = Executors.newSingleThreadExecutor();
     }
 
 /*
@@ -150,7 +174,7 @@ public class MapDownloader {
     private void startDownloading(final String mapId) {
 
         // Get the actual URLs
-        ArrayList<String> urls = sqliteReadArrayOfOfflineMapURLsToBeDownloadLimit(mapId, -1);
+        ArrayList<OfflineResource> urls = sqliteReadArrayOfOfflineResourcesToBeDownloadLimit(mapId, -1);
         this.totalFilesExpectedToWrite.set(urls.size());
         this.totalFilesWritten.set(0);
 
@@ -168,111 +192,171 @@ public class MapDownloader {
             return;
         }
 
-        final CountDownLatch downloadsTracker = new CountDownLatch(this.totalFilesExpectedToWrite.get());
-        for (final String url : urls) {
+        // The fetchers pull the urls from a shared queue, and hand the downloaded tiles to the writer through a
+        // bounded queue: when the database falls behind, the fetchers wait instead of piling tiles up in memory.
+        final ConcurrentLinkedQueue<OfflineResource> pendingUrls = new ConcurrentLinkedQueue<>(urls);
+        final BlockingQueue<DownloadedTile> downloadedTiles = new ArrayBlockingQueue<>(DOWNLOADED_TILES_CAPACITY);
+        final CountDownLatch fetchersTracker = new CountDownLatch(fetchersCount);
+
+        tileWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeDownloadedTiles(mapId, downloadedTiles, fetchersTracker);
+                } catch (InterruptedException e) {
+                    Timber.w("Tiles writer interrupted.");
+                } finally {
+                    finishUpDownloadProcess();
+                }
+            }
+        });
+
+        for (int i = 0; i < fetchersCount; i++) {
             downloadsScheduler.execute(new Runnable() {
                 @Override
                 public void run() {
-                    HttpURLConnection conn = null;
                     try {
-                        conn = NetworkUtils.getHttpURLConnection(new URL(url));
-                        Timber.d("URL to download = " + conn.getURL().toString());
-                        conn.setConnectTimeout(60000);
-                        conn.connect();
-                        int rc = conn.getResponseCode();
-                        if (rc != HttpURLConnection.HTTP_OK) {
-                            String msg = String.format(Locale.US, "HTTP Error connection.  Response Code = %d for url = %s", rc, conn.getURL().toString());
-                            Timber.w(msg);
-                            notifyDelegateOfHTTPStatusError(rc, url);
-                            throw new IOException(msg);
-                        }
-
-                        ByteArrayOutputStream bais = new ByteArrayOutputStream();
-                        InputStream is = null;
-                        try {
-                            is = conn.getInputStream();
-                            // Read 4K at a time
-                            byte[] byteChunk = new byte[4096];
-                            int n;
-
-                            while ((n = is.read(byteChunk)) > 0) {
-                                bais.write(byteChunk, 0, n);
-                            }
-                        } catch (IOException e) {
-                            Timber.e(e, String.format(Locale.US, "Failed while reading bytes from %s: %s", conn
-                                    .getURL().toString(), e.getMessage()));
-                        } finally {
-                            if (is != null) {
-                                is.close();
-                            }
-                            conn.disconnect();
+                        OfflineResource resource;
+                        while ((resource = pendingUrls.poll()) != null && state == OfflineMapDownloaderState.RUNNING) {
+                            final byte[] data = fetchTile(resource.url);
+                            if (data != null)
+                                downloadedTiles.put(new DownloadedTile(resource, data));
                         }
-                        sqliteSaveDownloadedData(mapId, bais.toByteArray(), url);
-                    } catch (IOException e) {
-                        Timber.e(e, "Error occurred while retrieving map data.");
+                    } catch (InterruptedException e) {
+                        Timber.w("Tiles fetcher interrupted.");
                     } finally {
-                        downloadsTracker.countDown();
-
-                        if (conn != null) {
-                            conn.disconnect();
-                        }
+                        fetchersTracker.countDown();
                     }
-
                 }
             });
         }
+    }
 
-        downloadsScheduler.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    downloadsTracker.await();
-                } catch (InterruptedException e) {
-                    Timber.e(e, "Error while waiting for downloads to complete.");
-                } finally {
-                    finishUpDownloadProcess();
+    /**
+     * @return the tile bytes, or null if the download failed.
+     */
+    private byte[] fetchTile(String url) {
+        HttpURLConnection conn = null;
+        try {
+            conn = NetworkUtils.getHttpURLConnection(new URL(url));
+            Timber.d("URL to download = " + conn.getURL().toString());
+            conn.setConnectTimeout(60000);
+            conn.connect();
+            int rc = conn.getResponseCode();
+            if (rc != HttpURLConnection.HTTP_OK) {
+                Timber.w(String.format(Locale.US, "HTTP Error connection.  Response Code = %d for url = %s", rc, conn.getURL().toString()));
+                notifyDelegateOfHTTPStatusError(rc, url);
+                conn.disconnect();
+                return null;
+            }
+
+            ByteArrayOutputStream bais = new ByteArrayOutputStream();
+            InputStream is = conn.getInputStream();
+            try {
+                // Read 4K at a time
+                byte[] byteChunk = new byte[4096];
+                int n;
+
+                while ((n = is.read(byteChunk)) > 0) {
+                    bais.write(byteChunk, 0, n);
                 }
+            } finally {
+                // Fully read and closed, the connection goes back to the pool for the next tile.
+                is.close();
             }
-        });
+            return bais.toByteArray();
+        } catch (IOException e) {
+            Timber.e(e, "Error occurred while retrieving map data from %s", url);
+            if (conn != null)
+                conn.disconnect();
+            return null;
+        }
     }
 
 /*
     Implementation: sqlite stuff
 */
 
-    public void sqliteSaveDownloadedData(String mapId, byte[] data, String url) {
-        if (Utils.runningOnMainThread()) {
-            Timber.w("trying to run sqliteSaveDownloadedData() on main thread. Return.");
-            return;
+    /**
+     * Commits the downloaded tiles in batches of up to {@link #WRITE_BATCH_SIZE}, each in a single transaction,
+     * until every fetcher is done and the queue is drained.
+     */
+    private void writeDownloadedTiles(String mapId, BlockingQueue<DownloadedTile> downloadedTiles,
+                                      CountDownLatch fetchersTracker) throws InterruptedException {
+        final List<DownloadedTile> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (true) {
+            final DownloadedTile first = downloadedTiles.poll(WRITER_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                if (fetchersTracker.getCount() == 0 && downloadedTiles.isEmpty())
+                    return;
+                continue;
+            }
+
+            batch.add(first);
+            downloadedTiles.drainTo(batch, WRITE_BATCH_SIZE - 1);
+            sqliteSaveDownloadedData(mapId, batch);
+            batch.clear();
         }
+    }
 
+    private void sqliteSaveDownloadedData(String mapId, List<DownloadedTile> batch) {
         // Bail out if the state has changed to canceling, suspended, or available
         if (this.state != OfflineMapDownloaderState.RUNNING) {
             Timber.w("sqliteSaveDownloadedData() is not in a Running state so bailing.  State = " + this.state);
             return;
         }
 
-        // Open the database read-write and multi-threaded. The slightly obscure c-style variable names here and below are
-        // used to stay consistent with the sqlite documentaion.
-        // Continue by inserting an image blob into the data table
-        SQLiteDatabase db = DatabaseState.getOfflineDatabaseHandlerForMapId(context, mapId).getWritableDatabase();
+        final OfflineDatabaseHandler dbHandler = DatabaseState.getOfflineDatabaseHandlerForMapId(context, mapId);
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        SQLiteStatement insertTile = null;
+        SQLiteStatement insertData = null;
+        SQLiteStatement updateResource = null;
+        db.beginTransaction();
         try {
-            db.beginTransaction();
-
-            ContentValues values = new ContentValues();
-            values.put(OfflineDatabaseHandler.FIELD_DATA_VALUE, data);
-            db.insert(OfflineDatabaseHandler.TABLE_DATA, null, values);
+            insertTile = db.compileStatement("INSERT OR REPLACE INTO " + OfflineDatabaseHandler.TABLE_TILES + " ("
+                    + OfflineDatabaseHandler.FIELD_TILES_KEY + ", " + OfflineDatabaseHandler.FIELD_TILES_DATA + ") VALUES (?, ?);");
+            insertData = db.compileStatement("INSERT INTO " + OfflineDatabaseHandler.TABLE_DATA + " ("
+                    + OfflineDatabaseHandler.FIELD_DATA_VALUE + ") VALUES (?);");
+            updateResource = db.compileStatement("UPDATE " + OfflineDatabaseHandler.TABLE_RESOURCES + " SET "
+                    + OfflineDatabaseHandler.FIELD_RESOURCES_STATUS + "=200, " + OfflineDatabaseHandler.FIELD_RESOURCES_ID
+                    + "=? WHERE " + OfflineDatabaseHandler.FIELD_RESOURCES_URL + "=?;");
+
+            for (DownloadedTile tile : batch) {
+                if (tile.resource.isTile()) {
+                    insertTile.bindLong(1, tile.resource.tileKey);
+                    insertTile.bindBlob(2, tile.data);
+                    insertTile.executeInsert();
+                    updateResource.bindNull(1);
+                } else {
+                    insertData.bindBlob(1, tile.data);
+                    updateResource.bindLong(1, insertData.executeInsert());
+                }
 
-            db.execSQL(String.format(Locale.US, "UPDATE %s SET %s=200, %s=last_insert_rowid() WHERE %s='%s';", OfflineDatabaseHandler.TABLE_RESOURCES, OfflineDatabaseHandler.FIELD_RESOURCES_STATUS, OfflineDatabaseHandler.FIELD_RESOURCES_ID, OfflineDatabaseHandler.FIELD_RESOURCES_URL, url));
+                updateResource.bindString(2, tile.resource.url);
+                updateResource.executeUpdateDelete();
+            }
             db.setTransactionSuccessful();
+        } catch (SQLException | IllegalStateException e) {
+            Timber.e(e, "Error while saving downloader data to the database.");
+            notifyDelegateOfSqliteError(e);
+            return;
+        } finally {
             db.endTransaction();
-//        db.close();
-        }catch(IllegalStateException e){
-            Timber.e(e,"Error while saving downloader data to the database.");
+            if (insertTile != null)
+                insertTile.close();
+            if (insertData != null)
+                insertData.close();
+            if (updateResource != null)
+                updateResource.close();
+        }
+
+        for (DownloadedTile tile : batch) {
+            if (tile.resource.isTile())
+                dbHandler.onTileUpdated(tile.resource.tileKey);
         }
 
         // Update the progress
-        notifyDelegateOfProgress(this.totalFilesWritten.incrementAndGet(), this.totalFilesExpectedToWrite.get());
+        notifyDelegateOfProgress(this.totalFilesWritten.addAndGet(batch.size()), this.totalFilesExpectedToWrite.get());
         Timber.d("totalFilesWritten = " + this.totalFilesWritten + "; totalFilesExpectedToWrite = " + this
                 .totalFilesExpectedToWrite.get());
     }
@@ -287,15 +371,16 @@ public class MapDownloader {
         }
     }
 
-    public ArrayList<String> sqliteReadArrayOfOfflineMapURLsToBeDownloadLimit(String mapId, int limit) {
-        ArrayList<String> results = new ArrayList<String>();
+    public ArrayList<OfflineResource> sqliteReadArrayOfOfflineResourcesToBeDownloadLimit(String mapId, int limit) {
+        ArrayList<OfflineResource> results = new ArrayList<OfflineResource>();
         if (Utils.runningOnMainThread()) {
-            Timber.w("Attempting to run sqliteReadArrayOfOfflineMapURLsToBeDownloadLimit() on main thread.  Returning.");
+            Timber.w("Attempting to run sqliteReadArrayOfOfflineResourcesToBeDownloadLimit() on main thread.  Returning.");
             return results;
         }
 
         // Read up to limit undownloaded urls from the offline map database
-        String query = String.format(Locale.US, "SELECT %s FROM %s WHERE %s IS NULL", OfflineDatabaseHandler.FIELD_RESOURCES_URL, OfflineDatabaseHandler.TABLE_RESOURCES, OfflineDatabaseHandler.FIELD_RESOURCES_STATUS);
+        String query = String.format(Locale.US, "SELECT %s, %s FROM %s WHERE %s IS NULL", OfflineDatabaseHandler.FIELD_RESOURCES_URL,
+                OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY, OfflineDatabaseHandler.TABLE_RESOURCES, OfflineDatabaseHandler.FIELD_RESOURCES_STATUS);
         if (limit > 0) {
             query = query + String.format(Locale.US, " LIMIT %d", limit);
         }
@@ -307,7 +392,8 @@ public class MapDownloader {
         if (cursor != null) {
             if (cursor.moveToFirst()) {
                 do {
-                    results.add(cursor.getString(0));
+                    results.add(new OfflineResource(cursor.getString(0),
+                            cursor.isNull(1) ? OfflineResource.NO_TILE_KEY : cursor.getLong(1)));
                 } while (cursor.moveToNext());
             }
             cursor.close();
@@ -318,7 +404,7 @@ public class MapDownloader {
     }
 
 
-    public boolean sqliteCreateDatabaseUsingMetadata(String mapId, List<String> urlStrings) {
+    public boolean sqliteCreateDatabaseUsingMetadata(String mapId, List<OfflineResource> resources) {
         if (Utils.runningOnMainThread()) {
             Timber.w("sqliteCreateDatabaseUsingMetadata() running on main thread.  Returning.");
             return false;
@@ -332,9 +418,11 @@ public class MapDownloader {
         SQLiteDatabase db = dbHandler.getWritableDatabase();
         db.beginTransaction();
 
-        for (String url : urlStrings) {
+        for (OfflineResource resource : resources) {
             ContentValues cv = new ContentValues();
-            cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, url);
+            cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_URL, resource.url);
+            if (resource.isTile())
+                cv.put(OfflineDatabaseHandler.FIELD_RESOURCES_TILE_KEY, resource.tileKey);
             db.insertWithOnConflict(OfflineDatabaseHandler.TABLE_RESOURCES, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
         }
 
@@ -372,9 +460,9 @@ public class MapDownloader {
     /**
      * Starting the Whole Download Process
      *
-     * @param urls Map urls
+     * @param urls Map tiles and resources
      */
-    public void startDownloadProcess(final String mapId, final List<String> urls) {
+    public void startDownloadProcess(final String mapId, final List<OfflineResource> urls) {
         if (state != OfflineMapDownloaderState.AVAILABLE) {
             Timber.w("state doesn't equal AVAILABLE so return.  state = " + state);
             return;
@@ -400,4 +488,14 @@ public class MapDownloader {
             }
         });
     }
+
+    private static class DownloadedTile {
+        final OfflineResource resource;
+        final byte[] data;
+
+        DownloadedTile(OfflineResource resource, byte[] data) {
+            this.resource = resource;
+            this.data = data;
+        }
+    }
 }
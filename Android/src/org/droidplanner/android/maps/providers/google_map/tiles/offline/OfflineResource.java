@@ -0,0 +1,36 @@
+package org.droidplanner.android.maps.providers.google_map.tiles.offline;
+
+import org.droidplanner.android.maps.providers.google_map.tiles.offline.db.OfflineDatabaseHandler;
+
+/**
+ * A resource to download for offline use: either a map tile, stored by its (zoom, x, y) coordinates, or an
+ * auxiliary file (map metadata, marker icon) stored by url.
+ */
+public class OfflineResource {
+
+    public static final long NO_TILE_KEY = -1;
+
+    public final String url;
+
+    /**
+     * Key of the tile in the offline database, or {@link #NO_TILE_KEY} for a resource that is not a tile.
+     */
+    public final long tileKey;
+
+    public OfflineResource(String url, long tileKey) {
+        this.url = url;
+        this.tileKey = tileKey;
+    }
+
+    public static OfflineResource tile(String url, int zoom, int x, int y) {
+        return new OfflineResource(url, OfflineDatabaseHandler.tileKey(zoom, x, y));
+    }
+
+    public static OfflineResource resource(String url) {
+        return new OfflineResource(url, NO_TILE_KEY);
+    }
+
+    public boolean isTile() {
+        return tileKey != NO_TILE_KEY;
+    }
+}
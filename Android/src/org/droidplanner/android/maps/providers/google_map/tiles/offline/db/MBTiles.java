@@ -0,0 +1,183 @@
+package org.droidplanner.android.maps.providers.google_map.tiles.offline.db;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.File;
+import java.io.IOException;
+
+import timber.log.Timber;
+
+/**
+ * Converts between the offline tile database and MBTiles 1.1 packages: sqlite files holding a
+ * metadata(name, value) table and a tiles(zoom_level, tile_column, tile_row, tile_data) table, with
+ * rows numbered from the bottom of the map (TMS).
+ * <p/>
+ * The package is attached to the offline database, so each conversion is a single INSERT ... SELECT.
+ */
+class MBTiles {
+
+    private static final String ALIAS = "mbtiles";
+
+    /**
+     * 25 bits, matching {@link OfflineDatabaseHandler#tileKey(int, int, int)}.
+     */
+    private static final long COORDINATE_MASK = (1L << 25) - 1;
+
+    private static final int MAX_ZOOM_LEVEL = 25;
+
+    //Private constructor to prevent instantiation.
+    private MBTiles() {
+    }
+
+    /**
+     * @return the number of tiles copied into the database.
+     */
+    static int importInto(SQLiteDatabase db, File source) throws IOException {
+        if (!source.isFile())
+            throw new IOException("No MBTiles package at " + source);
+
+        attach(db, source);
+        try {
+            if (!hasTilesTable(db))
+                throw new IOException(source + " is not an MBTiles package.");
+
+            db.beginTransaction();
+            final SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + OfflineDatabaseHandler.TABLE_TILES
+                    + " (" + OfflineDatabaseHandler.FIELD_TILES_KEY + ", " + OfflineDatabaseHandler.FIELD_TILES_DATA + ")"
+                    + " SELECT (zoom_level << 50) | (tile_column << 25) | ((1 << zoom_level) - 1 - tile_row), tile_data"
+                    + " FROM " + ALIAS + ".tiles WHERE zoom_level BETWEEN 0 AND " + MAX_ZOOM_LEVEL
+                    + " AND tile_data IS NOT NULL;");
+            try {
+                final int count = insert.executeUpdateDelete();
+                db.setTransactionSuccessful();
+                return count;
+            } finally {
+                insert.close();
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to import " + source, e);
+        } finally {
+            detach(db);
+        }
+    }
+
+    /**
+     * Writes every tile of the database to a new package, replacing any existing file.
+     *
+     * @return the number of tiles exported.
+     */
+    static int exportFrom(SQLiteDatabase db, File destination, String name) throws IOException {
+        final File dir = destination.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        if (destination.exists() && !destination.delete())
+            throw new IOException("Unable to replace " + destination);
+
+        boolean success = false;
+        attach(db, destination);
+        try {
+            db.beginTransaction();
+            try {
+                db.execSQL("CREATE TABLE " + ALIAS + ".metadata (name TEXT, value TEXT);");
+                db.execSQL("CREATE TABLE " + ALIAS + ".tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB);");
+
+                final String zoom = "(" + OfflineDatabaseHandler.FIELD_TILES_KEY + " >> 50)";
+                final String column = "((" + OfflineDatabaseHandler.FIELD_TILES_KEY + " >> 25) & " + COORDINATE_MASK + ")";
+                final String row = "(" + OfflineDatabaseHandler.FIELD_TILES_KEY + " & " + COORDINATE_MASK + ")";
+                final int count;
+                final SQLiteStatement insert = db.compileStatement("INSERT INTO " + ALIAS + ".tiles SELECT " + zoom + ", " + column
+                        + ", ((1 << " + zoom + ") - 1 - " + row + "), " + OfflineDatabaseHandler.FIELD_TILES_DATA
+                        + " FROM " + OfflineDatabaseHandler.TABLE_TILES + ";");
+                try {
+                    count = insert.executeUpdateDelete();
+                } finally {
+                    insert.close();
+                }
+                db.execSQL("CREATE UNIQUE INDEX " + ALIAS + ".tile_index ON tiles (zoom_level, tile_column, tile_row);");
+
+                putMetadata(db, "name", name);
+                putMetadata(db, "type", "baselayer");
+                putMetadata(db, "version", "1.1");
+                putMetadata(db, "description", name + " offline tiles");
+                putMetadata(db, "format", getTileFormat(db));
+                putZoomRange(db);
+
+                db.setTransactionSuccessful();
+                success = true;
+                return count;
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to export to " + destination, e);
+        } finally {
+            detach(db);
+            if (!success && !destination.delete())
+                Timber.w("Unable to delete the partial package %s", destination);
+        }
+    }
+
+    private static void attach(SQLiteDatabase db, File file) throws IOException {
+        try {
+            db.execSQL("ATTACH DATABASE ? AS " + ALIAS + ";", new Object[]{file.getAbsolutePath()});
+        } catch (SQLException e) {
+            throw new IOException("Unable to open " + file, e);
+        }
+    }
+
+    private static void detach(SQLiteDatabase db) {
+        try {
+            db.execSQL("DETACH DATABASE " + ALIAS + ";");
+        } catch (SQLException e) {
+            Timber.w(e, "Unable to detach the MBTiles package.");
+        }
+    }
+
+    private static boolean hasTilesTable(SQLiteDatabase db) {
+        //The spec allows tiles to be a view over the actual storage.
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + ALIAS + ".sqlite_master WHERE name='tiles' AND type IN ('table', 'view');", null);
+        try {
+            return cursor.moveToFirst() && cursor.getInt(0) > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void putMetadata(SQLiteDatabase db, String name, String value) {
+        db.execSQL("INSERT INTO " + ALIAS + ".metadata (name, value) VALUES (?, ?);", new Object[]{name, value});
+    }
+
+    private static void putZoomRange(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MIN(zoom_level), MAX(zoom_level) FROM " + ALIAS + ".tiles;", null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                putMetadata(db, "minzoom", String.valueOf(cursor.getInt(0)));
+                putMetadata(db, "maxzoom", String.valueOf(cursor.getInt(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return "jpg" or "png", from the signature of a stored tile.
+     */
+    private static String getTileFormat(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT substr(" + OfflineDatabaseHandler.FIELD_TILES_DATA + ", 1, 2) FROM "
+                + OfflineDatabaseHandler.TABLE_TILES + " LIMIT 1;", null);
+        try {
+            if (cursor.moveToFirst()) {
+                final byte[] signature = cursor.getBlob(0);
+                if (signature != null && signature.length == 2 && (signature[0] & 0xff) == 0xff && (signature[1] & 0xff) == 0xd8)
+                    return "jpg";
+            }
+            return "png";
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -6,6 +6,10 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
 
 public class OfflineDatabaseHandler extends SQLiteOpenHelper {
 
@@ -13,19 +17,39 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
 
     // All Static variables
     // Database Version
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 2;
+
+    /**
+     * Bytes of tile data kept in memory, per map.
+     */
+    private static final int TILE_CACHE_SIZE = 8 * 1024 * 1024;
 
     // Table name(s)
+    public static final String TABLE_TILES = "tiles";
     public static final String TABLE_DATA = "data";
     public static final String TABLE_RESOURCES = "resources";
 
     // Table Fields
+    public static final String FIELD_TILES_KEY = "key";
+    public static final String FIELD_TILES_DATA = "data";
+
     public static final String FIELD_DATA_ID = "id";
     public static final String FIELD_DATA_VALUE = "value";
 
     public static final String FIELD_RESOURCES_ID = "id";
     public static final String FIELD_RESOURCES_URL = "url";
     public static final String FIELD_RESOURCES_STATUS = "status";
+    public static final String FIELD_RESOURCES_TILE_KEY = "tile_key";
+
+    private static final String QUERY_TILE = "SELECT " + FIELD_TILES_DATA + " FROM " + TABLE_TILES
+            + " WHERE " + FIELD_TILES_KEY + "=?;";
+
+    private final LruCache<Long, byte[]> tileCache = new LruCache<Long, byte[]>(TILE_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(Long key, byte[] value) {
+            return value.length;
+        }
+    };
 
     /**
      * Constructor
@@ -36,17 +60,27 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
         super(context, dbName, null, DATABASE_VERSION);
     }
 
+    /**
+     * Packs the tile coordinates into the tiles table primary key. Supports zoom levels up to 25.
+     */
+    public static long tileKey(int zoom, int x, int y) {
+        return ((long) zoom << 50) | ((long) x << 25) | y;
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         Log.i(TAG, "onCreate() called... Setting up application's database.");
         // Create The table(s)
+        String tiles = "CREATE TABLE " + TABLE_TILES + " (" + FIELD_TILES_KEY + " INTEGER PRIMARY KEY, " + FIELD_TILES_DATA + " BLOB NOT NULL);";
         String data = "CREATE TABLE " + TABLE_DATA + " (" + FIELD_DATA_ID + " INTEGER PRIMARY KEY, " + FIELD_DATA_VALUE + " BLOB);";
-        String resources = "CREATE TABLE " + TABLE_RESOURCES + " (" + FIELD_RESOURCES_URL + " TEXT UNIQUE, " + FIELD_RESOURCES_STATUS + " TEXT, " + FIELD_RESOURCES_ID + " INTEGER REFERENCES data);";
+        String resources = "CREATE TABLE " + TABLE_RESOURCES + " (" + FIELD_RESOURCES_URL + " TEXT UNIQUE, " + FIELD_RESOURCES_STATUS + " TEXT, "
+                + FIELD_RESOURCES_ID + " INTEGER REFERENCES data, " + FIELD_RESOURCES_TILE_KEY + " INTEGER);";
 
         db.execSQL("PRAGMA foreign_keys=ON;");
         db.beginTransaction();
 
         try {
+            db.execSQL(tiles);
             db.execSQL(data);
             db.execSQL(resources);
             db.setTransactionSuccessful();
@@ -61,34 +95,69 @@ public class OfflineDatabaseHandler extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion + ", which will destroy all old data");
         db.execSQL("PRAGMA foreign_keys=OFF;");
-        db.execSQL("drop table if exists " + TABLE_DATA);
         db.execSQL("drop table if exists " + TABLE_RESOURCES);
+        db.execSQL("drop table if exists " + TABLE_DATA);
+        db.execSQL("drop table if exists " + TABLE_TILES);
         onCreate(db);
     }
 
-    public byte[] dataForURL(String url) {
-        return sqliteDataForURL(url);
+    /**
+     * Looks the tile up in memory first, then in the database. Safe to call from the map tile threads.
+     *
+     * @return the tile image, or null if it was not downloaded.
+     */
+    public byte[] getTile(int zoom, int x, int y) {
+        final long key = tileKey(zoom, x, y);
+        byte[] tile = tileCache.get(key);
+        if (tile != null)
+            return tile;
+
+        // The query text never changes, so sqlite keeps it compiled in the connection statement cache.
+        Cursor cursor = getReadableDatabase().rawQuery(QUERY_TILE, new String[]{String.valueOf(key)});
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            tile = cursor.getBlob(0);
+        } finally {
+            cursor.close();
+        }
+
+        if (tile != null && tile.length > 0)
+            tileCache.put(key, tile);
+        return tile;
     }
 
-    public byte[] sqliteDataForURL(String url) {
-        SQLiteDatabase db = getReadableDatabase();
+    /**
+     * Drops the in-memory copy of a tile that was rewritten in the database.
+     */
+    public void onTileUpdated(long tileKey) {
+        tileCache.remove(tileKey);
+    }
 
-        String query = "SELECT " + OfflineDatabaseHandler.FIELD_DATA_VALUE + " FROM " + OfflineDatabaseHandler.TABLE_DATA +
-                " WHERE " + OfflineDatabaseHandler.FIELD_DATA_ID +
-                "= (SELECT " + OfflineDatabaseHandler.FIELD_RESOURCES_ID + " from " +
-                OfflineDatabaseHandler.TABLE_RESOURCES + " where " + OfflineDatabaseHandler.FIELD_RESOURCES_URL +
-                " = '" + url + "');";
+    /**
+     * Merges the tiles of an MBTiles package into the database, replacing the ones already stored.
+     *
+     * @return the number of imported tiles.
+     */
+    public int importMBTiles(File source) throws IOException {
+        final int count = MBTiles.importInto(getWritableDatabase(), source);
+        tileCache.evictAll();
+        return count;
+    }
 
-        Cursor cursor = db.rawQuery(query, null);
+    /**
+     * Writes all the stored tiles to an MBTiles package, e.g. to sideload them on other devices.
+     *
+     * @param name Map name recorded in the package metadata.
+     * @return the number of exported tiles.
+     */
+    public int exportMBTiles(File destination, String name) throws IOException {
+        return MBTiles.exportFrom(getWritableDatabase(), destination, name);
+    }
 
-        byte[] blob = null;
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                blob = cursor.getBlob(cursor.getColumnIndex(OfflineDatabaseHandler.FIELD_DATA_VALUE));
-            }
-            cursor.close();
-        }
-//        db.close();
-        return blob;
+    @Override
+    public synchronized void close() {
+        tileCache.evictAll();
+        super.close();
     }
 }
@@ -0,0 +1,29 @@
+package org.droidplanner.android.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small pool of fixed size byte buffers shared by the network layer, so streaming request and
+ * response bodies does not allocate a new buffer per request.
+ */
+public class BufferPool {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final ArrayBlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    public static byte[] acquire() {
+        final byte[] buffer = pool.poll();
+        return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    public static void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE)
+            pool.offer(buffer);
+    }
+
+    //Private constructor to prevent instantiation.
+    private BufferPool(){}
+}
@@ -2,9 +2,11 @@ package org.droidplanner.android.network;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.util.JsonWriter;
 
 import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 
+import org.droidplanner.android.BuildConfig;
 import org.droidplanner.android.WaypointUtils;
 import org.droidplanner.android.network.request.Get;
 import org.droidplanner.android.network.request.Post;
@@ -20,63 +22,135 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 public class ComunicazioneConServerRunnable implements Runnable{
 
-    private static final String BASE_URL = "http://giorgiopavarini.altervista.org/";
+    private static final String BASE_URL = BuildConfig.SERVER_URL;
+
+    /**
+     * Response code reported to {@link RequestListener#onError(int, String)} when the request
+     * could not reach the server.
+     */
+    public static final int NETWORK_ERROR = -1;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private Request request;
     private RequestListener requestListener;
+    private Object tag;
+    private volatile boolean cancelled;
 
     public ComunicazioneConServerRunnable(Request request, RequestListener requestListener) {
         this.request = request;
         this.requestListener = requestListener;
     }
 
+    public Request getRequest() {
+        return request;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Once cancelled, the listener is not notified anymore, even if the response already arrived.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     @Override
     public void run() {
         try {
             HttpURLConnection urlConnection = request.connect();
 
             final int responseCode = urlConnection.getResponseCode();
-            InputStream in;
-            if(responseCode == 200)
-                in = urlConnection.getInputStream();
-            else
-                in = urlConnection.getErrorStream();
-
-            byte[] buffer = new byte[8192];
-            int numRead;
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            while((numRead = in.read(buffer))!=-1){
-                baos.write(buffer, 0, numRead); }
-            in.close();
-            final String responseContent = new String(baos.toByteArray());
-
-            Handler mainHandler = new Handler(Looper.getMainLooper());
-            if(responseCode == 200){
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        requestListener.onSuccess(responseContent);
-                    }
-                });
+            if(responseCode == 200) {
+                InputStream in = urlConnection.getInputStream();
+                try {
+                    onResponse(in);
+                } finally {
+                    in.close();
+                }
             } else {
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        requestListener.onError(responseCode, responseContent);
-                    }
-                });
+                deliverError(responseCode, readFully(urlConnection.getErrorStream()));
             }
         } catch (IOException e) {
             e.printStackTrace();
+            deliverError(NETWORK_ERROR, e.getMessage());
         }
     }
 
+    /**
+     * Consumes the body of a successful response. Runs on the request thread.
+     */
+    protected void onResponse(InputStream in) throws IOException {
+        final String responseContent = readFully(in);
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                requestListener.onSuccess(responseContent);
+            }
+        });
+    }
+
+    protected void deliverError(final int responseCode, final String response) {
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                requestListener.onError(responseCode, response);
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the main thread, unless the request is cancelled by then.
+     */
+    protected void postToMainThread(final Runnable task) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(!cancelled)
+                    task.run();
+            }
+        });
+    }
+
+    /**
+     * Drains and closes the stream, so the connection goes back to the pool.
+     */
+    private static String readFully(InputStream in) throws IOException {
+        if(in == null)
+            return "";
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = BufferPool.acquire();
+        int numRead;
+        try {
+            while ((numRead = in.read(buffer)) != -1) {
+                baos.write(buffer, 0, numRead);
+            }
+        } finally {
+            in.close();
+            BufferPool.release(buffer);
+        }
+        return new String(baos.toByteArray());
+    }
+
 
     public static Request selectPolizzeByCodiceClienteRequest(String codiceCliente){
         LinkedList<NameValuePair> parameter = new LinkedList<>();
@@ -90,13 +164,6 @@ public class ComunicazioneConServerRunnable implements Runnable{
         return new Get(BASE_URL + "getPercorsiByCodPZ.php", parameter);
     }
 
-    public static Request createPercorso(String codicePolizza){
-        LinkedList<NameValuePair> parameter = new LinkedList<>();
-        parameter.add(new NameValuePair("codPR", String.valueOf( (int)(Math.random()*1000000) )));
-        parameter.add(new NameValuePair("codPZ", codicePolizza));
-        return new Post(BASE_URL + "newPercorso.php", parameter);
-    }
-
     public static Request selectSinistriByCodicePolizzaRequest(String codicePolizza){
         LinkedList<NameValuePair> parameter = new LinkedList<>();
         parameter.add(new NameValuePair("CodPZ", codicePolizza));
@@ -109,6 +176,52 @@ public class ComunicazioneConServerRunnable implements Runnable{
         return new Get(BASE_URL + "getWPByCodPR.php", parameter);
     }
 
+    /**
+     * Creates the percorso and all its waypoints in a single request. The body is gzip compressed
+     * json: {"codPZ": ..., "uuid": ..., "wp": [{"CodWP": 0, "Latitudine": ..., ...}, ...]}.
+     * The client generated uuid, also sent as Idempotency-Key header, lets the server recognize a
+     * retried request and answer with the percorso already created instead of a duplicate.
+     * The response body is the code (CodPR) of the percorso.
+     */
+    public static Request createPercorsoConWaypoints(String codicePolizza, String uuid, List<Waypoint> waypoints) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(compressed), "UTF-8"));
+        try {
+            writer.beginObject();
+            writer.name("codPZ").value(codicePolizza);
+            writer.name("uuid").value(uuid);
+            writer.name("wp").beginArray();
+            int i = 0;
+            for (Waypoint waypoint : waypoints) {
+                writer.beginObject();
+                writer.name("CodWP").value(i++);
+                WaypointUtils.writeWaypoint(writer, waypoint);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+
+        Post post = new Post(BASE_URL + "newPercorsoConWayPoints.php", null);
+        post.addHeader("Idempotency-Key", uuid);
+        post.setBody(compressed.toByteArray(), "application/json; charset=utf-8", "gzip");
+        return post;
+    }
+
+    /**
+     * Legacy counterpart of {@link #createPercorsoConWaypoints(String, String, List)}, for servers
+     * without newPercorsoConWayPoints.php: the percorso code is picked by the client, and the
+     * waypoints are sent by {@link #createWayPoints(String, List)} once the percorso exists.
+     */
+    public static Request createPercorso(String codicePolizza, String codicePercorso){
+        LinkedList<NameValuePair> parameter = new LinkedList<>();
+        parameter.add(new NameValuePair("codPR", codicePercorso));
+        parameter.add(new NameValuePair("codPZ", codicePolizza));
+        return new Post(BASE_URL + "newPercorso.php", parameter);
+    }
+
     public static Request createWayPoints(String codicePercorso, List<Waypoint> waypoints) {
         Post post = new Post(BASE_URL + "addWayPoints.php", null);
         JSONArray jsonArray = new JSONArray();
@@ -128,15 +241,51 @@ public class ComunicazioneConServerRunnable implements Runnable{
     }
 
     public static Request uploadPhotoRequest(File file, String codiceSinistro, String codicePercorso, int waypointIndex){
+        return uploadPhotoRequest(file, codiceSinistro, codicePercorso, waypointIndex, 0);
+    }
+
+    /**
+     * Uploads the photo starting at the given byte offset. When the offset is greater than zero
+     * the request carries an "offset" field and the file part a Content-Range header, and the
+     * server appends the bytes to the partial file it already holds. The fields come before the
+     * file, so the server knows which photo an interrupted upload belongs to.
+     * Android/tools/upload_stand_in_server.py mirrors the server side of this protocol.
+     *
+     * @see #uploadedPhotoOffsetRequest(String, String, int)
+     */
+    public static Request uploadPhotoRequest(File file, String codiceSinistro, String codicePercorso, int waypointIndex, long offset){
+        if(offset <= 0) {
+            return new MultiPart(
+                    BASE_URL + "addFoto.php",
+                    new FieldPart("percorso", codicePercorso),
+                    new FieldPart("sinistro", codiceSinistro),
+                    new FieldPart("waypoint", String.valueOf(waypointIndex)),
+                    new FilePart(file, "userfile")
+            );
+        }
+
         return new MultiPart(
                 BASE_URL + "addFoto.php",
-                new FilePart(file, "userfile"),
                 new FieldPart("percorso", codicePercorso),
                 new FieldPart("sinistro", codiceSinistro),
-                new FieldPart("waypoint", String.valueOf(waypointIndex))
+                new FieldPart("waypoint", String.valueOf(waypointIndex)),
+                new FieldPart("offset", String.valueOf(offset)),
+                new FilePart(file, "userfile", offset)
         );
     }
 
+    /**
+     * Asks the server how many bytes of a photo it has already stored. The response body is the
+     * acknowledged byte count as plain text.
+     */
+    public static Request uploadedPhotoOffsetRequest(String codiceSinistro, String codicePercorso, int waypointIndex){
+        LinkedList<NameValuePair> parameter = new LinkedList<>();
+        parameter.add(new NameValuePair("percorso", codicePercorso));
+        parameter.add(new NameValuePair("sinistro", codiceSinistro));
+        parameter.add(new NameValuePair("waypoint", String.valueOf(waypointIndex)));
+        return new Get(BASE_URL + "getFotoOffset.php", parameter);
+    }
+
     public static Request login(String username, String password){
         LinkedList<NameValuePair> parameter = new LinkedList<>();
         parameter.add(new NameValuePair("usr", username));
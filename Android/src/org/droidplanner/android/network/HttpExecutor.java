@@ -0,0 +1,402 @@
+package org.droidplanner.android.network;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.OkUrlFactory;
+
+import org.droidplanner.android.network.cache.ResponseCache;
+import org.droidplanner.android.network.request.Request;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Central executor for the requests sent to the server.
+ * <ul>
+ * <li>Connections are opened through a shared {@link OkHttpClient}, so they are kept alive and
+ * reused across requests instead of paying a TCP handshake each time.</li>
+ * <li>Requests run on a bounded thread pool, with a cap on the requests in flight per endpoint;
+ * the others wait in a per-endpoint queue.</li>
+ * <li>Prefetches wait in a second queue, only served once the first is empty, and always leave
+ * one slot of their endpoint to the requests the user is waiting for.</li>
+ * <li>Every request is tagged with its owner (usually an activity or fragment) and can be
+ * cancelled with {@link #cancelAll(Object)} when the owner goes away, in which case its listener
+ * is never called.</li>
+ * </ul>
+ */
+public class HttpExecutor {
+
+    public static final long DEFAULT_CONNECT_TIMEOUT = 15000L; //ms
+    public static final long DEFAULT_READ_TIMEOUT = 30000L; //ms
+
+    private static final int POOL_SIZE = 4;
+    private static final int DEFAULT_MAX_IN_FLIGHT_PER_ENDPOINT = 2;
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000L; //ms
+
+    private static final long RETRY_BASE_DELAY = 2000L; //ms
+
+    private static HttpExecutor instance;
+
+    public static synchronized HttpExecutor getInstance() {
+        if (instance == null)
+            instance = new HttpExecutor();
+        return instance;
+    }
+
+    /**
+     * Opens a connection through the shared, pooled client.
+     */
+    public static HttpURLConnection openConnection(URL url) {
+        return getInstance().urlFactory.open(url);
+    }
+
+    private final OkHttpClient client;
+    private final OkUrlFactory urlFactory;
+    private final ThreadPoolExecutor threadPool;
+    private final Handler retryHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+    private final Map<String, Integer> endpointLimits = new HashMap<>();
+
+    //Backoff retries waiting on the retry handler, by tag.
+    private final Map<Object, List<Runnable>> scheduledRetries = new HashMap<>();
+
+    private HttpExecutor() {
+        client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION));
+        client.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        client.setReadTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        client.setWriteTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        urlFactory = new OkUrlFactory(client);
+
+        threadPool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Server request #" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Updates the timeouts applied to the connections opened from now on.
+     */
+    public void setTimeouts(long connectTimeout, long readTimeout, TimeUnit unit) {
+        client.setConnectTimeout(connectTimeout, unit);
+        client.setReadTimeout(readTimeout, unit);
+        client.setWriteTimeout(readTimeout, unit);
+    }
+
+    /**
+     * Sets how many requests to the given endpoint (request url without its query) may run at the
+     * same time.
+     */
+    public synchronized void setMaxInFlight(String endpoint, int maxInFlight) {
+        endpointLimits.put(endpoint, Math.max(1, maxInFlight));
+    }
+
+    /**
+     * Queues the request.
+     *
+     * @param tag Owner of the request, used to cancel it through {@link #cancelAll(Object)}.
+     * @return the runnable carrying the request, which can be cancelled on its own.
+     */
+    public ComunicazioneConServerRunnable execute(Object tag, Request request,
+                                                  ComunicazioneConServerRunnable.RequestListener listener) {
+        final ComunicazioneConServerRunnable call = new ComunicazioneConServerRunnable(request, listener);
+        call.setTag(tag);
+        enqueue(call);
+        return call;
+    }
+
+    /**
+     * Queues a request that is safe to send more than once (e.g. carrying an idempotency key),
+     * and sends it again with exponential backoff when it fails on a network error or a server
+     * side error. The listener is only notified of the final outcome.
+     */
+    public void executeWithRetry(Object tag, Request request, ComunicazioneConServerRunnable.RequestListener listener,
+                                 int maxAttempts) {
+        execute(tag, request, new RetryListener(tag, request, listener, maxAttempts));
+    }
+
+    /**
+     * Queues a request whose response holds a json array, decoded incrementally off the main
+     * thread.
+     *
+     * @param arrayName Name of the array field in the response root object.
+     * @see StreamingJsonRunnable
+     */
+    public <T> ComunicazioneConServerRunnable executeStreaming(Object tag, Request request, String arrayName,
+                                                               StreamingJsonRunnable.ItemDecoder<T> decoder,
+                                                               StreamingJsonRunnable.StreamListener<T> listener) {
+        return executeStreaming(tag, request, arrayName, decoder, listener, null, 0);
+    }
+
+    /**
+     * Same as {@link #executeStreaming(Object, Request, String, StreamingJsonRunnable.ItemDecoder,
+     * StreamingJsonRunnable.StreamListener)}, served from the given cache when possible.
+     *
+     * @see StreamingJsonRunnable#setCache(ResponseCache, long)
+     */
+    public <T> ComunicazioneConServerRunnable executeStreaming(Object tag, Request request, String arrayName,
+                                                               StreamingJsonRunnable.ItemDecoder<T> decoder,
+                                                               StreamingJsonRunnable.StreamListener<T> listener,
+                                                               ResponseCache cache, long cacheTtl) {
+        final StreamingJsonRunnable<T> call = new StreamingJsonRunnable<>(request, arrayName, decoder, listener);
+        if (cache != null)
+            call.setCache(cache, cacheTtl);
+        call.setTag(tag);
+        enqueue(call);
+        return call;
+    }
+
+    /**
+     * Queues a streaming request whose only purpose is to fill the cache, behind every other
+     * request to the same endpoint.
+     *
+     * @return the runnable carrying the request, or null if the same url is already queued or
+     * running.
+     * @see #cancelPrefetches(Object)
+     */
+    public synchronized <T> ComunicazioneConServerRunnable executePrefetch(Object tag, Request request, String arrayName,
+                                                                           StreamingJsonRunnable.ItemDecoder<T> decoder,
+                                                                           StreamingJsonRunnable.StreamListener<T> listener,
+                                                                           ResponseCache cache, long cacheTtl) {
+        final Endpoint endpoint = getEndpoint(request.getEndpoint());
+        if (endpoint.contains(request.getRequestUrl()))
+            return null;
+
+        final StreamingJsonRunnable<T> call = new StreamingJsonRunnable<>(request, arrayName, decoder, listener);
+        call.setCache(cache, cacheTtl);
+        call.setTag(tag);
+        endpoint.prefetches.add(call);
+        promote(endpoint);
+        return call;
+    }
+
+    private synchronized void enqueue(ComunicazioneConServerRunnable call) {
+        final Endpoint endpoint = getEndpoint(call.getRequest().getEndpoint());
+        endpoint.pending.add(call);
+        promote(endpoint);
+    }
+
+    private Endpoint getEndpoint(String key) {
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            final Integer limit = endpointLimits.get(key);
+            endpoint = new Endpoint(key, limit == null ? DEFAULT_MAX_IN_FLIGHT_PER_ENDPOINT : limit);
+            endpoints.put(key, endpoint);
+        }
+        return endpoint;
+    }
+
+    private synchronized void onFinished(Endpoint endpoint, ComunicazioneConServerRunnable call) {
+        endpoint.running.remove(call);
+        endpoint.runningPrefetches.remove(call);
+        promote(endpoint);
+
+        if (endpoint.running.isEmpty() && endpoint.pending.isEmpty() && endpoint.prefetches.isEmpty())
+            endpoints.remove(endpoint.key);
+    }
+
+    private void promote(final Endpoint endpoint) {
+        while (endpoint.running.size() < endpoint.maxInFlight && !endpoint.pending.isEmpty()) {
+            final ComunicazioneConServerRunnable call = endpoint.pending.poll();
+            if (!call.isCancelled())
+                start(endpoint, call);
+        }
+
+        final int maxPrefetchesInFlight = Math.max(1, endpoint.maxInFlight - 1);
+        while (endpoint.pending.isEmpty() && endpoint.running.size() < maxPrefetchesInFlight
+                && !endpoint.prefetches.isEmpty()) {
+            final ComunicazioneConServerRunnable call = endpoint.prefetches.poll();
+            if (!call.isCancelled()) {
+                endpoint.runningPrefetches.add(call);
+                start(endpoint, call);
+            }
+        }
+    }
+
+    private void start(final Endpoint endpoint, final ComunicazioneConServerRunnable call) {
+        endpoint.running.add(call);
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!call.isCancelled())
+                        call.run();
+                } finally {
+                    onFinished(endpoint, call);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels every queued or running request owned by the given tag. Their listeners will not
+     * be called.
+     */
+    public synchronized void cancelAll(Object tag) {
+        if (tag == null)
+            return;
+
+        for (Endpoint endpoint : endpoints.values()) {
+            cancel(endpoint.pending, tag);
+            cancel(endpoint.prefetches, tag);
+            for (ComunicazioneConServerRunnable call : endpoint.running) {
+                if (call.getTag() == tag)
+                    call.cancel();
+            }
+        }
+
+        final List<Runnable> retries = scheduledRetries.remove(tag);
+        if (retries != null) {
+            for (Runnable retry : retries)
+                retryHandler.removeCallbacks(retry);
+        }
+    }
+
+    private synchronized void scheduleRetry(Object tag, Runnable retry, long delay) {
+        List<Runnable> retries = scheduledRetries.get(tag);
+        if (retries == null) {
+            retries = new ArrayList<>();
+            scheduledRetries.put(tag, retries);
+        }
+        retries.add(retry);
+        retryHandler.postDelayed(retry, delay);
+    }
+
+    /**
+     * @return false if the retry was cancelled in the meantime.
+     */
+    private synchronized boolean unscheduleRetry(Object tag, Runnable retry) {
+        final List<Runnable> retries = scheduledRetries.get(tag);
+        if (retries == null || !retries.remove(retry))
+            return false;
+
+        if (retries.isEmpty())
+            scheduledRetries.remove(tag);
+        return true;
+    }
+
+    /**
+     * Cancels the prefetches owned by the given tag, leaving its other requests alone.
+     */
+    public synchronized void cancelPrefetches(Object tag) {
+        if (tag == null)
+            return;
+
+        for (Endpoint endpoint : endpoints.values()) {
+            cancel(endpoint.prefetches, tag);
+            for (ComunicazioneConServerRunnable call : endpoint.runningPrefetches) {
+                if (call.getTag() == tag)
+                    call.cancel();
+            }
+        }
+    }
+
+    private static void cancel(ArrayDeque<ComunicazioneConServerRunnable> queue, Object tag) {
+        Iterator<ComunicazioneConServerRunnable> it = queue.iterator();
+        while (it.hasNext()) {
+            ComunicazioneConServerRunnable call = it.next();
+            if (call.getTag() == tag) {
+                call.cancel();
+                it.remove();
+            }
+        }
+    }
+
+    private class RetryListener implements ComunicazioneConServerRunnable.RequestListener {
+
+        private final Object tag;
+        private final Request request;
+        private final ComunicazioneConServerRunnable.RequestListener listener;
+        private final int maxAttempts;
+        private int attempt = 1;
+
+        RetryListener(Object tag, Request request, ComunicazioneConServerRunnable.RequestListener listener, int maxAttempts) {
+            this.tag = tag;
+            this.request = request;
+            this.listener = listener;
+            this.maxAttempts = maxAttempts;
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            listener.onSuccess(response);
+        }
+
+        @Override
+        public void onError(int responseCode, String response) {
+            final boolean isTransient = responseCode == ComunicazioneConServerRunnable.NETWORK_ERROR
+                    || responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+            if (!isTransient || attempt >= maxAttempts) {
+                listener.onError(responseCode, response);
+                return;
+            }
+
+            final long delay = RETRY_BASE_DELAY << (attempt - 1);
+            attempt++;
+            Timber.w("%s failed (%d), attempt %d in %d ms", request.getEndpoint(), responseCode, attempt, delay);
+            scheduleRetry(tag, new Runnable() {
+                @Override
+                public void run() {
+                    if (unscheduleRetry(tag, this))
+                        execute(tag, request, RetryListener.this);
+                }
+            }, delay);
+        }
+    }
+
+    private static class Endpoint {
+        final String key;
+        final int maxInFlight;
+        final ArrayDeque<ComunicazioneConServerRunnable> pending = new ArrayDeque<>();
+        final ArrayDeque<ComunicazioneConServerRunnable> prefetches = new ArrayDeque<>();
+        final List<ComunicazioneConServerRunnable> running = new ArrayList<>();
+
+        //Subset of running.
+        final List<ComunicazioneConServerRunnable> runningPrefetches = new ArrayList<>();
+
+        Endpoint(String key, int maxInFlight) {
+            this.key = key;
+            this.maxInFlight = maxInFlight;
+        }
+
+        boolean contains(String url) {
+            return contains(pending, url) || contains(prefetches, url) || contains(running, url);
+        }
+
+        private static boolean contains(Iterable<ComunicazioneConServerRunnable> calls, String url) {
+            for (ComunicazioneConServerRunnable call : calls) {
+                if (!call.isCancelled() && url.equals(call.getRequest().getRequestUrl()))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.droidplanner.android.network;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
+
+import org.droidplanner.android.Polizza;
+import org.droidplanner.android.Sinistro;
+import org.droidplanner.android.WaypointUtils;
+
+import java.io.IOException;
+
+/**
+ * Decoders for the arrays returned by the server, to use with
+ * {@link HttpExecutor#executeStreaming(Object, org.droidplanner.android.network.request.Request, String,
+ * StreamingJsonRunnable.ItemDecoder, StreamingJsonRunnable.StreamListener)}.
+ */
+public class ResponseDecoders {
+
+    public static final String ARRAY_POLIZZE = "polizze";
+    public static final String ARRAY_SINISTRI = "sinistri";
+    public static final String ARRAY_PERCORSI = "percorsi";
+    public static final String ARRAY_WAYPOINTS = "wp";
+
+    public static final StreamingJsonRunnable.ItemDecoder<Polizza> POLIZZA = new StreamingJsonRunnable.ItemDecoder<Polizza>() {
+        @Override
+        public Polizza decode(JsonReader reader) throws IOException {
+            return new Polizza(reader);
+        }
+    };
+
+    public static final StreamingJsonRunnable.ItemDecoder<Sinistro> SINISTRO = new StreamingJsonRunnable.ItemDecoder<Sinistro>() {
+        @Override
+        public Sinistro decode(JsonReader reader) throws IOException {
+            return new Sinistro(reader);
+        }
+    };
+
+    /**
+     * Decodes a percorso to its code (CodPR).
+     */
+    public static final StreamingJsonRunnable.ItemDecoder<String> CODICE_PERCORSO = new StreamingJsonRunnable.ItemDecoder<String>() {
+        @Override
+        public String decode(JsonReader reader) throws IOException {
+            String codicePercorso = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("CodPR".equals(reader.nextName()))
+                    codicePercorso = nextString(reader);
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+            return codicePercorso;
+        }
+    };
+
+    public static final StreamingJsonRunnable.ItemDecoder<Waypoint> WAYPOINT = new StreamingJsonRunnable.ItemDecoder<Waypoint>() {
+        @Override
+        public Waypoint decode(JsonReader reader) throws IOException {
+            return WaypointUtils.jsonToWaypoint(reader);
+        }
+    };
+
+    /**
+     * Reads a string, number or boolean value as a string. Returns null for a json null.
+     */
+    public static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Reads a number, accepting numbers sent as strings.
+     */
+    public static double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextDouble();
+    }
+
+    //Private constructor to prevent instantiation.
+    private ResponseDecoders(){}
+}
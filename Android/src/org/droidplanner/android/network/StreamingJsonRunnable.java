@@ -0,0 +1,253 @@
+package org.droidplanner.android.network;
+
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.droidplanner.android.network.cache.ResponseCache;
+import org.droidplanner.android.network.cache.TeeInputStream;
+import org.droidplanner.android.network.request.Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Request whose response is a json object holding an array of items, e.g. {"polizze": [...]}.
+ * The array is decoded with a pull parser straight from the socket, on the request thread, and
+ * the decoded items are handed to the main thread in small batches as they arrive.
+ *
+ * @param <T> Type of the decoded items.
+ */
+public class StreamingJsonRunnable<T> extends ComunicazioneConServerRunnable {
+
+    private static final int MAX_BATCH_SIZE = 20;
+    private static final long MAX_BATCH_DELAY = 100L; //ms
+
+    private final String arrayName;
+    private final ItemDecoder<T> decoder;
+    private final StreamListener<T> listener;
+
+    private ResponseCache cache;
+    private long cacheTtl;
+
+    /**
+     * Number of batches handed to the listener so far, only touched on the request thread.
+     */
+    private int deliveredBatches;
+
+    public StreamingJsonRunnable(Request request, String arrayName, ItemDecoder<T> decoder, StreamListener<T> listener) {
+        super(request, null);
+        this.arrayName = arrayName;
+        this.decoder = decoder;
+        this.listener = listener;
+    }
+
+    /**
+     * Serves the response from the cache while it is younger than the ttl, or when the device is
+     * offline. A stale response is revalidated with the server before being used.
+     */
+    public void setCache(ResponseCache cache, long ttl) {
+        this.cache = cache;
+        this.cacheTtl = ttl;
+    }
+
+    @Override
+    public void run() {
+        if (cache == null) {
+            super.run();
+            return;
+        }
+
+        final Request request = getRequest();
+        final String url = request.getRequestUrl();
+        final ResponseCache.Entry cached = cache.get(url);
+        if (cached != null && (cached.isFresh(cacheTtl) || !cache.isNetworkAvailable())) {
+            replay(cached);
+            return;
+        }
+
+        if (cached != null) {
+            if (cached.etag != null)
+                request.addHeader("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                request.addHeader("If-Modified-Since", cached.lastModified);
+        }
+
+        try {
+            HttpURLConnection urlConnection = request.connect();
+            final int responseCode = urlConnection.getResponseCode();
+
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                //Decode while the bytes arrive, keeping a copy for the cache.
+                final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+                final InputStream in = new TeeInputStream(urlConnection.getInputStream(), copy);
+                try {
+                    if (parse(in))
+                        cache.put(url, copy.toByteArray(), urlConnection.getHeaderField("ETag"),
+                                urlConnection.getHeaderField("Last-Modified"));
+                } finally {
+                    in.close();
+                }
+                return;
+            }
+
+            closeQuietly(responseCode >= 400 ? urlConnection.getErrorStream() : urlConnection.getInputStream());
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cache.touch(url);
+                replay(cached);
+            } else if (cached != null) {
+                replay(cached);
+            } else {
+                deliverError(responseCode, null);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to reach %s", url);
+            if (cached != null && deliveredBatches == 0)
+                replay(cached);
+            else
+                deliverError(ComunicazioneConServerRunnable.NETWORK_ERROR, e.getMessage());
+        }
+    }
+
+    private void replay(ResponseCache.Entry cached) {
+        try {
+            parse(new ByteArrayInputStream(cached.body));
+        } catch (IOException e) {
+            deliverError(ComunicazioneConServerRunnable.NETWORK_ERROR, e.getMessage());
+        }
+    }
+
+    @Override
+    protected void onResponse(InputStream in) throws IOException {
+        parse(in);
+    }
+
+    /**
+     * @return true if the whole response was decoded.
+     */
+    private boolean parse(InputStream in) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        reader.setLenient(true);
+
+        int total = 0;
+        try {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (arrayName.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        total += readArray(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            //Unexpected layout. The batches already delivered remain valid.
+            deliverError(ComunicazioneConServerRunnable.NETWORK_ERROR, e.getMessage());
+            return false;
+        }
+
+        if (isCancelled())
+            return false;
+
+        final int count = total;
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onComplete(count);
+            }
+        });
+        return true;
+    }
+
+    private int readArray(JsonReader reader) throws IOException {
+        int count = 0;
+        List<T> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        long batchStart = SystemClock.elapsedRealtime();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (isCancelled()) {
+                return count;
+            }
+
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                batch.add(decoder.decode(reader));
+                count++;
+            } else {
+                reader.skipValue();
+            }
+
+            final long now = SystemClock.elapsedRealtime();
+            if (batch.size() >= MAX_BATCH_SIZE || (!batch.isEmpty() && now - batchStart >= MAX_BATCH_DELAY)) {
+                deliverItems(batch);
+                batch = new ArrayList<>(MAX_BATCH_SIZE);
+                batchStart = now;
+            }
+        }
+        reader.endArray();
+
+        if (!batch.isEmpty())
+            deliverItems(batch);
+
+        return count;
+    }
+
+    private void deliverItems(final List<T> items) {
+        deliveredBatches++;
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onItems(items);
+            }
+        });
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null)
+            return;
+        try {
+            in.close();
+        } catch (IOException e) {
+            Timber.w(e, "Unable to close the response stream.");
+        }
+    }
+
+    @Override
+    protected void deliverError(final int responseCode, final String response) {
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(responseCode, response);
+            }
+        });
+    }
+
+    /**
+     * Decodes one array element. The reader is positioned on the element's BEGIN_OBJECT and must
+     * be left right after its END_OBJECT.
+     */
+    public interface ItemDecoder<T> {
+        T decode(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * All the callbacks are made on the main thread.
+     */
+    public interface StreamListener<T> {
+        void onItems(List<T> items);
+
+        void onComplete(int total);
+
+        void onError(int responseCode, String response);
+    }
+}
@@ -0,0 +1,182 @@
+package org.droidplanner.android.network.cache;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.droidplanner.android.utils.NetworkUtils;
+
+import timber.log.Timber;
+
+/**
+ * Persistent copy of the server responses for polizze, sinistri, percorsi and waypoints, keyed by
+ * request url. Responses are served from here while fresh, revalidated with ETag /
+ * If-Modified-Since once stale, and used as is when the device is offline. The cache is trimmed by
+ * age and total size on every write.
+ */
+public class ResponseCache extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "response_cache.db";
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * How long a response is used without asking the server.
+     */
+    public static final long DEFAULT_TTL = 15 * 60 * 1000L; //ms
+
+    /**
+     * Itineraries do not change once created.
+     */
+    public static final long WAYPOINTS_TTL = 24 * 60 * 60 * 1000L; //ms
+
+    /**
+     * Responses not confirmed by the server for this long are dropped, even offline.
+     */
+    private static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L; //ms
+
+    /**
+     * Total size of the cached bodies. The least recently fetched are dropped beyond it.
+     */
+    private static final long MAX_SIZE = 8 * 1024 * 1024L; //bytes
+
+    private static final String TABLE_RESPONSES = "responses";
+
+    private static final String FIELD_URL = "url";
+    private static final String FIELD_BODY = "body";
+    private static final String FIELD_ETAG = "etag";
+    private static final String FIELD_LAST_MODIFIED = "last_modified";
+    private static final String FIELD_FETCHED_AT = "fetched_at";
+
+    private static ResponseCache instance;
+
+    public static synchronized ResponseCache getInstance(Context context) {
+        if (instance == null)
+            instance = new ResponseCache(context.getApplicationContext());
+        return instance;
+    }
+
+    private final Context context;
+
+    private ResponseCache(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_RESPONSES + " ("
+                + FIELD_URL + " TEXT PRIMARY KEY, "
+                + FIELD_BODY + " BLOB NOT NULL, "
+                + FIELD_ETAG + " TEXT, "
+                + FIELD_LAST_MODIFIED + " TEXT, "
+                + FIELD_FETCHED_AT + " INTEGER NOT NULL);");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Timber.w("Upgrading response cache from version %d to %d", oldVersion, newVersion);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESPONSES);
+        onCreate(db);
+    }
+
+    public boolean isNetworkAvailable() {
+        return NetworkUtils.isNetworkAvailable(context);
+    }
+
+    public Entry get(String url) {
+        Cursor cursor = getReadableDatabase().query(TABLE_RESPONSES,
+                new String[]{FIELD_BODY, FIELD_ETAG, FIELD_LAST_MODIFIED, FIELD_FETCHED_AT},
+                FIELD_URL + "=?", new String[]{url}, null, null, null);
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            return new Entry(cursor.getBlob(0), cursor.getString(1), cursor.getString(2), cursor.getLong(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void put(String url, byte[] body, String etag, String lastModified) {
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_URL, url);
+        values.put(FIELD_BODY, body);
+        values.put(FIELD_ETAG, etag);
+        values.put(FIELD_LAST_MODIFIED, lastModified);
+        values.put(FIELD_FETCHED_AT, System.currentTimeMillis());
+        final SQLiteDatabase db = getWritableDatabase();
+        db.insertWithOnConflict(TABLE_RESPONSES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        trim(db);
+    }
+
+    /**
+     * The server confirmed the cached response is still current.
+     */
+    public void touch(String url) {
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_FETCHED_AT, System.currentTimeMillis());
+        getWritableDatabase().update(TABLE_RESPONSES, values, FIELD_URL + "=?", new String[]{url});
+    }
+
+    /**
+     * Drops the response for the given url, typically after a change made through the server.
+     */
+    public void invalidate(String url) {
+        getWritableDatabase().delete(TABLE_RESPONSES, FIELD_URL + "=?", new String[]{url});
+    }
+
+    /**
+     * Applies {@link #MAX_AGE} then {@link #MAX_SIZE}.
+     */
+    private void trim(SQLiteDatabase db) {
+        final long now = System.currentTimeMillis();
+        final int expired = db.delete(TABLE_RESPONSES, FIELD_FETCHED_AT + "<?",
+                new String[]{Long.toString(now - MAX_AGE)});
+        if (expired > 0)
+            Timber.d("Dropped %d expired responses", expired);
+
+        //Newest first, so everything past the size budget can go.
+        final Cursor cursor = db.query(TABLE_RESPONSES,
+                new String[]{FIELD_FETCHED_AT, "length(" + FIELD_BODY + ")"},
+                null, null, null, null, FIELD_FETCHED_AT + " DESC");
+        long evictBefore = -1;
+        try {
+            long size = 0;
+            while (cursor.moveToNext()) {
+                size += cursor.getLong(1);
+                if (size > MAX_SIZE) {
+                    evictBefore = cursor.getLong(0);
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (evictBefore >= 0) {
+            final int evicted = db.delete(TABLE_RESPONSES, FIELD_FETCHED_AT + "<=?",
+                    new String[]{Long.toString(evictBefore)});
+            Timber.d("Dropped %d responses over the size limit", evicted);
+        }
+    }
+
+    public static class Entry {
+        public final byte[] body;
+        public final String etag;
+        public final String lastModified;
+        public final long fetchedAt;
+
+        Entry(byte[] body, String etag, String lastModified, long fetchedAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public boolean isFresh(long ttl) {
+            final long age = System.currentTimeMillis() - fetchedAt;
+            return age >= 0 && age < ttl;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.droidplanner.android.network.cache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies every byte read from the wrapped stream to an output stream.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+    private final OutputStream copy;
+
+    public TeeInputStream(InputStream in, OutputStream copy) {
+        super(in);
+        this.copy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b != -1)
+            copy.write(b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        final int read = super.read(buffer, offset, count);
+        if (read > 0)
+            copy.write(buffer, offset, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        //Skipped bytes must still reach the copy.
+        long skipped = 0;
+        while (skipped < byteCount && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
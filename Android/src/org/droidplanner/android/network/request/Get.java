@@ -4,7 +4,6 @@ import org.droidplanner.android.network.NameValuePair;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.List;
 
 
@@ -25,8 +24,7 @@ public class Get extends Request {
 
     @Override
     public HttpURLConnection connect() throws IOException {
-        URL url = new URL(getRequestUrl());
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection urlConnection = openConnection();
         urlConnection.setRequestMethod("GET");
         urlConnection.connect();
         return urlConnection;
@@ -5,19 +5,19 @@ import android.text.TextUtils;
 
 import org.droidplanner.android.network.NameValuePair;
 
-import java.io.BufferedWriter;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.List;
 
 public class Post extends Request{
 
     public String payload;
 
+    private byte[] body;
+    private String contentType;
+    private String contentEncoding;
+
     public Post(String requestUrl, List<NameValuePair> parameters) {
         super(requestUrl, parameters);
     }
@@ -26,10 +26,42 @@ public class Post extends Request{
         this.payload = payload;
     }
 
+    /**
+     * Sends the given, already encoded, bytes as the request body. The body is kept so the same
+     * request can be sent again on retry.
+     *
+     * @param contentEncoding e.g. "gzip", or null when the body is not compressed.
+     */
+    public void setBody(byte[] body, String contentType, String contentEncoding){
+        this.body = body;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+    }
+
     @Override
     public HttpURLConnection connect() throws IOException {
-        URL url = new URL(getRequestUrl());
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection urlConnection = openConnection();
+
+        urlConnection.setDoOutput(true);
+        urlConnection.setRequestMethod("POST");
+
+        if(body != null){
+            urlConnection.setRequestProperty("Content-Type", contentType);
+            if(contentEncoding != null)
+                urlConnection.setRequestProperty("Content-Encoding", contentEncoding);
+            urlConnection.setFixedLengthStreamingMode(body.length);
+
+            DataOutputStream dataOutputStream = new DataOutputStream(urlConnection.getOutputStream());
+            try {
+                dataOutputStream.write(body);
+                dataOutputStream.flush();
+            } finally {
+                dataOutputStream.close();
+            }
+
+            urlConnection.connect();
+            return urlConnection;
+        }
 
         String postParameters;
         if(TextUtils.isEmpty(payload)){
@@ -38,9 +70,6 @@ public class Post extends Request{
             postParameters = payload;
         }
 
-        urlConnection.setDoOutput(true);
-        urlConnection.setRequestMethod("POST");
-
         DataOutputStream dataOutputStream = new DataOutputStream(urlConnection.getOutputStream());
 
         dataOutputStream.writeBytes(postParameters);
@@ -1,18 +1,19 @@
 package org.droidplanner.android.network.request;
 
+import org.droidplanner.android.network.HttpExecutor;
 import org.droidplanner.android.network.NameValuePair;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.URLEncoder;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 public abstract class Request{
     private final String requestUrl;
     private final List<NameValuePair> parameters;
-
+    private final List<NameValuePair> headers = new ArrayList<>();
 
     public Request(String requestUrl, List<NameValuePair> parameters) {
         this.requestUrl = requestUrl;
@@ -34,10 +35,36 @@ public abstract class Request{
         return result.toString();
     }
 
+    /**
+     * Adds a header sent with the request. Must be called before {@link #connect()}.
+     */
+    public void addHeader(String name, String value) {
+        headers.add(new NameValuePair(name, value));
+    }
+
     public String getRequestUrl() {
         return requestUrl;
     }
 
+    /**
+     * @return the url of the endpoint this request targets, without the query.
+     */
+    public String getEndpoint() {
+        return requestUrl;
+    }
+
+    /**
+     * Opens the connection through the shared {@link HttpExecutor} client, so it benefits from
+     * keep-alive and the configured timeouts.
+     */
+    protected HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection urlConnection = HttpExecutor.openConnection(new URL(getRequestUrl()));
+        for (NameValuePair header : headers) {
+            urlConnection.setRequestProperty(header.name, header.value);
+        }
+        return urlConnection;
+    }
+
     public abstract HttpURLConnection connect() throws IOException;
 
 }
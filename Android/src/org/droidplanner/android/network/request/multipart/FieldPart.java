@@ -7,22 +7,23 @@ import java.io.IOException;
 
 public class FieldPart implements MultiPart.Part {
 
-    private String name;
-    private String value;
+    private final byte[] content;
 
     public FieldPart(String name, String value) {
-        this.name = name;
-        this.value = value;
+        this.content = (TWO_HYPHENS + BOUNDARY + LINE_END
+                + "Content-Disposition: form-data; name=\"" + name + "\"" + LINE_END
+                + LINE_END
+                + value
+                + LINE_END).getBytes(CHARSET);
     }
 
     @Override
-    public void write(DataOutputStream dataOutputStream) throws IOException {
-        dataOutputStream.writeBytes(TWO_HYPHENS + BOUNDARY + LINE_END);
-        dataOutputStream.writeBytes("Content-Disposition: form-data; name=\"" + name + "\"" + LINE_END);
-        dataOutputStream.writeBytes(LINE_END);
-
-        dataOutputStream.writeBytes(value);
+    public long getContentLength() {
+        return content.length;
+    }
 
-        dataOutputStream.writeBytes(LINE_END);
+    @Override
+    public void write(DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.write(content);
     }
 }
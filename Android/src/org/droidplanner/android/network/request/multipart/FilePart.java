@@ -2,6 +2,8 @@ package org.droidplanner.android.network.request.multipart;
 
 import android.webkit.MimeTypeMap;
 
+import org.droidplanner.android.network.BufferPool;
+
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -10,30 +12,74 @@ import java.io.IOException;
 
 public class FilePart implements MultiPart.Part {
 
-    private final String fileNameField;
-    private File file;
-
+    private final File file;
+    private final long fileLength;
+    private final long offset;
+    private final byte[] header;
+    private final byte[] footer = LINE_END.getBytes(CHARSET);
 
     public FilePart(File file, String fileNameField) {
-        this.fileNameField = fileNameField;
+        this(file, fileNameField, 0);
+    }
+
+    /**
+     * @param offset Number of bytes of the file already acknowledged by the server. Only the
+     *               remaining bytes are sent, described by a Content-Range header in the part.
+     */
+    public FilePart(File file, String fileNameField, long offset) {
         this.file = file;
+        this.fileLength = file.length();
+        this.offset = Math.max(0, Math.min(offset, fileLength));
+
+        String fileMimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(file.getName()));
+        StringBuilder header = new StringBuilder()
+                .append(TWO_HYPHENS).append(BOUNDARY).append(LINE_END)
+                .append("Content-Disposition: form-data; name=\"").append(fileNameField)
+                .append("\"; filename=\"").append(file.getName()).append("\"").append(LINE_END)
+                .append("Content-Type: ").append(fileMimeType).append(LINE_END);
+        if (this.offset > 0) {
+            header.append("Content-Range: bytes ").append(this.offset).append("-").append(fileLength - 1)
+                    .append("/").append(fileLength).append(LINE_END);
+        }
+        header.append(LINE_END);
+        this.header = header.toString().getBytes(CHARSET);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public long getContentLength() {
+        return header.length + (fileLength - offset) + footer.length;
     }
 
     @Override
     public void write(DataOutputStream dataOutputStream) throws IOException {
-        dataOutputStream.writeBytes(TWO_HYPHENS + BOUNDARY + LINE_END);
-        dataOutputStream.writeBytes("Content-Disposition: form-data; name=\"" + fileNameField + "\"; filename=\""+file.getName()+"\"" + LINE_END);
-        String fileMimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(file.getName()));
-        dataOutputStream.writeBytes("Content-Type: "+ fileMimeType + LINE_END);
-        dataOutputStream.writeBytes(LINE_END);
-
-        int read;
-        byte[] buffer = new byte[8192];
-        FileInputStream fileInputStream = new FileInputStream(file);
-        while((read = fileInputStream.read(buffer)) != -1){
-            dataOutputStream.write(buffer, 0, read);
+        dataOutputStream.write(header);
+
+        final byte[] buffer = BufferPool.acquire();
+        final FileInputStream fileInputStream = new FileInputStream(file);
+        try {
+            long remaining = fileLength - offset;
+            if (offset > 0 && fileInputStream.skip(offset) != offset)
+                throw new IOException("Unable to seek to offset " + offset + " in " + file.getName());
+
+            int read;
+            while (remaining > 0
+                    && (read = fileInputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                dataOutputStream.write(buffer, 0, read);
+                remaining -= read;
+            }
+
+            //The content length was announced upfront, so the file must not shrink while streaming.
+            if (remaining != 0)
+                throw new IOException(file.getName() + " changed while being uploaded.");
+        } finally {
+            fileInputStream.close();
+            BufferPool.release(buffer);
         }
 
-        dataOutputStream.writeBytes(LINE_END);
+        dataOutputStream.write(footer);
     }
 }
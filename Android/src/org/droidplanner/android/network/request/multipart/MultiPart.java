@@ -6,13 +6,20 @@ import org.droidplanner.android.network.request.Request;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.Charset;
 
+/**
+ * multipart/form-data request. The body size is computed upfront so the parts are streamed
+ * straight to the socket instead of being buffered in memory by {@link HttpURLConnection}.
+ */
 public class MultiPart extends Request {
 
 
     private static final String MIME_TYPE = "multipart/form-data;boundary=" + Part.BOUNDARY;
 
+    private static final byte[] CLOSING_BOUNDARY = (Part.TWO_HYPHENS + Part.BOUNDARY + Part.TWO_HYPHENS + Part.LINE_END)
+            .getBytes(Part.CHARSET);
+
     private Part[] parts;
 
     public MultiPart(String requestUrl, Part ... parts) {
@@ -20,27 +27,41 @@ public class MultiPart extends Request {
         this.parts = parts;
     }
 
+    public long getContentLength() {
+        long contentLength = CLOSING_BOUNDARY.length;
+        for (Part part : parts) {
+            contentLength += part.getContentLength();
+        }
+        return contentLength;
+    }
+
     @Override
     public HttpURLConnection connect() throws IOException {
-        URL url = new URL(getRequestUrl());
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection urlConnection = openConnection();
         urlConnection.setRequestMethod("POST");
         urlConnection.setDoOutput(true);
         urlConnection.setRequestProperty("Connection", "Keep-Alive");
         urlConnection.setRequestProperty("Cache-Control", "no-cache");
         urlConnection.setRequestProperty("Content-Type", MIME_TYPE);
 
-        DataOutputStream dataOutputStream = new DataOutputStream(urlConnection.getOutputStream());
+        final long contentLength = getContentLength();
+        if (contentLength <= Integer.MAX_VALUE)
+            urlConnection.setFixedLengthStreamingMode((int) contentLength);
+        else
+            urlConnection.setChunkedStreamingMode(0);
 
-        for(Part part : parts){
-            part.write(dataOutputStream);
+        DataOutputStream dataOutputStream = new DataOutputStream(urlConnection.getOutputStream());
+        try {
+            for (Part part : parts) {
+                part.write(dataOutputStream);
+            }
+
+            dataOutputStream.write(CLOSING_BOUNDARY);
+            dataOutputStream.flush();
+        } finally {
+            dataOutputStream.close();
         }
 
-        dataOutputStream.writeBytes(Part.TWO_HYPHENS + Part.BOUNDARY + Part.TWO_HYPHENS + Part.LINE_END);
-
-        dataOutputStream.flush();
-        dataOutputStream.close();
-
         urlConnection.connect();
         return urlConnection;
     }
@@ -50,6 +71,12 @@ public class MultiPart extends Request {
         String TWO_HYPHENS = "--";
         String LINE_END = "\r\n";
         String BOUNDARY = "androidClientBoundary";
+        Charset CHARSET = Charset.forName("UTF-8");
+
+        /**
+         * @return the exact number of bytes {@link #write(DataOutputStream)} will produce.
+         */
+        long getContentLength();
 
         void write(DataOutputStream dataOutputStream) throws IOException;
     }
@@ -0,0 +1,321 @@
+package org.droidplanner.android.network.upload;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.support.v4.content.LocalBroadcastManager;
+
+import org.droidplanner.android.network.ComunicazioneConServerRunnable;
+import org.droidplanner.android.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import timber.log.Timber;
+
+/**
+ * Uploads the waypoint photos saved under /drone/&lt;percorso&gt;/&lt;sinistro&gt;/&lt;waypoint&gt;.jpeg.
+ * The work is driven by the {@link UploadJournal}, so it survives the upload screen being closed
+ * and resumes after the process is killed.
+ */
+public class PhotoUploadService extends Service {
+
+    public static final String ACTION_PHOTO_UPLOADED = Utils.PACKAGE_NAME + ".ACTION_PHOTO_UPLOADED";
+    public static final String ACTION_UPLOAD_STATUS = Utils.PACKAGE_NAME + ".ACTION_UPLOAD_STATUS";
+
+    public static final String EXTRA_PATH = "extra_path";
+    public static final String EXTRA_REMAINING = "extra_remaining";
+
+    private static final int MAX_PARALLEL_UPLOADS = 3;
+    private static final String PHOTO_EXTENSION = ".jpeg";
+
+    public static void start(Context context) {
+        context.startService(new Intent(context, PhotoUploadService.class));
+    }
+
+    private final Runnable scanTask = new Runnable() {
+        @Override
+        public void run() {
+            final String root = Environment.getExternalStorageDirectory().toString();
+            scanPhotos(new File(root + "/drone"));
+            pump();
+        }
+    };
+
+    private final Runnable pumpTask = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    private UploadJournal journal;
+    private HandlerThread workerThread;
+    private Handler worker;
+    private ExecutorService uploadExecutor;
+    private LocalBroadcastManager lbm;
+
+    /**
+     * Latest start request, so stopping once the queue drains doesn't drop a newer one.
+     */
+    private volatile int lastStartId;
+
+    /**
+     * Only accessed from the worker thread.
+     */
+    private int inFlight;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        lbm = LocalBroadcastManager.getInstance(getApplicationContext());
+        journal = UploadJournal.getInstance(getApplicationContext());
+
+        workerThread = new HandlerThread("Photo upload journal");
+        workerThread.start();
+        worker = new Handler(workerThread.getLooper());
+        uploadExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS);
+
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                journal.resumeInterrupted();
+            }
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        lastStartId = startId;
+
+        //Every start request triggers a fresh scan, which also re-queues parked photos.
+        worker.removeCallbacks(scanTask);
+        worker.post(scanTask);
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        uploadExecutor.shutdownNow();
+        workerThread.quit();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void scanPhotos(File root) {
+        final File[] percorsi = root.listFiles();
+        if (percorsi == null)
+            return;
+
+        int queued = 0;
+        for (File percorsoDir : percorsi) {
+            final File[] sinistri = percorsoDir.listFiles();
+            if (sinistri == null)
+                continue;
+
+            for (File sinistroDir : sinistri) {
+                final File[] photos = sinistroDir.listFiles();
+                if (photos == null)
+                    continue;
+
+                for (File photo : photos) {
+                    final String name = photo.getName();
+                    if (!photo.isFile() || !name.endsWith(PHOTO_EXTENSION))
+                        continue;
+
+                    final int waypointIndex;
+                    try {
+                        waypointIndex = Integer.parseInt(name.substring(0, name.length() - PHOTO_EXTENSION.length()));
+                    } catch (NumberFormatException e) {
+                        Timber.w("Skipping unexpected file %s", photo.getPath());
+                        continue;
+                    }
+
+                    if (journal.enqueue(percorsoDir.getName(), sinistroDir.getName(), waypointIndex, photo))
+                        queued++;
+                }
+            }
+        }
+        Timber.i("%d photos waiting to be uploaded.", queued);
+    }
+
+    /**
+     * Fills the free upload slots with due photos, then either waits for the next retry or stops.
+     * Runs on the worker thread.
+     */
+    private void pump() {
+        worker.removeCallbacks(pumpTask);
+
+        final long now = System.currentTimeMillis();
+        while (inFlight < MAX_PARALLEL_UPLOADS) {
+            final UploadJournal.Entry entry = journal.claimNextDue(now);
+            if (entry == null)
+                break;
+
+            final File file = new File(entry.path);
+            if (!file.isFile()) {
+                //Nothing left to upload, whether or not it reached the server.
+                Timber.w("Dropping %s from the upload queue, the file is gone.", entry.path);
+                journal.remove(entry);
+                continue;
+            }
+
+            inFlight++;
+            uploadExecutor.execute(new ResumableUpload(entry, file));
+        }
+
+        final int remaining = journal.countRemaining();
+        lbm.sendBroadcast(new Intent(ACTION_UPLOAD_STATUS).putExtra(EXTRA_REMAINING, remaining));
+
+        if (inFlight > 0)
+            return;
+
+        final long nextAttempt = journal.getNextAttemptTime();
+        if (nextAttempt < 0) {
+            Timber.i("Photo upload queue drained.");
+            //No-op if a start request came in since, its scan is already queued.
+            stopSelf(lastStartId);
+        } else {
+            worker.postDelayed(pumpTask, Math.max(0, nextAttempt - now));
+        }
+    }
+
+    private void onUploadCompleted(UploadJournal.Entry entry, File file, boolean success, String response) {
+        inFlight--;
+
+        if (success) {
+            Timber.i("Upload success - sinistro: %s; percorso: %s; waypoint: %d. %s", entry.sinistro, entry.percorso,
+                    entry.waypoint, response);
+            //A new capture of the waypoint may have replaced the file during the upload: keep it.
+            if (journal.markUploaded(entry) && entry.isSameCapture(file)) {
+                deleteUploadedFile(file);
+                lbm.sendBroadcast(new Intent(ACTION_PHOTO_UPLOADED).putExtra(EXTRA_PATH, file.getPath()));
+            } else {
+                Timber.i("%s was captured again during its upload, keeping it.", file.getName());
+            }
+        } else {
+            Timber.w("Upload error - sinistro: %s; percorso: %s; waypoint: %d. %s", entry.sinistro, entry.percorso,
+                    entry.waypoint, response);
+            journal.markFailed(entry, System.currentTimeMillis());
+        }
+
+        pump();
+    }
+
+    private static void deleteUploadedFile(File file) {
+        File parent = file.getParentFile();
+        File grandParent = parent.getParentFile();
+
+        if (!file.delete() || parent.listFiles().length != 0)
+            return;
+
+        if (!parent.delete() || grandParent.listFiles().length != 0)
+            return;
+
+        grandParent.delete();
+    }
+
+    /**
+     * Uploads a photo. A retry first asks the server how much of the file it already holds, and
+     * only sends the remaining bytes.
+     */
+    private class ResumableUpload implements Runnable {
+
+        private final UploadJournal.Entry entry;
+        private final File file;
+
+        ResumableUpload(UploadJournal.Entry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            final long offset = entry.attempts > 0 ? queryUploadedOffset() : 0;
+            if (offset > 0)
+                Timber.i("Resuming upload of %s from byte %d", file.getName(), offset);
+
+            new ComunicazioneConServerRunnable(
+                    ComunicazioneConServerRunnable.uploadPhotoRequest(file, entry.sinistro, entry.percorso, entry.waypoint, offset),
+                    new UploadListener(entry, file)).run();
+        }
+
+        private long queryUploadedOffset() {
+            HttpURLConnection connection = null;
+            InputStream body = null;
+            try {
+                connection = ComunicazioneConServerRunnable
+                        .uploadedPhotoOffsetRequest(entry.sinistro, entry.percorso, entry.waypoint)
+                        .connect();
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    body = connection.getErrorStream();
+                    return 0;
+                }
+
+                body = connection.getInputStream();
+                final String line = new BufferedReader(new InputStreamReader(body)).readLine();
+                final long offset = line == null ? 0 : Long.parseLong(line.trim());
+                //A server holding the whole file (or more) gets a full upload, the file is the reference.
+                return offset < file.length() ? Math.max(0, offset) : 0;
+            } catch (IOException | NumberFormatException e) {
+                Timber.w(e, "Unable to retrieve the upload offset for %s", file.getName());
+                return 0;
+            } finally {
+                if (body != null) {
+                    try {
+                        body.close();
+                    } catch (IOException e) {
+                        Timber.w(e, "Unable to close the upload offset response.");
+                    }
+                }
+                if (connection != null)
+                    connection.disconnect();
+            }
+        }
+    }
+
+    private class UploadListener implements ComunicazioneConServerRunnable.RequestListener {
+
+        private final UploadJournal.Entry entry;
+        private final File file;
+
+        UploadListener(UploadJournal.Entry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+        }
+
+        @Override
+        public void onSuccess(final String response) {
+            worker.post(new Runnable() {
+                @Override
+                public void run() {
+                    onUploadCompleted(entry, file, true, response);
+                }
+            });
+        }
+
+        @Override
+        public void onError(int responseCode, final String response) {
+            worker.post(new Runnable() {
+                @Override
+                public void run() {
+                    onUploadCompleted(entry, file, false, response);
+                }
+            });
+        }
+    }
+}
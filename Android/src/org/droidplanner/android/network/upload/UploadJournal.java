@@ -0,0 +1,289 @@
+package org.droidplanner.android.network.upload;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.io.File;
+
+import timber.log.Timber;
+
+/**
+ * Durable journal of the waypoint photos to send to the server.
+ * Each photo is keyed by (percorso, sinistro, waypoint) and carries its upload state, so an
+ * interrupted session resumes where it stopped and an uploaded photo is never sent twice.
+ */
+public class UploadJournal extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "upload_journal.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static final String TABLE_PHOTOS = "photos";
+
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_PERCORSO = "percorso";
+    public static final String FIELD_SINISTRO = "sinistro";
+    public static final String FIELD_WAYPOINT = "waypoint";
+    public static final String FIELD_PATH = "path";
+    public static final String FIELD_SIZE = "size";
+    public static final String FIELD_LAST_MODIFIED = "last_modified";
+    public static final String FIELD_STATE = "state";
+    public static final String FIELD_ATTEMPTS = "attempts";
+    public static final String FIELD_NEXT_ATTEMPT = "next_attempt";
+
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_UPLOADING = 1;
+    public static final int STATE_UPLOADED = 2;
+    public static final int STATE_FAILED = 3;
+
+    /**
+     * Number of attempts after which a photo is parked until the user opens the upload screen again.
+     */
+    public static final int MAX_ATTEMPTS = 8;
+
+    private static final long BASE_BACKOFF = 5000L; //ms
+    private static final long MAX_BACKOFF = 10 * 60 * 1000L; //ms
+
+    private static UploadJournal instance;
+
+    public static synchronized UploadJournal getInstance(Context context) {
+        if (instance == null)
+            instance = new UploadJournal(context.getApplicationContext());
+        return instance;
+    }
+
+    private UploadJournal(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PHOTOS + " ("
+                + FIELD_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + FIELD_PERCORSO + " TEXT NOT NULL, "
+                + FIELD_SINISTRO + " TEXT NOT NULL, "
+                + FIELD_WAYPOINT + " INTEGER NOT NULL, "
+                + FIELD_PATH + " TEXT NOT NULL, "
+                + FIELD_SIZE + " INTEGER, "
+                + FIELD_LAST_MODIFIED + " INTEGER, "
+                + FIELD_STATE + " INTEGER NOT NULL DEFAULT " + STATE_PENDING + ", "
+                + FIELD_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + FIELD_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0, "
+                + "UNIQUE (" + FIELD_PERCORSO + ", " + FIELD_SINISTRO + ", " + FIELD_WAYPOINT + "));");
+        db.execSQL("CREATE INDEX idx_photos_due ON " + TABLE_PHOTOS + " (" + FIELD_STATE + ", " + FIELD_NEXT_ATTEMPT + ");");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Timber.w("Upgrading upload journal from version %d to %d", oldVersion, newVersion);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PHOTOS);
+        onCreate(db);
+    }
+
+    /**
+     * Records a photo found on disk. A new photo is queued; a photo that was already uploaded is
+     * queued again only if the file on disk is a different capture (size or timestamp changed).
+     *
+     * @return true if the photo is waiting to be uploaded.
+     */
+    public synchronized boolean enqueue(String percorso, String sinistro, int waypoint, File file) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+
+        Cursor cursor = db.query(TABLE_PHOTOS, new String[]{FIELD_ID, FIELD_STATE, FIELD_SIZE, FIELD_LAST_MODIFIED},
+                FIELD_PERCORSO + "=? AND " + FIELD_SINISTRO + "=? AND " + FIELD_WAYPOINT + "=?",
+                new String[]{percorso, sinistro, String.valueOf(waypoint)}, null, null, null);
+        try {
+            final ContentValues values = new ContentValues();
+            values.put(FIELD_PATH, file.getAbsolutePath());
+            values.put(FIELD_SIZE, size);
+            values.put(FIELD_LAST_MODIFIED, lastModified);
+
+            if (!cursor.moveToFirst()) {
+                values.put(FIELD_PERCORSO, percorso);
+                values.put(FIELD_SINISTRO, sinistro);
+                values.put(FIELD_WAYPOINT, waypoint);
+                values.put(FIELD_STATE, STATE_PENDING);
+                db.insert(TABLE_PHOTOS, null, values);
+                return true;
+            }
+
+            final long id = cursor.getLong(0);
+            final int state = cursor.getInt(1);
+            final boolean sameCapture = cursor.getLong(2) == size && cursor.getLong(3) == lastModified;
+
+            if (state == STATE_UPLOADED && sameCapture)
+                return false;
+
+            if (state == STATE_UPLOADED || state == STATE_FAILED) {
+                //Either a new capture for the same waypoint, or a manual retry of a parked photo.
+                values.put(FIELD_STATE, STATE_PENDING);
+                values.put(FIELD_ATTEMPTS, 0);
+                values.put(FIELD_NEXT_ATTEMPT, 0);
+            }
+            db.update(TABLE_PHOTOS, values, FIELD_ID + "=?", new String[]{String.valueOf(id)});
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Photos left in the uploading state were interrupted (process killed, device rebooted):
+     * put them back in the queue.
+     */
+    public synchronized void resumeInterrupted() {
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_STATE, STATE_PENDING);
+        getWritableDatabase().update(TABLE_PHOTOS, values, FIELD_STATE + "=" + STATE_UPLOADING, null);
+    }
+
+    /**
+     * Atomically takes the next photo whose retry time has come, and marks it as uploading.
+     *
+     * @return the claimed entry, or null if nothing is due.
+     */
+    public synchronized Entry claimNextDue(long now) {
+        final SQLiteDatabase db = getWritableDatabase();
+        Cursor cursor = db.query(TABLE_PHOTOS,
+                new String[]{FIELD_ID, FIELD_PERCORSO, FIELD_SINISTRO, FIELD_WAYPOINT, FIELD_PATH, FIELD_ATTEMPTS,
+                        FIELD_SIZE, FIELD_LAST_MODIFIED},
+                FIELD_STATE + "=" + STATE_PENDING + " AND " + FIELD_NEXT_ATTEMPT + "<=?",
+                new String[]{String.valueOf(now)}, null, null, FIELD_NEXT_ATTEMPT + ", " + FIELD_ID, "1");
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+
+            final Entry entry = new Entry(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                    cursor.getInt(3), cursor.getString(4), cursor.getInt(5), cursor.getLong(6), cursor.getLong(7));
+            setState(db, entry.id, STATE_UPLOADING);
+            return entry;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the upload of the capture the entry was claimed for. If another capture of the
+     * waypoint was recorded in the meantime, it is queued instead.
+     *
+     * @return false if the photo was queued again.
+     */
+    public synchronized boolean markUploaded(Entry entry) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final String[] sameCapture = {String.valueOf(entry.id), String.valueOf(entry.size),
+                String.valueOf(entry.lastModified)};
+
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_STATE, STATE_UPLOADED);
+        if (db.update(TABLE_PHOTOS, values, FIELD_ID + "=? AND " + FIELD_SIZE + "=? AND "
+                + FIELD_LAST_MODIFIED + "=?", sameCapture) > 0)
+            return true;
+
+        values.put(FIELD_STATE, STATE_PENDING);
+        values.put(FIELD_ATTEMPTS, 0);
+        values.put(FIELD_NEXT_ATTEMPT, 0);
+        db.update(TABLE_PHOTOS, values, FIELD_ID + "=?", new String[]{String.valueOf(entry.id)});
+        return false;
+    }
+
+    /**
+     * Forgets a photo, e.g. once its file is gone. It is queued again if the file shows up later.
+     */
+    public synchronized void remove(Entry entry) {
+        getWritableDatabase().delete(TABLE_PHOTOS, FIELD_ID + "=?", new String[]{String.valueOf(entry.id)});
+    }
+
+    /**
+     * Schedules a retry with exponential backoff, or parks the photo once {@link #MAX_ATTEMPTS}
+     * is reached.
+     */
+    public synchronized void markFailed(Entry entry, long now) {
+        final int attempts = entry.attempts + 1;
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_ATTEMPTS, attempts);
+        if (attempts >= MAX_ATTEMPTS) {
+            values.put(FIELD_STATE, STATE_FAILED);
+        } else {
+            values.put(FIELD_STATE, STATE_PENDING);
+            values.put(FIELD_NEXT_ATTEMPT, now + getBackoff(attempts));
+        }
+        getWritableDatabase().update(TABLE_PHOTOS, values, FIELD_ID + "=?", new String[]{String.valueOf(entry.id)});
+    }
+
+    /**
+     * @return the earliest time at which a pending photo becomes due, or -1 if the queue is empty.
+     */
+    public synchronized long getNextAttemptTime() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT MIN(" + FIELD_NEXT_ATTEMPT + ") FROM " + TABLE_PHOTOS
+                + " WHERE " + FIELD_STATE + "=" + STATE_PENDING, null);
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0))
+                return -1;
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public synchronized int countRemaining() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_PHOTOS
+                + " WHERE " + FIELD_STATE + " IN (" + STATE_PENDING + ", " + STATE_UPLOADING + ")", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void setState(SQLiteDatabase db, long id, int state) {
+        final ContentValues values = new ContentValues();
+        values.put(FIELD_STATE, state);
+        db.update(TABLE_PHOTOS, values, FIELD_ID + "=?", new String[]{String.valueOf(id)});
+    }
+
+    static long getBackoff(int attempts) {
+        final long backoff = BASE_BACKOFF << Math.min(attempts - 1, 16);
+        return Math.min(backoff, MAX_BACKOFF);
+    }
+
+    /**
+     * A photo claimed from the journal.
+     */
+    public static class Entry {
+        public final long id;
+        public final String percorso;
+        public final String sinistro;
+        public final int waypoint;
+        public final String path;
+        public final int attempts;
+
+        /**
+         * Capture being uploaded.
+         */
+        public final long size;
+        public final long lastModified;
+
+        Entry(long id, String percorso, String sinistro, int waypoint, String path, int attempts, long size,
+              long lastModified) {
+            this.id = id;
+            this.percorso = percorso;
+            this.sinistro = sinistro;
+            this.waypoint = waypoint;
+            this.path = path;
+            this.attempts = attempts;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return true if the file on disk still holds the capture being uploaded.
+         */
+        public boolean isSameCapture(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+}
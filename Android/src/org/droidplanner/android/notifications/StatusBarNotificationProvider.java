@@ -1,14 +1,12 @@
 package org.droidplanner.android.notifications;
 
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
-import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
 import com.o3dr.android.client.Drone;
@@ -27,6 +25,7 @@ import org.beyene.sius.unit.length.LengthUnit;
 import org.droidplanner.android.DroidPlannerApp;
 import org.droidplanner.android.R;
 import org.droidplanner.android.activities.FlightActivity;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 import org.droidplanner.android.utils.unit.UnitManager;
 
@@ -101,6 +100,10 @@ public class StatusBarNotificationProvider implements NotificationHandler.Notifi
                 .getBroadcast(mContext, 0, new Intent(DroidPlannerApp.ACTION_TOGGLE_DRONE_CONNECTION), 0);
     }
 
+    private TelemetryBus getTelemetryBus() {
+        return ((DroidPlannerApp) mContext.getApplicationContext()).getTelemetryBus();
+    }
+
     @Override
     public void init(){
         mHandler.removeCallbacks(removeNotification);
@@ -126,7 +129,7 @@ public class StatusBarNotificationProvider implements NotificationHandler.Notifi
 
         showNotification();
 
-        LocalBroadcastManager.getInstance(mContext).registerReceiver(eventReceiver, eventFilter);
+        getTelemetryBus().subscribe(eventListener, EVENTS_UPDATE_INTERVAL, EVENTS);
     }
 
     /**
@@ -134,7 +137,7 @@ public class StatusBarNotificationProvider implements NotificationHandler.Notifi
      */
     @Override
     public void onTerminate() {
-        LocalBroadcastManager.getInstance(mContext).unregisterReceiver(eventReceiver);
+        getTelemetryBus().unsubscribe(eventListener);
 
         mInboxBuilder = null;
 
@@ -153,25 +156,27 @@ public class StatusBarNotificationProvider implements NotificationHandler.Notifi
         mHandler.postDelayed(removeNotification, 2000L);
     }
 
-    private static final IntentFilter eventFilter = new IntentFilter();
-
-    static {
-        eventFilter.addAction(AttributeEvent.BATTERY_UPDATED);
-        eventFilter.addAction(AttributeEvent.GPS_POSITION);
-        eventFilter.addAction(AttributeEvent.GPS_FIX);
-        eventFilter.addAction(AttributeEvent.GPS_COUNT);
-        eventFilter.addAction(AttributeEvent.HOME_UPDATED);
-        eventFilter.addAction(AttributeEvent.SIGNAL_UPDATED);
-        eventFilter.addAction(AttributeEvent.STATE_UPDATED);
-        eventFilter.addAction(AttributeEvent.STATE_VEHICLE_MODE);
-        eventFilter.addAction(AttributeEvent.TYPE_UPDATED);
-    }
+    /**
+     * Reposting the notification is costly, the telemetry in it is refreshed at most this often.
+     */
+    private static final long EVENTS_UPDATE_INTERVAL = 1000; //ms
+
+    private static final String[] EVENTS = {
+            AttributeEvent.BATTERY_UPDATED,
+            AttributeEvent.GPS_POSITION,
+            AttributeEvent.GPS_FIX,
+            AttributeEvent.GPS_COUNT,
+            AttributeEvent.HOME_UPDATED,
+            AttributeEvent.SIGNAL_UPDATED,
+            AttributeEvent.STATE_UPDATED,
+            AttributeEvent.STATE_VEHICLE_MODE,
+            AttributeEvent.TYPE_UPDATED
+    };
 
-    private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
+    private final TelemetryBus.Listener eventListener = new TelemetryBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onTelemetryEvent(String action, Bundle extras) {
             boolean showNotification = true;
-            final String action = intent.getAction();
             switch (action) {
 
                 case AttributeEvent.GPS_POSITION:
@@ -6,6 +6,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.speech.tts.TextToSpeech;
 import android.speech.tts.TextToSpeech.OnInitListener;
@@ -26,8 +27,10 @@ import com.o3dr.services.android.lib.drone.property.Speed;
 import com.o3dr.services.android.lib.drone.property.State;
 import com.o3dr.services.android.lib.drone.property.VehicleMode;
 
+import org.droidplanner.android.DroidPlannerApp;
 import org.droidplanner.android.R;
 import org.droidplanner.android.fragments.SettingsFragment;
+import org.droidplanner.android.utils.TelemetryBus;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 
 import java.util.ArrayList;
@@ -62,34 +65,36 @@ public class TTSNotificationProvider implements OnInitListener,
     public static final String ACTION_SPEAK_MESSAGE = CLAZZ_NAME + ".ACTION_SPEAK_MESSAGE";
     public static final String EXTRA_MESSAGE_TO_SPEAK = "extra_message_to_speak";
 
-    private final static IntentFilter eventFilter = new IntentFilter();
-
-    static {
-        eventFilter.addAction(AttributeEvent.STATE_ARMING);
-        eventFilter.addAction(AttributeEvent.BATTERY_UPDATED);
-        eventFilter.addAction(AttributeEvent.STATE_VEHICLE_MODE);
-        eventFilter.addAction(AttributeEvent.MISSION_SENT);
-        eventFilter.addAction(AttributeEvent.GPS_FIX);
-        eventFilter.addAction(AttributeEvent.MISSION_RECEIVED);
-        eventFilter.addAction(AttributeEvent.HEARTBEAT_FIRST);
-        eventFilter.addAction(AttributeEvent.HEARTBEAT_TIMEOUT);
-        eventFilter.addAction(AttributeEvent.HEARTBEAT_RESTORED);
-        eventFilter.addAction(AttributeEvent.MISSION_ITEM_UPDATED);
-        eventFilter.addAction(AttributeEvent.FOLLOW_START);
-        eventFilter.addAction(AttributeEvent.AUTOPILOT_ERROR);
-        eventFilter.addAction(AttributeEvent.ALTITUDE_UPDATED);
-        eventFilter.addAction(AttributeEvent.SIGNAL_WEAK);
-        eventFilter.addAction(AttributeEvent.WARNING_NO_GPS);
-        eventFilter.addAction(AttributeEvent.HOME_UPDATED);
-    }
+    /**
+     * Speech only follows state changes, so the events are checked at a slow pace.
+     */
+    private static final long EVENTS_UPDATE_INTERVAL = 500; //ms
+
+    private static final String[] EVENTS = {
+            AttributeEvent.STATE_ARMING,
+            AttributeEvent.BATTERY_UPDATED,
+            AttributeEvent.STATE_VEHICLE_MODE,
+            AttributeEvent.MISSION_SENT,
+            AttributeEvent.GPS_FIX,
+            AttributeEvent.MISSION_RECEIVED,
+            AttributeEvent.HEARTBEAT_FIRST,
+            AttributeEvent.HEARTBEAT_TIMEOUT,
+            AttributeEvent.HEARTBEAT_RESTORED,
+            AttributeEvent.MISSION_ITEM_UPDATED,
+            AttributeEvent.FOLLOW_START,
+            AttributeEvent.AUTOPILOT_ERROR,
+            AttributeEvent.ALTITUDE_UPDATED,
+            AttributeEvent.SIGNAL_WEAK,
+            AttributeEvent.WARNING_NO_GPS,
+            AttributeEvent.HOME_UPDATED
+    };
 
-    private final BroadcastReceiver eventReceiver = new BroadcastReceiver() {
+    private final TelemetryBus.Listener eventListener = new TelemetryBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onTelemetryEvent(String action, Bundle extras) {
             if (tts == null)
                 return;
 
-            final String action = intent.getAction();
             State droneState = drone.getAttribute(AttributeType.STATE);
 
             switch (action) {
@@ -145,7 +150,7 @@ public class TTSNotificationProvider implements OnInitListener,
                     break;
 
                 case AttributeEvent.MISSION_ITEM_UPDATED:
-                    int currentWaypoint = intent.getIntExtra(AttributeEventExtra.EXTRA_MISSION_CURRENT_WAYPOINT, 0);
+                    int currentWaypoint = extras == null ? 0 : extras.getInt(AttributeEventExtra.EXTRA_MISSION_CURRENT_WAYPOINT, 0);
                     if (currentWaypoint != 0) {
                         //Zeroth waypoint is the home location.
                         speak(context.getString(R.string.speak_mission_item_updated, currentWaypoint));
@@ -170,7 +175,7 @@ public class TTSNotificationProvider implements OnInitListener,
 
                 case AttributeEvent.AUTOPILOT_ERROR:
                     if (mAppPrefs.getWarningOnAutopilotWarning()) {
-                        String errorId = intent.getStringExtra(AttributeEventExtra.EXTRA_AUTOPILOT_ERROR_ID);
+                        String errorId = extras == null ? null : extras.getString(AttributeEventExtra.EXTRA_AUTOPILOT_ERROR_ID);
                         final ErrorType errorType = ErrorType.getErrorById(errorId);
                         if (errorType != null && errorType != ErrorType.NO_ERROR) {
                             speak(errorType.getLabel(context).toString());
@@ -321,15 +326,19 @@ public class TTSNotificationProvider implements OnInitListener,
         mAppPrefs =  DroidPlannerPrefs.getInstance(context);
     }
 
+    private TelemetryBus getTelemetryBus() {
+        return ((DroidPlannerApp) context.getApplicationContext()).getTelemetryBus();
+    }
+
     @Override
     public void init() {
         tts = new TextToSpeech(context, this);
-        LocalBroadcastManager.getInstance(context).registerReceiver(eventReceiver, eventFilter);
+        getTelemetryBus().subscribe(eventListener, EVENTS_UPDATE_INTERVAL, EVENTS);
     }
 
     @Override
     public void onTerminate() {
-        LocalBroadcastManager.getInstance(context).unregisterReceiver(eventReceiver);
+        getTelemetryBus().unsubscribe(eventListener);
 
         handler.removeCallbacks(watchdogCallback);
         speak(context.getString(R.string.speak_disconected));
@@ -0,0 +1,83 @@
+package org.droidplanner.android.proxy.mission;
+
+import com.o3dr.services.android.lib.coordinate.LatLong;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Flight path of a mission, as computed by {@link MissionPathBuilder}. Immutable.
+ * <p/>
+ * Each point carries its Douglas-Peucker significance: the largest tolerance at which the
+ * simplification keeps it. Simplifying for a given tolerance is then a single pass over the points.
+ */
+public class MissionPath {
+
+    public static final MissionPath EMPTY = new MissionPath(0, new double[0], new double[0], new double[0], 0, 0);
+
+    private final int revision;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] significances;
+    private final int size;
+    private final double length;
+
+    MissionPath(int revision, double[] latitudes, double[] longitudes, double[] significances,
+                int size, double length) {
+        this.revision = revision;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.significances = significances;
+        this.size = size;
+        this.length = length;
+    }
+
+    /**
+     * @return the mission revision this path was computed for.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of the full path, in meters.
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * @return the latitude of the first point, 0 if the path is empty.
+     */
+    public double getStartLatitude() {
+        return size == 0 ? 0 : latitudes[0];
+    }
+
+    /**
+     * @return all the points of the path.
+     */
+    public List<LatLong> getPoints() {
+        return getPoints(0);
+    }
+
+    /**
+     * @param tolerance Maximum distance, in meters, between the path and its simplification.
+     * @return the points kept by the Douglas-Peucker simplification of the path.
+     */
+    public List<LatLong> getPoints(double tolerance) {
+        if (size == 0)
+            return Collections.emptyList();
+
+        final List<LatLong> points = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (tolerance <= 0 || significances[i] > tolerance)
+                points.add(new LatLong(latitudes[i], longitudes[i]));
+        }
+        return points;
+    }
+}
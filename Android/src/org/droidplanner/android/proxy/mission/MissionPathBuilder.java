@@ -0,0 +1,350 @@
+package org.droidplanner.android.proxy.mission;
+
+import android.util.Pair;
+
+import com.o3dr.services.android.lib.coordinate.LatLong;
+import com.o3dr.services.android.lib.drone.mission.item.MissionItem;
+import com.o3dr.services.android.lib.drone.mission.item.complex.SplineSurvey;
+import com.o3dr.services.android.lib.drone.mission.item.spatial.SplineWaypoint;
+import com.o3dr.services.android.lib.util.MathUtils;
+
+import org.droidplanner.android.proxy.mission.item.MissionItemProxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the {@link MissionPath} of a mission.
+ * <p/>
+ * The builder works on a snapshot of the mission items, copies nobody edits, so the whole
+ * computation (the path of each item, the spline interpolation, the length and the
+ * simplification) runs in {@link #build()}, on any thread. A cancelled build stops at its next
+ * check.
+ */
+class MissionPathBuilder {
+
+    /**
+     * Points processed between two cancellation checks.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6371009.0);
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Path of a run of straight or spline items.
+     */
+    private static class Bucket {
+        final boolean spline;
+        double[] latitudes = new double[INITIAL_CAPACITY];
+        double[] longitudes = new double[INITIAL_CAPACITY];
+        int size;
+
+        Bucket(boolean spline) {
+            this.spline = spline;
+        }
+
+        void add(LatLong point) {
+            if (size == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            latitudes[size] = point.getLatitude();
+            longitudes[size] = point.getLongitude();
+            size++;
+        }
+    }
+
+    private final int revision;
+    private final MissionItem[] missionItems;
+    private volatile boolean cancelled;
+
+    /**
+     * @param missionItems Snapshot of the mission, which must not change anymore.
+     */
+    MissionPathBuilder(int revision, MissionItem[] missionItems) {
+        this.revision = revision;
+        this.missionItems = missionItems;
+    }
+
+    int getRevision() {
+        return revision;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the mission path, or null if the build was cancelled.
+     */
+    MissionPath build() {
+        final List<Bucket> buckets = getBuckets();
+        if (buckets == null)
+            return null;
+
+        double[] latitudes = new double[INITIAL_CAPACITY];
+        double[] longitudes = new double[INITIAL_CAPACITY];
+        int size = 0;
+
+        for (Bucket bucket : buckets) {
+            if (cancelled)
+                return null;
+
+            if (bucket.spline) {
+                final List<LatLong> controlPoints = new ArrayList<>(bucket.size);
+                for (int i = 0; i < bucket.size; i++)
+                    controlPoints.add(new LatLong(bucket.latitudes[i], bucket.longitudes[i]));
+
+                final List<LatLong> splinePoints = MathUtils.SplinePath.process(controlPoints);
+                final int count = splinePoints.size();
+                if (size + count > latitudes.length) {
+                    latitudes = Arrays.copyOf(latitudes, Math.max(latitudes.length * 2, size + count));
+                    longitudes = Arrays.copyOf(longitudes, latitudes.length);
+                }
+                for (int i = 0; i < count; i++) {
+                    final LatLong point = splinePoints.get(i);
+                    latitudes[size] = point.getLatitude();
+                    longitudes[size] = point.getLongitude();
+                    size++;
+                }
+            } else {
+                if (size + bucket.size > latitudes.length) {
+                    latitudes = Arrays.copyOf(latitudes, Math.max(latitudes.length * 2, size + bucket.size));
+                    longitudes = Arrays.copyOf(longitudes, latitudes.length);
+                }
+                System.arraycopy(bucket.latitudes, 0, latitudes, size, bucket.size);
+                System.arraycopy(bucket.longitudes, 0, longitudes, size, bucket.size);
+                size += bucket.size;
+            }
+        }
+
+        final double length = getLength(latitudes, longitudes, size);
+
+        final double[] significances = new double[size];
+        if (!computeSignificances(latitudes, longitudes, size, significances))
+            return null;
+
+        return new MissionPath(revision, latitudes, longitudes, significances, size, length);
+    }
+
+    /**
+     * Partitions the mission items into spline/non-spline buckets, and copies their paths.
+     *
+     * @return the buckets, or null if the build was cancelled.
+     */
+    private List<Bucket> getBuckets() {
+        List<Pair<Boolean, List<MissionItem>>> bucketsList = new ArrayList<>();
+
+        boolean isSpline = false;
+        List<MissionItem> currentBucket = new ArrayList<>();
+        for (MissionItem missionItem : missionItems) {
+            if (missionItem instanceof MissionItem.Command) {
+                //Skip commands
+                continue;
+            }
+
+            if (missionItem instanceof SplineWaypoint || missionItem instanceof SplineSurvey) {
+                if (!isSpline) {
+                    if (!currentBucket.isEmpty()) {
+                        // Get the last item from the current bucket. It will become the first
+                        // anchor point for the spline path.
+                        MissionItem lastItem = currentBucket.get(currentBucket.size() - 1);
+
+                        // Store the previous item bucket.
+                        bucketsList.add(new Pair<>(Boolean.FALSE, currentBucket));
+
+                        // Create a new bucket for this category and update 'isSpline'
+                        currentBucket = new ArrayList<>();
+                        currentBucket.add(lastItem);
+                    }
+
+                    isSpline = true;
+                }
+
+                // Add the current element into the bucket
+                currentBucket.add(missionItem);
+            } else {
+                if (isSpline) {
+
+                    // Add the current item to the spline bucket. It will act as the end anchor
+                    // point for the spline path.
+                    if (!currentBucket.isEmpty()) {
+                        currentBucket.add(missionItem);
+
+                        // Store the previous item bucket.
+                        bucketsList.add(new Pair<>(Boolean.TRUE, currentBucket));
+
+                        currentBucket = new ArrayList<>();
+                    }
+
+                    isSpline = false;
+                }
+
+                // Add the current element into the bucket
+                currentBucket.add(missionItem);
+            }
+        }
+
+        bucketsList.add(new Pair<>(isSpline, currentBucket));
+
+        final List<Bucket> buckets = new ArrayList<>(bucketsList.size());
+        LatLong lastPoint = null;
+        for (Pair<Boolean, List<MissionItem>> bucketEntry : bucketsList) {
+            if (cancelled)
+                return null;
+
+            List<MissionItem> bucket = bucketEntry.second;
+            Bucket points = new Bucket(bucketEntry.first);
+            if (bucketEntry.first) {
+                int bucketSize = bucket.size();
+                for (int i = 0; i < bucketSize; i++) {
+                    MissionItem missionItem = bucket.get(i);
+                    List<LatLong> missionItemPath = MissionItemProxy.getPath(missionItem, lastPoint);
+
+                    switch (missionItem.getType()) {
+                        case SURVEY:
+                            if (!missionItemPath.isEmpty()) {
+                                lastPoint = i == 0
+                                        ? missionItemPath.get(0)
+                                        : missionItemPath.get(missionItemPath.size() - 1);
+                                points.add(lastPoint);
+                            }
+                            break;
+
+                        default:
+                            for (LatLong point : missionItemPath)
+                                points.add(point);
+                            if (!missionItemPath.isEmpty())
+                                lastPoint = missionItemPath.get(missionItemPath.size() - 1);
+                            break;
+                    }
+                }
+            } else {
+                for (MissionItem missionItem : bucket) {
+                    List<LatLong> missionItemPath = MissionItemProxy.getPath(missionItem, lastPoint);
+                    for (LatLong point : missionItemPath)
+                        points.add(point);
+                    if (!missionItemPath.isEmpty())
+                        lastPoint = missionItemPath.get(missionItemPath.size() - 1);
+                }
+            }
+
+            buckets.add(points);
+        }
+        return buckets;
+    }
+
+    /**
+     * @return the length of the path, in meters, as measured by {@link MathUtils#getDistance2D}.
+     */
+    private static double getLength(double[] latitudes, double[] longitudes, int size) {
+        final LatLong from = new LatLong(0, 0);
+        final LatLong to = new LatLong(0, 0);
+
+        double length = 0;
+        for (int i = 1; i < size; i++) {
+            from.setLatitude(latitudes[i - 1]);
+            from.setLongitude(longitudes[i - 1]);
+            to.setLatitude(latitudes[i]);
+            to.setLongitude(longitudes[i]);
+            length += MathUtils.getDistance2D(from, to);
+        }
+        return length;
+    }
+
+    /**
+     * Runs the Douglas-Peucker simplification without a tolerance, recording for each point the
+     * distance at which it splits its segment. A point's significance never exceeds the one of the
+     * point which split the segment holding it, so keeping the points more significant than a
+     * tolerance gives the simplification for that tolerance.
+     *
+     * @return false if the build was cancelled.
+     */
+    private boolean computeSignificances(double[] latitudes, double[] longitudes, int size,
+                                         double[] significances) {
+        if (size == 0)
+            return true;
+
+        significances[0] = Double.POSITIVE_INFINITY;
+        significances[size - 1] = Double.POSITIVE_INFINITY;
+        if (size < 3)
+            return true;
+
+        //Segments left to split. Each holds at least one point no other holds.
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        final double[] limits = new double[size];
+        int count = 0;
+
+        starts[count] = 0;
+        ends[count] = size - 1;
+        limits[count] = Double.POSITIVE_INFINITY;
+        count++;
+
+        int processed = 0;
+        while (count > 0) {
+            count--;
+            final int start = starts[count];
+            final int end = ends[count];
+            final double limit = limits[count];
+
+            int farthest = start + 1;
+            double maxDistance = -1;
+            for (int i = start + 1; i < end; i++) {
+                final double distance = getDistance(latitudes[i], longitudes[i], latitudes[start],
+                        longitudes[start], latitudes[end], longitudes[end]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            processed += end - start;
+            if (processed >= CANCELLATION_CHECK_INTERVAL) {
+                if (cancelled)
+                    return false;
+                processed = 0;
+            }
+
+            final double significance = Math.min(maxDistance, limit);
+            significances[farthest] = significance;
+
+            if (farthest - start > 1) {
+                starts[count] = start;
+                ends[count] = farthest;
+                limits[count] = significance;
+                count++;
+            }
+            if (end - farthest > 1) {
+                starts[count] = farthest;
+                ends[count] = end;
+                limits[count] = significance;
+                count++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the distance in meters from the point to the segment, on a plane tangent at its start.
+     */
+    private static double getDistance(double lat, double lon, double fromLat, double fromLon,
+                                      double toLat, double toLon) {
+        final double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(fromLat));
+        final double x = (lon - fromLon) * metersPerDegreeLon;
+        final double y = (lat - fromLat) * METERS_PER_DEGREE;
+        final double dx = (toLon - fromLon) * metersPerDegreeLon;
+        final double dy = (toLat - fromLat) * METERS_PER_DEGREE;
+
+        final double lengthSquared = dx * dx + dy * dy;
+        final double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (x * dx + y * dy) / lengthSquared));
+        return Math.hypot(x - t * dx, y - t * dy);
+    }
+}
@@ -4,6 +4,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.util.CircularArray;
 import android.util.Pair;
@@ -31,6 +33,7 @@ import com.o3dr.services.android.lib.drone.mission.item.spatial.Waypoint;
 import com.o3dr.services.android.lib.util.MathUtils;
 
 import org.droidplanner.android.KDTree.LocationKDTree;
+import org.droidplanner.android.KDTree.WaypointTracker;
 import org.droidplanner.android.maps.DPMap;
 import org.droidplanner.android.maps.MarkerInfo;
 import org.droidplanner.android.proxy.mission.item.MissionItemProxy;
@@ -44,8 +47,15 @@ import org.droidplanner.android.utils.file.IO.MissionWriter;
 import org.droidplanner.android.utils.prefs.DroidPlannerPrefs;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class is used as a wrapper to {@link com.o3dr.services.android.lib.drone.mission.Mission}
@@ -54,9 +64,16 @@ import java.util.List;
 public class MissionProxy implements DPMap.PathSource {
 
     public static final String ACTION_MISSION_PROXY_UPDATE = Utils.PACKAGE_NAME + ".ACTION_MISSION_PROXY_UPDATE";
+    public static final String ACTION_MISSION_PATH_UPDATE = Utils.PACKAGE_NAME + ".ACTION_MISSION_PATH_UPDATE";
 
     private static final int UNDO_BUFFER_SIZE = 30;
 
+    /**
+     * A path computation superseded by a mission change is cancelled, unless the current path is
+     * older than this. It then completes, so the path keeps up with a continuous edit like a drag.
+     */
+    private static final long MAX_PATH_LAG = 250; //ms
+
     private static final IntentFilter eventFilter = new IntentFilter();
 
     static {
@@ -81,7 +98,19 @@ public class MissionProxy implements DPMap.PathSource {
     private final Drone.OnMissionItemsBuiltCallback missionItemsBuiltListener = new Drone.OnMissionItemsBuiltCallback() {
         @Override
         public void onMissionItemsBuilt(MissionItem.ComplexItem[] complexItems) {
-            notifyMissionUpdate(false);
+            if (complexItems == null) {
+                notifyMissionUpdate(false);
+                return;
+            }
+
+            final List<MissionItemProxy> builtItems = new ArrayList<>(complexItems.length);
+            for (MissionItem.ComplexItem complexItem : complexItems) {
+                final MissionItemProxy itemProxy = proxyOf((MissionItem) complexItem);
+                if (itemProxy != null)
+                    builtItems.add(itemProxy);
+            }
+            markChanged(builtItems);
+            onMissionUpdated(false);
         }
     };
 
@@ -89,25 +118,92 @@ public class MissionProxy implements DPMap.PathSource {
      * Stores all the mission item renders for this mission render.
      */
     private final List<MissionItemProxy> missionItemProxies = new ArrayList<MissionItemProxy>();
+    private final List<MissionItemProxy> readOnlyItems = Collections.unmodifiableList(missionItemProxies);
+
+    /**
+     * Position of each item in missionItemProxies. Appends and swaps keep it up to date, other
+     * changes invalidate it and it is rebuilt on the next lookup.
+     */
+    private final IdentityHashMap<MissionItemProxy, Integer> itemIndexes = new IdentityHashMap<>();
+    private boolean itemIndexesValid = true;
+
+    /**
+     * Markers of all the items, in mission order. Rebuilt on the next lookup after the items change.
+     */
+    private List<MarkerInfo> markerInfos;
+
+    /**
+     * Counts the mission changes. Each item records the revision of its last change, so the map
+     * only refreshes the markers of the changed items.
+     */
+    private int revision;
+
+    /**
+     * Revision of the last change which may affect the markers of all the items: their order
+     * numbers, the selection, or an update without the changed items.
+     */
+    private int markersRevision;
+
+    /**
+     * Counts the changes which may affect the mission path. The path is computed off the main
+     * thread from {@link #currentSnapshot}, taken at {@link #snapshotPathRevision}, and kept until
+     * the next change.
+     */
+    private int pathRevision;
+    private int snapshotPathRevision;
+    private MissionPath missionPath = MissionPath.EMPTY;
+    private long missionPathTime;
+    private MissionPathBuilder pathBuilder;
+
+    private final ExecutorService pathExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler();
 
     private LocationKDTree waypoints;
+    private WaypointTracker waypointTracker;
 
     private final LocalBroadcastManager lbm;
     private final DroidPlannerPrefs dpPrefs;
     private Drone drone;
 
-    private final CircularArray<Mission> undoBuffer = new CircularArray<>(UNDO_BUFFER_SIZE);
+    /**
+     * Undo history. Each snapshot is the list of the mission items at that point; items which did
+     * not change between two snapshots are the same copy in both, so an edit only costs the array
+     * and copies of the items it touched.
+     */
+    private final CircularArray<MissionItem[]> undoBuffer = new CircularArray<>(UNDO_BUFFER_SIZE);
+
+    private MissionItem[] currentSnapshot;
+
+    /**
+     * Copy of each item in the current snapshot, and the items edited since it was taken.
+     */
+    private final IdentityHashMap<MissionItemProxy, MissionItem> itemSnapshots = new IdentityHashMap<>();
+    private final Set<MissionItemProxy> changedItems = Collections.newSetFromMap(new IdentityHashMap<MissionItemProxy, Boolean>());
+    private boolean allItemsChanged;
 
-    private Mission currentMission;
     public MissionSelection selection = new MissionSelection();
 
+    /**
+     * Nesting depth of the open batches, and whether a change in them asked for an undo snapshot.
+     */
+    private int batchDepth;
+    private boolean batchUpdated;
+    private boolean batchSaveMission;
+
     public MissionProxy(Context context, Drone drone) {
         this.drone = drone;
-        this.currentMission = generateMission(true);
+        this.currentSnapshot = takeSnapshot();
         lbm = LocalBroadcastManager.getInstance(context);
         lbm.registerReceiver(eventReceiver, eventFilter);
 
         dpPrefs = DroidPlannerPrefs.getInstance(context);
+
+        selection.addSelectionUpdateListener(new MissionSelection.OnSelectionUpdateListener() {
+            @Override
+            public void onSelectionUpdate(List<MissionItemProxy> selected) {
+                markersRevision = ++revision;
+            }
+        });
     }
 
     public void setDrone(Drone drone){
@@ -123,25 +219,199 @@ public class MissionProxy implements DPMap.PathSource {
     }
 
     public void undoMission() {
-        if (!canUndoMission())
+        if (!canUndoMission() || batchDepth > 0)
             throw new IllegalStateException("Invalid state for mission undoing.");
 
-        Mission previousMission = undoBuffer.popLast();
-        load(previousMission, false);
+        restore(undoBuffer.popLast());
+    }
+
+    /**
+     * Starts grouping mission changes: until the matching {@link #commitBatch()}, they are neither
+     * broadcast nor snapshotted for undo. Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
     }
 
+    /**
+     * Ends a batch. When the outermost batch ends, its changes are undone in a single step and
+     * announced with a single {@link #ACTION_MISSION_PROXY_UPDATE}.
+     */
+    public void commitBatch() {
+        if (batchDepth == 0)
+            throw new IllegalStateException("No mission batch to commit.");
+
+        if (--batchDepth == 0 && batchUpdated) {
+            final boolean saveMission = batchSaveMission;
+            batchUpdated = false;
+            batchSaveMission = false;
+            onMissionUpdated(saveMission);
+        }
+    }
+
+    /**
+     * To be called after changing the mission items, when which items changed is not known.
+     */
     public void notifyMissionUpdate(boolean saveMission) {
-        if (saveMission && currentMission != null) {
-            //Store the current state of the mission.
-            undoBuffer.addLast(currentMission);
+        allItemsChanged = true;
+        markersRevision = ++revision;
+        onMissionUpdated(saveMission);
+    }
+
+    /**
+     * To be called after changing the given mission items. Only those are copied for undo.
+     */
+    public void notifyMissionUpdate(Collection<MissionItemProxy> items) {
+        markChanged(items);
+        onMissionUpdated(true);
+    }
+
+    public void notifyMissionUpdate(MissionItemProxy item, boolean saveMission) {
+        markChanged(Collections.singletonList(item));
+        onMissionUpdated(saveMission);
+    }
+
+    private void markChanged(Collection<MissionItemProxy> items) {
+        if (!allItemsChanged)
+            changedItems.addAll(items);
+
+        revision++;
+        for (MissionItemProxy item : items)
+            item.setRevision(revision);
+    }
+
+    /**
+     * Structural changes (adding, removing or reordering items) call this directly: the items
+     * which were already part of the mission kept their content.
+     */
+    private void onMissionUpdated(boolean saveMission) {
+        pathRevision++;
+        if (batchDepth > 0) {
+            batchUpdated = true;
+            batchSaveMission |= saveMission;
+            return;
+        }
+
+        if (saveMission) {
+            if (currentSnapshot != null) {
+                //Store the current state of the mission.
+                if (undoBuffer.size() == UNDO_BUFFER_SIZE)
+                    undoBuffer.popFirst();
+                undoBuffer.addLast(currentSnapshot);
+            }
+        }
+
+        currentSnapshot = takeSnapshot();
+        snapshotPathRevision = pathRevision;
+        lbm.sendBroadcast(new Intent(ACTION_MISSION_PROXY_UPDATE));
+    }
+
+    /**
+     * Copies the new and changed items, and reuses the copies of the others.
+     */
+    private MissionItem[] takeSnapshot() {
+        final int itemsCount = missionItemProxies.size();
+        final MissionItem[] snapshot = new MissionItem[itemsCount];
+        for (int i = 0; i < itemsCount; i++) {
+            final MissionItemProxy itemProxy = missionItemProxies.get(i);
+            MissionItem item = itemSnapshots.get(itemProxy);
+            if (item == null || allItemsChanged || changedItems.contains(itemProxy)) {
+                item = itemProxy.getMissionItem().clone();
+                itemSnapshots.put(itemProxy, item);
+            }
+            snapshot[i] = item;
+        }
+
+        changedItems.clear();
+        allItemsChanged = false;
+
+        //Forget the copies of the removed items.
+        if (itemSnapshots.size() != itemsCount) {
+            final Iterator<MissionItemProxy> it = itemSnapshots.keySet().iterator();
+            while (it.hasNext()) {
+                if (indexOf(it.next()) == -1)
+                    it.remove();
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Brings the mission back to a snapshot. The snapshot stays shared with the undo history, so
+     * the restored items are copies of it.
+     */
+    private void restore(MissionItem[] snapshot) {
+        pathRevision++;
+        selection.mSelectedItems.clear();
+        missionItemProxies.clear();
+        invalidateItemIndexes();
+        itemSnapshots.clear();
+        changedItems.clear();
+        allItemsChanged = false;
+
+        for (MissionItem item : snapshot) {
+            final MissionItemProxy itemProxy = new MissionItemProxy(this, item.clone());
+            appendItem(itemProxy);
+            itemSnapshots.put(itemProxy, item);
         }
 
-        currentMission = generateMission(true);
+        selection.notifySelectionUpdate();
+
+        currentSnapshot = snapshot;
+        snapshotPathRevision = pathRevision;
         lbm.sendBroadcast(new Intent(ACTION_MISSION_PROXY_UPDATE));
     }
 
+    /**
+     * @return the proxy wrapping the given mission item, or null if it is not part of the mission.
+     */
+    private MissionItemProxy proxyOf(MissionItem missionItem) {
+        for (MissionItemProxy itemProxy : missionItemProxies) {
+            if (itemProxy.getMissionItem() == missionItem)
+                return itemProxy;
+        }
+        return null;
+    }
+
+    /**
+     * @return the mission items, read only. Changes go through this proxy so it can keep its
+     * index up to date.
+     */
     public List<MissionItemProxy> getItems() {
-        return missionItemProxies;
+        return readOnlyItems;
+    }
+
+    /**
+     * @return the position of the item in the mission, or -1 if it is not part of it.
+     */
+    public int indexOf(MissionItemProxy item) {
+        if (!itemIndexesValid) {
+            itemIndexes.clear();
+            //Backwards, so the first occurrence wins like List.indexOf().
+            for (int i = missionItemProxies.size() - 1; i >= 0; i--)
+                itemIndexes.put(missionItemProxies.get(i), i);
+            itemIndexesValid = true;
+        }
+
+        final Integer index = itemIndexes.get(item);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * To be called after any change but an append or a swap, which may move every item.
+     */
+    private void invalidateItemIndexes() {
+        itemIndexesValid = false;
+        markerInfos = null;
+        markersRevision = ++revision;
+    }
+
+    private void appendItem(MissionItemProxy item) {
+        missionItemProxies.add(item);
+        markerInfos = null;
+        if (itemIndexesValid && !itemIndexes.containsKey(item))
+            itemIndexes.put(item, missionItemProxies.size() - 1);
     }
 
     private MissionItem[] getMissionItems() {
@@ -157,47 +427,60 @@ public class MissionProxy implements DPMap.PathSource {
     }
 
     /**
-     * @return the map markers corresponding to this mission's command set.
+     * @return the map markers corresponding to this mission's command set, read only. The same
+     * list is returned until items are added, removed or reordered.
      */
     public List<MarkerInfo> getMarkersInfos() {
-        List<MarkerInfo> markerInfos = new ArrayList<MarkerInfo>();
+        if (markerInfos == null) {
+            List<MarkerInfo> markerInfos = new ArrayList<MarkerInfo>();
 
-        for (MissionItemProxy itemProxy : missionItemProxies) {
-            List<MarkerInfo> itemMarkerInfos = itemProxy.getMarkerInfos();
-            if (itemMarkerInfos != null && !itemMarkerInfos.isEmpty()) {
-                markerInfos.addAll(itemMarkerInfos);
+            for (MissionItemProxy itemProxy : missionItemProxies) {
+                List<MarkerInfo> itemMarkerInfos = itemProxy.getMarkerInfos();
+                if (itemMarkerInfos != null && !itemMarkerInfos.isEmpty()) {
+                    markerInfos.addAll(itemMarkerInfos);
+                }
             }
+            this.markerInfos = Collections.unmodifiableList(markerInfos);
         }
         return markerInfos;
     }
 
+    /**
+     * @return the revision of the last mission change. See {@link MissionItemProxy#getRevision()}.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the revision of the last change which may affect the markers of all the items.
+     */
+    public int getMarkersRevision() {
+        return markersRevision;
+    }
+
     /**
      * Update the state for this object based on the state of the Mission
      * object.
      */
     public void load(Mission mission) {
-        load(mission, true);
-    }
-
-    private void load(Mission mission, boolean isNew) {
         if (mission == null)
             return;
 
-        if (isNew) {
-            currentMission = null;
-            clearUndoBuffer();
-        }
+        currentSnapshot = null;
+        clearUndoBuffer();
 
         selection.mSelectedItems.clear();
         missionItemProxies.clear();
+        invalidateItemIndexes();
 
         for (MissionItem item : mission.getMissionItems()) {
-            missionItemProxies.add(new MissionItemProxy(this, item));
+            appendItem(new MissionItemProxy(this, item));
         }
 
         selection.notifySelectionUpdate();
 
-        notifyMissionUpdate(isNew);
+        onMissionUpdated(true);
     }
 
     private void clearUndoBuffer(){
@@ -212,7 +495,7 @@ public class MissionProxy implements DPMap.PathSource {
      * @return true if this mission render contains the passed argument
      */
     public boolean contains(MissionItemProxy item) {
-        return missionItemProxies.contains(item);
+        return indexOf(item) != -1;
     }
 
     /**
@@ -221,11 +504,15 @@ public class MissionProxy implements DPMap.PathSource {
      * @param item item to remove
      */
     public void removeItem(MissionItemProxy item) {
-        missionItemProxies.remove(item);
+        final int index = indexOf(item);
+        if (index != -1) {
+            missionItemProxies.remove(index);
+            invalidateItemIndexes();
+        }
         selection.mSelectedItems.remove(item);
 
         selection.notifySelectionUpdate();
-        notifyMissionUpdate();
+        onMissionUpdated(true);
     }
 
     /**
@@ -294,10 +581,10 @@ public class MissionProxy implements DPMap.PathSource {
 
     private void addMissionItems(List<MissionItem> missionItems) {
         for (MissionItem missionItem : missionItems) {
-            missionItemProxies.add(new MissionItemProxy(this, missionItem));
+            appendItem(new MissionItemProxy(this, missionItem));
         }
 
-        notifyMissionUpdate();
+        onMissionUpdated(true);
     }
 
     public void addSpatialWaypoint(BaseSpatialItem spatialItem, LatLong point) {
@@ -306,17 +593,43 @@ public class MissionProxy implements DPMap.PathSource {
         addMissionItem(spatialItem);
     }
 
+    /**
+     * Replaces the mission with the waypoints of an itinerary, as a single change.
+     */
     public void mAddWaypoints(List<Waypoint> waypoints){
-        int i=0;
         this.waypoints = new LocationKDTree(waypoints);
-        missionItemProxies.clear();
-        for(Waypoint waypoint : waypoints) {
-            addMissionItem(waypoint);
+        this.waypointTracker = new WaypointTracker(waypoints, this.waypoints);
+
+        beginBatch();
+        try {
+            selection.mSelectedItems.clear();
+            missionItemProxies.clear();
+            invalidateItemIndexes();
+            for (Waypoint waypoint : waypoints) {
+                addMissionItem(waypoint);
+            }
+            selection.notifySelectionUpdate();
+            //Also covers an empty itinerary clearing the mission.
+            onMissionUpdated(true);
+        } finally {
+            commitBatch();
         }
     }
 
-    public LocationKDTree.Node nearest(double latitude, double longitude){
-        return waypoints.findNearest(latitude, longitude);
+    /**
+     * @return the index (starting from 1) of the itinerary waypoint nearest to the given position,
+     * or -1 if no itinerary was loaded.
+     */
+    public int nearest(double latitude, double longitude){
+        return waypoints == null ? -1 : waypoints.findNearest(latitude, longitude);
+    }
+
+    /**
+     * @return the tracker matching the drone position against the itinerary, or null if no
+     * itinerary was loaded.
+     */
+    public WaypointTracker getWaypointTracker(){
+        return waypointTracker;
     }
 
     /**
@@ -344,13 +657,14 @@ public class MissionProxy implements DPMap.PathSource {
     }
 
     private void addMissionItem(MissionItem missionItem) {
-        missionItemProxies.add(new MissionItemProxy(this, missionItem));
-        notifyMissionUpdate();
+        appendItem(new MissionItemProxy(this, missionItem));
+        onMissionUpdated(true);
     }
 
     private void addMissionItem(int index, MissionItem missionItem) {
         missionItemProxies.add(index, new MissionItemProxy(this, missionItem));
-        notifyMissionUpdate();
+        invalidateItemIndexes();
+        onMissionUpdated(true);
     }
 
     public void addTakeoff() {
@@ -414,7 +728,7 @@ public class MissionProxy implements DPMap.PathSource {
      * @return order of the given argument
      */
     public int getOrder(MissionItemProxy item) {
-        return missionItemProxies.indexOf(item) + 1;
+        return indexOf(item) + 1;
     }
 
     /**
@@ -467,19 +781,19 @@ public class MissionProxy implements DPMap.PathSource {
      * @param newItem new mission item render
      */
     public void replace(MissionItemProxy oldItem, MissionItemProxy newItem) {
-        int index = missionItemProxies.indexOf(oldItem);
+        int index = indexOf(oldItem);
         if (index == -1)
             return;
 
-        missionItemProxies.remove(index);
-        missionItemProxies.add(index, newItem);
+        missionItemProxies.set(index, newItem);
+        invalidateItemIndexes();
 
         if (selection.selectionContains(oldItem)) {
             selection.removeItemFromSelection(oldItem);
             selection.addToSelection(newItem);
         }
 
-        notifyMissionUpdate();
+        onMissionUpdated(true);
     }
 
     public void replaceAll(List<Pair<MissionItemProxy, List<MissionItemProxy>>> oldNewList) {
@@ -497,7 +811,7 @@ public class MissionProxy implements DPMap.PathSource {
 
         for (int i = 0; i < pairSize; i++) {
             MissionItemProxy oldItem = oldNewList.get(i).first;
-            int index = missionItemProxies.indexOf(oldItem);
+            int index = indexOf(oldItem);
             if (index == -1) {
                 continue;
             }
@@ -506,6 +820,7 @@ public class MissionProxy implements DPMap.PathSource {
 
             List<MissionItemProxy> newItems = oldNewList.get(i).second;
             missionItemProxies.addAll(index, newItems);
+            invalidateItemIndexes();
 
             if (selection.selectionContains(oldItem)) {
                 selectionsToRemove.add(oldItem);
@@ -517,7 +832,7 @@ public class MissionProxy implements DPMap.PathSource {
         selection.removeItemsFromSelection(selectionsToRemove);
         selection.addToSelection(itemsToSelect);
 
-        notifyMissionUpdate();
+        onMissionUpdated(true);
     }
 
     /**
@@ -525,6 +840,8 @@ public class MissionProxy implements DPMap.PathSource {
      */
     public void reverse() {
         Collections.reverse(missionItemProxies);
+        invalidateItemIndexes();
+        onMissionUpdated(true);
     }
 
     public void swap(int fromIndex, int toIndex) {
@@ -533,13 +850,20 @@ public class MissionProxy implements DPMap.PathSource {
 
         missionItemProxies.set(toIndex, from);
         missionItemProxies.set(fromIndex, to);
-        notifyMissionUpdate();
+        if (itemIndexesValid && from != to) {
+            itemIndexes.put(from, toIndex);
+            itemIndexes.put(to, fromIndex);
+        }
+        markerInfos = null;
+        markChanged(Arrays.asList(from, to));
+        onMissionUpdated(true);
     }
 
     public void clear() {
         selection.clearSelection();
         missionItemProxies.clear();
-        notifyMissionUpdate();
+        invalidateItemIndexes();
+        onMissionUpdated(true);
     }
 
     public double getAltitudeDiffFromPreviousItem(MissionItemProxy waypointRender) {
@@ -551,7 +875,7 @@ public class MissionProxy implements DPMap.PathSource {
         if (!(waypoint instanceof MissionItem.SpatialItem))
             return 0;
 
-        int index = missionItemProxies.indexOf(waypointRender);
+        int index = indexOf(waypointRender);
         if (index == -1 || index == 0)
             return 0;
 
@@ -572,7 +896,7 @@ public class MissionProxy implements DPMap.PathSource {
         if (!(waypoint instanceof MissionItem.SpatialItem))
             return 0;
 
-        int index = missionItemProxies.indexOf(waypointRender);
+        int index = indexOf(waypointRender);
         if (index == -1 || index == 0)
             return 0;
 
@@ -585,124 +909,85 @@ public class MissionProxy implements DPMap.PathSource {
         return 0;
     }
 
+    /**
+     * @return the points of the last computed mission path, which may not include the latest
+     * changes yet. See {@link #getMissionPath()}.
+     */
     @Override
     public List<LatLong> getPathPoints() {
-        if (missionItemProxies.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        // Partition the mission items into spline/non-spline buckets.
-        List<Pair<Boolean, List<MissionItemProxy>>> bucketsList = new ArrayList<>();
-
-        boolean isSpline = false;
-        List<MissionItemProxy> currentBucket = new ArrayList<>();
-        for (MissionItemProxy missionItemProxy : missionItemProxies) {
-
-            MissionItem missionItem = missionItemProxy.getMissionItem();
-            if (missionItem instanceof MissionItem.Command) {
-                //Skip commands
-                continue;
-            }
-
-            if (missionItem instanceof SplineWaypoint || missionItem instanceof SplineSurvey) {
-                if (!isSpline) {
-                    if (!currentBucket.isEmpty()) {
-                        // Get the last item from the current bucket. It will become the first
-                        // anchor point for the spline path.
-                        MissionItemProxy lastItem = currentBucket.get(currentBucket.size() - 1);
-
-                        // Store the previous item bucket.
-                        bucketsList.add(new Pair<>(Boolean.FALSE, currentBucket));
-
-                        // Create a new bucket for this category and update 'isSpline'
-                        currentBucket = new ArrayList<>();
-                        currentBucket.add(lastItem);
-                    }
-
-                    isSpline = true;
-                }
-
-                // Add the current element into the bucket
-                currentBucket.add(missionItemProxy);
-            } else {
-                if (isSpline) {
-
-                    // Add the current item to the spline bucket. It will act as the end anchor
-                    // point for the spline path.
-                    if (!currentBucket.isEmpty()) {
-                        currentBucket.add(missionItemProxy);
+        return getMissionPath().getPoints();
+    }
 
-                        // Store the previous item bucket.
-                        bucketsList.add(new Pair<>(Boolean.TRUE, currentBucket));
+    /**
+     * @return the last computed path of the mission. It lags behind the latest mission changes
+     * while their path is being computed, see {@link #isMissionPathReady()}, and
+     * {@link #ACTION_MISSION_PATH_UPDATE} announces the new one. Until the first path is computed,
+     * this is {@link MissionPath#EMPTY}.
+     */
+    public MissionPath getMissionPath() {
+        if (missionPath.getRevision() != pathRevision)
+            requestMissionPath();
+        return missionPath;
+    }
 
-                        currentBucket = new ArrayList<>();
-                    }
+    /**
+     * @return false if {@link #getMissionPath()} does not include the latest mission changes yet.
+     */
+    public boolean isMissionPathReady() {
+        return missionPath.getRevision() == pathRevision;
+    }
 
-                    isSpline = false;
-                }
+    private void requestMissionPath() {
+        //Within a batch, the path of its changes is requested once it is committed.
+        if (currentSnapshot == null || missionPath.getRevision() == snapshotPathRevision)
+            return;
 
-                // Add the current element into the bucket
-                currentBucket.add(missionItemProxy);
+        if (pathBuilder != null) {
+            if (pathBuilder.getRevision() == snapshotPathRevision
+                    || SystemClock.uptimeMillis() - missionPathTime >= MAX_PATH_LAG) {
+                //Requested again once the current computation completes.
+                return;
             }
+            pathBuilder.cancel();
         }
 
-        bucketsList.add(new Pair<>(isSpline, currentBucket));
-
-        List<LatLong> pathPoints = new ArrayList<>();
-        LatLong lastPoint = null;
-
-        for (Pair<Boolean, List<MissionItemProxy>> bucketEntry : bucketsList) {
-
-            List<MissionItemProxy> bucket = bucketEntry.second;
-            if (bucketEntry.first) {
-                List<LatLong> splinePoints = new ArrayList<>();
-                int bucketSize = bucket.size();
-                for(int i = 0; i < bucketSize; i++){
-                    MissionItemProxy missionItemProxy = bucket.get(i);
-                    MissionItemType missionItemType = missionItemProxy.getMissionItem().getType();
-                    List<LatLong> missionItemPath = missionItemProxy.getPath(lastPoint);
-
-                    switch(missionItemType){
-                        case SURVEY:
-                            if(!missionItemPath.isEmpty()) {
-                                if (i == 0)
-                                    splinePoints.add(missionItemPath.get(0));
-                                else {
-                                    splinePoints.add(missionItemPath.get(missionItemPath.size() - 1));
-                                }
-                            }
-                            break;
-
-                        default:
-                            splinePoints.addAll(missionItemPath);
-                            break;
+        final MissionPathBuilder builder = new MissionPathBuilder(snapshotPathRevision, currentSnapshot);
+        pathBuilder = builder;
+        pathExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final MissionPath path = builder.build();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onMissionPathBuilt(builder, path);
                     }
+                });
+            }
+        });
+    }
 
-                    if (!splinePoints.isEmpty()) {
-                        lastPoint = splinePoints.get(splinePoints.size() - 1);
-                    }
-                }
+    private void onMissionPathBuilt(MissionPathBuilder builder, MissionPath path) {
+        if (builder != pathBuilder)
+            return;
 
-                pathPoints.addAll(MathUtils.SplinePath.process(splinePoints));
-            }
-            else {
-                for (MissionItemProxy missionItemProxy : bucket) {
-                    pathPoints.addAll(missionItemProxy.getPath(lastPoint));
+        pathBuilder = null;
+        if (path == null)
+            return;
 
-                    if (!pathPoints.isEmpty()) {
-                        lastPoint = pathPoints.get(pathPoints.size() - 1);
-                    }
-                }
-            }
-        }
+        missionPath = path;
+        missionPathTime = SystemClock.uptimeMillis();
+        if (path.getRevision() != snapshotPathRevision)
+            requestMissionPath();
 
-        return pathPoints;
+        lbm.sendBroadcast(new Intent(ACTION_MISSION_PATH_UPDATE));
     }
 
     public void removeSelection(MissionSelection missionSelection) {
         missionItemProxies.removeAll(missionSelection.mSelectedItems);
+        invalidateItemIndexes();
         missionSelection.clearSelection();
-        notifyMissionUpdate();
+        onMissionUpdated(true);
     }
 
     public void move(MissionItemProxy item, LatLong position) {
@@ -717,7 +1002,7 @@ public class MissionProxy implements DPMap.PathSource {
                         missionItemsBuiltListener);
             }
 
-            notifyMissionUpdate();
+            notifyMissionUpdate(item, true);
         }
     }
 
@@ -728,7 +1013,12 @@ public class MissionProxy implements DPMap.PathSource {
     public void movePolygonPoint(Survey survey, int index, LatLong position) {
         survey.getPolygonPoints().get(index).set(position);
         this.drone.buildMissionItemsAsync(new Survey[]{survey}, missionItemsBuiltListener);
-        notifyMissionUpdate();
+
+        final MissionItemProxy itemProxy = proxyOf(survey);
+        if (itemProxy != null)
+            notifyMissionUpdate(itemProxy, true);
+        else
+            notifyMissionUpdate();
     }
 
     public static List<LatLong> getVisibleCoords(List<MissionItemProxy> mipList) {
@@ -754,17 +1044,11 @@ public class MissionProxy implements DPMap.PathSource {
     }
 
     private Mission generateMission() {
-        return generateMission(false);
-    }
-
-    private Mission generateMission(boolean isDeepCopy) {
         Mission mission = new Mission();
 
         if (!missionItemProxies.isEmpty()) {
             for (MissionItemProxy itemProxy : missionItemProxies) {
-                MissionItem sourceItem = itemProxy.getMissionItem();
-                MissionItem destItem = isDeepCopy ? sourceItem.clone() : sourceItem;
-                mission.addMissionItem(destItem);
+                mission.addMissionItem(itemProxy.getMissionItem());
             }
         }
 
@@ -806,16 +1090,12 @@ public class MissionProxy implements DPMap.PathSource {
         GAUtils.sendEvent(eventBuilder);
     }
 
+    /**
+     * @return the length of the last computed mission path, in meters. See
+     * {@link #isMissionPathReady()}.
+     */
     public double getMissionLength() {
-        List<LatLong> points = getPathPoints();
-        double length = 0;
-        if (points.size() > 1) {
-            for (int i = 1; i < points.size(); i++) {
-                length += MathUtils.getDistance2D(points.get(i - 1), points.get(i));
-            }
-        }
-
-        return length;
+        return getMissionPath().getLength();
     }
 
     public void makeAndUploadDronie(Drone drone) {
@@ -27,7 +27,7 @@ public class MissionItemProxy {
     private final Drone.OnMissionItemsBuiltCallback missionItemBuiltListener = new Drone.OnMissionItemsBuiltCallback() {
         @Override
         public void onMissionItemsBuilt(MissionItem.ComplexItem[] complexItems) {
-            mMission.notifyMissionUpdate(false);
+            mMission.notifyMissionUpdate(MissionItemProxy.this, false);
         }
     };
 
@@ -52,6 +52,11 @@ public class MissionItemProxy {
      */
     private final long stableId;
 
+    /**
+     * Mission revision of the last change to this item.
+     */
+    private int revision;
+
 	public MissionItemProxy(MissionProxy mission, MissionItem missionItem) {
         this.stableId = System.nanoTime();
 
@@ -104,16 +109,24 @@ public class MissionItemProxy {
 	 * @return the set of points/coords making up this mission item.
 	 */
 	public List<LatLong> getPath(LatLong previousPoint) {
+		return getPath(mMissionItem, previousPoint);
+	}
+
+	/**
+	 * Same as {@link #getPath(LatLong)} for a mission item without proxy, e.g. a copy read off
+	 * the main thread.
+	 */
+	public static List<LatLong> getPath(MissionItem missionItem, LatLong previousPoint) {
 		List<LatLong> pathPoints = new ArrayList<LatLong>();
-		switch (mMissionItem.getType()) {
+		switch (missionItem.getType()) {
 			case LAND:
 			case WAYPOINT:
 			case SPLINE_WAYPOINT:
-				pathPoints.add(((MissionItem.SpatialItem) mMissionItem).getCoordinate());
+				pathPoints.add(((MissionItem.SpatialItem) missionItem).getCoordinate());
 				break;
 
 			case CIRCLE:
-                		Circle circle = (Circle) mMissionItem;
+                		Circle circle = (Circle) missionItem;
 				for (int i = 0; i <= 360*circle.getTurns(); i += 10) {
 					double startHeading = 0;
 					if (previousPoint != null) {
@@ -127,14 +140,14 @@ public class MissionItemProxy {
 
 			case SPLINE_SURVEY:
 			case SURVEY:
-				List<LatLong> gridPoints = ((Survey) mMissionItem).getGridPoints();
+				List<LatLong> gridPoints = ((Survey) missionItem).getGridPoints();
 				if (gridPoints != null && !gridPoints.isEmpty()) {
 					pathPoints.addAll(gridPoints);
 				}
 				break;
 
 			case STRUCTURE_SCANNER:
-				StructureScanner survey = (StructureScanner) mMissionItem;
+				StructureScanner survey = (StructureScanner) missionItem;
 				pathPoints.addAll(survey.getPath());
 				break;
 
@@ -151,4 +164,19 @@ public class MissionItemProxy {
     public long getStableId(){
         return stableId;
     }
+
+    /**
+     * @return the {@link MissionProxy#getRevision()} of the last change to this item, or 0 if it
+     * did not change since it was added.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Called by the mission when this item changes.
+     */
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
 }
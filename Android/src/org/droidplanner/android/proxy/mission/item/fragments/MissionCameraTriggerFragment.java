@@ -60,7 +60,7 @@ public class MissionCameraTriggerFragment extends MissionDetailFragment implemen
                     CameraTrigger item = (CameraTrigger) missionItem;
                     item.setTriggerDistance(baseValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
@@ -8,7 +8,6 @@ import com.o3dr.services.android.lib.drone.mission.item.spatial.Circle;
 
 import org.beyene.sius.unit.length.LengthUnit;
 import org.droidplanner.android.R;
-import org.droidplanner.android.proxy.mission.MissionProxy;
 import org.droidplanner.android.utils.Utils;
 import org.droidplanner.android.utils.unit.providers.length.LengthUnitProvider;
 import org.droidplanner.android.view.spinnerWheel.CardWheelHorizontalView;
@@ -84,7 +83,7 @@ public class MissionCircleFragment extends MissionDetailFragment implements
                 for (Circle item : getMissionItems()) {
                     item.getCoordinate().setAltitude(baseValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
             }
 
@@ -93,10 +92,7 @@ public class MissionCircleFragment extends MissionDetailFragment implements
                 for (Circle item : getMissionItems()) {
                     item.setRadius(baseValue);
                 }
-
-                MissionProxy missionProxy = getMissionProxy();
-                if (missionProxy != null)
-                    missionProxy.notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
             }
 
@@ -105,7 +101,7 @@ public class MissionCircleFragment extends MissionDetailFragment implements
                 for (Circle item : getMissionItems()) {
                     item.setTurns(turns);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
@@ -62,7 +62,7 @@ public class MissionConditionYawFragment extends MissionDetailFragment
                     YawCondition item = (YawCondition) missionItem;
                     item.setAngle(endValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
@@ -73,7 +73,7 @@ public class MissionConditionYawFragment extends MissionDetailFragment
             for (MissionItem missionItem : getMissionItems()) {
                 ((YawCondition) missionItem).setRelative(isChecked);
             }
-            getMissionProxy().notifyMissionUpdate();
+            notifyMissionItemsUpdate();
         }
     }
 }
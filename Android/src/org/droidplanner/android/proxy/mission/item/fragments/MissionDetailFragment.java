@@ -328,11 +328,11 @@ public class MissionDetailFragment extends ApiListenerDialogFragment {
                 list.add(MissionItemType.STRUCTURE_SCANNER);
             }
 
-            if (mMissionProxy.getItems().indexOf(itemProxy) != 0) {
+            if (mMissionProxy.indexOf(itemProxy) != 0) {
                 list.remove(MissionItemType.TAKEOFF);
             }
 
-            if (mMissionProxy.getItems().indexOf(itemProxy) != (mMissionProxy.getItems().size() - 1)) {
+            if (mMissionProxy.indexOf(itemProxy) != (mMissionProxy.getItems().size() - 1)) {
                 list.remove(MissionItemType.LAND);
                 list.remove(MissionItemType.RETURN_TO_LAUNCH);
             }
@@ -501,6 +501,15 @@ public class MissionDetailFragment extends ApiListenerDialogFragment {
         return mSelectedItems;
     }
 
+    /**
+     * To be called after editing the items returned by {@link #getMissionItems()}.
+     */
+    protected void notifyMissionItemsUpdate() {
+        final MissionProxy missionProxy = getMissionProxy();
+        if (missionProxy != null)
+            missionProxy.notifyMissionUpdate(mSelectedProxies);
+    }
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
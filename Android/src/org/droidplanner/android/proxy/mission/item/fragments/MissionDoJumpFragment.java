@@ -66,7 +66,7 @@ public class MissionDoJumpFragment extends MissionDetailFragment implements Card
                     item.setRepeatCount(newRepeatCount);
                 }
 
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
             }
         });
     }
@@ -89,7 +89,7 @@ public class MissionDoJumpFragment extends MissionDetailFragment implements Card
                     DoJump item = (DoJump) missionItem;
                     item.setWaypoint(endValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
 
             case R.id.repeat_picker:
@@ -97,7 +97,7 @@ public class MissionDoJumpFragment extends MissionDetailFragment implements Card
                     DoJump item = (DoJump) missionItem;
                     item.setRepeatCount(endValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
@@ -72,7 +72,7 @@ public class MissionSplineWaypointFragment extends MissionDetailFragment impleme
                 for (MissionItem item : getMissionItems()) {
                     ((SplineWaypoint) item).getCoordinate().setAltitude(baseValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
 
             case R.id.waypointDelayPicker:
@@ -80,7 +80,7 @@ public class MissionSplineWaypointFragment extends MissionDetailFragment impleme
                 for (MissionItem item : getMissionItems()) {
                     ((SplineWaypoint) item).setDelay(delay);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
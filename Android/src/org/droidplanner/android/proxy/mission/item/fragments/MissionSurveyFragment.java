@@ -316,6 +316,6 @@ public class MissionSurveyFragment<T extends Survey> extends MissionDetailFragme
             checkIfValid((T) item);
         }
 
-        getMissionProxy().notifyMissionUpdate();
+        notifyMissionItemsUpdate();
     }
 }
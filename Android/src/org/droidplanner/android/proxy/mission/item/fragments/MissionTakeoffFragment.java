@@ -68,7 +68,7 @@ public class MissionTakeoffFragment extends MissionDetailFragment implements
                     Takeoff item = (Takeoff) missionItem;
                     item.setTakeoffAltitude(baseValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
 
             case R.id.pitchPicker:
@@ -77,7 +77,7 @@ public class MissionTakeoffFragment extends MissionDetailFragment implements
                     ((Takeoff) missionItem).setTakeoffPitch(pitch);
                 }
 
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
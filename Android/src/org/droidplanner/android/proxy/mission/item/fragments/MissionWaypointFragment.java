@@ -68,7 +68,7 @@ public class MissionWaypointFragment extends MissionDetailFragment implements
                 for (MissionItem item : getMissionItems()) {
                     ((Waypoint) item).getCoordinate().setAltitude(altitude);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
 
             case R.id.waypointDelayPicker:
@@ -76,7 +76,7 @@ public class MissionWaypointFragment extends MissionDetailFragment implements
                 for (MissionItem item : getMissionItems()) {
                     ((Waypoint) item).setDelay(delay);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
 
@@ -62,7 +62,7 @@ public class SetServoFragment extends MissionDetailFragment implements CardWheel
                     SetServo item = (SetServo) missionItem;
                     item.setChannel(endValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
 
             case R.id.pwmPicker:
@@ -70,7 +70,7 @@ public class SetServoFragment extends MissionDetailFragment implements CardWheel
                     SetServo item = (SetServo) missionItem;
                     item.setPwm(endValue);
                 }
-                getMissionProxy().notifyMissionUpdate();
+                notifyMissionItemsUpdate();
                 break;
         }
     }
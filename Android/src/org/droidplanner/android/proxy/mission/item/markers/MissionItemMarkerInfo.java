@@ -100,6 +100,11 @@ public abstract class MissionItemMarkerInfo extends MarkerInfo.SimpleMarkerInfo
 		return true;
 	}
 
+	@Override
+	public boolean isClusterable() {
+		return true;
+	}
+
 	@Override
 	public Bitmap getIcon(Resources res) {
 		int drawable;
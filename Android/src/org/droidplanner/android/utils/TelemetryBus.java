@@ -0,0 +1,251 @@
+package org.droidplanner.android.utils;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * In-process dispatch of the drone events, replacing the local broadcasts for the high rate ones.
+ * <p/>
+ * Only the latest occurrence of each event is kept. Each subscriber chooses the events it wants and
+ * how often it wants them: an event is delivered at most once per subscriber interval, and only if
+ * it was posted again since the subscriber last got it. Posting and delivering do not allocate, and
+ * the dispatching only wakes the main looper when a subscriber is due.
+ * <p/>
+ * Main thread only.
+ */
+public class TelemetryBus {
+
+    public interface Listener {
+        void onTelemetryEvent(String event, Bundle extras);
+    }
+
+    /**
+     * Latest occurrence of an event.
+     */
+    private static class Slot {
+        final int index;
+        final String event;
+        Bundle extras;
+        long version;
+
+        Slot(int index, String event) {
+            this.index = index;
+            this.event = event;
+        }
+    }
+
+    private static class Subscription {
+        final Listener listener;
+        final long interval;
+
+        //Accepted slots, or null for all of them.
+        final boolean[] accepted;
+
+        //Version of each slot when it was last delivered.
+        long[] versions;
+        long lastDelivery = Long.MIN_VALUE / 2;
+        boolean active = true;
+
+        Subscription(Listener listener, long interval, boolean[] accepted, long[] versions) {
+            this.listener = listener;
+            this.interval = interval;
+            this.accepted = accepted;
+            this.versions = versions;
+        }
+
+        boolean accepts(int slot) {
+            return accepted == null || (slot < accepted.length && accepted[slot]);
+        }
+    }
+
+    private final Handler handler = new Handler();
+
+    private final HashMap<String, Slot> slotsByEvent = new HashMap<>();
+    private Slot[] slots = new Slot[32];
+    private int slotCount;
+    private long version;
+
+    //Replaced, not modified, so a subscriber may unsubscribe while being called.
+    private Subscription[] subscriptions = new Subscription[0];
+
+    private boolean dispatchScheduled;
+    private long dispatchTime;
+
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            dispatchScheduled = false;
+            dispatch();
+        }
+    };
+
+    /**
+     * @param interval Minimum time between two deliveries to this listener, 0 to get the events as
+     *                 soon as possible.
+     * @param events   Events to deliver.
+     */
+    public void subscribe(Listener listener, long interval, String... events) {
+        final boolean[] accepted = new boolean[slotCount + events.length];
+        for (String event : events)
+            accepted[getSlot(event).index] = true;
+
+        addSubscription(new Subscription(listener, interval, accepted, getVersions(accepted.length)));
+    }
+
+    /**
+     * Delivers every event, including the ones not posted yet.
+     */
+    public void subscribeAll(Listener listener, long interval) {
+        addSubscription(new Subscription(listener, interval, null, getVersions(slotCount)));
+    }
+
+    public void unsubscribe(Listener listener) {
+        final Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                current[i].active = false;
+
+                final Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the event, replacing its previous occurrence if it was not delivered yet.
+     */
+    public void post(String event, Bundle extras) {
+        final Slot slot = update(event, extras);
+
+        long due = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(slot.index))
+                due = Math.min(due, subscription.lastDelivery + subscription.interval);
+        }
+
+        if (due != Long.MAX_VALUE)
+            scheduleDispatch(Math.max(due, SystemClock.uptimeMillis()));
+    }
+
+    /**
+     * Delivers the event right away to all its subscribers, regardless of their interval. Meant
+     * for the events whose order matters, like the connection ones.
+     */
+    public void postNow(String event, Bundle extras) {
+        final Slot slot = update(event, extras);
+
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.active || !subscription.accepts(slot.index))
+                continue;
+
+            ensureVersionsCapacity(subscription);
+            subscription.versions[slot.index] = slot.version;
+            subscription.listener.onTelemetryEvent(slot.event, slot.extras);
+        }
+    }
+
+    private void dispatch() {
+        final long now = SystemClock.uptimeMillis();
+        long next = Long.MAX_VALUE;
+
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.active || !hasPendingEvents(subscription))
+                continue;
+
+            final long due = subscription.lastDelivery + subscription.interval;
+            if (due > now) {
+                next = Math.min(next, due);
+                continue;
+            }
+
+            subscription.lastDelivery = now;
+            deliver(subscription);
+        }
+
+        if (next != Long.MAX_VALUE)
+            scheduleDispatch(next);
+    }
+
+    private boolean hasPendingEvents(Subscription subscription) {
+        ensureVersionsCapacity(subscription);
+        for (int i = 0; i < slotCount; i++) {
+            if (subscription.accepts(i) && slots[i].version > subscription.versions[i])
+                return true;
+        }
+        return false;
+    }
+
+    private void deliver(Subscription subscription) {
+        final int count = slotCount;
+        for (int i = 0; i < count && subscription.active; i++) {
+            final Slot slot = slots[i];
+            if (subscription.accepts(i) && slot.version > subscription.versions[i]) {
+                subscription.versions[i] = slot.version;
+                subscription.listener.onTelemetryEvent(slot.event, slot.extras);
+            }
+        }
+    }
+
+    private void scheduleDispatch(long time) {
+        if (dispatchScheduled && dispatchTime <= time)
+            return;
+
+        handler.removeCallbacks(dispatcher);
+        handler.postAtTime(dispatcher, time);
+        dispatchScheduled = true;
+        dispatchTime = time;
+    }
+
+    private Slot update(String event, Bundle extras) {
+        final Slot slot = getSlot(event);
+        slot.extras = extras;
+        slot.version = ++version;
+        return slot;
+    }
+
+    private Slot getSlot(String event) {
+        Slot slot = slotsByEvent.get(event);
+        if (slot == null) {
+            if (slotCount == slots.length)
+                slots = Arrays.copyOf(slots, slotCount * 2);
+
+            slot = new Slot(slotCount, event);
+            slots[slotCount++] = slot;
+            slotsByEvent.put(event, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @return the current version of the first slots, so a new subscriber only gets the events
+     * posted after it subscribed.
+     */
+    private long[] getVersions(int length) {
+        final long[] versions = new long[length];
+        for (int i = 0; i < length && i < slotCount; i++)
+            versions[i] = slots[i].version;
+        return versions;
+    }
+
+    /**
+     * Slots created after a subscription have never been delivered to it.
+     */
+    private void ensureVersionsCapacity(Subscription subscription) {
+        if (subscription.versions.length < slotCount)
+            subscription.versions = Arrays.copyOf(subscription.versions, slots.length);
+    }
+
+    private void addSubscription(Subscription subscription) {
+        final Subscription[] current = subscriptions;
+        final Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscription;
+        subscriptions = updated;
+    }
+}
@@ -0,0 +1,247 @@
+package org.droidplanner.android.utils.file.IO;
+
+import com.MAVLink.MAVLinkPacket;
+import com.MAVLink.Messages.MAVLinkMessage;
+import com.MAVLink.Parser;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access to the messages of a tlog file.
+ *
+ * <timestamp><MavLink packet>...
+ *
+ * The file is memory mapped and walked once to index the offset, timestamp and message id of every
+ * packet, without decoding them. Messages are only unpacked when asked for, so seeking by time and
+ * filtering by message id stay cheap on multi-hour logs.
+ * <p/>
+ * Not thread safe; use one instance per thread.
+ */
+public class TLogFile implements Closeable {
+
+    private static final int TIMESTAMP_SIZE = Long.SIZE / Byte.SIZE;
+
+    /**
+     * MAVLink 1 framing: start byte, then length, sequence, system id, component id and message id,
+     * followed by the payload and a 2 bytes checksum.
+     */
+    private static final int MAVLINK_STX = 0xFE;
+    private static final int MAVLINK_HEADER_SIZE = 6;
+    private static final int MAVLINK_CHECKSUM_SIZE = 2;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final FileInputStream in;
+    private final MappedByteBuffer buffer;
+
+    //Packet index, one slot per packet.
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] messageIds = new int[INITIAL_CAPACITY];
+    private int count;
+
+    private Parser parser = new Parser();
+
+    private TLogFile(FileInputStream in) throws IOException {
+        this.in = in;
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("TLog files over 2GB are not supported.");
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buildIndex();
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public static TLogFile open(String path) throws IOException {
+        return new TLogFile(new FileInputStream(path));
+    }
+
+    public static TLogFile open(FileDescriptor fd) throws IOException {
+        return new TLogFile(new FileInputStream(fd));
+    }
+
+    /**
+     * Walks the timestamp / packet pairs. A truncated last packet is dropped, as is any garbage
+     * between a timestamp and the start of its packet.
+     */
+    private void buildIndex() {
+        final int limit = buffer.limit();
+        int position = 0;
+        while (position + TIMESTAMP_SIZE < limit) {
+            final long timestamp = buffer.getLong(position) / 1000;
+
+            int start = position + TIMESTAMP_SIZE;
+            while (start < limit && (buffer.get(start) & 0xff) != MAVLINK_STX)
+                start++;
+
+            if (start + MAVLINK_HEADER_SIZE > limit)
+                break;
+
+            final int length = MAVLINK_HEADER_SIZE + (buffer.get(start + 1) & 0xff) + MAVLINK_CHECKSUM_SIZE;
+            if (start + length > limit)
+                break;
+
+            if (count == offsets.length) {
+                final int capacity = count * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                messageIds = Arrays.copyOf(messageIds, capacity);
+            }
+
+            offsets[count] = start;
+            timestamps[count] = timestamp;
+            messageIds[count] = buffer.get(start + 5) & 0xff;
+            count++;
+
+            position = start + length;
+        }
+    }
+
+    /**
+     * @return the number of packets in the file.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the time the packet was logged at, in ms since the epoch.
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public int getMessageId(int index) {
+        checkIndex(index);
+        return messageIds[index];
+    }
+
+    /**
+     * Unpacks the message of the given packet.
+     *
+     * @return the message, or null if the packet is corrupted.
+     */
+    public MAVLinkMessage getMessage(int index) {
+        checkIndex(index);
+        final int offset = offsets[index];
+        final int length = MAVLINK_HEADER_SIZE + (buffer.get(offset + 1) & 0xff) + MAVLINK_CHECKSUM_SIZE;
+
+        MAVLinkPacket packet = null;
+        for (int i = 0; i < length && packet == null; i++)
+            packet = parser.mavlink_parse_char(buffer.get(offset + i) & 0xff);
+
+        if (packet == null) {
+            //Bad checksum, don't let the parser carry a partial packet over to the next call.
+            parser = new Parser();
+            return null;
+        }
+
+        return packet.unpack();
+    }
+
+    public TLogReader.Event getEvent(int index) {
+        final MAVLinkMessage message = getMessage(index);
+        return message == null ? null : new TLogReader.Event(getTimestamp(index), message);
+    }
+
+    /**
+     * Logged timestamps are expected to never go back in time.
+     *
+     * @return the index of the first packet logged at or after the given time, or {@link #size()}
+     * if there is none.
+     */
+    public int seek(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param messageIds Accepted message ids, all of them if empty.
+     * @return the index of the first packet at or after from carrying one of the message ids, or
+     * -1 if there is none.
+     */
+    public int next(int from, int... messageIds) {
+        for (int i = Math.max(from, 0); i < count; i++) {
+            if (matches(this.messageIds[i], messageIds))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param messageIds Accepted message ids, all of them if empty.
+     * @return the index of the last packet at or before from carrying one of the message ids, or
+     * -1 if there is none.
+     */
+    public int previous(int from, int... messageIds) {
+        for (int i = Math.min(from, count - 1); i >= 0; i--) {
+            if (matches(this.messageIds[i], messageIds))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the packets logged in [fromTimestamp, toTimestamp) that carry one of the message ids.
+     *
+     * @param messageIds Accepted message ids, all of them if empty.
+     * @return the packet indexes, in log order.
+     */
+    public int[] select(long fromTimestamp, long toTimestamp, int... messageIds) {
+        int[] selection = new int[INITIAL_CAPACITY];
+        int selected = 0;
+        for (int i = seek(fromTimestamp); i < count && timestamps[i] < toTimestamp; i++) {
+            if (!matches(this.messageIds[i], messageIds))
+                continue;
+
+            if (selected == selection.length)
+                selection = Arrays.copyOf(selection, selected * 2);
+            selection[selected++] = i;
+        }
+        return Arrays.copyOf(selection, selected);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static boolean matches(int messageId, int[] messageIds) {
+        if (messageIds.length == 0)
+            return true;
+
+        for (int id : messageIds) {
+            if (id == messageId)
+                return true;
+        }
+        return false;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Invalid packet index " + index + ", size is " + count);
+    }
+}
@@ -1,18 +1,12 @@
 package org.droidplanner.android.utils.file.IO;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.FileDescriptor;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.droidplanner.android.utils.file.FileStream;
 
-import com.MAVLink.MAVLinkPacket;
-import com.MAVLink.Parser;
 import com.MAVLink.Messages.MAVLinkMessage;
 
 /**
@@ -22,6 +16,8 @@ import com.MAVLink.Messages.MAVLinkMessage;
  *
  * See http://qgroundcontrol.org/mavlink for details
  *
+ * Use {@link TLogFile} directly for seeking or multiple message filters.
+ *
  */
 public class TLogReader {
 
@@ -47,10 +43,13 @@ public class TLogReader {
         }
     }
 
-    private static final int TIMESTAMP_SIZE = Long.SIZE / Byte.SIZE;
+    /**
+     * Minimum time between two returned events.
+     */
+    private static final long MIN_EVENT_INTERVAL = 5000; //ms
 
     private final int msgFilter;
-    private final List<Event> logEvents = new LinkedList<Event>();
+    private final List<Event> logEvents = new ArrayList<Event>();
 
 
     public TLogReader(int msgFilter) {
@@ -62,51 +61,12 @@ public class TLogReader {
     }
 
     public boolean openTLog(FileDescriptor fd){
-        final Parser parser = new Parser();
-        DataInputStream in = null;
         try {
-            // open file
-            in = new DataInputStream(new BufferedInputStream(new FileInputStream(fd)));
-
-            // read events, filter (if specified)
-            long timestamp;
-            long prevTimestamp = 0;
-            while(in.available() > 0) {
-                // read timestamp
-                timestamp = in.readLong() / 1000;
-
-                // read packet
-                MAVLinkPacket packet;
-                while((packet = parser.mavlink_parse_char(in.readUnsignedByte())) == null);
-
-                if(msgFilter == MSGFILTER_NONE || packet.msgid == msgFilter) {
-                    if((timestamp - prevTimestamp) > 5000) {
-                        logEvents.add(new Event(timestamp, packet.unpack()));
-                        prevTimestamp = timestamp;
-                    }
-                }
-            }
-
-        } catch (EOFException e) {
-            // NOP - file may be incomplete - take what we have
-            // fall thru...
-        } catch (Exception e) {
+            return readEvents(TLogFile.open(fd));
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
-        finally {
-            // close file
-            if(in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    // NOP
-                }
-            }
-        }
-
-        return true;
     }
 
     public boolean openTLog(String file) {
@@ -114,47 +74,38 @@ public class TLogReader {
             return false;
         }
 
-        final Parser parser = new Parser();
-        DataInputStream in = null;
         try {
-            // open file
-            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return readEvents(TLogFile.open(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-            // read events, filter (if specified)
-            long timestamp;
+    /**
+     * Keeps at most one matching event every {@link #MIN_EVENT_INTERVAL}. Only the kept events are
+     * unpacked, the others are skipped through the file index.
+     */
+    private boolean readEvents(TLogFile tlog) {
+        try {
+            final int[] filter = msgFilter == MSGFILTER_NONE ? new int[0] : new int[]{msgFilter};
             long prevTimestamp = 0;
-            while(in.available() > 0) {
-                // read timestamp
-                timestamp = in.readLong() / 1000;
-
-                // read packet
-                MAVLinkPacket packet;
-                while((packet = parser.mavlink_parse_char(in.readUnsignedByte())) == null);
-
-                if(msgFilter == MSGFILTER_NONE || packet.msgid == msgFilter) {
-                    if((timestamp - prevTimestamp) > 5000) {
-                        logEvents.add(new Event(timestamp, packet.unpack()));
+            for (int i = tlog.next(0, filter); i != -1; i = tlog.next(i + 1, filter)) {
+                final long timestamp = tlog.getTimestamp(i);
+                if ((timestamp - prevTimestamp) > MIN_EVENT_INTERVAL) {
+                    final Event event = tlog.getEvent(i);
+                    if (event != null) {
+                        logEvents.add(event);
                         prevTimestamp = timestamp;
-            }
+                    }
                 }
             }
-
-        } catch (EOFException e) {
-            // NOP - file may be incomplete - take what we have
-            // fall thru...
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
-        finally {
-            // close file
-            if(in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    // NOP
-                }
+        } finally {
+            try {
+                tlog.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                // NOP
             }
         }
 
@@ -0,0 +1,406 @@
+package org.droidplanner.android.utils.file.IO;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import com.MAVLink.Messages.MAVLinkMessage;
+import com.MAVLink.common.msg_global_position_int;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import timber.log.Timber;
+
+/**
+ * Finds the last known positions of the drone across all the tlogs of a directory.
+ * <p/>
+ * The files are scanned in parallel, one per core, and each file's result is delivered on the main
+ * thread as soon as it is ready, most recent files first. Only the end of each log is decoded,
+ * walking its {@link TLogFile} index backwards. The summaries are cached on disk with the size and
+ * modification time of their file, so unchanged logs are not opened again.
+ */
+public class TLogScanner {
+
+    public interface Listener {
+        /**
+         * @param positions Last positions logged in the file, oldest first. Empty if there are none.
+         */
+        void onTLogScanned(File tlog, List<TLogReader.Event> positions);
+
+        void onTLogScanCompleted();
+    }
+
+    public static final String TLOG_EXTENSION = ".tlog";
+
+    /**
+     * Positions kept at the end of each file.
+     */
+    private static final int SUMMARY_POSITIONS = 10;
+
+    /**
+     * Minimum time between two kept positions.
+     */
+    private static final long MIN_EVENT_INTERVAL = 5000; //ms
+
+    private static final String CACHE_FILENAME = "tlog_summaries.json";
+    private static final Charset CACHE_CHARSET = Charset.forName("UTF-8");
+
+    private static final int MSG_ID = msg_global_position_int.MAVLINK_MSG_ID_GLOBAL_POSITION_INT;
+
+    private static final FileFilter TLOG_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().endsWith(TLOG_EXTENSION);
+        }
+    };
+
+    private static final Comparator<File> NEWEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            final long lhsModified = lhs.lastModified();
+            final long rhsModified = rhs.lastModified();
+            return lhsModified < rhsModified ? 1 : (lhsModified == rhsModified ? 0 : -1);
+        }
+    };
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final File cacheFile;
+    private final Listener listener;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService scanners = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+
+    private volatile boolean cancelled;
+
+    public TLogScanner(Context context, Listener listener) {
+        this.cacheFile = new File(context.getCacheDir(), CACHE_FILENAME);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts scanning the tlogs in the given directory. A scanner is meant to be used once.
+     */
+    public void scan(final File directory) {
+        coordinator.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scanDirectory(directory);
+                } finally {
+                    scanners.shutdown();
+                    postCompleted();
+                }
+            }
+        });
+        coordinator.shutdown();
+    }
+
+    /**
+     * Stops the scan. No more callbacks are delivered after this returns.
+     */
+    public void cancel() {
+        cancelled = true;
+        coordinator.shutdownNow();
+        scanners.shutdownNow();
+    }
+
+    private void scanDirectory(File directory) {
+        final File[] tlogs = directory.listFiles(TLOG_FILTER);
+        if (tlogs == null) {
+            Timber.w("Unable to list %s", directory);
+            return;
+        }
+        Arrays.sort(tlogs, NEWEST_FIRST);
+
+        final Map<String, Summary> cache = readCache();
+        final Map<String, Summary> summaries = new HashMap<>(tlogs.length);
+        final CompletionService<Summary> pending = new ExecutorCompletionService<>(scanners);
+        int submitted = 0;
+
+        for (final File tlog : tlogs) {
+            final Summary cached = cache.remove(tlog.getAbsolutePath());
+            if (cached != null && cached.isSummaryOf(tlog)) {
+                summaries.put(cached.path, cached);
+                postScanned(tlog, cached.positions);
+                continue;
+            }
+
+            pending.submit(new Callable<Summary>() {
+                @Override
+                public Summary call() {
+                    final Summary summary = summarize(tlog);
+                    postScanned(tlog, summary.positions);
+                    return summary;
+                }
+            });
+            submitted++;
+        }
+
+        try {
+            for (int i = 0; i < submitted; i++) {
+                try {
+                    final Summary summary = pending.take().get();
+                    summaries.put(summary.path, summary);
+                } catch (ExecutionException e) {
+                    Timber.e(e, "Unable to scan a tlog.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Timber.d("TLog scan cancelled.");
+            return;
+        }
+
+        //Also drops the summaries of the files which were deleted from this directory.
+        if (removeEntriesIn(cache, directory) || submitted > 0) {
+            cache.putAll(summaries);
+            writeCache(cache);
+        }
+    }
+
+    /**
+     * @return true if the cache held summaries of files in the directory.
+     */
+    private static boolean removeEntriesIn(Map<String, Summary> cache, File directory) {
+        final String parent = directory.getAbsolutePath();
+        final List<String> stale = new ArrayList<>();
+        for (String path : cache.keySet()) {
+            if (parent.equals(new File(path).getParent()))
+                stale.add(path);
+        }
+        cache.keySet().removeAll(stale);
+        return !stale.isEmpty();
+    }
+
+    /**
+     * Walks the file index backwards from the end, decoding only the positions it keeps.
+     */
+    private static Summary summarize(File tlog) {
+        final long length = tlog.length();
+        final long lastModified = tlog.lastModified();
+        final List<TLogReader.Event> positions = new ArrayList<>(SUMMARY_POSITIONS);
+
+        TLogFile file = null;
+        try {
+            file = TLogFile.open(tlog.getAbsolutePath());
+
+            long nextTimestamp = Long.MAX_VALUE;
+            for (int i = file.previous(file.size() - 1, MSG_ID); i != -1 && positions.size() < SUMMARY_POSITIONS;
+                 i = file.previous(i - 1, MSG_ID)) {
+                final long timestamp = file.getTimestamp(i);
+                if (nextTimestamp - timestamp <= MIN_EVENT_INTERVAL)
+                    continue;
+
+                final MAVLinkMessage message = file.getMessage(i);
+                if (!(message instanceof msg_global_position_int))
+                    continue;
+
+                final msg_global_position_int position = (msg_global_position_int) message;
+                if (position.lat == 0 && position.lon == 0)
+                    continue;
+
+                positions.add(new TLogReader.Event(timestamp, position));
+                nextTimestamp = timestamp;
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to read %s", tlog);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    Timber.w(e, "Unable to close %s", tlog);
+                }
+            }
+        }
+
+        Collections.reverse(positions);
+        return new Summary(tlog.getAbsolutePath(), length, lastModified, positions);
+    }
+
+    private void postScanned(final File tlog, final List<TLogReader.Event> positions) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled)
+                    listener.onTLogScanned(tlog, positions);
+            }
+        });
+    }
+
+    private void postCompleted() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled)
+                    listener.onTLogScanCompleted();
+            }
+        });
+    }
+
+    private Map<String, Summary> readCache() {
+        final Map<String, Summary> cache = new HashMap<>();
+        if (!cacheFile.isFile())
+            return cache;
+
+        JsonReader reader = null;
+        try {
+            reader = new JsonReader(new InputStreamReader(new FileInputStream(cacheFile), CACHE_CHARSET));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final Summary summary = Summary.read(reader);
+                cache.put(summary.path, summary);
+            }
+            reader.endArray();
+        } catch (IOException | RuntimeException e) {
+            Timber.w(e, "Discarding the tlog summaries cache.");
+            cache.clear();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Timber.w(e, "Unable to close the tlog summaries cache.");
+                }
+            }
+        }
+        return cache;
+    }
+
+    private void writeCache(Map<String, Summary> cache) {
+        final File partial = new File(cacheFile.getPath() + ".tmp");
+        try {
+            final JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(partial), CACHE_CHARSET));
+            try {
+                writer.beginArray();
+                for (Summary summary : cache.values())
+                    summary.write(writer);
+                writer.endArray();
+            } finally {
+                writer.close();
+            }
+
+            if (!partial.renameTo(cacheFile))
+                throw new IOException("Unable to rename " + partial);
+        } catch (IOException e) {
+            Timber.w(e, "Unable to save the tlog summaries cache.");
+            partial.delete();
+        }
+    }
+
+    /**
+     * Last positions of a tlog, valid as long as the file keeps its size and modification time.
+     */
+    private static class Summary {
+
+        final String path;
+        final long length;
+        final long lastModified;
+        final List<TLogReader.Event> positions;
+
+        Summary(String path, long length, long lastModified, List<TLogReader.Event> positions) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.positions = positions;
+        }
+
+        boolean isSummaryOf(File tlog) {
+            return tlog.length() == length && tlog.lastModified() == lastModified;
+        }
+
+        void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("path").value(path);
+            writer.name("length").value(length);
+            writer.name("lastModified").value(lastModified);
+            writer.name("positions").beginArray();
+            for (TLogReader.Event event : positions) {
+                final msg_global_position_int position = (msg_global_position_int) event.getMavLinkMessage();
+                writer.beginArray()
+                    .value(event.getTimestamp())
+                    .value(position.time_boot_ms)
+                    .value(position.lat)
+                    .value(position.lon)
+                    .value(position.alt)
+                    .value(position.relative_alt)
+                    .value(position.hdg)
+                    .endArray();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+
+        static Summary read(JsonReader reader) throws IOException {
+            String path = null;
+            long length = -1;
+            long lastModified = -1;
+            final List<TLogReader.Event> positions = new ArrayList<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "path":
+                        path = reader.nextString();
+                        break;
+
+                    case "length":
+                        length = reader.nextLong();
+                        break;
+
+                    case "lastModified":
+                        lastModified = reader.nextLong();
+                        break;
+
+                    case "positions":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.beginArray();
+                            final long timestamp = reader.nextLong();
+                            final msg_global_position_int position = new msg_global_position_int();
+                            position.time_boot_ms = reader.nextLong();
+                            position.lat = reader.nextInt();
+                            position.lon = reader.nextInt();
+                            position.alt = reader.nextInt();
+                            position.relative_alt = reader.nextInt();
+                            position.hdg = reader.nextInt();
+                            reader.endArray();
+                            positions.add(new TLogReader.Event(timestamp, position));
+                        }
+                        reader.endArray();
+                        break;
+
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (path == null)
+                throw new IOException("Missing tlog path.");
+            return new Summary(path, length, lastModified, positions);
+        }
+    }
+}
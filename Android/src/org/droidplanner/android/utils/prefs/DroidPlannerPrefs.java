@@ -9,6 +9,7 @@ import android.text.TextUtils;
 
 import com.o3dr.services.android.lib.drone.connection.ConnectionType;
 
+import org.droidplanner.android.capture.PhotoCapturePipeline;
 import org.droidplanner.android.fragments.widget.TowerWidgets;
 import org.droidplanner.android.fragments.widget.video.WidgetVideoPreferences;
 import org.droidplanner.android.maps.providers.DPMapProvider;
@@ -165,6 +166,11 @@ public class DroidPlannerPrefs {
     public static final String PREF_UVC_VIDEO_ASPECT_RATIO = "pref_uvc_video_aspect_ratio";
     private static final float DEFAULT_UVC_VIDEO_ASPECT_RATIO = 3f / 4f;
 
+    public static final String PREF_PHOTO_JPEG_QUALITY = "pref_photo_jpeg_quality";
+    public static final String PREF_PHOTO_MAX_WIDTH = "pref_photo_max_width";
+
+    private static final String PREF_LOCATOR_TLOG_DIRECTORY = "pref_locator_tlog_directory";
+
     // Public for legacy usage
     public final SharedPreferences prefs;
     private final LocalBroadcastManager lbm;
@@ -546,4 +552,34 @@ public class DroidPlannerPrefs {
     public Float getUVCVideoAspectRatio(){
         return prefs.getFloat(PREF_UVC_VIDEO_ASPECT_RATIO, DEFAULT_UVC_VIDEO_ASPECT_RATIO);
     }
-}
+
+    public void setPhotoJpegQuality(int quality){
+        prefs.edit().putInt(PREF_PHOTO_JPEG_QUALITY, quality).apply();
+    }
+
+    public int getPhotoJpegQuality(){
+        return prefs.getInt(PREF_PHOTO_JPEG_QUALITY, PhotoCapturePipeline.DEFAULT_JPEG_QUALITY);
+    }
+
+    /**
+     * @param width Maximum width of the waypoint photos in pixels, 0 for the video resolution.
+     */
+    public void setPhotoMaxWidth(int width){
+        prefs.edit().putInt(PREF_PHOTO_MAX_WIDTH, width).apply();
+    }
+
+    public int getPhotoMaxWidth(){
+        return prefs.getInt(PREF_PHOTO_MAX_WIDTH, PhotoCapturePipeline.DEFAULT_MAX_WIDTH);
+    }
+
+    /**
+     * @param directory Folder last searched by the locator, or null to forget it.
+     */
+    public void setLocatorTLogDirectory(String directory){
+        prefs.edit().putString(PREF_LOCATOR_TLOG_DIRECTORY, directory).apply();
+    }
+
+    public String getLocatorTLogDirectory(){
+        return prefs.getString(PREF_LOCATOR_TLOG_DIRECTORY, null);
+    }
+}
\ No newline at end of file
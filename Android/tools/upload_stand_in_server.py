@@ -0,0 +1,315 @@
+#!/usr/bin/env python3
+"""
+Stand-in for the photo upload endpoints of the server, to exercise the resumable upload of
+PhotoUploadService without the production server.
+
+It mirrors the two endpoints the app uses:
+
+  getFotoOffset.php?percorso=..&sinistro=..&waypoint=..
+      Plain text count of the bytes stored for the photo, 0 if none.
+
+  addFoto.php (multipart/form-data: percorso, sinistro, waypoint, [offset], userfile)
+      Stores the photo. With an "offset" field, the file part holds the bytes from that offset
+      on (with a Content-Range header), and they are appended to the stored bytes. An offset
+      different from the stored size is rejected with 409. Like the server, the bytes of an
+      interrupted upload are kept, so the next attempt can resume after them.
+
+--drop-after N closes the connection after reading N bytes of the first upload of each photo,
+as a dropped mobile connection would.
+
+Usage, from the Android directory:
+
+  python3 tools/upload_stand_in_server.py --port 8000 --drop-after 65536 --store /tmp/foto
+  ./gradlew installDebug -PSERVER_URL=http://10.0.2.2:8000/    (emulator; use the host ip on a device)
+
+then take photos in the flight screen and check the log for "Resuming upload of ...", and the
+files in the store directory.
+
+  python3 tools/upload_stand_in_server.py --self-test
+
+runs a dropped upload and its resumption against the stand-in, writing the requests byte for
+byte like MultiPart/FieldPart/FilePart, and checks the stored photo matches the original.
+"""
+
+import argparse
+import http.client
+import http.server
+import os
+import re
+import sys
+import tempfile
+import threading
+import urllib.parse
+
+BOUNDARY = b"androidClientBoundary"
+LINE_END = b"\r\n"
+DELIMITER = b"--" + BOUNDARY
+CHUNK_SIZE = 8192
+
+
+def parse_multipart(body):
+    """
+    Splits a multipart body, possibly truncated, into its fields and its file part.
+
+    :return: (fields, file_headers, file_bytes), file_headers being None without a file part.
+    """
+    fields = {}
+    file_headers = None
+    file_bytes = b""
+
+    position = body.find(DELIMITER + LINE_END)
+    while position >= 0:
+        headers_start = position + len(DELIMITER + LINE_END)
+        headers_end = body.find(LINE_END + LINE_END, headers_start)
+        if headers_end < 0:
+            break
+
+        headers = {}
+        for line in body[headers_start:headers_end].split(LINE_END):
+            name, _, value = line.decode("utf-8").partition(":")
+            headers[name.strip().lower()] = value.strip()
+
+        content_start = headers_end + len(LINE_END + LINE_END)
+        content_end = body.find(LINE_END + DELIMITER, content_start)
+        truncated = content_end < 0
+        content = body[content_start:] if truncated else body[content_start:content_end]
+
+        disposition = headers.get("content-disposition", "")
+        name = re.search(r'name="([^"]*)"', disposition)
+        if "filename=" in disposition:
+            file_headers = headers
+            file_bytes = content
+        elif name and not truncated:
+            fields[name.group(1)] = content.decode("utf-8")
+
+        if truncated:
+            break
+        position = body.find(DELIMITER + LINE_END, content_end + len(LINE_END))
+
+    return fields, file_headers, file_bytes
+
+
+class Store(object):
+
+    def __init__(self, directory, drop_after):
+        self.directory = directory
+        self.drop_after = drop_after
+        self.dropped = set()
+        self.lock = threading.Lock()
+
+    def path(self, percorso, sinistro, waypoint):
+        name = "%s_%s_%s.jpg" % (percorso, sinistro, waypoint)
+        return os.path.join(self.directory, re.sub(r"[^\w.-]", "_", name))
+
+    def size(self, percorso, sinistro, waypoint):
+        path = self.path(percorso, sinistro, waypoint)
+        return os.path.getsize(path) if os.path.exists(path) else 0
+
+    def should_drop(self, key):
+        """The first upload of each photo is dropped, when enabled."""
+        with self.lock:
+            if self.drop_after is None or key in self.dropped:
+                return False
+            self.dropped.add(key)
+            return True
+
+
+class Handler(http.server.BaseHTTPRequestHandler):
+
+    protocol_version = "HTTP/1.1"
+    store = None
+
+    def do_GET(self):
+        url = urllib.parse.urlparse(self.path)
+        if not url.path.endswith("/getFotoOffset.php"):
+            return self.respond(404, "Not found")
+
+        query = urllib.parse.parse_qs(url.query)
+        try:
+            key = (query["percorso"][0], query["sinistro"][0], query["waypoint"][0])
+        except KeyError:
+            return self.respond(400, "Missing percorso, sinistro or waypoint")
+        self.respond(200, str(self.store.size(*key)))
+
+    def do_POST(self):
+        if not urllib.parse.urlparse(self.path).path.endswith("/addFoto.php"):
+            return self.respond(404, "Not found")
+
+        length = int(self.headers.get("Content-Length", 0))
+        limit = length
+        dropping = False
+        if self.store.drop_after is not None:
+            # Whether to drop is only known once the fields are read, so read up to the drop point first.
+            limit = min(length, self.store.drop_after)
+
+        body = self.read_body(limit)
+        fields, file_headers, file_bytes = parse_multipart(body)
+        try:
+            key = (fields["percorso"], fields["sinistro"], fields["waypoint"])
+        except KeyError:
+            key = None
+
+        if limit < length:
+            if key is not None and self.store.should_drop(key):
+                dropping = True
+            else:
+                body += self.read_body(length - limit)
+                fields, file_headers, file_bytes = parse_multipart(body)
+                try:
+                    key = (fields["percorso"], fields["sinistro"], fields["waypoint"])
+                except KeyError:
+                    key = None
+
+        if key is None or file_headers is None:
+            if dropping:
+                return self.drop()
+            return self.respond(400, "Missing percorso, sinistro, waypoint or userfile")
+
+        offset = int(fields.get("offset", 0))
+        content_range = file_headers.get("content-range")
+        if offset > 0:
+            match = re.match(r"bytes (\d+)-(\d+)/(\d+)", content_range or "")
+            if not match or int(match.group(1)) != offset:
+                return self.respond(400, "Content-Range does not match the offset")
+
+        path = self.store.path(*key)
+        stored = self.store.size(*key)
+        if offset != 0 and offset != stored:
+            return self.respond(409, str(stored))
+
+        with open(path, "ab" if offset > 0 else "wb") as photo:
+            photo.write(file_bytes)
+
+        if dropping:
+            sys.stderr.write("Dropped upload of %s after %d bytes of the file\n" % (path, len(file_bytes)))
+            return self.drop()
+
+        sys.stderr.write("Stored %s: %d bytes from offset %d\n" % (path, len(file_bytes), offset))
+        self.respond(200, "OK")
+
+    def read_body(self, count):
+        chunks = []
+        while count > 0:
+            chunk = self.rfile.read(min(CHUNK_SIZE, count))
+            if not chunk:
+                break
+            chunks.append(chunk)
+            count -= len(chunk)
+        return b"".join(chunks)
+
+    def drop(self):
+        self.close_connection = True
+        self.connection.close()
+
+    def respond(self, code, text):
+        body = text.encode("utf-8")
+        self.send_response(code)
+        self.send_header("Content-Type", "text/plain; charset=utf-8")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+
+def serve(port, store):
+    Handler.store = store
+    server = http.server.ThreadingHTTPServer(("", port), Handler)
+    return server
+
+
+def field_part(name, value):
+    return (DELIMITER + LINE_END
+            + ('Content-Disposition: form-data; name="%s"' % name).encode("utf-8") + LINE_END
+            + LINE_END
+            + value.encode("utf-8") + LINE_END)
+
+
+def file_part(name, filename, data, offset):
+    header = (DELIMITER + LINE_END
+              + ('Content-Disposition: form-data; name="%s"; filename="%s"' % (name, filename)).encode("utf-8")
+              + LINE_END + b"Content-Type: image/jpeg" + LINE_END)
+    if offset > 0:
+        header += ("Content-Range: bytes %d-%d/%d" % (offset, len(data) - 1, len(data))).encode("utf-8") + LINE_END
+    return header + LINE_END + data[offset:] + LINE_END
+
+
+def upload(port, data, offset):
+    """Sends the photo like ComunicazioneConServerRunnable.uploadPhotoRequest."""
+    body = field_part("percorso", "42") + field_part("sinistro", "7") + field_part("waypoint", "3")
+    if offset > 0:
+        body += field_part("offset", str(offset))
+    body += file_part("userfile", "photo.jpg", data, offset) + DELIMITER + b"--" + LINE_END
+
+    connection = http.client.HTTPConnection("localhost", port, timeout=10)
+    try:
+        connection.request("POST", "/addFoto.php", body,
+                           {"Content-Type": "multipart/form-data;boundary=" + BOUNDARY.decode("ascii")})
+        response = connection.getresponse()
+        return response.status, response.read().decode("utf-8")
+    finally:
+        connection.close()
+
+
+def query_offset(port):
+    """Asks the stored byte count like PhotoUploadService.ResumableUpload.queryUploadedOffset."""
+    connection = http.client.HTTPConnection("localhost", port, timeout=10)
+    try:
+        connection.request("GET", "/getFotoOffset.php?percorso=42&sinistro=7&waypoint=3")
+        response = connection.getresponse()
+        return int(response.read().decode("utf-8").strip())
+    finally:
+        connection.close()
+
+
+def self_test():
+    data = os.urandom(300 * 1024)
+    directory = tempfile.mkdtemp(prefix="foto_")
+    server = serve(0, Store(directory, drop_after=100 * 1024))
+    port = server.server_address[1]
+    threading.Thread(target=server.serve_forever, daemon=True).start()
+
+    try:
+        try:
+            status, text = upload(port, data, 0)
+            raise AssertionError("The first upload was not dropped: %d %s" % (status, text))
+        except (OSError, http.client.HTTPException):
+            pass
+
+        offset = query_offset(port)
+        assert 0 < offset < len(data), "Unexpected offset %d" % offset
+        assert upload(port, data, offset + 1)[0] == 409, "A wrong offset was accepted"
+
+        status, text = upload(port, data, offset)
+        assert status == 200, "Resumed upload failed: %d %s" % (status, text)
+        assert query_offset(port) == len(data), "The server does not hold the whole photo"
+
+        with open(os.path.join(directory, "42_7_3.jpg"), "rb") as photo:
+            assert photo.read() == data, "The stored photo differs from the original"
+    finally:
+        server.shutdown()
+
+    print("Resumed from byte %d of %d, stored photo matches." % (offset, len(data)))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--port", type=int, default=8000)
+    parser.add_argument("--store", default=os.path.join(tempfile.gettempdir(), "foto"),
+                        help="directory holding the uploaded photos")
+    parser.add_argument("--drop-after", type=int, default=None, metavar="BYTES",
+                        help="drop the first upload of each photo after this many bytes of the request body")
+    parser.add_argument("--self-test", action="store_true")
+    args = parser.parse_args()
+
+    if args.self_test:
+        return self_test()
+
+    if not os.path.isdir(args.store):
+        os.makedirs(args.store)
+    server = serve(args.port, Store(args.store, args.drop_after))
+    sys.stderr.write("Serving getFotoOffset.php and addFoto.php on port %d, photos in %s\n"
+                     % (args.port, args.store))
+    server.serve_forever()
+
+
+if __name__ == "__main__":
+    main()